@@ -0,0 +1,10 @@
+#!/bin/sh
+# Runs the JMH suite and saves the results as bench-results/<commit>.json.
+# Extra arguments go to JMH, e.g.: bench/run.sh BookingBenchmark -p queueSize=10000
+set -e
+cd "$(dirname "$0")/.."
+rev=$(git rev-parse --short HEAD)
+git diff --quiet HEAD -- src bench/src || rev="$rev-dirty"
+mkdir -p bench-results
+java -jar bench/target/benchmarks.jar -rf json -rff "bench-results/$rev.json" "$@"
+echo "Saved bench-results/$rev.json"
@@ -0,0 +1,57 @@
+package bench;
+
+import components.BookingSystem;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import models.Passenger;
+import models.Taxi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SCD Concept: Microbenchmarking (Matching)
+ * {@link BookingSystem#findAndPickPassengers(Taxi)} against queues of different sizes,
+ * taking turns across the fleet so each call starts from a different taxi position.
+ * Each operation also puts the world back (board, drop, re-queue); that part does not
+ * depend on the queue size, so differences across parameters are the search itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookingBenchmark {
+    @Param({"100", "1000", "10000"})
+    int queueSize;
+
+    @Param({"10", "100", "1000"})
+    int taxiCount;
+
+    private BookingSystem bookingSystem;
+    private List<Taxi> taxis;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        bookingSystem = World.booking(42);
+        taxis = World.addTaxis(bookingSystem, taxiCount);
+        World.addPassengers(bookingSystem, queueSize);
+    }
+
+    @Benchmark
+    public Passenger findAndPick() {
+        Taxi taxi = taxis.get(next);
+        next = next + 1 == taxis.size() ? 0 : next + 1;
+        return World.pickAndReturn(bookingSystem, taxi);
+    }
+}
@@ -0,0 +1,89 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import server.JsonReader;
+import server.JsonUtil;
+
+/**
+ * Compares two JMH JSON result files (e.g. two commits from bench/run.sh) benchmark by
+ * benchmark and flags every score that got worse by more than the threshold.
+ *
+ * Usage: java -cp bench/target/benchmarks.jar bench.CompareResults base.json new.json [thresholdPercent]
+ * Exits with 1 if anything regressed, so it can gate a local pre-push check.
+ */
+public class CompareResults {
+    static final class Score {
+        final double value;
+        final double error;
+        final String unit;
+        final boolean higherIsBetter;
+
+        Score(double value, double error, String unit, boolean higherIsBetter) {
+            this.value = value;
+            this.error = error;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: bench.CompareResults base.json new.json [thresholdPercent]");
+            System.exit(2);
+        }
+        Map<String, Score> base = read(Path.of(args[0]));
+        Map<String, Score> current = read(Path.of(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        System.out.println(String.format("%-70s %12s %12s %9s  %s", "benchmark", "base", "new", "change", "unit"));
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score now = entry.getValue();
+            Score before = base.get(entry.getKey());
+            if (before == null) {
+                System.out.println(String.format("%-70s %12s %12.3f %9s  %s", entry.getKey(), "-", now.value, "new",
+                        now.unit));
+                continue;
+            }
+            double change = (now.value - before.value) / before.value * 100;
+            double worse = now.higherIsBetter ? -change : change;
+            // Within the combined error bars is noise, whatever the percentage says
+            boolean regressed = worse > threshold && Math.abs(now.value - before.value) > before.error + now.error;
+            regressions += regressed ? 1 : 0;
+            System.out.println(String.format("%-70s %12.3f %12.3f %+8.1f%%  %s%s", entry.getKey(), before.value,
+                    now.value, change, now.unit, regressed ? "  REGRESSION" : ""));
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) over " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Score> read(Path file) throws IOException {
+        List<Object> results = (List<Object>) JsonUtil.readValue(new JsonReader(Files.readAllBytes(file)));
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (Object item : results) {
+            Map<String, Object> result = (Map<String, Object>) item;
+            StringBuilder key = new StringBuilder((String) result.get("benchmark"));
+            Map<String, Object> params = (Map<String, Object>) result.get("params");
+            if (params != null) {
+                for (Map.Entry<String, Object> p : new TreeMap<>(params).entrySet()) {
+                    key.append(' ').append(p.getKey()).append('=').append(p.getValue());
+                }
+            }
+            Map<String, Object> metric = (Map<String, Object>) result.get("primaryMetric");
+            double error = metric.get("scoreError") instanceof Number ? ((Number) metric.get("scoreError")).doubleValue() : 0;
+            scores.put(key.toString(), new Score(((Number) metric.get("score")).doubleValue(),
+                    Double.isNaN(error) ? 0 : error, (String) metric.get("scoreUnit"),
+                    "thrpt".equals(result.get("mode"))));
+        }
+        return scores;
+    }
+}
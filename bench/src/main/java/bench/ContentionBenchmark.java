@@ -0,0 +1,74 @@
+package bench;
+
+import components.BookingSystem;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import models.Passenger;
+import models.Taxi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SCD Concept: Microbenchmarking (Contention)
+ * Several threads claiming from one shared booking system, each driving its own slice of
+ * the fleet, as taxi threads do. Compare the throughput with {@code -t 1} to see what
+ * claim races and shared index updates cost; lost races show up as
+ * {@code dispatch_claim_races_lost_total} in the metrics.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ContentionBenchmark {
+    private static final int TAXIS_PER_THREAD = 64;
+    private static final int MAX_THREADS = 64;
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        @Param({"1000", "10000"})
+        int queueSize;
+
+        BookingSystem bookingSystem;
+        List<Taxi> taxis;
+        final AtomicInteger threads = new AtomicInteger();
+
+        @Setup
+        public void setUp() {
+            bookingSystem = World.booking(42);
+            taxis = World.addTaxis(bookingSystem, TAXIS_PER_THREAD * MAX_THREADS);
+            World.addPassengers(bookingSystem, queueSize);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Driver {
+        List<Taxi> ownTaxis;
+        int next;
+
+        @Setup
+        public void setUp(Shared shared) {
+            int index = shared.threads.getAndIncrement() % MAX_THREADS;
+            ownTaxis = shared.taxis.subList(index * TAXIS_PER_THREAD, (index + 1) * TAXIS_PER_THREAD);
+        }
+    }
+
+    @Benchmark
+    public Passenger findAndPick(Shared shared, Driver driver) {
+        Taxi taxi = driver.ownTaxis.get(driver.next);
+        driver.next = (driver.next + 1) % TAXIS_PER_THREAD;
+        return World.pickAndReturn(shared.bookingSystem, taxi);
+    }
+}
@@ -0,0 +1,117 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import server.JsonReader;
+import server.JsonUtil;
+
+/**
+ * SCD Concept: Microbenchmarking (Request Parsing)
+ * {@link #bulkArray()} and {@link #bulkNdjson()} walk a {@code /api/passengers/bulk} body
+ * record by record the way the handler does, reading gender, x/y and destination and
+ * skipping unknown fields. {@link #addPassengerBody()} parses the small
+ * {@code /api/addPassenger} body into a map through {@code JsonUtil.fromJson}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonReaderBenchmark {
+    private static final byte[] ADD_PASSENGER = "{\"maleCount\":3,\"femaleCount\":2}".getBytes(StandardCharsets.UTF_8);
+
+    @State(Scope.Thread)
+    public static class Bodies {
+        @Param({"1000", "100000"})
+        int passengers;
+
+        byte[] array;
+        byte[] ndjson;
+
+        @Setup
+        public void setUp() {
+            SplittableRandom random = new SplittableRandom(42);
+            StringBuilder a = new StringBuilder("[");
+            StringBuilder n = new StringBuilder();
+            for (int i = 0; i < passengers; i++) {
+                // Commas and escapes inside strings, and a field the handler skips
+                String record = String.format("{\"gender\":\"%s\",\"x\":%d,\"y\":%d,\"destination\":%s,\"note\":{\"tags\":[1,2]}}",
+                        random.nextBoolean() ? "male" : "female", random.nextInt(1200), random.nextInt(700),
+                        random.nextInt(4) == 0 ? "null" : "\"Block " + random.nextInt(20) + ", \\\"Gate\\\" " + i + "\"");
+                a.append(i == 0 ? "" : ",").append(record);
+                n.append(record).append('\n');
+            }
+            array = a.append(']').toString().getBytes(StandardCharsets.UTF_8);
+            ndjson = n.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public long bulkArray(Bodies bodies) {
+        JsonReader in = new JsonReader(bodies.array);
+        long sum = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            sum += readPassenger(in);
+        }
+        in.endArray();
+        in.endDocument();
+        return sum;
+    }
+
+    @Benchmark
+    public long bulkNdjson(Bodies bodies) {
+        JsonReader in = new JsonReader(bodies.ndjson).setMultipleDocuments(true);
+        long sum = 0;
+        while (in.hasNext()) {
+            sum += readPassenger(in);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Map<String, Object> addPassengerBody() {
+        return JsonUtil.fromJson(ADD_PASSENGER);
+    }
+
+    // Mirrors WebServer.BulkPassengerHandler.readPassenger, minus building the Passenger
+    private static long readPassenger(JsonReader in) {
+        long sum = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "gender":
+                    sum += in.nextString().length();
+                    break;
+                case "x":
+                case "y":
+                    sum += in.nextInt();
+                    break;
+                case "destination":
+                    if (in.peek() == JsonReader.Token.NULL) {
+                        in.nextNull();
+                    } else {
+                        sum += in.nextString().length();
+                    }
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return sum;
+    }
+}
@@ -0,0 +1,81 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import routing.Route;
+import routing.Router;
+
+/**
+ * SCD Concept: Microbenchmarking (Routing)
+ * Point-to-point queries between uniformly random spots of a jittered grid city, on
+ * 10k and 100k (317 x 317) intersections. With {@code cacheSize=0} every query runs a
+ * contraction hierarchy search; with the cache on, the 8192 pairs cycled through all
+ * fit, so after warmup it measures cache hits. {@code estimate} reads the ETA matrix
+ * (cells of one block, at most 4096), filled on demand during warmup; it does not use
+ * the route cache. Results are in queries per second. Building the hierarchy is part
+ * of the setup, not of the score.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+    private static final int PAIRS = 1 << 13;
+
+    @Param({"100", "317"})
+    int side;
+
+    @Param({"0", "100000"})
+    int cacheSize;
+
+    private Router router;
+    private final double[] points = new double[4 * PAIRS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        router = new Router(World.roads(side, 42), cacheSize, 100);
+        SplittableRandom random = new SplittableRandom(7);
+        double extent = (side - 1) * 100.0;
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextDouble() * extent;
+        }
+    }
+
+    /** A full route with its waypoints, as a taxi asks for when it gets a new target. */
+    @Benchmark
+    public Route route() {
+        int i = 4 * next;
+        next = (next + 1) & (PAIRS - 1);
+        return router.route(points[i], points[i + 1], points[i + 2], points[i + 3]);
+    }
+
+    /** Only the cost, as matching asks for when ranking candidates. */
+    @Benchmark
+    public double cost() {
+        int i = 4 * next;
+        next = (next + 1) & (PAIRS - 1);
+        return router.cost(points[i], points[i + 1], points[i + 2], points[i + 3]);
+    }
+
+    /** A travel-time estimate from the ETA matrix, as dispatch scoring asks for. */
+    @Benchmark
+    public double estimate() {
+        int i = 4 * next;
+        next = (next + 1) & (PAIRS - 1);
+        return router.estimate(points[i], points[i + 1], points[i + 2], points[i + 3]);
+    }
+}
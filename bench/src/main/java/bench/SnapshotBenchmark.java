@@ -0,0 +1,167 @@
+package bench;
+
+import components.BookingSystem;
+import components.FleetMotion;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import models.Taxi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import server.JsonUtil;
+import server.JsonWriter;
+import server.SnapshotPublisher;
+import util.SimulationConstants;
+
+/**
+ * SCD Concept: Microbenchmarking (Update Loop)
+ * {@link #tick()} is the body of {@code WebServer.updateSimulationState}: one fleet step
+ * with patrol re-targeting, then one snapshot published. {@link #toJson()} serializes the
+ * published snapshot through {@code JsonUtil.toJson}. {@link #reflectiveBytes()} and
+ * {@link #writerBytes()} produce the {@code /api/state} response body from the same
+ * snapshot: the reflective serializer the server used before the streaming writer, plus
+ * {@code getBytes}, against {@code writeState} into a reused writer as the handler does now.
+ * Setup checks that both give the same bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({"50", "500"})
+    int taxiCount;
+
+    @Param({"100", "2000"})
+    int queueSize;
+
+    private BookingSystem bookingSystem;
+    private FleetMotion fleet;
+    private final SnapshotPublisher snapshots = new SnapshotPublisher();
+    private SplittableRandom patrolRandom;
+    private FleetMotion.StopListener onStopped;
+    private final JsonWriter writer = new JsonWriter(64 * 1024);
+
+    @Setup
+    public void setUp() {
+        bookingSystem = World.booking(42);
+        List<Taxi> taxis = World.addTaxis(bookingSystem, taxiCount);
+        World.addPassengers(bookingSystem, queueSize);
+        // Send a third of the fleet to a pickup so the snapshot carries riders too
+        for (int i = 0; i < taxis.size(); i += 3) {
+            bookingSystem.findAndPickPassengers(taxis.get(i));
+        }
+        fleet = bookingSystem.getFleet();
+        patrolRandom = bookingSystem.newRandom();
+        onStopped = (taxi, arrivedThisTick) -> {
+            if (taxi.getStatus().equals("AVAILABLE")) {
+                taxi.setTarget(50 + patrolRandom.nextInt(12) * 100, 50 + patrolRandom.nextInt(7) * 100);
+            }
+        };
+        snapshots.publish(bookingSystem);
+        byte[] reflective = reflectiveBytes();
+        writerBytes();
+        if (!Arrays.equals(reflective, writer.toByteArray())) {
+            throw new IllegalStateException("the writer and the reflective serializer disagree");
+        }
+    }
+
+    @Benchmark
+    public long tick() {
+        fleet.tick(SimulationConstants.SPEED, onStopped);
+        snapshots.publish(bookingSystem);
+        return snapshots.getVersion();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return snapshots.read(JsonUtil::toJson);
+    }
+
+    @Benchmark
+    public byte[] reflectiveBytes() {
+        return snapshots.read(ReflectiveJson::toJson).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int writerBytes() {
+        return snapshots.read(state -> {
+            writer.reset();
+            JsonUtil.writeState(writer, state);
+            return writer.length();
+        });
+    }
+
+    /** {@code JsonUtil.toJson} as it was before the streaming writer, kept as the baseline. */
+    static final class ReflectiveJson {
+        static String toJson(Object obj) {
+            if (obj == null) return "null";
+            if (obj instanceof Number || obj instanceof Boolean) return obj.toString();
+            if (obj instanceof String) return "\"" + escape((String) obj) + "\"";
+
+            if (obj instanceof Collection) {
+                StringBuilder sb = new StringBuilder("[");
+                boolean first = true;
+                for (Object item : (Collection<?>) obj) {
+                    if (!first) sb.append(",");
+                    sb.append(toJson(item));
+                    first = false;
+                }
+                sb.append("]");
+                return sb.toString();
+            }
+
+            if (obj instanceof Map) {
+                StringBuilder sb = new StringBuilder("{");
+                boolean first = true;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                    if (!first) sb.append(",");
+                    sb.append(toJson(entry.getKey().toString())).append(":").append(toJson(entry.getValue()));
+                    first = false;
+                }
+                sb.append("}");
+                return sb.toString();
+            }
+
+            // POJO reflection
+            StringBuilder sb = new StringBuilder("{");
+            boolean first = true;
+            try {
+                for (Field field : obj.getClass().getFields()) {
+                    if (!first) sb.append(",");
+                    sb.append("\"").append(field.getName()).append("\":");
+                    sb.append(toJson(field.get(obj)));
+                    first = false;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            sb.append("}");
+            return sb.toString();
+        }
+
+        private static String escape(String s) {
+            return s.replace("\\", "\\\\")
+                    .replace("\"", "\\\"")
+                    .replace("\n", "\\n")
+                    .replace("\r", "\\r")
+                    .replace("\t", "\\t");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package bench;
+
+import components.BookingSystem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import models.Gender;
+import models.Passenger;
+import models.Taxi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * SCD Concept: Microbenchmarking (Gender Rules)
+ * The per-poll rule checks of one taxi, for each load it can be in, and planning one
+ * more passenger into its route (see {@link components.RidePlanner}).
+ * {@code load} lists the passengers on board, M for male and F for female.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaxiRulesBenchmark {
+    @Param({"EMPTY", "M", "F", "MM", "MF", "MMM"})
+    String load;
+
+    private Taxi taxi;
+    private Passenger request;
+
+    @Setup
+    public void setUp() {
+        BookingSystem bookingSystem = World.booking(42);
+        taxi = new Taxi(1, bookingSystem);
+        List<Passenger> onBoard = new ArrayList<>();
+        for (char c : load.equals("EMPTY") ? new char[0] : load.toCharArray()) {
+            Passenger p = new Passenger(c == 'M' ? Gender.MALE : Gender.FEMALE, bookingSystem, 100, 100);
+            p.tryClaim();
+            onBoard.add(p);
+        }
+        taxi.restore(0, onBoard, List.of());
+        request = new Passenger(Gender.FEMALE, bookingSystem, 300, 300, "Airport");
+    }
+
+    @Benchmark
+    public void canPickUp(Blackhole bh) {
+        bh.consume(taxi.canPickUp(Gender.MALE));
+        bh.consume(taxi.canPickUp(Gender.FEMALE));
+    }
+
+    @Benchmark
+    public Object quote() {
+        return taxi.quote(request);
+    }
+}
@@ -0,0 +1,89 @@
+package bench;
+
+import components.BookingSystem;
+import components.PassengerGrid;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import models.Gender;
+import models.Passenger;
+import models.Taxi;
+import routing.RoadGraph;
+import util.Logger;
+import util.SimulationClock;
+
+/**
+ * Builds seeded worlds for the benchmarks, the same way the headless runner does:
+ * a manual clock, no threads started, and INFO logging off so the log ring is not
+ * part of what is measured.
+ */
+final class World {
+    static final int WIDTH = PassengerGrid.COLUMNS * PassengerGrid.CELL_SIZE;
+    static final int HEIGHT = PassengerGrid.ROWS * PassengerGrid.CELL_SIZE;
+
+    private World() {
+    }
+
+    static BookingSystem booking(long seed) {
+        Logger.setConsoleLogging(false);
+        Logger.setLevel(Logger.Level.WARN);
+        return new BookingSystem(SimulationClock.manual(), seed);
+    }
+
+    /**
+     * A {@code side} x {@code side} street grid 100 units apart with jittered corners.
+     * Every tenth street is an avenue at twice the speed and one block in twenty is
+     * one-way, so shortest paths are neither unique nor simply Manhattan.
+     */
+    static RoadGraph roads(int side, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        RoadGraph.Builder b = new RoadGraph.Builder();
+        for (int j = 0; j < side; j++) {
+            for (int i = 0; i < side; i++) {
+                b.node(j * side + i, i * 100 + random.nextDouble() * 20, j * 100 + random.nextDouble() * 20);
+            }
+        }
+        for (int j = 0; j < side; j++) {
+            for (int i = 0; i < side; i++) {
+                int v = j * side + i;
+                if (i + 1 < side) b.road(v, v + 1, j % 10 == 0 ? 3.0 : 1.5, random.nextInt(20) == 0);
+                if (j + 1 < side) b.road(v, v + side, i % 10 == 0 ? 3.0 : 1.5, random.nextInt(20) == 0);
+            }
+        }
+        return b.build();
+    }
+
+    static List<Taxi> addTaxis(BookingSystem bookingSystem, int count) {
+        List<Taxi> taxis = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            taxis.add(new Taxi(i, bookingSystem));
+        }
+        return taxis;
+    }
+
+    /** Enqueues {@code count} passengers spread over the whole city, roughly half of each gender. */
+    static void addPassengers(BookingSystem bookingSystem, int count) {
+        SplittableRandom random = bookingSystem.newRandom();
+        for (int i = 0; i < count; i++) {
+            Gender gender = random.nextBoolean() ? Gender.MALE : Gender.FEMALE;
+            bookingSystem.addPassengerToQueue(
+                    new Passenger(gender, bookingSystem, random.nextInt(WIDTH), random.nextInt(HEIGHT)));
+        }
+    }
+
+    /**
+     * One claim through {@link BookingSystem#findAndPickPassengers(Taxi)}, then puts the
+     * world back: the taxi boards and drops the passenger, who rejoins the queue at the
+     * same spot. Queue size and taxi state are the same before and after every call.
+     */
+    static Passenger pickAndReturn(BookingSystem bookingSystem, Taxi taxi) {
+        Passenger passenger = bookingSystem.findAndPickPassengers(taxi);
+        if (passenger != null) {
+            taxi.completePickup();
+            taxi.completeDropOff();
+            passenger.releaseClaim();
+            bookingSystem.restoreWaitingPassenger(passenger);
+        }
+        return passenger;
+    }
+}
@@ -0,0 +1,71 @@
+package components;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * SCD Concept: Algorithms (Assignment Problem)
+ * Forward auction (Bertsekas) over a sparse bipartite graph.
+ * Bidders may stay unassigned, so it also works when objects run out or edges are missing.
+ */
+public class AuctionSolver {
+    private final double epsilon;
+
+    public AuctionSolver(double epsilon) {
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * @param objectCount number of objects
+     * @param candidates  candidates[i] = object indices bidder i may take
+     * @param benefits    benefits[i][k] = value of candidates[i][k] to bidder i (must be positive)
+     * @return assignment[i] = object index for bidder i, or -1
+     */
+    public int[] solve(int objectCount, int[][] candidates, double[][] benefits) {
+        int bidders = candidates.length;
+        int[] assignment = new int[bidders];
+        Arrays.fill(assignment, -1);
+        int[] owner = new int[objectCount];
+        Arrays.fill(owner, -1);
+        double[] prices = new double[objectCount];
+
+        Deque<Integer> unassigned = new ArrayDeque<>(bidders);
+        for (int i = 0; i < bidders; i++) {
+            if (candidates[i].length > 0) unassigned.add(i);
+        }
+
+        while (!unassigned.isEmpty()) {
+            int bidder = unassigned.poll();
+            int[] objs = candidates[bidder];
+            double[] vals = benefits[bidder];
+
+            int bestObj = -1;
+            double best = 0.0;   // staying unassigned is worth 0
+            double second = 0.0;
+            for (int k = 0; k < objs.length; k++) {
+                double v = vals[k] - prices[objs[k]];
+                if (v > best) {
+                    second = best;
+                    best = v;
+                    bestObj = objs[k];
+                } else if (v > second) {
+                    second = v;
+                }
+            }
+            if (bestObj < 0) {
+                continue; // every candidate is priced out; bidder sits this round out
+            }
+
+            prices[bestObj] += best - second + epsilon;
+            int previous = owner[bestObj];
+            owner[bestObj] = bidder;
+            assignment[bidder] = bestObj;
+            if (previous >= 0) {
+                assignment[previous] = -1;
+                unassigned.add(previous);
+            }
+        }
+        return assignment;
+    }
+}
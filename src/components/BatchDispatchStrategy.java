@@ -0,0 +1,130 @@
+package components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import models.*;
+
+/**
+ * Batched global assignment: every dispatch tick all taxis with room in their plan and
+ * all waiting passengers are matched at once to minimise what the passengers add to
+ * the fleet's driving. Each taxi only bids on its nearest few passengers (spatial
+ * prefilter), which keeps the auction sparse for large fleets. Bids are the cheapest
+ * insertion into the taxi's stop plan (see {@link RidePlanner}); passengers that fit
+ * nowhere in it are not bid on.
+ */
+public class BatchDispatchStrategy implements DispatchStrategy {
+    private static final int CANDIDATES_PER_TAXI = 8;
+    private static final int MAX_ROUNDS = 8;
+    private static final double RESERVE_MARGIN = 100.0;
+
+    private final DispatchStats stats = new DispatchStats();
+    private final AuctionSolver solver = new AuctionSolver(5.0);
+
+    @Override
+    public void onTaxiPoll(BookingSystem bookingSystem, Taxi taxi) {
+        // Assignment happens on the dispatch tick.
+    }
+
+    @Override
+    public void onDispatchTick(BookingSystem bookingSystem, List<Taxi> taxis) {
+        long solveNanos = 0;
+        int assigned = 0;
+        double tickDistance = 0.0;
+
+        List<Taxi> open = new ArrayList<>();
+        for (Taxi taxi : taxis) {
+            if (taxi.canTakeMore()) {
+                open.add(taxi);
+            }
+        }
+
+        // Taxis parked together compete for the same few candidates; losers get another
+        // round against the passengers that are still unclaimed.
+        for (int round = 0; round < MAX_ROUNDS && !open.isEmpty(); round++) {
+            long start = System.nanoTime();
+            List<Taxi> bidders = new ArrayList<>();
+            List<int[]> candidateList = new ArrayList<>();
+            List<double[]> benefitList = new ArrayList<>();
+            List<Passenger> objects = new ArrayList<>();
+            Map<Passenger, Integer> objectIndex = new HashMap<>();
+            List<Passenger> nearby = new ArrayList<>(CANDIDATES_PER_TAXI);
+            boolean[] allowed = new boolean[Gender.values().length];
+            Arrays.fill(allowed, true); // the plan checks the seat rule leg by leg
+
+            for (Taxi taxi : open) {
+                bookingSystem.findNearbyPassengers(taxi.getX(), taxi.getY(), allowed, CANDIDATES_PER_TAXI, nearby);
+                if (nearby.isEmpty()) continue;
+
+                // Benefits are measured against a reserve just beyond the costliest candidate, so a
+                // taxi that keeps getting outbid drops out of the round after a short price war.
+                double[] costs = new double[nearby.size()];
+                bookingSystem.scoreCandidates(taxi, nearby, costs);
+                double highest = Double.NEGATIVE_INFINITY;
+                int feasible = 0;
+                for (double cost : costs) {
+                    if (cost != Double.POSITIVE_INFINITY) {
+                        highest = Math.max(highest, cost);
+                        feasible++;
+                    }
+                }
+                if (feasible == 0) continue;
+                double reserve = highest + RESERVE_MARGIN;
+                int[] objs = new int[feasible];
+                double[] vals = new double[feasible];
+                int f = 0;
+                for (int k = 0; k < nearby.size(); k++) {
+                    if (costs[k] == Double.POSITIVE_INFINITY) continue;
+                    Passenger p = nearby.get(k);
+                    Integer idx = objectIndex.get(p);
+                    if (idx == null) {
+                        idx = objects.size();
+                        objects.add(p);
+                        objectIndex.put(p, idx);
+                    }
+                    objs[f] = idx;
+                    vals[f++] = reserve - costs[k];
+                }
+                bidders.add(taxi);
+                candidateList.add(objs);
+                benefitList.add(vals);
+            }
+            if (bidders.isEmpty()) break;
+
+            int[] assignment = solver.solve(objects.size(),
+                    candidateList.toArray(new int[0][]), benefitList.toArray(new double[0][]));
+            solveNanos += System.nanoTime() - start;
+
+            List<Taxi> losers = new ArrayList<>();
+            for (int i = 0; i < assignment.length; i++) {
+                Taxi taxi = bidders.get(i);
+                if (assignment[i] < 0) {
+                    losers.add(taxi);
+                    continue;
+                }
+                Passenger p = objects.get(assignment[i]);
+                double distance = bookingSystem.travelCost(taxi.getX(), taxi.getY(), p.getX(), p.getY());
+                if (bookingSystem.assign(taxi, p, distance)) {
+                    assigned++;
+                    tickDistance += distance;
+                    stats.recordAssignment(distance);
+                }
+            }
+            if (losers.size() == bidders.size()) break;
+            open = losers;
+        }
+        stats.recordTick(assigned, tickDistance, solveNanos);
+    }
+
+    @Override
+    public String getName() {
+        return "batch";
+    }
+
+    @Override
+    public DispatchStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,37 @@
+package components;
+
+import java.util.List;
+import models.Passenger;
+import models.Taxi;
+
+/**
+ * SCD Concept: Event Sourcing (Hook)
+ * Receives every booking event after the change it describes has been applied, so a
+ * snapshot taken at any point plus the events logged after it always covers the world.
+ * {@link #NONE} is used when nothing is recorded.
+ */
+public interface BookingJournal {
+    BookingJournal NONE = new BookingJournal() {
+    };
+
+    default void taxiAdded(Taxi taxi) {
+    }
+
+    default void passengerRequested(Passenger passenger) {
+    }
+
+    default void passengerClaimed(Passenger passenger, Taxi taxi) {
+    }
+
+    default void passengerBoarded(Passenger passenger, Taxi taxi) {
+    }
+
+    /**
+     * @param earnings the taxi's total earnings after this ride
+     * @param malesServed booking-wide total after counting these passengers
+     * @param femalesServed booking-wide total after counting these passengers
+     */
+    default void passengersDropped(Taxi taxi, List<Passenger> passengers, double earnings,
+            int malesServed, int femalesServed) {
+    }
+}
@@ -1,73 +1,380 @@
 package components;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import models.*;
 import java.util.List;
+import routing.Router;
 import util.Logger;
+import util.Metrics;
+import util.SimulationClock;
 
 /**
  * SCD Concept: Shared Resource & Synchronization Core
- * Simulates a thread-safe Queue and handles the Race Condition.
+ * Lock-free booking engine: enqueue goes straight into a concurrent spatial index
+ * and each taxi claims its passenger with a CAS, so taxis never wait on each other.
  */
 public class BookingSystem {
+    private static final Metrics.Histogram WAIT_TO_CLAIM = Metrics.histogram("passenger_wait_to_claim_seconds",
+            "Simulated time from joining the queue to being claimed by a taxi", 1000);
+    private static final Metrics.Histogram CLAIM_TO_BOARD = Metrics.histogram("passenger_claim_to_board_seconds",
+            "Simulated time from being claimed to boarding the taxi", 1000);
+    private static final Metrics.Histogram MATCH_DURATION = Metrics.histogram("dispatch_find_and_pick_seconds",
+            "Wall time of one findAndPickPassengers call (search plus CAS claim)", 1_000_000);
+    private static final Metrics.Counter LOST_RACES = Metrics.counter("dispatch_claim_races_lost_total",
+            "Claims retried because another taxi won the CAS for the same passenger");
+    private static final Metrics.Counter PAIRS_SCORED = Metrics.counter("dispatch_pairs_scored_total",
+            "(taxi, passenger) pairs whose insertion cost was planned for matching");
+    private static final Metrics.DoubleCounter SCORING_SECONDS = Metrics.doubleCounter("dispatch_scoring_seconds_total",
+            "Wall time spent planning pair insertions; pairs scored divided by this is the scoring throughput");
+    private static final Metrics.Counter ENQUEUED = Metrics.counter("passengers_enqueued_total",
+            "Passengers that joined the waiting queue");
+    // The nearest few in a straight line are re-ranked by what they add to the taxi's plan
+    private static final int CANDIDATES = 8;
+    // Pooling checks the seat rule along the plan, so every gender is a candidate
+    private static final boolean[] ANY_GENDER = { true, true };
+
     // SCD Concept: Generics - Type Safety is enforced.
-    private final Queue<Passenger> passengerQueue = new LinkedList<>();
-    private int totalMalesServed = 0;
-    private int totalFemalesServed = 0;
+    private final PassengerGrid passengerGrid = new PassengerGrid();
+    private final AtomicInteger totalMalesServed = new AtomicInteger();
+    private final AtomicInteger totalFemalesServed = new AtomicInteger();
+    private volatile DispatchStrategy dispatchStrategy = new GreedyDispatchStrategy();
+    private final SimulationClock clock;
+    private final FleetMotion fleet = new FleetMotion();
+    private volatile BookingJournal journal = BookingJournal.NONE;
+    private final PoolingStats poolingStats = new PoolingStats();
+    private volatile boolean exportsMetrics = true;
+    // SCD Concept: Determinism - every entity draws from its own stream split off this seed.
+    private final long seed;
+    private final SplittableRandom random;
+    private final AtomicInteger nextPassengerNumber = new AtomicInteger(1);
+
+    public BookingSystem() {
+        this(SimulationClock.realTime());
+    }
+
+    public BookingSystem(SimulationClock clock) {
+        this(clock, ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @param seed root of every random stream in this world; the same seed and the same
+     *             sequence of calls reproduce the same world
+     */
+    public BookingSystem(SimulationClock clock, long seed) {
+        this.clock = clock;
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * A new independent random stream for one entity (taxi, passenger, engine). Entities
+     * never share a generator, so they neither contend nor depend on each other's draws.
+     */
+    public synchronized SplittableRandom newRandom() {
+        return random.split();
+    }
+
+    /** Passenger numbers are per world and increase monotonically from 1. */
+    public int nextPassengerNumber() {
+        return nextPassengerNumber.getAndIncrement();
+    }
+
+    /** Makes sure later passengers are numbered after a recovered one. */
+    public void reservePassengerNumber(int number) {
+        nextPassengerNumber.accumulateAndGet(number + 1, Math::max);
+    }
+
+    /** Positions and targets of every taxi in this world. */
+    public FleetMotion getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Puts this world on a road network: taxis drive routes, and matching ranks
+     * passengers by route cost instead of straight-line distance. Null turns it off.
+     */
+    public void setRouter(Router router) {
+        fleet.setRouter(router);
+    }
+
+    public Router getRouter() {
+        return fleet.getRouter();
+    }
+
+    /**
+     * What driving from one point to another costs, in map units: the road route's cost
+     * with a router (see {@link routing.RoadGraph}), otherwise the straight-line distance.
+     */
+    public double travelCost(double fromX, double fromY, double toX, double toY) {
+        Router router = fleet.getRouter();
+        return router == null ? Math.hypot(toX - fromX, toY - fromY) : router.cost(fromX, fromY, toX, toY);
+    }
+
+    /**
+     * Estimated {@link #travelCost}: from the router's ETA matrix (see
+     * {@link routing.EtaMatrix}) when it has one. Ride planning uses this for every leg
+     * it compares, and taxis for their odometers, so plans and deadlines agree.
+     */
+    public double estimateTravelCost(double fromX, double fromY, double toX, double toY) {
+        Router router = fleet.getRouter();
+        return router == null ? Math.hypot(toX - fromX, toY - fromY) : router.estimate(fromX, fromY, toX, toY);
+    }
+
+    /**
+     * What each candidate would add to {@code taxi}'s plan (see {@link RidePlanner.Insertion#objective}),
+     * into {@code costs}; infinite where the taxi cannot take them. Matching calls this for
+     * every pair it compares, so it is counted and timed.
+     */
+    public void scoreCandidates(Taxi taxi, List<Passenger> candidates, double[] costs) {
+        long start = System.nanoTime();
+        for (int k = 0; k < candidates.size(); k++) {
+            RidePlanner.Insertion insertion = taxi.quote(candidates.get(k));
+            costs[k] = insertion == null ? Double.POSITIVE_INFINITY : insertion.objective;
+        }
+        recordScoring(candidates.size(), start);
+    }
+
+    /** Counts {@code pairs} planned by a strategy that quotes taxis itself, since {@code startNanos}. */
+    public void recordScoring(int pairs, long startNanos) {
+        if (!exportsMetrics) {
+            return;
+        }
+        PAIRS_SCORED.add(pairs);
+        SCORING_SECONDS.add((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    /**
+     * Whether this world records into the process-wide series on {@code /api/metrics}
+     * (waits, matching, rides, pooling). They describe the server's default world, so
+     * session worlds switch this off rather than mixing hundreds of worlds into them.
+     */
+    public void setExportsMetrics(boolean exports) {
+        exportsMetrics = exports;
+        poolingStats.setExported(exports);
+    }
+
+    public boolean exportsMetrics() {
+        return exportsMetrics;
+    }
+
+    public PoolingStats getPoolingStats() {
+        return poolingStats;
+    }
+
+    public BookingJournal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(BookingJournal journal) {
+        this.journal = journal;
+    }
+
+    /** The clock every actor in this world sleeps on. */
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    public void addPassengerToQueue(Passenger passenger) {
+        passenger.markEnqueued(clock.now());
+        passengerGrid.add(passenger);
+        if (exportsMetrics) {
+            ENQUEUED.increment();
+        }
+        journal.passengerRequested(passenger);
+    }
 
-    public synchronized void addPassengerToQueue(Passenger passenger) {
-        passengerQueue.offer(passenger);
+    /** Puts a recovered passenger back in the queue without recording it again. */
+    public void restoreWaitingPassenger(Passenger passenger) {
+        passenger.markEnqueued(clock.now());
+        passengerGrid.add(passenger);
     }
-    public synchronized void recordPassengerDropOff(Passenger passenger) {
+
+    /**
+     * Takes a waiting passenger out of the queue, e.g. to hand them to another shard.
+     * @return false if a taxi claimed them first
+     */
+    public boolean withdraw(Passenger passenger) {
+        if (!passenger.tryClaim()) {
+            return false;
+        }
+        passengerGrid.remove(passenger);
+        return true;
+    }
+
+    public void restoreServed(int males, int females) {
+        totalMalesServed.set(males);
+        totalFemalesServed.set(females);
+    }
+
+    /**
+     * Enqueues a batch in one step, unless the waiting set would grow past {@code maxWaiting}.
+     * @return false if the batch was rejected and nothing was added
+     */
+    public boolean addPassengersToQueue(List<Passenger> batch, int maxWaiting) {
+        long now = clock.now();
+        for (Passenger passenger : batch) {
+            passenger.markEnqueued(now);
+        }
+        if (!passengerGrid.addAll(batch, maxWaiting)) {
+            return false;
+        }
+        if (exportsMetrics) {
+            ENQUEUED.add(batch.size());
+        }
+        BookingJournal events = journal;
+        for (Passenger passenger : batch) {
+            events.passengerRequested(passenger);
+        }
+        return true;
+    }
+
+    /** Called by the taxi once the passenger is on board. */
+    public void recordBoarding(Passenger passenger, Taxi taxi) {
+        if (exportsMetrics && passenger.getClaimedAt() >= 0) {
+            CLAIM_TO_BOARD.record(clock.now() - passenger.getClaimedAt());
+        }
+        journal.passengerBoarded(passenger, taxi);
+    }
+
+    /** Called by the taxi, under its lock, after its passengers were counted as served. */
+    public void recordRideCompleted(Taxi taxi, List<Passenger> passengers) {
+        journal.passengersDropped(taxi, passengers, taxi.getEarnings(),
+                totalMalesServed.get(), totalFemalesServed.get());
+    }
+    public void recordPassengerDropOff(Passenger passenger) {
         if (passenger.getGender() == Gender.MALE) {
-            totalMalesServed++;
+            totalMalesServed.incrementAndGet();
         } else {
-            totalFemalesServed++;
+            totalFemalesServed.incrementAndGet();
         }
     }
 
+    public DispatchStrategy getDispatchStrategy() {
+        return dispatchStrategy;
+    }
+
+    public void setDispatchStrategy(DispatchStrategy dispatchStrategy) {
+        this.dispatchStrategy = dispatchStrategy;
+    }
+
     /**
-     * SCD Concept: Synchronization Point & Race Condition Avoidance (RCA)
+     * Called by a taxi's polling loop; the active strategy decides whether to match now.
      */
-    public synchronized void findAndPickPassengers(Taxi taxi) {
-        if (passengerQueue.isEmpty()) {
-            return;
+    public void requestDispatch(Taxi taxi) {
+        dispatchStrategy.onTaxiPoll(this, taxi);
+    }
+
+    /**
+     * Called periodically by the simulation loop with the whole fleet.
+     */
+    public void dispatchTick(List<Taxi> taxis) {
+        dispatchStrategy.onDispatchTick(this, taxis);
+    }
+
+    /**
+     * SCD Concept: Optimistic Concurrency & Race Condition Avoidance (RCA)
+     * Search without locking, then claim with a CAS. If another taxi won the
+     * race for the nearest passenger, search again.
+     * @return the passenger now assigned to the taxi, or null
+     */
+    public Passenger findAndPickPassengers(Taxi taxi) {
+        if (passengerGrid.size() == 0 || !taxi.canTakeMore()) {
+            return null;
         }
-        Passenger bestPassenger = null;
-        double minDistance = Double.MAX_VALUE;
-        Iterator<Passenger> iterator = passengerQueue.iterator();
-        while (iterator.hasNext()) {
-            Passenger p = iterator.next();
-            if (taxi.canPickUp(p)) {
-                double dist = Math.sqrt(Math.pow(taxi.getX() - p.getX(), 2) 
-                    + Math.pow(taxi.getY() - p.getY(), 2));
-                if (dist < minDistance) {
-                    minDistance = dist;
-                    bestPassenger = p;
+
+        long start = System.nanoTime();
+        List<Passenger> candidates = new ArrayList<>(CANDIDATES);
+        double[] costs = new double[CANDIDATES];
+        try {
+            while (true) {
+                passengerGrid.findNearby(taxi.getX(), taxi.getY(), ANY_GENDER, CANDIDATES, candidates);
+                if (candidates.isEmpty()) {
+                    return null;
+                }
+                scoreCandidates(taxi, candidates, costs);
+                Passenger bestPassenger = null;
+                double cost = Double.POSITIVE_INFINITY;
+                for (int k = 0; k < candidates.size(); k++) {
+                    if (costs[k] < cost) {
+                        cost = costs[k];
+                        bestPassenger = candidates.get(k);
+                    }
+                }
+                if (bestPassenger == null) {
+                    return null; // none of them fits the plan
+                }
+                if (assign(taxi, bestPassenger, cost)) {
+                    return bestPassenger;
+                }
+                if (!bestPassenger.isClaimed()) {
+                    return null; // The taxi itself refused (its state changed), not a lost race
+                }
+                if (exportsMetrics) {
+                    LOST_RACES.increment();
                 }
             }
+        } finally {
+            if (exportsMetrics) {
+                MATCH_DURATION.recordNanosSince(start);
+            }
+        }
+    }
+
+    /**
+     * Claims {@code passenger} and hands it to {@code taxi}. If the taxi can no longer
+     * take it, the claim is released and the passenger goes back to waiting.
+     */
+    public boolean assign(Taxi taxi, Passenger passenger, double distance) {
+        if (!passenger.tryClaim()) {
+            return false;
+        }
+        passengerGrid.remove(passenger);
+        if (!taxi.tryPickPassenger(passenger)) {
+            passenger.releaseClaim();
+            passengerGrid.add(passenger);
+            return false;
         }
-        
-        if (bestPassenger != null) {
-            passengerQueue.remove(bestPassenger);
-            Logger.log(String.format("Taxi T%d: Lock acquired, claimed %s (RCA Success). Distance: %.0f", 
-                taxi.getId(), bestPassenger.getId(), minDistance));
-            taxi.pickPassenger(bestPassenger);
+        long now = clock.now();
+        passenger.markClaimed(now);
+        if (exportsMetrics && passenger.getEnqueuedAt() >= 0) {
+            WAIT_TO_CLAIM.record(now - passenger.getEnqueuedAt());
         }
+        journal.passengerClaimed(passenger, taxi);
+        Logger.info("Taxi T%d: Claimed %s (RCA Success). Cost: %.0f",
+            taxi.getId(), passenger.getId(), distance);
+        return true;
     }
+
+    public void findNearbyPassengers(double x, double y, boolean[] allowed, int limit, List<Passenger> out) {
+        passengerGrid.findNearby(x, y, allowed, limit, out);
+    }
+
     public int getQueueSize() {
-        return passengerQueue.size();
+        return passengerGrid.size();
     }
-    
+
     public int getTotalMalesServed() {
-        return totalMalesServed;
+        return totalMalesServed.get();
     }
-    
+
     public int getTotalFemalesServed() {
-        return totalFemalesServed;
+        return totalFemalesServed.get();
+    }
+    public List<Passenger> getWaitingPassengers() {
+        List<Passenger> waiting = new ArrayList<>(passengerGrid.size());
+        passengerGrid.forEachWaiting(waiting::add);
+        return waiting;
     }
-    public synchronized List<Passenger> getWaitingPassengers() {
-        return new java.util.ArrayList<>(passengerQueue);
+
+    /** Copy-free view of the waiting passengers, for per-tick snapshots. */
+    public void forEachWaitingPassenger(Consumer<Passenger> action) {
+        passengerGrid.forEachWaiting(action);
     }
-}
\ No newline at end of file
+}
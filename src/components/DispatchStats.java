@@ -0,0 +1,53 @@
+package components;
+
+/**
+ * Pickup-distance and solve-time figures used to compare dispatch strategies.
+ */
+public class DispatchStats {
+    private long totalAssignments;
+    private double totalPickupDistance;
+    private long ticks;
+    private int lastTickAssignments;
+    private double lastTickPickupDistance;
+    private long lastTickSolveNanos;
+
+    public synchronized void recordAssignment(double pickupDistance) {
+        totalAssignments++;
+        totalPickupDistance += pickupDistance;
+    }
+
+    public synchronized void recordTick(int assignments, double pickupDistance, long solveNanos) {
+        ticks++;
+        lastTickAssignments = assignments;
+        lastTickPickupDistance = pickupDistance;
+        lastTickSolveNanos = solveNanos;
+    }
+
+    public synchronized long getTotalAssignments() {
+        return totalAssignments;
+    }
+
+    public synchronized double getTotalPickupDistance() {
+        return totalPickupDistance;
+    }
+
+    public synchronized double getAveragePickupDistance() {
+        return totalAssignments == 0 ? 0.0 : totalPickupDistance / totalAssignments;
+    }
+
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    public synchronized int getLastTickAssignments() {
+        return lastTickAssignments;
+    }
+
+    public synchronized double getLastTickPickupDistance() {
+        return lastTickPickupDistance;
+    }
+
+    public synchronized double getLastTickSolveMillis() {
+        return lastTickSolveNanos / 1_000_000.0;
+    }
+}
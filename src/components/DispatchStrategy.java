@@ -0,0 +1,32 @@
+package components;
+
+import java.util.List;
+import models.Taxi;
+
+/**
+ * SCD Concept: Strategy Pattern
+ * Decides which waiting passenger each taxi should go and collect.
+ */
+public interface DispatchStrategy {
+    /** Called from a taxi's own polling loop when it has room for another passenger. */
+    void onTaxiPoll(BookingSystem bookingSystem, Taxi taxi);
+
+    /** Called once per dispatch tick with the whole fleet. */
+    void onDispatchTick(BookingSystem bookingSystem, List<Taxi> taxis);
+
+    String getName();
+
+    DispatchStats getStats();
+
+    /** The strategy called {@code name}: greedy (the default), batch or pool. */
+    static DispatchStrategy forName(String name) {
+        switch (name.toLowerCase()) {
+            case "batch":
+                return new BatchDispatchStrategy();
+            case "pool":
+                return new PoolingDispatchStrategy();
+            default:
+                return new GreedyDispatchStrategy();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package components;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import models.Taxi;
+import routing.Route;
+import routing.Router;
+
+/**
+ * SCD Concept: Data-Oriented Design (Structure of Arrays)
+ * Holds every taxi's position and target in primitive arrays so the 20 Hz movement
+ * step is one tight loop over doubles, split across cores for large fleets.
+ *
+ * Slots live in fixed-size pages that never move once allocated, so taxi threads can
+ * write targets without locking while the fleet grows. Only the integrator writes
+ * positions. Plain array stores are published by a following volatile write
+ * ({@code positionsVersion}, {@code targetWrites}) and picked up by readers that read
+ * that field first, which gives the usual volatile happens-before edge.
+ *
+ * Without a {@link Router} a taxi slides to its target in a Manhattan step, x first. With
+ * one, setting a target plans a road route and the taxi drives its waypoints, each leg at
+ * that road's share of the top speed.
+ */
+public class FleetMotion {
+    public static final byte MOVING = 0;
+    public static final byte ARRIVED = 1; // reached its target during the last tick
+    public static final byte PARKED = 2;  // already at its target before the last tick
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS; // 4096 taxis per page
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int PARALLEL_PAGES = 4; // fork/join from 16k taxis up
+
+    /** Told about every taxi that is standing at its target after a tick. */
+    public interface StopListener {
+        void onStopped(Taxi taxi, boolean arrivedThisTick);
+    }
+
+    private volatile Page[] pages = new Page[0];
+    private volatile int size = 0;
+    private volatile long positionsVersion = 0;
+    private final AtomicLong targetWrites = new AtomicLong();
+    private volatile Router router; // null: straight Manhattan moves
+
+    private static final class Page {
+        final Taxi[] taxis = new Taxi[PAGE_SIZE];
+        final double[] x = new double[PAGE_SIZE];
+        final double[] y = new double[PAGE_SIZE];
+        final double[] targetX = new double[PAGE_SIZE];
+        final double[] targetY = new double[PAGE_SIZE];
+        final byte[] state = new byte[PAGE_SIZE];
+        final RouteCursor[] routes = new RouteCursor[PAGE_SIZE]; // null unless routed
+    }
+
+    /** A taxi's progress along its route; replaced, never reset, so a new route is one store. */
+    private static final class RouteCursor {
+        final Route route;
+        int next; // waypoint being driven to; only the integrator advances it
+
+        RouteCursor(Route route) {
+            this.route = route;
+        }
+    }
+
+    /** Routes every target set from now on over the road network; null for straight moves. */
+    public void setRouter(Router router) {
+        this.router = router;
+    }
+
+    public Router getRouter() {
+        return router;
+    }
+
+    public synchronized int register(Taxi taxi, double startX, double startY) {
+        int slot = size;
+        Page[] current = pages;
+        if ((slot >> PAGE_BITS) == current.length) {
+            current = Arrays.copyOf(current, current.length + 1);
+            current[current.length - 1] = new Page();
+            pages = current;
+        }
+        Page page = current[slot >> PAGE_BITS];
+        int i = slot & PAGE_MASK;
+        page.taxis[i] = taxi;
+        page.x[i] = startX;
+        page.y[i] = startY;
+        page.targetX[i] = startX;
+        page.targetY[i] = startY;
+        page.state[i] = PARKED;
+        page.routes[i] = null;
+        size = slot + 1; // volatile write publishes the slot
+        return slot;
+    }
+
+    /**
+     * Moves every taxi one Manhattan step of {@code speed} units towards its target.
+     * Afterwards {@link #getState(int)} tells which taxis arrived during this tick.
+     * @return the number of taxis
+     */
+    public synchronized int tick(double speed, StopListener listener) {
+        int n = tick(speed);
+        Page[] current = pages;
+        for (int p = 0; p << PAGE_BITS < n; p++) {
+            Page page = current[p];
+            byte[] st = page.state;
+            int count = Math.min(PAGE_SIZE, n - (p << PAGE_BITS));
+            for (int i = 0; i < count; i++) {
+                if (st[i] != MOVING) {
+                    listener.onStopped(page.taxis[i], st[i] == ARRIVED);
+                }
+            }
+        }
+        return n;
+    }
+
+    public synchronized int tick(double speed) {
+        int n = size;
+        Page[] current = pages;
+        targetWrites.get(); // acquire targets written by taxi threads
+        int pageCount = (n + PAGE_SIZE - 1) >> PAGE_BITS;
+        if (pageCount >= PARALLEL_PAGES) {
+            IntStream.range(0, pageCount).parallel()
+                    .forEach(p -> integrate(current[p], Math.min(PAGE_SIZE, n - (p << PAGE_BITS)), speed));
+        } else {
+            for (int p = 0; p < pageCount; p++) {
+                integrate(current[p], Math.min(PAGE_SIZE, n - (p << PAGE_BITS)), speed);
+            }
+        }
+        positionsVersion = positionsVersion + 1; // release positions to readers
+        return n;
+    }
+
+    private static void integrate(Page page, int count, double speed) {
+        double[] px = page.x, py = page.y, tx = page.targetX, ty = page.targetY;
+        byte[] st = page.state;
+        RouteCursor[] routes = page.routes;
+        for (int i = 0; i < count; i++) {
+            RouteCursor cursor = routes[i];
+            if (cursor != null) {
+                drive(page, i, cursor, speed);
+                continue;
+            }
+            double dx = tx[i] - px[i];
+            double dy = ty[i] - py[i];
+            if (Math.abs(dx) > speed) {
+                px[i] += Math.copySign(speed, dx);
+                st[i] = MOVING;
+            } else if (Math.abs(dy) > speed) {
+                px[i] = tx[i];
+                py[i] += Math.copySign(speed, dy);
+                st[i] = MOVING;
+            } else {
+                // A parked taxi given a target within one step gets there now, so it arrived too
+                st[i] = st[i] == MOVING || dx != 0 || dy != 0 ? ARRIVED : PARKED;
+                px[i] = tx[i];
+                py[i] = ty[i];
+            }
+        }
+    }
+
+    // Follows the route for one tick; a leg's leftover distance carries into the next leg
+    private static void drive(Page page, int i, RouteCursor cursor, double speed) {
+        Route route = cursor.route;
+        int last = route.size() - 1;
+        if (cursor.next > last) {
+            page.state[i] = PARKED;
+            return;
+        }
+        double x = page.x[i], y = page.y[i];
+        double budget = speed; // in top-speed units
+        while (true) {
+            int k = cursor.next;
+            double wx = route.getX(k), wy = route.getY(k);
+            float factor = route.getFactor(k);
+            double dx = wx - x, dy = wy - y;
+            double d = Math.sqrt(dx * dx + dy * dy);
+            double reach = budget * factor;
+            if (d > reach) {
+                x += dx / d * reach;
+                y += dy / d * reach;
+                page.state[i] = MOVING;
+                break;
+            }
+            x = wx;
+            y = wy;
+            budget -= d / factor;
+            cursor.next = k + 1;
+            if (k == last) {
+                page.state[i] = ARRIVED;
+                break;
+            }
+        }
+        page.x[i] = x;
+        page.y[i] = y;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Taxi getTaxi(int slot) {
+        return page(slot).taxis[slot & PAGE_MASK];
+    }
+
+    /** Bumped once per tick; readers compare it to detect a new frame. */
+    public long getPositionsVersion() {
+        return positionsVersion;
+    }
+
+    public byte getState(int slot) {
+        Page page = page(slot);
+        acquirePositions();
+        return page.state[slot & PAGE_MASK];
+    }
+
+    public double getX(int slot) {
+        Page page = page(slot);
+        acquirePositions();
+        return page.x[slot & PAGE_MASK];
+    }
+
+    public double getY(int slot) {
+        Page page = page(slot);
+        acquirePositions();
+        return page.y[slot & PAGE_MASK];
+    }
+
+    public double getTargetX(int slot) {
+        Page page = page(slot);
+        targetWrites.get();
+        return page.targetX[slot & PAGE_MASK];
+    }
+
+    public double getTargetY(int slot) {
+        Page page = page(slot);
+        targetWrites.get();
+        return page.targetY[slot & PAGE_MASK];
+    }
+
+    /**
+     * Takes a taxi out of the fleet by moving the last taxi into its slot, e.g. when the
+     * taxi is handed to another shard. Only for worlds stepped by a single thread: a taxi
+     * thread reading its old slot meanwhile would see another taxi.
+     */
+    public synchronized void remove(Taxi taxi) {
+        int slot = taxi.getSlot();
+        int last = size - 1;
+        Page to = page(slot);
+        Page from = page(last);
+        int i = slot & PAGE_MASK;
+        int j = last & PAGE_MASK;
+        Taxi moved = from.taxis[j];
+        to.taxis[i] = moved;
+        to.x[i] = from.x[j];
+        to.y[i] = from.y[j];
+        to.targetX[i] = from.targetX[j];
+        to.targetY[i] = from.targetY[j];
+        to.state[i] = from.state[j];
+        to.routes[i] = from.routes[j];
+        from.taxis[j] = null;
+        from.routes[j] = null;
+        moved.moveToSlot(slot);
+        size = last;
+        positionsVersion = positionsVersion + 1;
+    }
+
+    /** Teleports a taxi (used by the discrete-event engine, which has no integrator). */
+    public synchronized void setPosition(int slot, double newX, double newY) {
+        Page page = page(slot);
+        page.x[slot & PAGE_MASK] = newX;
+        page.y[slot & PAGE_MASK] = newY;
+        positionsVersion = positionsVersion + 1;
+    }
+
+    public void setTarget(int slot, double newX, double newY) {
+        Page page = page(slot);
+        Router roads = router;
+        if (roads != null) {
+            acquirePositions();
+            int i = slot & PAGE_MASK;
+            page.routes[i] = new RouteCursor(roads.route(page.x[i], page.y[i], newX, newY));
+        }
+        page.targetX[slot & PAGE_MASK] = newX;
+        page.targetY[slot & PAGE_MASK] = newY;
+        targetWrites.incrementAndGet(); // release
+    }
+
+    private void acquirePositions() {
+        long ignored = positionsVersion;
+    }
+
+    private Page page(int slot) {
+        return pages[slot >> PAGE_BITS];
+    }
+}
@@ -0,0 +1,35 @@
+package components;
+
+import java.util.List;
+import models.*;
+
+/**
+ * Original behaviour: every taxi grabs a passenger on its own schedule: of the nearest few,
+ * the one cheapest to fit into its stop plan.
+ */
+public class GreedyDispatchStrategy implements DispatchStrategy {
+    private final DispatchStats stats = new DispatchStats();
+
+    @Override
+    public void onTaxiPoll(BookingSystem bookingSystem, Taxi taxi) {
+        Passenger picked = bookingSystem.findAndPickPassengers(taxi);
+        if (picked != null) {
+            stats.recordAssignment(Math.hypot(taxi.getX() - picked.getX(), taxi.getY() - picked.getY()));
+        }
+    }
+
+    @Override
+    public void onDispatchTick(BookingSystem bookingSystem, List<Taxi> taxis) {
+        // Nothing to do; taxis dispatch themselves.
+    }
+
+    @Override
+    public String getName() {
+        return "greedy";
+    }
+
+    @Override
+    public DispatchStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,207 @@
+package components;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import models.*;
+
+/**
+ * SCD Concept: Data Structures (Spatial Index)
+ * Uniform grid over the 100-unit city blocks, bucketed by gender.
+ * Nearest lookups search outward ring by ring instead of scanning every waiting passenger.
+ * Buckets are concurrent sets, so adds, removes and searches never take a lock.
+ */
+public class PassengerGrid {
+    public static final int CELL_SIZE = 100;
+    public static final int COLUMNS = 12; // 1200 x 800 city
+    public static final int ROWS = 8;
+
+    private static final Gender[] GENDERS = Gender.values();
+
+    // cells[gender][row * COLUMNS + col]
+    private final List<List<Set<Passenger>>> cells = new ArrayList<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public PassengerGrid() {
+        for (int g = 0; g < GENDERS.length; g++) {
+            List<Set<Passenger>> bucket = new ArrayList<>(COLUMNS * ROWS);
+            for (int i = 0; i < COLUMNS * ROWS; i++) {
+                bucket.add(ConcurrentHashMap.newKeySet());
+            }
+            cells.add(bucket);
+        }
+    }
+
+    public void add(Passenger p) {
+        if (bucketFor(p).add(p)) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds a whole batch, or nothing if the grid would then hold more than {@code maxSize}.
+     * Room is reserved with one CAS before inserting, so concurrent batches cannot overshoot.
+     */
+    public boolean addAll(List<Passenger> batch, int maxSize) {
+        int n = batch.size();
+        while (true) {
+            int current = size.get();
+            if (current + n > maxSize) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + n)) {
+                break;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            Passenger p = batch.get(i);
+            if (!bucketFor(p).add(p)) {
+                size.decrementAndGet(); // already waiting
+            }
+        }
+        return true;
+    }
+
+    public boolean remove(Passenger p) {
+        if (bucketFor(p).remove(p)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /** Visits every passenger that is still unclaimed. */
+    public void forEachWaiting(Consumer<Passenger> action) {
+        for (List<Set<Passenger>> bucket : cells) {
+            for (Set<Passenger> cell : bucket) {
+                if (cell.isEmpty()) continue;
+                for (Passenger p : cell) {
+                    if (!p.isClaimed()) {
+                        action.accept(p);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the closest waiting passenger whose gender is in {@code allowed}.
+     * Distances are compared squared; returns null if nothing matches.
+     * Passengers already claimed by another taxi are skipped.
+     */
+    public Passenger findNearest(double x, double y, boolean[] allowed) {
+        int cx = column(x);
+        int cy = row(y);
+        int maxRing = Math.max(Math.max(cx, COLUMNS - 1 - cx), Math.max(cy, ROWS - 1 - cy));
+
+        Passenger best = null;
+        double bestSq = Double.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every cell in this ring is at least (ring - 1) blocks away.
+            double bound = Math.max(0, ring - 1) * (double) CELL_SIZE;
+            if (best != null && bound * bound >= bestSq) {
+                break;
+            }
+            for (int row = cy - ring; row <= cy + ring; row++) {
+                if (row < 0 || row >= ROWS) continue;
+                boolean edgeRow = row == cy - ring || row == cy + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int col = cx - ring; col <= cx + ring; col += Math.max(step, 1)) {
+                    if (col < 0 || col >= COLUMNS) continue;
+                    if (cellDistanceSq(x, y, col, row) >= bestSq) continue;
+                    for (int g = 0; g < GENDERS.length; g++) {
+                        if (!allowed[g]) continue;
+                        for (Passenger p : cells.get(g).get(row * COLUMNS + col)) {
+                            if (p.isClaimed()) continue;
+                            double dx = x - p.getX();
+                            double dy = y - p.getY();
+                            double distSq = dx * dx + dy * dy;
+                            if (distSq < bestSq) {
+                                bestSq = distSq;
+                                best = p;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Collects up to {@code limit} nearest eligible passengers into {@code out}, closest first.
+     * Used by batch dispatch as a sparse candidate prefilter.
+     */
+    public void findNearby(double x, double y, boolean[] allowed, int limit, List<Passenger> out) {
+        out.clear();
+        if (limit <= 0) return;
+        int cx = column(x);
+        int cy = row(y);
+        int maxRing = Math.max(Math.max(cx, COLUMNS - 1 - cx), Math.max(cy, ROWS - 1 - cy));
+
+        // Bounded list kept sorted by distance; limit is small (a handful of candidates).
+        double[] dists = new double[limit];
+        for (int ring = 0; ring <= maxRing; ring++) {
+            double bound = Math.max(0, ring - 1) * (double) CELL_SIZE;
+            if (out.size() == limit && bound * bound >= dists[limit - 1]) {
+                break;
+            }
+            for (int row = cy - ring; row <= cy + ring; row++) {
+                if (row < 0 || row >= ROWS) continue;
+                boolean edgeRow = row == cy - ring || row == cy + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int col = cx - ring; col <= cx + ring; col += Math.max(step, 1)) {
+                    if (col < 0 || col >= COLUMNS) continue;
+                    if (out.size() == limit && cellDistanceSq(x, y, col, row) >= dists[limit - 1]) continue;
+                    for (int g = 0; g < GENDERS.length; g++) {
+                        if (!allowed[g]) continue;
+                        for (Passenger p : cells.get(g).get(row * COLUMNS + col)) {
+                            if (p.isClaimed()) continue;
+                            double dx = x - p.getX();
+                            double dy = y - p.getY();
+                            double distSq = dx * dx + dy * dy;
+                            int n = out.size();
+                            if (n == limit && distSq >= dists[limit - 1]) continue;
+                            int pos = n == limit ? limit - 1 : n;
+                            if (n < limit) out.add(p);
+                            while (pos > 0 && dists[pos - 1] > distSq) {
+                                dists[pos] = dists[pos - 1];
+                                out.set(pos, out.get(pos - 1));
+                                pos--;
+                            }
+                            dists[pos] = distSq;
+                            out.set(pos, p);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<Passenger> bucketFor(Passenger p) {
+        return cells.get(p.getGender().ordinal()).get(row(p.getY()) * COLUMNS + column(p.getX()));
+    }
+
+    private static double cellDistanceSq(double x, double y, int col, int row) {
+        double minX = col * (double) CELL_SIZE;
+        double minY = row * (double) CELL_SIZE;
+        double dx = x < minX ? minX - x : Math.max(0, x - (minX + CELL_SIZE));
+        double dy = y < minY ? minY - y : Math.max(0, y - (minY + CELL_SIZE));
+        return dx * dx + dy * dy;
+    }
+
+    static int column(double x) {
+        return Math.min(COLUMNS - 1, Math.max(0, (int) (x / CELL_SIZE)));
+    }
+
+    static int row(double y) {
+        return Math.min(ROWS - 1, Math.max(0, (int) (y / CELL_SIZE)));
+    }
+}
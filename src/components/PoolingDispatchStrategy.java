@@ -0,0 +1,149 @@
+package components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import models.Passenger;
+import models.Taxi;
+
+/**
+ * SCD Concept: Request-Centric Dispatch (Ride Pooling)
+ * Every dispatch tick, each waiting passenger in request order goes to the taxi whose
+ * stop plan takes them in most cheaply (see {@link RidePlanner}), busy or not. Taxis are
+ * bucketed by position into a grid rebuilt each tick, and searched in rings of cells
+ * outward from the passenger. Straight-line distances bound what a taxi can offer: an
+ * idle one drives at least its distance to the passenger, and a busy one first drives
+ * to its next stop, which may already put the pickup past the wait limit. Taxis whose
+ * bound cannot beat the best offer so far are not planned against, and the search stops
+ * at the first ring where no taxi could. With thousands of taxis only the few cells
+ * around each passenger are planned against.
+ */
+public class PoolingDispatchStrategy implements DispatchStrategy {
+    private static final double CELL_SIZE = 200;
+
+    private final DispatchStats stats = new DispatchStats();
+
+    @Override
+    public void onTaxiPoll(BookingSystem bookingSystem, Taxi taxi) {
+        // Assignment happens on the dispatch tick.
+    }
+
+    @Override
+    public void onDispatchTick(BookingSystem bookingSystem, List<Taxi> taxis) {
+        long start = System.nanoTime();
+        int assigned = 0;
+        double tickDistance = 0.0;
+
+        List<Passenger> waiting = bookingSystem.getWaitingPassengers();
+        List<Taxi> open = new ArrayList<>();
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        if (!waiting.isEmpty()) {
+            for (Taxi taxi : taxis) {
+                if (taxi.canTakeMore()) {
+                    open.add(taxi);
+                    minX = Math.min(minX, taxi.getX());
+                    minY = Math.min(minY, taxi.getY());
+                    maxX = Math.max(maxX, taxi.getX());
+                    maxY = Math.max(maxY, taxi.getY());
+                }
+            }
+        }
+        if (open.isEmpty()) {
+            stats.recordTick(0, 0.0, System.nanoTime() - start);
+            return;
+        }
+
+        // Bucket the taxis: head[cell] is the first taxi in the cell, next[] chains the rest
+        int columns = (int) ((maxX - minX) / CELL_SIZE) + 1;
+        int rows = (int) ((maxY - minY) / CELL_SIZE) + 1;
+        int[] head = new int[columns * rows];
+        int[] next = new int[open.size()];
+        Arrays.fill(head, -1);
+        for (int t = open.size() - 1; t >= 0; t--) {
+            int cell = cell(open.get(t).getY(), minY, rows) * columns + cell(open.get(t).getX(), minX, columns);
+            next[t] = head[cell];
+            head[cell] = t;
+        }
+
+        waiting.sort(Comparator.comparingInt(Passenger::getNumber)); // first come, first served
+        for (Passenger p : waiting) {
+            long searchStart = System.nanoTime();
+            int pairs = 0;
+            Taxi best = null;
+            double bestCost = Double.POSITIVE_INFINITY;
+            double direct = bookingSystem.estimateTravelCost(p.getX(), p.getY(), p.getDestinationX(), p.getDestinationY());
+            int cx = cell(p.getX(), minX, columns);
+            int cy = cell(p.getY(), minY, rows);
+            int maxRing = Math.max(Math.max(cx, columns - 1 - cx), Math.max(cy, rows - 1 - cy));
+            for (int r = 0; r <= maxRing; r++) {
+                // Nearest any taxi in this ring can be, even with the passenger outside the grid
+                double bound = Math.max(0, r - 1) * CELL_SIZE;
+                if (idleBound(bound) >= bestCost && busyBound(bound, direct) >= bestCost) {
+                    break;
+                }
+                for (int dy = -r; dy <= r; dy++) {
+                    int y = cy + dy;
+                    if (y < 0 || y >= rows) continue;
+                    int step = (dy == -r || dy == r) ? 1 : 2 * r; // edge rows whole, others their two ends
+                    for (int dx = -r; dx <= r; dx += step) {
+                        int x = cx + dx;
+                        if (x < 0 || x >= columns) continue;
+                        for (int t = head[y * columns + x]; t >= 0; t = next[t]) {
+                            Taxi taxi = open.get(t);
+                            double distance = Math.hypot(taxi.getX() - p.getX(), taxi.getY() - p.getY());
+                            if (taxi.hasStops()) {
+                                // Via the next stop, which is the taxi's target
+                                distance = Math.hypot(taxi.getTargetX() - taxi.getX(), taxi.getTargetY() - taxi.getY())
+                                        + Math.hypot(p.getX() - taxi.getTargetX(), p.getY() - taxi.getTargetY());
+                                if (busyBound(distance, direct) >= bestCost) continue;
+                            } else if (idleBound(distance) >= bestCost) {
+                                continue;
+                            }
+                            pairs++;
+                            RidePlanner.Insertion insertion = taxi.quote(p);
+                            if (insertion != null && insertion.objective < bestCost) {
+                                bestCost = insertion.objective;
+                                best = taxi;
+                            }
+                        }
+                    }
+                }
+            }
+            bookingSystem.recordScoring(pairs, searchStart);
+
+            if (best != null && bookingSystem.assign(best, p, bestCost)) {
+                double distance = Math.hypot(best.getX() - p.getX(), best.getY() - p.getY());
+                assigned++;
+                tickDistance += distance;
+                stats.recordAssignment(distance);
+            }
+        }
+        stats.recordTick(assigned, tickDistance, System.nanoTime() - start);
+    }
+
+    // Least objective an idle taxi this far away can offer: it drives there, and the passenger waits
+    private static double idleBound(double distance) {
+        return (1 + RidePlanner.WAIT_WEIGHT) * distance;
+    }
+
+    // Same for a busy taxi that needs this long to get there: it may save the whole direct
+    // ride, but the passenger still waits; out of reach past the wait limit
+    private static double busyBound(double wait, double direct) {
+        return wait > RidePlanner.MAX_WAIT ? Double.POSITIVE_INFINITY : RidePlanner.WAIT_WEIGHT * wait - direct;
+    }
+
+    private static int cell(double coordinate, double min, int count) {
+        return Math.max(0, Math.min(count - 1, (int) ((coordinate - min) / CELL_SIZE)));
+    }
+
+    @Override
+    public String getName() {
+        return "pool";
+    }
+
+    @Override
+    public DispatchStats getStats() {
+        return stats;
+    }
+}
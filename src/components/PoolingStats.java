@@ -0,0 +1,82 @@
+package components;
+
+import util.Metrics;
+
+/**
+ * How well taxis share rides. Average occupancy is seat distance over vehicle distance on
+ * the legs between planned stops (driving to pickups included, patrolling not), so 1.0
+ * means one passenger on board on average. Detour is how much longer a passenger's ride was than
+ * driving them straight to their destination: 0.25 means 25% longer.
+ */
+public class PoolingStats {
+    private static final Metrics.DoubleCounter VEHICLE_DISTANCE = Metrics.doubleCounter("pool_vehicle_distance_total",
+            "Travel cost driven by taxis between planned stops, in map units");
+    private static final Metrics.DoubleCounter SEAT_DISTANCE = Metrics.doubleCounter("pool_seat_distance_total",
+            "Travel cost driven times passengers on board, in map units");
+    private static final Metrics.DoubleCounter DETOUR_SUM = Metrics.doubleCounter("pool_detour_ratio_sum",
+            "Sum over delivered passengers of ride cost / direct cost - 1");
+    private static final Metrics.Counter DETOURS = Metrics.counter("pool_detours_total",
+            "Delivered passengers whose ride detour was measured");
+
+    static {
+        Metrics.gauge("pool_average_occupancy", "Passengers on board on average while driving between stops, since start",
+                () -> ratio(SEAT_DISTANCE.get(), VEHICLE_DISTANCE.get()));
+        Metrics.gauge("pool_average_detour", "Average extra ride length of delivered passengers since start",
+                () -> ratio(DETOUR_SUM.get(), DETOURS.get()));
+    }
+
+    private volatile boolean exported = true;
+    private double vehicleDistance;
+    private double seatDistance;
+    private double detourSum;
+    private long detours;
+
+    /** A taxi drove {@code distance} with {@code riders} passengers on board. */
+    public void recordLeg(double distance, int riders) {
+        if (exported) {
+            VEHICLE_DISTANCE.add(distance);
+            SEAT_DISTANCE.add(distance * riders);
+        }
+        synchronized (this) {
+            vehicleDistance += distance;
+            seatDistance += distance * riders;
+        }
+    }
+
+    /** A passenger was dropped off after riding {@code ride}; {@code direct} is their straight ride. */
+    public void recordDelivery(double direct, double ride) {
+        if (!(direct > 0) || !(ride >= 0)) {
+            return; // picked up before a recovery, or going nowhere
+        }
+        double detour = Math.max(0, ride / direct - 1);
+        if (exported) {
+            DETOUR_SUM.add(detour);
+            DETOURS.increment();
+        }
+        synchronized (this) {
+            detourSum += detour;
+            detours++;
+        }
+    }
+
+    /** Whether this world's rides also count towards the process-wide pool_* series. */
+    void setExported(boolean exported) {
+        this.exported = exported;
+    }
+
+    public synchronized double getAverageOccupancy() {
+        return ratio(seatDistance, vehicleDistance);
+    }
+
+    public synchronized double getAverageDetour() {
+        return ratio(detourSum, detours);
+    }
+
+    public synchronized double getVehicleDistance() {
+        return vehicleDistance;
+    }
+
+    private static double ratio(double sum, double count) {
+        return count == 0 ? 0 : sum / count;
+    }
+}
@@ -0,0 +1,157 @@
+package components;
+
+import java.util.List;
+import models.Gender;
+import models.Passenger;
+import models.Stop;
+import models.Taxi;
+import util.SimulationConstants;
+
+/**
+ * SCD Concept: Insertion Heuristic (Ride Pooling)
+ * Decides where a new passenger fits into a taxi's stop plan. The pickup and the dropoff
+ * are tried at every pair of positions after the stop the taxi is driving to; a pair is
+ * feasible if every stop is still reached by its deadline and the seat rule holds on
+ * every leg. The cheapest feasible pair wins.
+ *
+ * Costs and deadlines are in travel cost (map units, see {@link BookingSystem#travelCost}),
+ * which is driving time at top speed: {@link SimulationConstants#UNITS_PER_SECOND} units
+ * per simulated second. Deadlines are odometer readings rather than clock times because
+ * the plan only knows the driving between stops, not the dwell at them. A passenger
+ * joining a taxi that is already serving others must be picked up within
+ * {@code -Dpool.maxWait} seconds of driving, and every passenger's ride may be at most
+ * {@code -Dpool.maxDetour} longer than driving them straight there, plus one block.
+ * Plans are compared by the extra driving a passenger adds beyond their own direct ride,
+ * plus their wait for pickup weighted by {@code -Dpool.waitWeight}; pooling wins when a
+ * taxi that passes nearby saves more driving than the passenger waits for it.
+ */
+public final class RidePlanner {
+    /** Longest wait for pickup from a taxi already serving others, in seconds of driving. */
+    public static final double MAX_WAIT_SECONDS = Double.parseDouble(System.getProperty("pool.maxWait", "10"));
+    /** {@link #MAX_WAIT_SECONDS} in travel cost, which is what plans are checked in. */
+    public static final double MAX_WAIT = MAX_WAIT_SECONDS * SimulationConstants.UNITS_PER_SECOND;
+    public static final double MAX_DETOUR = Double.parseDouble(System.getProperty("pool.maxDetour", "0.5"));
+    /** Travel cost one unit of a new passenger's wait for pickup is worth when choosing a plan. */
+    public static final double WAIT_WEIGHT = Double.parseDouble(System.getProperty("pool.waitWeight", "1"));
+    // Lets short rides share too; a 100-unit ride could otherwise only take 50 units of detour
+    private static final double DETOUR_ALLOWANCE = 100;
+    /** A plan holds at most this many stops: a pickup and a dropoff per seat. */
+    public static final int MAX_STOPS = 6;
+
+    /** Where a passenger goes in a plan, and at what price. */
+    public static final class Insertion {
+        /** The pickup goes before the plan's stop at this index, the dropoff before {@link #dropoffBefore}. */
+        public final int pickupBefore, dropoffBefore;
+        /** Odometer deadlines for the new pickup and dropoff stops. */
+        public final double pickupLatest, dropoffLatest;
+        /** Cost of driving the passenger straight to their destination. */
+        public final double direct;
+        /** Extra driving the passenger adds to the plan, less their direct ride, plus their weighted wait; lower is better. */
+        public final double objective;
+
+        Insertion(int pickupBefore, int dropoffBefore, double pickupLatest, double dropoffLatest, double direct,
+                double objective) {
+            this.pickupBefore = pickupBefore;
+            this.dropoffBefore = dropoffBefore;
+            this.pickupLatest = pickupLatest;
+            this.dropoffLatest = dropoffLatest;
+            this.direct = direct;
+            this.objective = objective;
+        }
+    }
+
+    private RidePlanner() {
+    }
+
+    /**
+     * Cheapest feasible insertion of {@code p} into {@code stops}, or null if there is none.
+     * The first stop is where the taxi is driving now, so nothing goes before it.
+     *
+     * @param gents      male passengers on board
+     * @param ladies     female passengers on board
+     * @param originX    where the leg to the first stop started (the taxi itself if there is none)
+     * @param odometer   odometer reading at the origin
+     * @param now        odometer reading now; more than {@code odometer} if the taxi is under way
+     */
+    public static Insertion bestInsertion(List<Stop> stops, int gents, int ladies, double originX, double originY,
+            double odometer, double now, Passenger p, BookingSystem costs) {
+        int n = stops.size();
+        if (n + 2 > MAX_STOPS) {
+            return null;
+        }
+        double pX = p.getX(), pY = p.getY();
+        double dX = p.getDestinationX(), dY = p.getDestinationY();
+        double direct = costs.estimateTravelCost(pX, pY, dX, dY);
+        boolean male = p.getGender() == Gender.MALE;
+
+        // Every leg the walks below can take: between consecutive stops, and into and out
+        // of the new pickup (P) and dropoff (D) at each position
+        double[] leg = new double[n];
+        double[] toP = new double[n + 1], fromP = new double[n];
+        double[] toD = new double[n + 1], fromD = new double[n];
+        double prevX = originX, prevY = originY;
+        for (int k = 0; k <= n; k++) {
+            toP[k] = costs.estimateTravelCost(prevX, prevY, pX, pY);
+            toD[k] = costs.estimateTravelCost(prevX, prevY, dX, dY);
+            if (k == n) {
+                break;
+            }
+            Stop s = stops.get(k);
+            leg[k] = costs.estimateTravelCost(prevX, prevY, s.getX(), s.getY());
+            fromP[k] = costs.estimateTravelCost(pX, pY, s.getX(), s.getY());
+            fromD[k] = costs.estimateTravelCost(dX, dY, s.getX(), s.getY());
+            prevX = s.getX();
+            prevY = s.getY();
+        }
+        double planCost = 0;
+        for (double l : leg) {
+            planCost += l;
+        }
+
+        Insertion best = null;
+        for (int i = n == 0 ? 0 : 1; i <= n; i++) {
+            for (int j = i; j <= n; j++) {
+                // Walk the plan with P before stop i and D before stop j
+                double t = odometer;
+                double pickupAt = 0, dropoffLatest = 0;
+                int g = gents, l = ladies;
+                boolean feasible = true;
+                for (int k = 0; k <= n && feasible; k++) {
+                    if (k == i) {
+                        t += toP[k];
+                        pickupAt = t;
+                        dropoffLatest = t + direct * (1 + MAX_DETOUR) + DETOUR_ALLOWANCE;
+                        if (male) g++; else l++;
+                        feasible = (n == 0 || t - now <= MAX_WAIT) && Taxi.fits(g, l);
+                    }
+                    if (feasible && k == j) {
+                        t += k == i ? direct : toD[k];
+                        if (male) g--; else l--;
+                        feasible = t <= dropoffLatest;
+                    }
+                    if (!feasible || k == n) {
+                        break;
+                    }
+                    Stop s = stops.get(k);
+                    t += k == j ? fromD[k] : k == i ? fromP[k] : leg[k];
+                    if (t > s.getLatest()) {
+                        feasible = false;
+                    } else if (s.isPickup()) {
+                        if (s.getPassenger().getGender() == Gender.MALE) g++; else l++;
+                        feasible = Taxi.fits(g, l);
+                    } else {
+                        if (s.getPassenger().getGender() == Gender.MALE) g--; else l--;
+                    }
+                }
+                if (!feasible) {
+                    continue;
+                }
+                double objective = (t - odometer) - planCost - direct + WAIT_WEIGHT * (pickupAt - now);
+                if (best == null || objective < best.objective) {
+                    best = new Insertion(i, j, Math.max(pickupAt, now + MAX_WAIT), dropoffLatest, direct, objective);
+                }
+            }
+        }
+        return best;
+    }
+}
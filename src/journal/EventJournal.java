@@ -0,0 +1,478 @@
+package journal;
+
+import components.BookingJournal;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+import models.Passenger;
+import models.Taxi;
+import util.Logger;
+import util.Metrics;
+
+/**
+ * SCD Concept: Write-Ahead Log (Group Commit)
+ * Append-only booking journal in memory-mapped segment files. Appending is a copy into
+ * the mapping under a short lock; a background thread forces the mapping to disk every
+ * -Djournal.syncMillis, so one fsync covers every event of that interval. The same thread
+ * writes a snapshot of the world every -Djournal.checkpointEvents events and deletes the
+ * segments before it, so recovery reads one snapshot plus only the tail after it.
+ *
+ * Record layout (little-endian): i32 length (type + payload), u8 type, payload,
+ * i32 CRC32C of type + payload. A length of 0 ends the log; -1 continues in the next
+ * segment. Recovery stops at the first torn or corrupt record.
+ */
+public class EventJournal implements BookingJournal, Closeable {
+    static final byte TAXI_ADDED = 1;
+    static final byte PASSENGER_REQUESTED = 2;
+    static final byte PASSENGER_CLAIMED = 3;
+    static final byte PASSENGER_BOARDED = 4;
+    static final byte PASSENGERS_DROPPED = 5;
+
+    private static final int HEADER_BYTES = 5;
+    private static final int CRC_BYTES = 4;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int SNAPSHOT_MAGIC = 0x32504E53; // "SNP2"
+
+    private static final Metrics.Counter EVENTS = Metrics.counter("journal_events_total",
+            "Booking events appended to the journal");
+    private static final Metrics.Histogram SYNC_DURATION = Metrics.histogram("journal_sync_seconds",
+            "Wall time of one group-commit force of the journal mapping", 1_000_000);
+    private static final Metrics.Counter CHECKPOINTS = Metrics.counter("journal_checkpoints_total",
+            "Snapshots written");
+    private static final Metrics.Counter SYNC_FAILURES = Metrics.counter("journal_sync_failures_total",
+            "Group-commit syncs or checkpoints that failed");
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long syncNanos;
+    private final long checkpointEvents;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final RecordBuffer scratch = new RecordBuffer(512); // guarded by lock
+    private final CRC32C crc = new CRC32C(); // guarded by lock
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private int offset;
+    private volatile long position;
+    private volatile long synced;
+    private volatile long eventsSinceCheckpoint;
+
+    private final WorldImage recovered;
+    private final long recoveredEvents;
+    private volatile Supplier<WorldImage> checkpointSource;
+    private final Thread syncThread;
+    private volatile boolean closed;
+
+    /** Opens the journal with explicit sizes; {@link #open} reads them from system properties. */
+    EventJournal(Path dir, int segmentBytes, long syncMillis, long checkpointEvents) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.syncNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, syncMillis));
+        this.checkpointEvents = checkpointEvents;
+        Files.createDirectories(dir);
+        long[] replayed = new long[1];
+        this.recovered = recover(replayed);
+        this.recoveredEvents = replayed[0];
+        this.syncThread = new Thread(this::syncLoop, "journal-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    /**
+     * Opens (or creates) the journal in {@code dir} and replays it. Sizes come from
+     * -Djournal.segmentBytes (64 MB), -Djournal.syncMillis (5) and -Djournal.checkpointEvents (100000).
+     */
+    public static EventJournal open(Path dir) throws IOException {
+        return new EventJournal(dir, Integer.getInteger("journal.segmentBytes", 64 << 20),
+                Long.getLong("journal.syncMillis", 5L), Long.getLong("journal.checkpointEvents", 100_000L));
+    }
+
+    /** The world as of the last snapshot plus the journal tail, read by {@link #open}. */
+    public WorldImage getRecovered() {
+        return recovered;
+    }
+
+    /** How many tail events were replayed on top of the snapshot. */
+    public long getRecoveredEvents() {
+        return recoveredEvents;
+    }
+
+    /** Where periodic snapshots come from; without one, the journal only grows. */
+    public void setCheckpointSource(Supplier<WorldImage> source) {
+        this.checkpointSource = source;
+    }
+
+    @Override
+    public void taxiAdded(Taxi taxi) {
+        lock.lock();
+        try {
+            scratch.clear();
+            scratch.putInt(taxi.getId()).putDouble(taxi.getX()).putDouble(taxi.getY())
+                    .putString(taxi.getDriverName()).putString(taxi.getDriverAvatarUrl());
+            commit(TAXI_ADDED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void passengerRequested(Passenger passenger) {
+        lock.lock();
+        try {
+            scratch.clear();
+            WorldImage.PassengerRecord.of(passenger).write(scratch);
+            commit(PASSENGER_REQUESTED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void passengerClaimed(Passenger passenger, Taxi taxi) {
+        lock.lock();
+        try {
+            scratch.clear();
+            // The full passenger, since a snapshot may have caught it between queue and taxi
+            WorldImage.PassengerRecord.of(passenger).write(scratch);
+            scratch.putInt(taxi.getId());
+            commit(PASSENGER_CLAIMED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void passengerBoarded(Passenger passenger, Taxi taxi) {
+        lock.lock();
+        try {
+            scratch.clear();
+            scratch.putInt(passenger.getNumber()).putInt(taxi.getId());
+            commit(PASSENGER_BOARDED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void passengersDropped(Taxi taxi, List<Passenger> passengers, double earnings,
+            int malesServed, int femalesServed) {
+        lock.lock();
+        try {
+            scratch.clear();
+            scratch.putInt(taxi.getId()).putDouble(earnings).putInt(malesServed).putInt(femalesServed)
+                    .putByte(passengers.size());
+            for (Passenger p : passengers) {
+                scratch.putInt(p.getNumber());
+            }
+            commit(PASSENGERS_DROPPED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Forces everything appended so far to disk. */
+    public void sync() {
+        MappedByteBuffer current;
+        long target;
+        lock.lock();
+        try {
+            current = segment;
+            target = position;
+        } finally {
+            lock.unlock();
+        }
+        if (target <= synced) {
+            return;
+        }
+        long start = System.nanoTime();
+        current.force(); // earlier segments were forced when they were rolled
+        SYNC_DURATION.recordNanosSince(start);
+        synced = target;
+    }
+
+    /**
+     * Writes a snapshot of the world and drops the journal segments it makes redundant.
+     * The journal position is read before the world is captured, so replaying from it
+     * re-applies at most some events the snapshot already contains.
+     */
+    public synchronized void checkpoint() throws IOException {
+        Supplier<WorldImage> source = checkpointSource;
+        if (source == null) {
+            return;
+        }
+        long at = position;
+        eventsSinceCheckpoint = 0;
+        WorldImage image = source.get();
+        RecordBuffer body = new RecordBuffer(64 * 1024);
+        image.write(body);
+        CRC32C check = new CRC32C();
+        check.update(body.array(), 0, body.length());
+
+        ByteBuffer header = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(SNAPSHOT_MAGIC).putLong(at).putInt(body.length()).putInt((int) check.getValue()).flip();
+        Path target = dir.resolve(snapshotName(at));
+        Path tmp = dir.resolve(snapshotName(at) + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(new ByteBuffer[] { header, ByteBuffer.wrap(body.array(), 0, body.length()) });
+            out.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        CHECKPOINTS.increment();
+
+        for (Path snapshot : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (!snapshot.equals(target)) {
+                Files.deleteIfExists(snapshot);
+            }
+        }
+        long currentStart;
+        lock.lock();
+        try {
+            currentStart = segmentStart;
+        } finally {
+            lock.unlock();
+        }
+        for (Path file : list("", SEGMENT_SUFFIX)) {
+            long start = segmentStartOf(file);
+            if (start < currentStart && start + Files.size(file) <= at) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(syncThread);
+        try {
+            syncThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            segment.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void commit(byte type) {
+        int payload = scratch.length();
+        int size = HEADER_BYTES + payload + CRC_BYTES;
+        if (size + 4 > segmentBytes) {
+            throw new IllegalArgumentException("Journal record of " + size + " bytes does not fit a segment");
+        }
+        if (offset + size + 4 > segmentBytes) { // keep room for the end-of-segment marker
+            roll();
+        }
+        crc.reset();
+        crc.update(type);
+        crc.update(scratch.array(), 0, payload);
+        segment.put(offset + HEADER_BYTES, scratch.array(), 0, payload);
+        segment.putInt(offset + HEADER_BYTES + payload, (int) crc.getValue());
+        segment.put(offset + 4, type);
+        segment.putInt(offset, payload + 1);
+        offset += size;
+        position = segmentStart + offset;
+        eventsSinceCheckpoint++;
+        EVENTS.increment();
+    }
+
+    private void roll() {
+        try {
+            segment.putInt(offset, END_OF_SEGMENT);
+            segment.force();
+            channel.close();
+            map(segmentStart + segmentBytes, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void map(long start, int at) throws IOException {
+        channel = FileChannel.open(dir.resolve(segmentName(start)), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segmentStart = start;
+        offset = at;
+        position = start + at;
+    }
+
+    private void syncLoop() {
+        String failing = null; // the last failure logged, so a stuck disk logs once, not every interval
+        long failures = 0;
+        while (!closed) {
+            LockSupport.parkNanos(syncNanos);
+            try {
+                sync();
+                if (eventsSinceCheckpoint >= checkpointEvents) {
+                    checkpoint();
+                }
+                if (failing != null) {
+                    Logger.info("Journal sync recovered after %d failed attempts.", failures);
+                    failing = null;
+                    failures = 0;
+                }
+            } catch (IOException | RuntimeException e) {
+                SYNC_FAILURES.increment();
+                failures++;
+                if (!e.toString().equals(failing)) {
+                    failing = e.toString();
+                    Logger.error("Journal sync failed, retrying every %d ms: %s",
+                            TimeUnit.NANOSECONDS.toMillis(syncNanos), failing);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the newest readable snapshot, replays the segments after its position, and
+     * leaves the journal mapped at the first byte after the last intact record.
+     */
+    private WorldImage recover(long[] replayed) throws IOException {
+        for (Path tmp : list("", ".tmp")) {
+            Files.deleteIfExists(tmp);
+        }
+        WorldImage image = null;
+        long from = -1;
+        List<Path> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        Collections.reverse(snapshots);
+        for (Path snapshot : snapshots) {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(snapshot)).order(ByteOrder.LITTLE_ENDIAN);
+            int magic = in.remaining() < 20 ? 0 : in.getInt();
+            if (magic != SNAPSHOT_MAGIC) {
+                continue;
+            }
+            long at = in.getLong();
+            int length = in.getInt();
+            int expected = in.getInt();
+            if (length != in.remaining()) {
+                continue;
+            }
+            CRC32C check = new CRC32C();
+            check.update(in.array(), in.position(), length);
+            if ((int) check.getValue() != expected) {
+                continue;
+            }
+            image = WorldImage.read(in);
+            from = at;
+            break;
+        }
+        List<Path> segments = list("", SEGMENT_SUFFIX);
+        if (image == null) {
+            image = new WorldImage(); // no snapshot yet: replay every segment
+            from = segments.isEmpty() ? 0 : segmentStartOf(segments.get(0));
+        }
+        byte[] record = new byte[256];
+        long endSegment = -1;
+        int endOffset = 0;
+        for (Path file : segments) {
+            long start = segmentStartOf(file);
+            if (endSegment >= 0 || start + Files.size(file) <= from) {
+                if (endSegment >= 0 && start > endSegment) {
+                    Files.delete(file); // beyond the last intact record
+                }
+                continue;
+            }
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+                data.order(ByteOrder.LITTLE_ENDIAN);
+                int at = (int) Math.max(0, from - start);
+                boolean next = false;
+                while (at + 4 <= data.limit()) {
+                    int length = data.getInt(at);
+                    if (length == END_OF_SEGMENT) {
+                        next = true;
+                        break;
+                    }
+                    if (length <= 0 || at + 4 + length + CRC_BYTES > data.limit()) {
+                        break;
+                    }
+                    if (record.length < length) {
+                        record = new byte[Math.max(length, record.length * 2)];
+                    }
+                    data.get(at + 4, record, 0, length);
+                    CRC32C check = new CRC32C();
+                    check.update(record, 0, length);
+                    if ((int) check.getValue() != data.getInt(at + 4 + length)) {
+                        break; // torn write
+                    }
+                    image.apply(record[0], ByteBuffer.wrap(record, 1, length - 1).slice().order(ByteOrder.LITTLE_ENDIAN));
+                    replayed[0]++;
+                    at += 4 + length + CRC_BYTES;
+                }
+                if (!next) {
+                    endSegment = start;
+                    endOffset = at;
+                }
+            }
+        }
+        if (endSegment < 0) {
+            // Empty directory, or every segment ended with a roll marker
+            endSegment = segments.isEmpty() ? from : segmentStartOf(segments.get(segments.size() - 1))
+                    + Files.size(segments.get(segments.size() - 1));
+            endOffset = 0;
+        }
+        map(endSegment, endOffset);
+        byte[] zeros = new byte[64 * 1024];
+        for (int i = endOffset; i < segmentBytes; i += zeros.length) { // clear anything after the intact tail
+            segment.put(i, zeros, 0, Math.min(zeros.length, segmentBytes - i));
+        }
+        segment.force();
+        synced = position;
+        return image;
+    }
+
+    private List<Path> list(String prefix, String suffix) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files); // names are fixed-width hex, so this is position order
+        return files;
+    }
+
+    private static String segmentName(long start) {
+        return String.format("%016x%s", start, SEGMENT_SUFFIX);
+    }
+
+    private static String snapshotName(long at) {
+        return String.format("%s%016x%s", SNAPSHOT_PREFIX, at, SNAPSHOT_SUFFIX);
+    }
+
+    private static long segmentStartOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()), 16);
+    }
+}
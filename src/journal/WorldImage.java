@@ -0,0 +1,275 @@
+package journal;
+
+import components.BookingSystem;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import models.Gender;
+import models.Passenger;
+import models.Taxi;
+
+/**
+ * SCD Concept: Event Sourcing (State Image)
+ * Plain-data copy of the booking world: taxis with their passengers and earnings, the
+ * waiting queue, and served counts. A snapshot is one of these, and recovery applies
+ * journal events to it. Every event is applied idempotently (absolute values, add-if-absent),
+ * because a snapshot is captured while the world keeps running and may already contain
+ * some of the events logged after its journal position.
+ */
+public class WorldImage {
+    static final class PassengerRecord {
+        int number;
+        Gender gender;
+        int x, y;
+        String id, name, avatarUrl, destination;
+
+        static PassengerRecord of(Passenger p) {
+            PassengerRecord r = new PassengerRecord();
+            r.number = p.getNumber();
+            r.gender = p.getGender();
+            r.x = p.getX();
+            r.y = p.getY();
+            r.id = p.getId();
+            r.name = p.getName();
+            r.avatarUrl = p.getAvatarUrl();
+            r.destination = p.getDestination();
+            return r;
+        }
+
+        void write(RecordBuffer out) {
+            out.putInt(number).putByte(gender.ordinal()).putInt(x).putInt(y)
+                    .putString(id).putString(name).putString(avatarUrl).putString(destination);
+        }
+
+        static PassengerRecord read(ByteBuffer in) {
+            PassengerRecord r = new PassengerRecord();
+            r.number = in.getInt();
+            r.gender = Gender.values()[in.get()];
+            r.x = in.getInt();
+            r.y = in.getInt();
+            r.id = RecordBuffer.getString(in);
+            r.name = RecordBuffer.getString(in);
+            r.avatarUrl = RecordBuffer.getString(in);
+            r.destination = RecordBuffer.getString(in);
+            return r;
+        }
+
+        Passenger toPassenger(BookingSystem system) {
+            return new Passenger(number, id, name, avatarUrl, gender, system, x, y, destination);
+        }
+    }
+
+    static final class TaxiRecord {
+        int id;
+        String driverName, avatarUrl;
+        double x, y;
+        double earnings;
+        final Map<Integer, PassengerRecord> onBoard = new LinkedHashMap<>(); // including pending
+        final Set<Integer> pending = new LinkedHashSet<>(); // claimed but not yet boarded, in pickup order
+    }
+
+    private final Map<Integer, PassengerRecord> waiting = new LinkedHashMap<>();
+    private final Map<Integer, TaxiRecord> taxis = new TreeMap<>();
+    private final Map<Integer, TaxiRecord> riding = new HashMap<>(); // passenger number -> taxi
+    private int malesServed;
+    private int femalesServed;
+
+    /**
+     * Copies the live world. Each taxi is read under its own lock; the result may be
+     * slightly fuzzy across taxis, which the journal tail replayed on top corrects.
+     */
+    public static WorldImage capture(BookingSystem system, List<Taxi> fleet) {
+        WorldImage image = new WorldImage();
+        for (Taxi taxi : fleet) {
+            TaxiRecord t = new TaxiRecord();
+            synchronized (taxi) {
+                t.id = taxi.getId();
+                t.driverName = taxi.getDriverName();
+                t.avatarUrl = taxi.getDriverAvatarUrl();
+                t.x = taxi.getX();
+                t.y = taxi.getY();
+                t.earnings = taxi.getEarnings();
+                for (Passenger p : taxi.getCurrentPassengers()) {
+                    t.onBoard.put(p.getNumber(), PassengerRecord.of(p));
+                }
+                for (Passenger p : taxi.getPendingPickups()) {
+                    t.onBoard.put(p.getNumber(), PassengerRecord.of(p));
+                    t.pending.add(p.getNumber());
+                }
+            }
+            image.putTaxi(t);
+        }
+        system.forEachWaitingPassenger(p -> {
+            if (!image.riding.containsKey(p.getNumber())) {
+                image.waiting.put(p.getNumber(), PassengerRecord.of(p));
+            }
+        });
+        // Read last, so every drop counted in a taxi copied above is already included
+        image.malesServed = system.getTotalMalesServed();
+        image.femalesServed = system.getTotalFemalesServed();
+        return image;
+    }
+
+    /**
+     * Rebuilds the world into an empty booking system and fleet list. Taxi threads are
+     * not started; passengers go straight back into the queue without their threads.
+     */
+    public void restoreInto(BookingSystem system, List<Taxi> fleet) {
+        for (TaxiRecord t : taxis.values()) {
+            Taxi taxi = new Taxi(t.id, system, t.driverName, t.avatarUrl, t.x, t.y);
+            List<Passenger> onBoard = new ArrayList<>(t.onBoard.size());
+            List<Passenger> toPickUp = new ArrayList<>(t.pending.size());
+            for (PassengerRecord r : t.onBoard.values()) {
+                Passenger p = r.toPassenger(system);
+                p.tryClaim();
+                (t.pending.contains(r.number) ? toPickUp : onBoard).add(p);
+            }
+            taxi.restore(t.earnings, onBoard, toPickUp);
+            fleet.add(taxi);
+        }
+        for (PassengerRecord r : waiting.values()) {
+            system.restoreWaitingPassenger(r.toPassenger(system));
+        }
+        system.restoreServed(malesServed, femalesServed);
+    }
+
+    public int getTaxiCount() {
+        return taxis.size();
+    }
+
+    public int getWaitingCount() {
+        return waiting.size();
+    }
+
+    public int getServedCount() {
+        return malesServed + femalesServed;
+    }
+
+    void apply(byte type, ByteBuffer in) {
+        switch (type) {
+            case EventJournal.TAXI_ADDED: {
+                TaxiRecord t = new TaxiRecord();
+                t.id = in.getInt();
+                t.x = in.getDouble();
+                t.y = in.getDouble();
+                t.driverName = RecordBuffer.getString(in);
+                t.avatarUrl = RecordBuffer.getString(in);
+                taxis.putIfAbsent(t.id, t);
+                break;
+            }
+            case EventJournal.PASSENGER_REQUESTED: {
+                PassengerRecord r = PassengerRecord.read(in);
+                if (!riding.containsKey(r.number)) {
+                    waiting.putIfAbsent(r.number, r);
+                }
+                break;
+            }
+            case EventJournal.PASSENGER_CLAIMED: {
+                PassengerRecord r = PassengerRecord.read(in);
+                TaxiRecord t = taxis.get(in.getInt());
+                waiting.remove(r.number);
+                if (t != null && !riding.containsKey(r.number)) {
+                    t.onBoard.put(r.number, r);
+                    riding.put(r.number, t);
+                    t.pending.add(r.number);
+                }
+                break;
+            }
+            case EventJournal.PASSENGER_BOARDED: {
+                int number = in.getInt();
+                TaxiRecord t = taxis.get(in.getInt());
+                if (t != null) {
+                    t.pending.remove(number);
+                }
+                break;
+            }
+            case EventJournal.PASSENGERS_DROPPED: {
+                TaxiRecord t = taxis.get(in.getInt());
+                double earnings = in.getDouble();
+                malesServed = Math.max(malesServed, in.getInt());
+                femalesServed = Math.max(femalesServed, in.getInt());
+                int count = in.get() & 0xFF;
+                for (int i = 0; i < count; i++) {
+                    int number = in.getInt();
+                    TaxiRecord holder = riding.remove(number);
+                    if (holder != null) {
+                        holder.onBoard.remove(number);
+                        holder.pending.remove(number);
+                    }
+                    waiting.remove(number);
+                }
+                if (t != null) {
+                    t.earnings = earnings;
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown journal record type " + type);
+        }
+    }
+
+    void write(RecordBuffer out) {
+        out.putInt(malesServed).putInt(femalesServed);
+        out.putInt(taxis.size());
+        for (TaxiRecord t : taxis.values()) {
+            out.putInt(t.id).putDouble(t.x).putDouble(t.y).putDouble(t.earnings).putInt(t.pending.size());
+            for (int number : t.pending) {
+                out.putInt(number);
+            }
+            out.putString(t.driverName).putString(t.avatarUrl);
+            out.putInt(t.onBoard.size());
+            for (PassengerRecord r : t.onBoard.values()) {
+                r.write(out);
+            }
+        }
+        out.putInt(waiting.size());
+        for (PassengerRecord r : waiting.values()) {
+            r.write(out);
+        }
+    }
+
+    static WorldImage read(ByteBuffer in) {
+        WorldImage image = new WorldImage();
+        image.malesServed = in.getInt();
+        image.femalesServed = in.getInt();
+        int taxiCount = in.getInt();
+        for (int i = 0; i < taxiCount; i++) {
+            TaxiRecord t = new TaxiRecord();
+            t.id = in.getInt();
+            t.x = in.getDouble();
+            t.y = in.getDouble();
+            t.earnings = in.getDouble();
+            int pending = in.getInt();
+            for (int j = 0; j < pending; j++) {
+                t.pending.add(in.getInt());
+            }
+            t.driverName = RecordBuffer.getString(in);
+            t.avatarUrl = RecordBuffer.getString(in);
+            int onBoard = in.getInt();
+            for (int j = 0; j < onBoard; j++) {
+                PassengerRecord r = PassengerRecord.read(in);
+                t.onBoard.put(r.number, r);
+            }
+            image.putTaxi(t);
+        }
+        int waitingCount = in.getInt();
+        for (int i = 0; i < waitingCount; i++) {
+            PassengerRecord r = PassengerRecord.read(in);
+            image.waiting.put(r.number, r);
+        }
+        return image;
+    }
+
+    private void putTaxi(TaxiRecord t) {
+        taxis.put(t.id, t);
+        for (Integer number : t.onBoard.keySet()) {
+            riding.put(number, t);
+        }
+    }
+}
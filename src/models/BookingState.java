@@ -0,0 +1,6 @@
+package models;
+
+public enum BookingState {
+    WAITING,
+    CLAIMED
+}
@@ -1,87 +1,161 @@
 package models;
 
 import components.BookingSystem;
-import java.util.UUID;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import util.Logger;
 
 /**
  * SCD Concept: Passenger Thread (Runnable)
  */
 public class Passenger implements Runnable {
+    private static final String[] DESTINATIONS = { "Downtown", "Airport", "Suburb A", "Shopping Mall" };
+    // Where each named destination is on the map, inside the area taxis patrol; other
+    // names get an intersection picked by their hash
+    private static final Map<String, int[]> LANDMARKS = Map.of(
+            "Downtown", new int[] { 550, 350 },
+            "Airport", new int[] { 850, 450 },
+            "Suburb A", new int[] { 250, 450 },
+            "Shopping Mall", new int[] { 750, 150 });
+
     /**
      * SCD Concept: Immutability - All core identity fields are final.
      */
     private final String id;
+    private final int number; // monotonic per world; also the compact id for binary clients
     private final Gender gender;
     private final String destination;
     private final BookingSystem bookingSystem;
     private final int x, y;
+    private final int destinationX, destinationY;
     private final String name;
     private final String avatarUrl;
 
-    // Monitor object for ITC (Inter-Thread Communication)
-    private final Object monitor = new Object();
+    // Lock + Condition for ITC (Inter-Thread Communication); unlike monitor.wait()
+    // this lets a waiting virtual thread unmount from its carrier.
+    private final ReentrantLock monitor = new ReentrantLock();
+    private final Condition pickedUp = monitor.newCondition();
     private volatile boolean isPickedUp = false;
 
+    // SCD Concept: Atomic Variables - a passenger is claimed by exactly one taxi.
+    private final AtomicReference<BookingState> bookingState = new AtomicReference<>(BookingState.WAITING);
+    // Simulated times for the wait-time metrics; -1 until the step happens.
+    private volatile long enqueuedAt = -1;
+    private volatile long claimedAt = -1;
+
     public Passenger(Gender g, BookingSystem bookingSystem) {
-        this.id = "P-" + UUID.randomUUID().toString().substring(0, 3);
+        this(g, bookingSystem, bookingSystem.newRandom(), true, 0, 0, null);
+    }
+
+    public Passenger(Gender g, BookingSystem bookingSystem, int x, int y) {
+        this(g, bookingSystem, x, y, null);
+    }
+
+    /**
+     * @param destination where the passenger wants to go, or null for a random destination
+     */
+    public Passenger(Gender g, BookingSystem bookingSystem, int x, int y, String destination) {
+        this(g, bookingSystem, bookingSystem.newRandom(), false, x, y, destination);
+    }
+
+    private Passenger(Gender g, BookingSystem bookingSystem, SplittableRandom random, boolean randomPosition,
+            int x, int y, String destination) {
+        this.number = bookingSystem.nextPassengerNumber();
+        this.id = "P-" + number;
         this.gender = g;
-        this.name = getRandomName(g);
-        this.avatarUrl = getRandomAvatar(g);
-        this.destination = getDestinations()[(int) (Math.random() * getDestinations().length)];
+        this.name = getRandomName(g, random);
+        this.avatarUrl = getRandomAvatar(g, random);
+        this.destination = destination != null
+                ? destination
+                : DESTINATIONS[random.nextInt(DESTINATIONS.length)];
         this.bookingSystem = bookingSystem;
-        this.x = 250 + (int) (Math.random() * 6) * 100;
-        this.y = 150 + (int) (Math.random() * 4) * 100;
+        this.x = randomPosition ? 250 + random.nextInt(6) * 100 : x;
+        this.y = randomPosition ? 150 + random.nextInt(4) * 100 : y;
+        int[] dropOff = locate(this.destination);
+        this.destinationX = dropOff[0];
+        this.destinationY = dropOff[1];
     }
 
-    public Passenger(Gender g, BookingSystem bookingSystem, int x, int y) {
-        this.id = "P-" + UUID.randomUUID().toString().substring(0, 3);
+    /**
+     * Recreates a passenger with a known identity, e.g. when recovering from a journal.
+     * Later passengers are numbered after it.
+     */
+    public Passenger(int number, String id, String name, String avatarUrl, Gender g, BookingSystem bookingSystem,
+            int x, int y, String destination) {
+        bookingSystem.reservePassengerNumber(number);
+        this.id = id;
+        this.number = number;
         this.gender = g;
-        this.name = getRandomName(g);
-        this.avatarUrl = getRandomAvatar(g);
-        this.destination = getDestinations()[(int) (Math.random() * getDestinations().length)];
+        this.name = name;
+        this.avatarUrl = avatarUrl;
+        this.destination = destination;
         this.bookingSystem = bookingSystem;
         this.x = x;
         this.y = y;
+        int[] dropOff = locate(destination);
+        this.destinationX = dropOff[0];
+        this.destinationY = dropOff[1];
     }
 
-    private String getRandomName(Gender g) {
+    private static int[] locate(String destination) {
+        if (destination == null) {
+            return LANDMARKS.get("Downtown");
+        }
+        int[] landmark = LANDMARKS.get(destination);
+        if (landmark != null) {
+            return landmark;
+        }
+        int cell = Math.floorMod(destination.hashCode(), 12 * 8); // the 1200 x 800 city's blocks
+        return new int[] { 50 + cell % 12 * 100, 50 + cell / 12 * 100 };
+    }
+
+    private static String getRandomName(Gender g, SplittableRandom random) {
         String[] maleNames = { "Ali", "Ahmed", "Bilal", "Usman", "Hamza", "Hassan", "Umer", "Zain", "Saad", "Fahad" };
         String[] femaleNames = { "Ayesha", "Fatima", "Zainab", "Maryam", "Sana", "Hina", "Sidra", "Amna", "Mahnoor",
                 "Zara" };
         if (g == Gender.MALE)
-            return maleNames[(int) (Math.random() * maleNames.length)];
-        return femaleNames[(int) (Math.random() * femaleNames.length)];
+            return maleNames[random.nextInt(maleNames.length)];
+        return femaleNames[random.nextInt(femaleNames.length)];
     }
 
-    private String getRandomAvatar(Gender g) {
-        int id = (int) (Math.random() * 99) + 1;
+    private static String getRandomAvatar(Gender g, SplittableRandom random) {
+        int id = random.nextInt(99) + 1;
         if (g == Gender.MALE)
             return "https://randomuser.me/api/portraits/men/" + id + ".jpg";
         return "https://randomuser.me/api/portraits/women/" + id + ".jpg";
     }
 
-    private String[] getDestinations() {
-        return new String[] { "Downtown", "Airport", "Suburb A", "Shopping Mall" };
-    }
-
     @Override
     public void run() {
-        Logger.log(String.format("%s (%s) sent a booking request.", id, gender));
+        Logger.info("%s (%s) sent a booking request.", id, gender);
         bookingSystem.addPassengerToQueue(this);
-        synchronized (monitor) {
+        awaitPickup();
+    }
+
+    /**
+     * The thread's part after joining the queue: parks until a taxi picks this passenger
+     * up. Run on its own for passengers that were queued as part of a batch.
+     */
+    public void awaitPickup() {
+        monitor.lock();
+        try {
             while (!isPickedUp) {
                 try {
-                    Logger.log(String.format("%s (%s) **WAITING** for pickup).", id, gender));
-                    monitor.wait();
+                    Logger.info("%s (%s) **WAITING** for pickup).", id, gender);
+                    pickedUp.await();
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     return;
                 }
             }
+        } finally {
+            monitor.unlock();
         }
 
-        Logger.log(String.format("%s (%s) **PICKED UP**! Ride Started.", id, gender));
+        Logger.info("%s (%s) **PICKED UP**! Ride Started.", id, gender);
     }
 
     /**
@@ -89,16 +163,70 @@ public class Passenger implements Runnable {
      * SCD Concept: ITC - Notifying the waiting thread.
      */
     public void signalPickedUp() {
-        synchronized (monitor) {
+        monitor.lock();
+        try {
             this.isPickedUp = true;
-            monitor.notifyAll();
+            pickedUp.signalAll();
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    /**
+     * SCD Concept: Compare-And-Swap (Race Condition Avoidance)
+     * Moves WAITING -> CLAIMED; only one caller can ever win.
+     */
+    public boolean tryClaim() {
+        return bookingState.compareAndSet(BookingState.WAITING, BookingState.CLAIMED);
+    }
+
+    /**
+     * Undoes a claim whose taxi turned out to be unable to take the passenger.
+     */
+    public void releaseClaim() {
+        bookingState.compareAndSet(BookingState.CLAIMED, BookingState.WAITING);
+    }
+
+    public boolean isClaimed() {
+        return bookingState.get() != BookingState.WAITING;
+    }
+
+    /** Remembers when the passenger first joined the queue; re-queueing keeps the original time. */
+    public void markEnqueued(long now) {
+        if (enqueuedAt < 0) {
+            enqueuedAt = now;
         }
     }
 
+    public void markClaimed(long now) {
+        claimedAt = now;
+    }
+
+    public long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    public long getClaimedAt() {
+        return claimedAt;
+    }
+
     public String getId() {
         return id;
     }
 
+    /**
+     * Derived from the passenger number rather than the object address, so hash-ordered
+     * collections (the passenger grid's cells) iterate the same way in every run.
+     */
+    @Override
+    public int hashCode() {
+        return number;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
     public Gender getGender() {
         return gender;
     }
@@ -122,4 +250,13 @@ public class Passenger implements Runnable {
     public int getY() {
         return y;
     }
+
+    /** Where the taxi drops this passenger off, derived from the destination name. */
+    public int getDestinationX() {
+        return destinationX;
+    }
+
+    public int getDestinationY() {
+        return destinationY;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package models;
+
+/**
+ * SCD Concept: Route Plan Entry
+ * One stop in a taxi's plan: picking a passenger up, or dropping one off at their
+ * destination. Deadlines are odometer readings (travel cost driven since the taxi
+ * started), i.e. limits on driving time; standing at stops does not count against them.
+ */
+public final class Stop {
+    private final Passenger passenger;
+    private final boolean pickup;
+    private final double x, y;
+    private final double latest; // odometer reading the stop must be reached by
+    private final double direct; // dropoffs: cost of driving the passenger straight there
+    double boardedAt = Double.NaN; // dropoffs: odometer when the passenger got in
+
+    Stop(Passenger passenger, boolean pickup, double latest, double direct) {
+        this.passenger = passenger;
+        this.pickup = pickup;
+        this.x = pickup ? passenger.getX() : passenger.getDestinationX();
+        this.y = pickup ? passenger.getY() : passenger.getDestinationY();
+        this.latest = latest;
+        this.direct = direct;
+    }
+
+    public Passenger getPassenger() {
+        return passenger;
+    }
+
+    public boolean isPickup() {
+        return pickup;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getLatest() {
+        return latest;
+    }
+
+    public double getDirect() {
+        return direct;
+    }
+}
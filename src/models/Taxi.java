@@ -2,93 +2,127 @@ package models;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import components.BookingSystem;
+import components.FleetMotion;
+import components.RidePlanner;
 import util.*;
 
 /**
  * SCD Concept: Taxi Thread (Runnable)
+ * A taxi works through a plan of stops, each picking a passenger up or dropping one
+ * off. New passengers are inserted into the plan by {@link RidePlanner}, so a taxi
+ * can pick up more riders on the way while others are on board.
  */
 public class Taxi implements Runnable {
     /**
      * SCD Concept: Immutability - All core identity fields are final.
      */
     private final int id;
-    private final int capacity = 3;
+    private static final int CAPACITY = 3;
     private final BookingSystem bookingSystem;
-    private final List<Passenger> currentPassengers = new ArrayList<>();
-    private static final int MAX_WAIT_CYCLES = 2;
+    private final SimulationClock clock;
+    private final List<Passenger> currentPassengers = new ArrayList<>(); // on board
+    private final List<Stop> stops = new ArrayList<>(); // guarded by this
+    private static final Metrics.DoubleCounter REVENUE = Metrics.doubleCounter("taxi_revenue_pkr_total",
+            "Fares collected by every taxi, in PKR");
+    private static final Metrics.Counter RIDES = Metrics.counter("taxi_rides_total", "Completed rides");
+    private static final Metrics.Counter PASSENGERS_DELIVERED = Metrics.counter("passengers_delivered_total",
+            "Passengers dropped off at their destination");
+    private static final Metrics.Counter ARRIVAL_WAKEUPS = Metrics.counter("taxi_arrival_wakeups_total",
+            "Times a taxi thread waiting to reach its next stop woke up");
+    public static final long POLL_MILLIS = 1000;
+    public static final long DROP_OFF_MILLIS = 5000;
+    private static final long MESSAGE_TTL_MILLIS = 3000;
     private final String driverName;
     private final String driverAvatarUrl;
+    private final SplittableRandom random; // this taxi's own stream, used only by its own thread
 
     private double earnings = 0.0;
     private volatile String status = "AVAILABLE";
-    private int waitCycles = 0;
+    // Travel cost driven between stops; plan deadlines are odometer readings. The leg to
+    // the first stop started at (legStartX, legStartY) with the odometer where it is now.
+    private double odometer;
+    private double legStartX, legStartY;
     private String lastMessage = "";
+    private long lastMessageExpiresAt = Long.MAX_VALUE;
 
-    // Movement state
-    private double x, y;
-    private double targetX, targetY;
-    private Passenger targetPassenger;
+    // Movement state lives in the world's structure-of-arrays fleet, at this taxi's slot.
+    private final FleetMotion fleet;
+    private int slot; // changes only when FleetMotion.remove moves this taxi down
+
+    // Where a stepped taxi is in its loop; see step(). Unused when the taxi runs on a thread.
+    private enum Phase { POLL, DRIVING, DROPPING_OFF }
+    private Phase phase = Phase.POLL;
+    private long phaseUntil = -1; // next poll, or end of the drop-off
+    // SCD Concept: ITC - the integrator signals arrival instead of the taxi polling for it.
+    private final ReentrantLock motionLock = new ReentrantLock();
+    private final Condition arrived = motionLock.newCondition();
 
     public Taxi(int id, BookingSystem bookingSystem) {
+        this(id, bookingSystem, bookingSystem.newRandom());
+    }
+
+    private Taxi(int id, BookingSystem bookingSystem, SplittableRandom random) {
+        // Random initial position (Restricted Area): grid x 2 to 8, grid y 1 to 4
+        this(id, bookingSystem, random, getRandomDriverName(random),
+                "https://randomuser.me/api/portraits/men/" + (random.nextInt(90) + 10) + ".jpg",
+                50 + (2 + random.nextInt(7)) * 100, 50 + (1 + random.nextInt(4)) * 100);
+    }
+
+    /**
+     * Recreates a taxi with a known identity and position, e.g. when recovering from a journal.
+     */
+    public Taxi(int id, BookingSystem bookingSystem, String driverName, String driverAvatarUrl, double x, double y) {
+        this(id, bookingSystem, bookingSystem.newRandom(), driverName, driverAvatarUrl, x, y);
+    }
+
+    private Taxi(int id, BookingSystem bookingSystem, SplittableRandom random, String driverName,
+            String driverAvatarUrl, double x, double y) {
         this.id = id;
+        this.random = random;
         this.bookingSystem = bookingSystem;
-        this.driverName = getRandomDriverName();
-        this.driverAvatarUrl = "https://randomuser.me/api/portraits/men/" + ((int) (Math.random() * 90) + 10) + ".jpg";
-
-        // Random initial position (Restricted Area)
-        int gridX = 2 + (int) (Math.random() * 7); // 2 to 8
-        int gridY = 1 + (int) (Math.random() * 4); // 1 to 4
-        this.x = 50 + gridX * 100;
-        this.y = 50 + gridY * 100;
-        this.targetX = this.x;
-        this.targetY = this.y;
+        this.clock = bookingSystem.getClock();
+        this.driverName = driverName;
+        this.driverAvatarUrl = driverAvatarUrl;
+        this.fleet = bookingSystem.getFleet();
+        this.slot = fleet.register(this, x, y);
     }
 
-    private String getRandomDriverName() {
+    private static String getRandomDriverName(SplittableRandom random) {
         String[] names = { "Muhammad", "Imran", "Rashid", "Naveed", "Tariq", "Javed", "Kamran", "Adnan", "Sohail",
                 "Rizwan" };
-        return names[(int) (Math.random() * names.length)];
+        return names[random.nextInt(names.length)];
     }
 
     @Override
     public void run() {
-        Logger.log(String.format("Taxi T%d: Started. Searching for Passengers...", id));
+        Logger.info("Taxi T%d: Started. Searching for Passengers...", id);
         while (!Thread.currentThread().isInterrupted()) {
             try {
-                // Polling interval (Checking the queue every 2 seconds)
-                int pollInterval = 1; // Faster polling for responsiveness
-                TimeUnit.SECONDS.sleep(pollInterval);
+                // Polling interval (Checking the queue every second of simulated time)
+                clock.sleep(POLL_MILLIS);
+
+                // Look for more passengers while there is room in the plan (batch
+                // dispatch may also insert some between polls)
+                if (canTakeMore()) {
+                    bookingSystem.requestDispatch(this);
+                }
 
-                if (isReadyToDepart()) {
-                    startRide();
+                // Only this thread removes stops, so the next one stays put while we drive
+                Stop next = getNextStop();
+                if (next == null) {
+                    patrol();
                 } else {
-                    // Try to find a passenger
-                    bookingSystem.findAndPickPassengers(this);
-
-                    // If we found one (assigned by bookingSystem calling pickPassenger)
-                    if (targetPassenger != null) {
-                        waitForArrival();
-                        // Arrived!
-                        targetPassenger.signalPickedUp();
-                        Logger.log(String.format("Taxi T%d: Physically reached %s. Boarded.", id,
-                                targetPassenger.getId()));
-                        targetPassenger = null;
-
-                        // If not full, become available to patrol/find more
-                        if (!isReadyToDepart()) {
-                            status = "AVAILABLE";
-                        }
-                    } else if (status.equals("AVAILABLE") && Math.abs(x - targetX) < 10 && Math.abs(y - targetY) < 10) {
-                        // Patrol logic: If idle and not moving, pick a new random spot in restricted
-                        // area
-                        if (Math.random() < 0.05) { // Occasional move
-                            int pX = 2 + (int) (Math.random() * 7);
-                            int pY = 1 + (int) (Math.random() * 4);
-                            this.targetX = 50 + pX * 100;
-                            this.targetY = 50 + pY * 100;
-                        }
+                    waitForArrival();
+                    if (next.isPickup()) {
+                        completePickup();
+                    } else {
+                        arriveAtDestination();
+                        clock.sleep(DROP_OFF_MILLIS);
+                        completeDropOff();
                     }
                 }
 
@@ -99,142 +133,345 @@ public class Taxi implements Runnable {
         }
     }
 
-    private void waitForArrival() throws InterruptedException {
-        while (Math.abs(x - targetX) > 1 || Math.abs(y - targetY) > 1) {
-            Thread.sleep(100);
+    /**
+     * SCD Concept: Cooperative Scheduling
+     * One non-blocking pass of {@link #run()}'s loop, for worlds that are stepped by a
+     * shared worker instead of giving every taxi a thread. Does what the thread would do
+     * at simulated time {@code now}, or nothing while the taxi is still sleeping or
+     * driving. Must only be called by one thread at a time.
+     */
+    public void step(long now) {
+        switch (phase) {
+            case POLL:
+                if (phaseUntil < 0) {
+                    phaseUntil = now + POLL_MILLIS; // the thread also sleeps before its first poll
+                }
+                if (now < phaseUntil) {
+                    return;
+                }
+                if (canTakeMore()) {
+                    bookingSystem.requestDispatch(this);
+                }
+                if (hasStops()) {
+                    phase = Phase.DRIVING;
+                    return;
+                }
+                patrol();
+                break;
+            case DRIVING:
+                if (!isAtTarget()) {
+                    return;
+                }
+                Stop next = getNextStop();
+                if (next != null && !next.isPickup()) {
+                    arriveAtDestination();
+                    phase = Phase.DROPPING_OFF;
+                    phaseUntil = now + DROP_OFF_MILLIS;
+                    return;
+                }
+                completePickup();
+                break;
+            case DROPPING_OFF:
+                if (now < phaseUntil) {
+                    return;
+                }
+                completeDropOff();
+                break;
         }
+        phase = Phase.POLL;
+        phaseUntil = now + POLL_MILLIS;
     }
 
-    // Checks if the taxi is full based on gender rules or general capacity
-    // Also considers whether the taxi should wait for more passengers instead of
-    // departing
-    private boolean isReadyToDepart() {
-        int size = currentPassengers.size();
-        if (size == 0)
-            return false;
-
-        long gents = currentPassengers.stream().filter(p -> p.getGender() == Gender.MALE).count();
-        long ladies = currentPassengers.stream().filter(p -> p.getGender() == Gender.FEMALE).count();
-        // Sassti Sawari Rule: If 1M + 1F, depart.
-        if (gents == 1 && ladies == 1) {
-            waitCycles = 0;
-            return true;
+    // Patrol logic: If idle and not moving, occasionally pick a new random spot in the restricted area
+    private void patrol() {
+        if (Math.abs(getX() - getTargetX()) < 10 && Math.abs(getY() - getTargetY()) < 10
+                && random.nextDouble() < 0.05) {
+            int pX = 2 + random.nextInt(7);
+            int pY = 1 + random.nextInt(4);
+            patrolTo(50 + pX * 100, 50 + pY * 100);
         }
-        if (size == capacity) {
-            waitCycles = 0;
-            return true;
-        }
-        if (shouldWaitForMorePassengers()) {
-            waitCycles++;
-            if (waitCycles >= MAX_WAIT_CYCLES) {
-                waitCycles = 0;
-                return true;
-            }
-            return false;
-        }
-        waitCycles = 0;
-        return false;
     }
 
-    private boolean shouldWaitForMorePassengers() {
-        int passengerCount = currentPassengers.size();
-        if (passengerCount == 1) {
-            return Math.random() < 0.5;
-        }
-        if (passengerCount == 2) {
-            return Math.random() < 0.3;
+    /**
+     * Sends an idle taxi towards {@code (x, y)}. Checked under the taxi's lock, so a
+     * patrol never redirects a taxi that a dispatcher just gave a stop.
+     * @return false if the taxi has stops to serve
+     */
+    public synchronized boolean patrolTo(double x, double y) {
+        if (!stops.isEmpty()) {
+            return false;
         }
-        return false; // Don't wait if full
+        setTarget(x, y);
+        return true;
     }
 
-    public void startRide() throws InterruptedException {
-        synchronized (this) {
-            if (status.equals("ON_RIDE"))
-                return;
-            status = "ON_RIDE";
-            Logger.log(String.format("Taxi T%d: **RIDE STARTED** (Load: %d).", id, currentPassengers.size()));
+    /**
+     * Parks until the movement integrator reports that the taxi reached its target.
+     * An in-motion taxi costs no CPU until then.
+     */
+    private void waitForArrival() throws InterruptedException {
+        motionLock.lock();
+        try {
+            while (!isAtTarget()) {
+                arrived.await();
+                if (bookingSystem.exportsMetrics()) {
+                    ARRIVAL_WAKEUPS.increment();
+                }
+            }
+        } finally {
+            motionLock.unlock();
         }
+    }
 
-        // Simulate travel to destination (Restricted Area)
-        int dX = 2 + (int) (Math.random() * 7);
-        int dY = 1 + (int) (Math.random() * 4);
-        this.targetX = 50 + dX * 100;
-        this.targetY = 50 + dY * 100;
+    /** Process-wide count of {@link #waitForArrival()} wakeups, arrived or not. */
+    public static long getArrivalWakeups() {
+        return ARRIVAL_WAKEUPS.get();
+    }
 
-        waitForArrival(); // Drive there
+    private boolean isAtTarget() {
+        return Math.abs(getX() - getTargetX()) <= 1 && Math.abs(getY() - getTargetY()) <= 1;
+    }
 
-        Logger.log(String.format("Taxi T%d: Reached destination. Dropping off in 4s...", id));
-        Logger.log(String.format("Taxi T%d: Reached destination. Dropping off in 5s...", id));
+    /**
+     * Pickup step shared by the thread loop and the discrete-event engine:
+     * the taxi is at its next stop, a pickup, so board the passenger.
+     * @return the passenger who boarded, or null if the next stop is not a pickup
+     */
+    public Passenger completePickup() {
+        Passenger boarded;
         synchronized (this) {
-            this.lastMessage = "Arrived at Destination. Dropping off...";
+            if (stops.isEmpty() || !stops.get(0).isPickup()) {
+                return null;
+            }
+            boarded = serveNextStop().getPassenger();
+            currentPassengers.add(boarded);
+            for (Stop s : stops) {
+                if (s.getPassenger() == boarded) {
+                    s.boardedAt = odometer; // its dropoff
+                }
+            }
         }
-        Thread.sleep(5000); // Wait for 5 seconds
+        boarded.signalPickedUp();
+        Logger.info("Taxi T%d: Physically reached %s. Boarded.", id, boarded.getId());
+        bookingSystem.recordBoarding(boarded, this);
+        return boarded;
+    }
 
-        dropPassengers();
+    public void arriveAtDestination() {
+        Logger.info("Taxi T%d: Reached destination. Dropping off in %ds...", id, DROP_OFF_MILLIS / 1000);
+        setLastMessage("Arrived at Destination. Dropping off...", 0);
     }
 
-    private synchronized void dropPassengers() {
-        int numPassengers = currentPassengers.size();
-        double revenue = FareCalculator.calculateRevenue(numPassengers);
-        earnings += revenue;
+    /**
+     * Drop-off step: the taxi is at its next stop, a passenger's destination, so everyone
+     * going there pays and gets out together. Others on board ride on.
+     * @return the passengers who got out; empty if the next stop is not a dropoff
+     */
+    public synchronized List<Passenger> completeDropOff() {
+        List<Passenger> dropped = new ArrayList<>();
+        while (!stops.isEmpty() && !stops.get(0).isPickup()
+                && (dropped.isEmpty() || stops.get(0).getX() == legStartX && stops.get(0).getY() == legStartY)) {
+            Stop stop = serveNextStop();
+            Passenger p = stop.getPassenger();
+            currentPassengers.remove(p);
+            dropped.add(p);
+            bookingSystem.getPoolingStats().recordDelivery(stop.getDirect(), odometer - stop.boardedAt);
+        }
+        if (dropped.isEmpty()) {
+            return dropped;
+        }
 
-        // Record passenger statistics before clearing
-        for (Passenger p : currentPassengers) {
+        double revenue = FareCalculator.calculateRevenue(dropped.size());
+        earnings += revenue;
+        if (bookingSystem.exportsMetrics()) {
+            REVENUE.add(revenue);
+            RIDES.increment();
+            PASSENGERS_DELIVERED.add(dropped.size());
+        }
+        for (Passenger p : dropped) {
             bookingSystem.recordPassengerDropOff(p);
         }
+        bookingSystem.recordRideCompleted(this, dropped);
 
-        currentPassengers.clear();
-        status = "AVAILABLE";
-        Logger.log(String.format("Taxi T%d: **PASSENGERS DROPPED**. New Earnings: PKR %.2f. Now Empty.", id, earnings));
-        status = "AVAILABLE";
-        this.lastMessage = "Dropped off passenger(s)";
-        Logger.log(String.format("Taxi T%d: **PASSENGERS DROPPED**. New Earnings: PKR %.2f. Now Empty.", id, earnings));
+        // Message expires after a short delay so it doesn't persist forever on UI
+        setLastMessage("Dropped off passenger(s)", MESSAGE_TTL_MILLIS);
+        Logger.info("Taxi T%d: **PASSENGERS DROPPED** (%d). New Earnings: PKR %.2f. Load: %d.",
+                id, dropped.size(), earnings, currentPassengers.size());
+        return dropped;
+    }
 
-        // Clear message after a short delay so it doesn't persist forever on UI
-        new Thread(() -> {
-            try {
-                Thread.sleep(3000);
-            } catch (Exception e) {
-            }
-            this.lastMessage = "";
-        }).start();
+    // Drives the odometer over the leg to the first stop, then heads for the next one.
+    private Stop serveNextStop() {
+        Stop stop = stops.remove(0);
+        double leg = bookingSystem.estimateTravelCost(legStartX, legStartY, stop.getX(), stop.getY());
+        bookingSystem.getPoolingStats().recordLeg(leg, currentPassengers.size());
+        odometer += leg;
+        legStartX = stop.getX();
+        legStartY = stop.getY();
+        headForNextStop();
+        return stop;
+    }
+
+    private void headForNextStop() {
+        if (stops.isEmpty()) {
+            status = "AVAILABLE";
+            return;
+        }
+        Stop next = stops.get(0);
+        status = next.isPickup() ? "PICKING_UP" : "ON_RIDE";
+        setTarget(next.getX(), next.getY());
+    }
+
+    private synchronized void setLastMessage(String message, long ttlMillis) {
+        this.lastMessage = message;
+        this.lastMessageExpiresAt = ttlMillis > 0 ? clock.now() + ttlMillis : Long.MAX_VALUE;
     }
 
     /**
      * Implements the Sassti Sawari Gender Rule Check.
      * Rule: Max 3 capacity. If mixed gender, max 2 total.
      */
+    public static boolean fits(int gents, int ladies) {
+        if (gents > 0 && ladies > 0) {
+            return gents + ladies <= 2;
+        }
+        return gents + ladies <= CAPACITY;
+    }
+
     public boolean canPickUp(Passenger newPassenger) {
-        if (currentPassengers.size() >= capacity)
-            return false;
-        if (status.equals("ON_RIDE"))
-            return false; // Can't pick if already engaged in ride journey
+        return canPickUp(newPassenger.getGender());
+    }
 
-        long gents = currentPassengers.stream().filter(p -> p.getGender() == Gender.MALE).count();
-        long ladies = currentPassengers.stream().filter(p -> p.getGender() == Gender.FEMALE).count();
+    /**
+     * Whether one more passenger of {@code gender} fits next to those on board now.
+     * Pooling checks the rule on every leg of the plan instead (see {@link RidePlanner}).
+     */
+    public synchronized boolean canPickUp(Gender gender) {
+        int gents = gender == Gender.MALE ? 1 : 0;
+        int ladies = 1 - gents;
+        for (Passenger p : currentPassengers) {
+            if (p.getGender() == Gender.MALE) {
+                gents++;
+            } else {
+                ladies++;
+            }
+        }
+        return fits(gents, ladies);
+    }
 
-        long newGents = gents + (newPassenger.getGender() == Gender.MALE ? 1 : 0);
-        long newLadies = ladies + (newPassenger.getGender() == Gender.FEMALE ? 1 : 0);
+    /** True while the plan has room for another passenger's pickup and dropoff. */
+    public synchronized boolean canTakeMore() {
+        return stops.size() + 2 <= RidePlanner.MAX_STOPS;
+    }
 
-        int newTotal = currentPassengers.size() + 1;
+    /**
+     * Cheapest way to fit {@code passenger} into this taxi's plan, or null if it cannot
+     * take them. A snapshot: the plan may have changed by the time the passenger is assigned.
+     */
+    public synchronized RidePlanner.Insertion quote(Passenger passenger) {
+        int gents = 0;
+        for (Passenger p : currentPassengers) {
+            if (p.getGender() == Gender.MALE) {
+                gents++;
+            }
+        }
+        double x = getX(), y = getY();
+        if (stops.isEmpty()) {
+            return RidePlanner.bestInsertion(stops, gents, currentPassengers.size() - gents, x, y,
+                    odometer, odometer, passenger, bookingSystem);
+        }
+        // Part of the leg to the first stop is behind us
+        double now = odometer + Math.hypot(x - legStartX, y - legStartY);
+        return RidePlanner.bestInsertion(stops, gents, currentPassengers.size() - gents, legStartX, legStartY,
+                odometer, now, passenger, bookingSystem);
+    }
 
-        // Rule Check: If mixed gender, total load cannot exceed 2.
-        if (newGents > 0 && newLadies > 0 && newTotal > 2) {
+    /**
+     * Assignment entry point for dispatchers running on another thread. Plans the
+     * insertion again under the taxi's lock and applies it if it is still feasible.
+     */
+    public synchronized boolean tryPickPassenger(Passenger passenger) {
+        RidePlanner.Insertion insertion = quote(passenger);
+        if (insertion == null) {
             return false;
         }
+        if (stops.isEmpty()) {
+            legStartX = getX();
+            legStartY = getY();
+        }
+        stops.add(insertion.dropoffBefore, new Stop(passenger, false, insertion.dropoffLatest, insertion.direct));
+        stops.add(insertion.pickupBefore, new Stop(passenger, true, insertion.pickupLatest, 0));
+        headForNextStop();
+        setLastMessage("On way to pickup " + passenger.getName(), 0);
+        Logger.info("Taxi T%d assigned %s. Stops planned: %d.", id, passenger.getId(), stops.size());
+        return true;
+    }
+
+    /**
+     * Puts back state recovered from a journal or another shard: earnings, passengers on
+     * board and passengers still to be picked up. The plan is rebuilt as the pickups in
+     * order, then every dropoff, without deadlines.
+     */
+    public synchronized void restore(double earnings, List<Passenger> onBoard, List<Passenger> toPickUp) {
+        this.earnings = earnings;
+        currentPassengers.addAll(onBoard);
+        for (Passenger p : toPickUp) {
+            stops.add(new Stop(p, true, Double.POSITIVE_INFINITY, 0));
+        }
+        for (Passenger p : onBoard) {
+            stops.add(dropoffFor(p));
+        }
+        for (Passenger p : toPickUp) {
+            stops.add(dropoffFor(p));
+        }
+        legStartX = getX();
+        legStartY = getY();
+        headForNextStop();
+    }
+
+    private Stop dropoffFor(Passenger p) {
+        return new Stop(p, false, Double.POSITIVE_INFINITY,
+                bookingSystem.estimateTravelCost(p.getX(), p.getY(), p.getDestinationX(), p.getDestinationY()));
+    }
+
+    /** Stable across runs, like {@link Passenger#hashCode()}. */
+    @Override
+    public int hashCode() {
+        return id;
+    }
 
-        return newTotal <= capacity;
+    public synchronized boolean hasStops() {
+        return !stops.isEmpty();
     }
 
-    public synchronized void pickPassenger(Passenger passenger) {
-        currentPassengers.add(passenger);
-        // Do NOT signal yet. Wait for travel.
-        this.targetPassenger = passenger;
-        this.targetX = passenger.getX();
-        this.targetY = passenger.getY();
-        this.status = "PICKING_UP";
-        this.lastMessage = "On way to pickup " + passenger.getName();
-        Logger.log(String.format("Taxi T%d assigned %s. Moving to pickup...", id, passenger.getId()));
+    /** The stop the taxi is driving to, or null. */
+    public synchronized Stop getNextStop() {
+        return stops.isEmpty() ? null : stops.get(0);
+    }
+
+    /** A copy of the plan, the stop being driven to first. */
+    synchronized List<Stop> getStops() {
+        return new ArrayList<>(stops);
+    }
+
+    /** Passengers assigned to this taxi and not yet on board, in pickup order. */
+    public synchronized List<Passenger> getPendingPickups() {
+        List<Passenger> pending = new ArrayList<>();
+        for (Stop s : stops) {
+            if (s.isPickup()) {
+                pending.add(s.getPassenger());
+            }
+        }
+        return pending;
+    }
+
+    public synchronized boolean hasPendingPickups() {
+        for (Stop s : stops) {
+            if (s.isPickup()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     // Getters for GUI updates
@@ -251,6 +488,9 @@ public class Taxi implements Runnable {
     }
 
     public synchronized String getLastMessage() {
+        if (clock.now() >= lastMessageExpiresAt) {
+            return "";
+        }
         return lastMessage;
     }
 
@@ -262,39 +502,91 @@ public class Taxi implements Runnable {
         return earnings;
     }
 
+    /** Occupied seats, without copying the passenger list. */
+    public synchronized int getPassengerCount() {
+        return currentPassengers.size();
+    }
+
     public synchronized List<Passenger> getCurrentPassengers() {
         return new ArrayList<>(currentPassengers);
     }
 
+    /**
+     * Allocation-free alternative to {@link #getCurrentPassengers()}.
+     * @return how many passengers were copied into {@code out}
+     */
+    public synchronized int copyPassengersInto(Passenger[] out) {
+        int n = Math.min(out.length, currentPassengers.size());
+        for (int i = 0; i < n; i++) {
+            out[i] = currentPassengers.get(i);
+        }
+        return n;
+    }
+
+    public int getCapacity() {
+        return CAPACITY;
+    }
+
     public double getX() {
-        return x;
+        return fleet.getX(slot);
     }
 
     public double getY() {
-        return y;
+        return fleet.getY(slot);
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    /** Called by {@link FleetMotion#remove(Taxi)} after it moved this taxi to another slot. */
+    public void moveToSlot(int newSlot) {
+        this.slot = newSlot;
+    }
+
+    /**
+     * Called by the movement integrator once this taxi reached its target.
+     * Wakes the taxi thread if it is waiting in {@link #waitForArrival()}.
+     */
+    public void signalArrival() {
+        motionLock.lock();
+        try {
+            arrived.signalAll();
+        } finally {
+            motionLock.unlock();
+        }
+    }
+
+    public void setTarget(double x, double y) {
+        motionLock.lock();
+        try {
+            fleet.setTarget(slot, x, y);
+        } finally {
+            motionLock.unlock();
+        }
     }
 
     public void setX(double x) {
-        this.x = x;
+        fleet.setPosition(slot, x, getY());
     }
 
     public void setY(double y) {
-        this.y = y;
+        fleet.setPosition(slot, getX(), y);
     }
 
     public double getTargetX() {
-        return targetX;
+        return fleet.getTargetX(slot);
     }
 
     public double getTargetY() {
-        return targetY;
+        return fleet.getTargetY(slot);
     }
 
     public void setTargetX(double x) {
-        this.targetX = x;
+        setTarget(x, getTargetY());
     }
 
     public void setTargetY(double y) {
-        this.targetY = y;
+        setTarget(getTargetX(), y);
     }
 }
\ No newline at end of file
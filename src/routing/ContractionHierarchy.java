@@ -0,0 +1,507 @@
+package routing;
+
+import java.util.Arrays;
+
+/**
+ * SCD Concept: Precomputation (Contraction Hierarchies)
+ * Shortest paths on a {@link RoadGraph} from a one-off preprocessing step. Intersections
+ * are contracted one at a time, least important first: removing a node adds a shortcut
+ * between two of its neighbours wherever the route through it was the only shortest one
+ * (a short "witness" search looks for another). A query then runs Dijkstra from both
+ * ends that only ever climbs to more important nodes; the two searches meet near the top
+ * and settle a few hundred nodes even on a 100k-node city. Shortcuts remember the node
+ * they bypass, so the found path unpacks back into real road segments.
+ *
+ * Built once per graph; queries are thread-safe given one {@link Query} per thread.
+ */
+final class ContractionHierarchy {
+    // Witness searches give up after settling this many nodes; a failed search only
+    // adds a shortcut that was not strictly needed, never a wrong answer.
+    private static final int WITNESS_SETTLE_LIMIT = 200;
+
+    private final RoadGraph graph;
+    private final int[] rank;
+    // Edges to more important nodes: up[upStart[u] .. upStart[u + 1]) leave u
+    private final int[] upStart, upTo, upMid;
+    private final double[] upCost;
+    // Edges from more important nodes: down[downStart[w] ..] arrive at w
+    private final int[] downStart, downFrom, downMid;
+    private final double[] downCost;
+    private final int shortcuts;
+
+    ContractionHierarchy(RoadGraph graph) {
+        this.graph = graph;
+        int n = graph.nodeCount;
+        Builder builder = new Builder(graph);
+        rank = builder.contractAll();
+        shortcuts = builder.shortcuts;
+
+        // Split every remaining edge by direction in the hierarchy
+        upStart = new int[n + 1];
+        downStart = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            Adjacency out = builder.out[u];
+            for (int k = 0; k < out.size; k++) {
+                int w = out.node[k];
+                if (rank[w] > rank[u]) upStart[u + 1]++;
+                else downStart[w + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            upStart[v + 1] += upStart[v];
+            downStart[v + 1] += downStart[v];
+        }
+        upTo = new int[upStart[n]];
+        upMid = new int[upStart[n]];
+        upCost = new double[upStart[n]];
+        downFrom = new int[downStart[n]];
+        downMid = new int[downStart[n]];
+        downCost = new double[downStart[n]];
+        int[] upFill = Arrays.copyOf(upStart, n);
+        int[] downFill = Arrays.copyOf(downStart, n);
+        for (int u = 0; u < n; u++) {
+            Adjacency out = builder.out[u];
+            for (int k = 0; k < out.size; k++) {
+                int w = out.node[k];
+                if (rank[w] > rank[u]) {
+                    int e = upFill[u]++;
+                    upTo[e] = w;
+                    upCost[e] = out.cost[k];
+                    upMid[e] = out.mid[k];
+                } else {
+                    int e = downFill[w]++;
+                    downFrom[e] = u;
+                    downCost[e] = out.cost[k];
+                    downMid[e] = out.mid[k];
+                }
+            }
+        }
+    }
+
+    int shortcutCount() {
+        return shortcuts;
+    }
+
+    /** Scratch space for one query at a time. */
+    final class Query {
+        private final double[] forward, backward;
+        private final int[] forwardParent, backwardParent;
+        private final int[] forwardSeen, backwardSeen;
+        private int stamp = 0;
+        private final MinHeap forwardHeap = new MinHeap();
+        private final MinHeap backwardHeap = new MinHeap();
+
+        Query() {
+            int n = graph.nodeCount;
+            forward = new double[n];
+            backward = new double[n];
+            forwardParent = new int[n];
+            backwardParent = new int[n];
+            forwardSeen = new int[n];
+            backwardSeen = new int[n];
+        }
+
+        /**
+         * @param path receives the nodes from s to t, if reachable; null when only the cost is wanted
+         * @return the cost, or infinity if t cannot be reached from s
+         */
+        double shortestPath(int s, int t, IntList path) {
+            if (path != null) {
+                path.clear();
+            }
+            if (s == t) {
+                if (path != null) {
+                    path.add(s);
+                }
+                return 0;
+            }
+            if (++stamp == 0) {
+                Arrays.fill(forwardSeen, 0);
+                Arrays.fill(backwardSeen, 0);
+                stamp = 1;
+            }
+            forwardHeap.clear();
+            backwardHeap.clear();
+            reach(forward, forwardParent, forwardSeen, forwardHeap, s, 0, -1);
+            reach(backward, backwardParent, backwardSeen, backwardHeap, t, 0, -1);
+            double best = Double.POSITIVE_INFINITY;
+            int meeting = -1;
+            while (true) {
+                double fMin = forwardHeap.size > 0 ? forwardHeap.minKey() : Double.POSITIVE_INFINITY;
+                double bMin = backwardHeap.size > 0 ? backwardHeap.minKey() : Double.POSITIVE_INFINITY;
+                if (Math.min(fMin, bMin) >= best) {
+                    break; // neither side can still improve on the best meeting point
+                }
+                if (fMin <= bMin) {
+                    double d = fMin;
+                    int u = forwardHeap.pop();
+                    if (d > forward[u]) continue; // stale
+                    if (backwardSeen[u] == stamp && d + backward[u] < best) {
+                        best = d + backward[u];
+                        meeting = u;
+                    }
+                    if (stalledForward(u, d)) continue;
+                    for (int e = upStart[u]; e < upStart[u + 1]; e++) {
+                        reach(forward, forwardParent, forwardSeen, forwardHeap, upTo[e], d + upCost[e], e);
+                    }
+                } else {
+                    double d = bMin;
+                    int w = backwardHeap.pop();
+                    if (d > backward[w]) continue;
+                    if (forwardSeen[w] == stamp && d + forward[w] < best) {
+                        best = d + forward[w];
+                        meeting = w;
+                    }
+                    if (stalledBackward(w, d)) continue;
+                    for (int e = downStart[w]; e < downStart[w + 1]; e++) {
+                        reach(backward, backwardParent, backwardSeen, backwardHeap, downFrom[e], d + downCost[e], e);
+                    }
+                }
+            }
+            if (meeting < 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            if (path == null) {
+                return best;
+            }
+            // s .. meeting along forward parents (collected backwards), then meeting .. t
+            IntList up = new IntList();
+            for (int v = meeting; forwardParent[v] >= 0; ) {
+                int e = forwardParent[v];
+                int u = upTail(e);
+                up.add(e);
+                v = u;
+            }
+            path.add(s);
+            for (int i = up.size - 1; i >= 0; i--) {
+                int e = up.get(i);
+                unpack(path, upTail(e), upTo[e], upMid[e]);
+            }
+            for (int v = meeting; backwardParent[v] >= 0; ) {
+                int e = backwardParent[v];
+                int w = downTarget(e);
+                unpack(path, v, w, downMid[e]);
+                v = w;
+            }
+            return best;
+        }
+
+        // Stall-on-demand: u was reached more cheaply through a more important node the
+        // upward search never relaxed down from, so nothing found beyond u can be shortest
+        private boolean stalledForward(int u, double d) {
+            for (int e = downStart[u]; e < downStart[u + 1]; e++) {
+                int x = downFrom[e];
+                if (forwardSeen[x] == stamp && forward[x] + downCost[e] < d) return true;
+            }
+            return false;
+        }
+
+        private boolean stalledBackward(int w, double d) {
+            for (int e = upStart[w]; e < upStart[w + 1]; e++) {
+                int y = upTo[e];
+                if (backwardSeen[y] == stamp && backward[y] + upCost[e] < d) return true;
+            }
+            return false;
+        }
+
+        private void reach(double[] dist, int[] parent, int[] seen, MinHeap heap, int v, double d, int edge) {
+            if (seen[v] != stamp || d < dist[v]) {
+                seen[v] = stamp;
+                dist[v] = d;
+                parent[v] = edge;
+                heap.push(v, d);
+            }
+        }
+    }
+
+    // The tail of up edge e (the edge arrays only store heads)
+    private int upTail(int e) {
+        int lo = 0, hi = upStart.length - 1;
+        while (hi - lo > 1) { // upStart is sorted: find u with upStart[u] <= e < upStart[u + 1]
+            int m = (lo + hi) >>> 1;
+            if (upStart[m] <= e) lo = m;
+            else hi = m;
+        }
+        return lo;
+    }
+
+    // The head of down edge e
+    private int downTarget(int e) {
+        int lo = 0, hi = downStart.length - 1;
+        while (hi - lo > 1) {
+            int m = (lo + hi) >>> 1;
+            if (downStart[m] <= e) lo = m;
+            else hi = m;
+        }
+        return lo;
+    }
+
+    /** Appends the road nodes of edge u -> w after u (which is already in the path). */
+    private void unpack(IntList path, int u, int w, int mid) {
+        if (mid < 0) {
+            path.add(w);
+            return;
+        }
+        // mid was contracted before u and w, so both halves point up from mid
+        unpack(path, u, mid, midOf(downStart, downFrom, downMid, mid, u));
+        unpack(path, mid, w, midOf(upStart, upTo, upMid, mid, w));
+    }
+
+    // The mid of the cheapest stored edge between v and other in the given arrays
+    private int midOf(int[] start, int[] other, int[] mids, int v, int otherNode) {
+        for (int e = start[v]; e < start[v + 1]; e++) {
+            if (other[e] == otherNode) {
+                return mids[e];
+            }
+        }
+        throw new IllegalStateException("missing hierarchy edge " + v + " / " + otherNode);
+    }
+
+    /** Growable edge list of one node during contraction; at most one edge per neighbour. */
+    private static final class Adjacency {
+        int[] node = new int[4];
+        double[] cost = new double[4];
+        int[] mid = new int[4];
+        int size;
+
+        /** Adds or shortens the edge to {@code v}. @return true if it was new */
+        boolean put(int v, double c, int m) {
+            for (int k = 0; k < size; k++) {
+                if (node[k] == v) {
+                    if (c < cost[k]) {
+                        cost[k] = c;
+                        mid[k] = m;
+                    }
+                    return false;
+                }
+            }
+            if (size == node.length) {
+                node = Arrays.copyOf(node, size * 2);
+                cost = Arrays.copyOf(cost, size * 2);
+                mid = Arrays.copyOf(mid, size * 2);
+            }
+            node[size] = v;
+            cost[size] = c;
+            mid[size] = m;
+            size++;
+            return true;
+        }
+    }
+
+    private static final class Builder {
+        final Adjacency[] out, in;
+        final boolean[] contracted;
+        final int[] level; // 1 + the highest level among contracted neighbours
+        int shortcuts;
+        // Witness search scratch
+        final double[] dist;
+        final int[] seen;
+        int stamp;
+        final MinHeap heap = new MinHeap();
+
+        Builder(RoadGraph graph) {
+            int n = graph.nodeCount;
+            out = new Adjacency[n];
+            in = new Adjacency[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new Adjacency();
+                in[v] = new Adjacency();
+            }
+            for (int u = 0; u < n; u++) {
+                for (int e = graph.outStart[u]; e < graph.outStart[u + 1]; e++) {
+                    int v = graph.outTo[e];
+                    if (v != u) {
+                        out[u].put(v, graph.outCost[e], -1);
+                        in[v].put(u, graph.outCost[e], -1);
+                    }
+                }
+            }
+            contracted = new boolean[n];
+            level = new int[n];
+            dist = new double[n];
+            seen = new int[n];
+        }
+
+        /** Contracts every node, cheapest first. @return each node's rank */
+        int[] contractAll() {
+            int n = contracted.length;
+            MinHeap queue = new MinHeap();
+            for (int v = 0; v < n; v++) {
+                queue.push(v, priority(v));
+            }
+            int[] rank = new int[n];
+            int next = 0;
+            while (queue.size > 0) {
+                int v = queue.pop();
+                // Lazy update: a priority changes as neighbours go, so re-check before contracting
+                double p = priority(v);
+                if (queue.size > 0 && p > queue.minKey()) {
+                    queue.push(v, p);
+                    continue;
+                }
+                contract(v, false);
+                contracted[v] = true;
+                rank[v] = next++;
+            }
+            return rank;
+        }
+
+        private double priority(int v) {
+            int degree = 0;
+            for (int k = 0; k < in[v].size; k++) if (!contracted[in[v].node[k]]) degree++;
+            for (int k = 0; k < out[v].size; k++) if (!contracted[out[v].node[k]]) degree++;
+            // Edge difference keeps the graph sparse; the level term spreads contraction evenly
+            // over the map, which keeps the hierarchy shallow
+            return contract(v, true) - degree + level[v];
+        }
+
+        /** Adds (or with {@code simulate}, counts) the shortcuts contracting v needs. */
+        private int contract(int v, boolean simulate) {
+            int added = 0;
+            Adjacency ins = in[v], outs = out[v];
+            for (int i = 0; i < ins.size; i++) {
+                int u = ins.node[i];
+                if (contracted[u]) continue;
+                double viaMax = -1; // zero-length roads are legal
+                for (int k = 0; k < outs.size; k++) {
+                    int w = outs.node[k];
+                    if (!contracted[w] && w != u) viaMax = Math.max(viaMax, ins.cost[i] + outs.cost[k]);
+                }
+                if (viaMax < 0) continue;
+                witnessSearch(u, v, viaMax);
+                for (int k = 0; k < outs.size; k++) {
+                    int w = outs.node[k];
+                    if (contracted[w] || w == u) continue;
+                    double via = ins.cost[i] + outs.cost[k];
+                    if (seen[w] == stamp && dist[w] <= via) continue; // another route is as short
+                    added++;
+                    if (!simulate && out[u].put(w, via, v)) {
+                        in[w].put(u, via, v);
+                        shortcuts++;
+                    } else if (!simulate) {
+                        in[w].put(u, via, v); // shortened an existing edge
+                    }
+                }
+            }
+            if (!simulate) {
+                for (int i = 0; i < ins.size; i++) {
+                    level[ins.node[i]] = Math.max(level[ins.node[i]], level[v] + 1);
+                }
+                for (int k = 0; k < outs.size; k++) {
+                    level[outs.node[k]] = Math.max(level[outs.node[k]], level[v] + 1);
+                }
+            }
+            return added;
+        }
+
+        // Dijkstra from u avoiding v and contracted nodes, up to maxCost or the settle limit
+        private void witnessSearch(int u, int v, double maxCost) {
+            if (++stamp == 0) {
+                Arrays.fill(seen, 0);
+                stamp = 1;
+            }
+            heap.clear();
+            seen[u] = stamp;
+            dist[u] = 0;
+            heap.push(u, 0);
+            int settled = 0;
+            while (heap.size > 0 && settled < WITNESS_SETTLE_LIMIT) {
+                double d = heap.minKey();
+                int x = heap.pop();
+                if (d > dist[x]) continue;
+                if (d > maxCost) break;
+                settled++;
+                Adjacency adj = out[x];
+                for (int k = 0; k < adj.size; k++) {
+                    int y = adj.node[k];
+                    if (y == v || contracted[y]) continue;
+                    double dy = d + adj.cost[k];
+                    if (seen[y] != stamp || dy < dist[y]) {
+                        seen[y] = stamp;
+                        dist[y] = dy;
+                        heap.push(y, dy);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Binary min-heap of (node, key) with duplicates; callers skip stale entries. */
+    static final class MinHeap {
+        private int[] nodes = new int[256];
+        private double[] keys = new double[256];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        double minKey() {
+            return keys[0];
+        }
+
+        void push(int node, double key) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int p = (i - 1) >> 1;
+                if (keys[p] <= key) break;
+                nodes[i] = nodes[p];
+                keys[i] = keys[p];
+                i = p;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            if (size > 0) {
+                int node = nodes[size];
+                double key = keys[size];
+                int i = 0;
+                while (true) {
+                    int c = 2 * i + 1;
+                    if (c >= size) break;
+                    if (c + 1 < size && keys[c + 1] < keys[c]) c++;
+                    if (keys[c] >= key) break;
+                    nodes[i] = nodes[c];
+                    keys[i] = keys[c];
+                    i = c;
+                }
+                nodes[i] = node;
+                keys[i] = key;
+            }
+            return top;
+        }
+    }
+
+    /** Minimal growable int list, to keep query paths free of boxing. */
+    static final class IntList {
+        private int[] values = new int[32];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
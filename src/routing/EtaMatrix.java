@@ -0,0 +1,247 @@
+package routing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import util.Metrics;
+
+/**
+ * SCD Concept: Precomputed Distance Matrix
+ * Travel-time estimates between map cells, for scoring many (taxi, passenger) pairs
+ * without a route search each. The map is cut into square cells, each represented by
+ * the intersection nearest its centre, and the matrix holds the road cost from every
+ * representative to every other as one float per pair. Large matrices live off-heap in
+ * a direct buffer, so a 4096-cell city (64 MB) adds nothing to garbage collection.
+ *
+ * Entries are filled by {@link #precompute} (one Dijkstra search per row) and on demand
+ * by a hierarchy search when a lookup finds a gap. When a road's speed changes, only
+ * the entries whose best route could use that road are dropped and later refilled.
+ *
+ * An estimate is the straight line to the start cell's representative, the matrix entry,
+ * and the straight line from the end cell's representative; within one cell it is the
+ * straight line. It ranks candidates; taxis still drive the exact {@link Route}.
+ */
+public final class EtaMatrix {
+    private static final Metrics.Counter HITS = Metrics.counter("eta_cache_hits_total",
+            "Travel-time estimates read from the ETA matrix");
+    private static final Metrics.Counter MISSES = Metrics.counter("eta_cache_misses_total",
+            "ETA matrix entries computed on demand by a hierarchy search");
+    private static final Metrics.Counter INVALIDATED = Metrics.counter("eta_invalidated_total",
+            "ETA matrix entries dropped because a road speed changed");
+
+    static {
+        Metrics.gauge("eta_cache_hit_ratio", "Share of travel-time estimates answered by the ETA matrix since start", () -> {
+            long hits = HITS.get();
+            long total = hits + MISSES.get();
+            return total == 0 ? 0 : (double) hits / total;
+        });
+    }
+
+    /** Cells are widened until there are at most this many (a 64 MB matrix). */
+    static final int MAX_CELLS = 4096;
+    // Smaller matrices stay on the heap
+    private static final long OFF_HEAP_BYTES = 1 << 20;
+
+    private final Router router;
+    private final double minX, minY, cellSize;
+    private final int columns, rows, cells;
+    private final int[] representative;
+    private final double[] representativeX, representativeY;
+    private final FloatBuffer etas; // [from * cells + to]; NaN: not computed yet
+    private final boolean offHeap;
+
+    // Fills write under the read lock and only if no invalidation ran since their search
+    // started; an invalidation bumps the epoch under the write lock.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile int epoch;
+
+    EtaMatrix(Router router, double cellSize) {
+        this.router = router;
+        RoadGraph graph = router.getGraph();
+        double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+        for (int v = 0; v < graph.nodeCount; v++) {
+            x0 = Math.min(x0, graph.x[v]);
+            y0 = Math.min(y0, graph.y[v]);
+            x1 = Math.max(x1, graph.x[v]);
+            y1 = Math.max(y1, graph.y[v]);
+        }
+        // Cells are centred on multiples of the cell size from the first intersection, so
+        // on a block grid with cells one block wide every intersection is a cell centre
+        double size = cellSize;
+        while (((long) ((x1 - x0) / size + 0.5) + 1) * ((long) ((y1 - y0) / size + 0.5) + 1) > MAX_CELLS) {
+            size *= 1.25;
+        }
+        this.minX = x0 - size / 2;
+        this.minY = y0 - size / 2;
+        this.cellSize = size;
+        this.columns = (int) ((x1 - x0) / size + 0.5) + 1;
+        this.rows = (int) ((y1 - y0) / size + 0.5) + 1;
+        this.cells = columns * rows;
+
+        representative = new int[cells];
+        representativeX = new double[cells];
+        representativeY = new double[cells];
+        for (int c = 0; c < cells; c++) {
+            int v = graph.nearestNode(minX + (c % columns + 0.5) * size, minY + (c / columns + 0.5) * size);
+            representative[c] = v;
+            representativeX[c] = graph.x[v];
+            representativeY[c] = graph.y[v];
+        }
+
+        int entries = cells * cells;
+        offHeap = entries * 4L >= OFF_HEAP_BYTES;
+        etas = offHeap
+                ? ByteBuffer.allocateDirect(entries * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+                : FloatBuffer.wrap(new float[entries]);
+        for (int i = 0; i < entries; i++) {
+            etas.put(i, Float.NaN);
+        }
+    }
+
+    public int getCellCount() {
+        return cells;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /** The entry from cell {@code a} to cell {@code b}; NaN if it is not computed. */
+    float entry(int a, int b) {
+        return etas.get(a * cells + b);
+    }
+
+    /** The intersection that stands for cell {@code c}. */
+    int representative(int c) {
+        return representative[c];
+    }
+
+    /** Estimated {@link Router#cost} from one point to another. */
+    public double estimate(double fromX, double fromY, double toX, double toY) {
+        int a = cell(fromX, fromY);
+        int b = cell(toX, toY);
+        if (a == b) {
+            return Math.hypot(toX - fromX, toY - fromY);
+        }
+        float eta = etas.get(a * cells + b);
+        if (eta != eta) {
+            MISSES.increment();
+            eta = fill(a, b);
+        } else {
+            HITS.increment();
+        }
+        if (eta == Float.POSITIVE_INFINITY) {
+            return Math.hypot(toX - fromX, toY - fromY); // as Router.cost does when no road connects them
+        }
+        return Math.hypot(representativeX[a] - fromX, representativeY[a] - fromY) + eta
+                + Math.hypot(toX - representativeX[b], toY - representativeY[b]);
+    }
+
+    /**
+     * Fills the whole matrix, one row per search. Takes a while on large cities (about
+     * 25 ms per cell at 100k intersections), so callers run it in the background;
+     * estimates are served and filled on demand meanwhile.
+     */
+    public void precompute() {
+        int a = 0;
+        while (a < cells) {
+            int stamp = epoch;
+            double[] dist = router.getGraph().distances(representative[a], false);
+            if (!storeRow(a, dist, stamp)) {
+                continue; // a road changed during the search; redo this row
+            }
+            a++;
+        }
+    }
+
+    /** Invalidation count; a search reads it before it starts and hands it to the store. */
+    int epoch() {
+        return epoch;
+    }
+
+    /**
+     * Writes row {@code a} from the distances of a search that began at {@code stamp}.
+     * @return false, writing nothing, if a road changed since
+     */
+    boolean storeRow(int a, double[] dist, int stamp) {
+        lock.readLock().lock();
+        try {
+            if (epoch != stamp) {
+                return false;
+            }
+            for (int b = 0; b < cells; b++) {
+                etas.put(a * cells + b, (float) dist[representative[b]]);
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** One entry's counterpart of {@link #storeRow}. */
+    boolean store(int a, int b, float eta, int stamp) {
+        lock.readLock().lock();
+        try {
+            if (epoch != stamp) {
+                return false;
+            }
+            etas.put(a * cells + b, eta);
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the entries a speed change on the road from u to v can affect: those with a
+     * best route through the road at the cheaper of its old and new costs, i.e. the road
+     * was on the best route before (slowed down) or may be now (sped up). Distances to u
+     * and from v do not depend on the road itself, so they come from the old graph.
+     */
+    void roadChanged(RoadGraph old, int u, int v, double oldCost, double newCost) {
+        double[] toU = old.distances(u, true);
+        double[] fromV = old.distances(v, false);
+        double cheaper = Math.min(oldCost, newCost);
+        long dropped = 0;
+        lock.writeLock().lock();
+        try {
+            epoch++;
+            for (int a = 0; a < cells; a++) {
+                double head = toU[representative[a]];
+                if (head == Double.POSITIVE_INFINITY) continue;
+                for (int b = 0; b < cells; b++) {
+                    int i = a * cells + b;
+                    float eta = etas.get(i);
+                    if (eta != eta) continue;
+                    // Floats carry about 7 digits; err towards dropping
+                    double through = head + cheaper + fromV[representative[b]];
+                    if (through <= eta * (1 + 1e-5) + 1e-3) {
+                        etas.put(i, Float.NaN);
+                        dropped++;
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        INVALIDATED.add(dropped);
+    }
+
+    private float fill(int a, int b) {
+        int stamp = epoch;
+        float eta = (float) router.searchCost(representative[a], representative[b]);
+        store(a, b, eta, stamp);
+        return eta;
+    }
+
+    private int cell(double px, double py) {
+        int cx = Math.max(0, Math.min(columns - 1, (int) ((px - minX) / cellSize)));
+        int cy = Math.max(0, Math.min(rows - 1, (int) ((py - minY) / cellSize)));
+        return cy * columns + cx;
+    }
+}
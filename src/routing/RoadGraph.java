@@ -0,0 +1,399 @@
+package routing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SCD Concept: Compressed Sparse Row Graph
+ * Immutable road network: intersections with map coordinates and directed road segments
+ * with a speed limit. Outgoing and incoming edges are each stored as one flat array
+ * indexed by per-node offsets, so a search walks contiguous memory and the graph costs
+ * a few dozen bytes per edge even at 100k nodes.
+ *
+ * Edge costs are travel times expressed in map units at the network's top speed, i.e.
+ * {@code length * maxSpeed / speed}. A straight line is then a lower bound on any route's
+ * cost (the A* heuristic), and on roads that all share one speed the cost is simply the
+ * driven length, which keeps costs comparable to the distances used elsewhere.
+ *
+ * File format, one record per line, '#' starts a comment:
+ * <pre>
+ * node &lt;id&gt; &lt;x&gt; &lt;y&gt;
+ * edge &lt;fromId&gt; &lt;toId&gt; &lt;speed&gt; [oneway]
+ * </pre>
+ * Edges are two-way unless marked {@code oneway}; nodes must be declared before use.
+ */
+public final class RoadGraph {
+    final int nodeCount;
+    final double[] x;
+    final double[] y;
+    // Outgoing edges of node v are out[outStart[v] .. outStart[v + 1])
+    final int[] outStart;
+    final int[] outTo;
+    final double[] outCost;
+    final float[] outFactor; // speed / maxSpeed, for movement along the edge
+    // Incoming edges, for searches towards a node
+    final int[] inStart;
+    final int[] inFrom;
+    final double[] inCost;
+    final double maxSpeed;
+
+    // Uniform bucket grid over the bounding box, for snapping points to intersections
+    private final double minX, minY, cellSize;
+    private final int columns, rows;
+    private final int[] cellStart;
+    private final int[] cellNodes;
+
+    private RoadGraph(double[] x, double[] y, int edgeCount, int[] from, int[] to, double[] speed) {
+        this.nodeCount = x.length;
+        this.x = x;
+        this.y = y;
+        double top = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            top = Math.max(top, speed[e]);
+        }
+        this.maxSpeed = top;
+
+        outStart = new int[nodeCount + 1];
+        inStart = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            outStart[from[e] + 1]++;
+            inStart[to[e] + 1]++;
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            outStart[v + 1] += outStart[v];
+            inStart[v + 1] += inStart[v];
+        }
+        outTo = new int[edgeCount];
+        outCost = new double[edgeCount];
+        outFactor = new float[edgeCount];
+        inFrom = new int[edgeCount];
+        inCost = new double[edgeCount];
+        int[] outFill = Arrays.copyOf(outStart, nodeCount);
+        int[] inFill = Arrays.copyOf(inStart, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int u = from[e], v = to[e];
+            double cost = Math.hypot(x[v] - x[u], y[v] - y[u]) * top / speed[e];
+            int o = outFill[u]++;
+            outTo[o] = v;
+            outCost[o] = cost;
+            outFactor[o] = (float) (speed[e] / top);
+            int i = inFill[v]++;
+            inFrom[i] = u;
+            inCost[i] = cost;
+        }
+
+        double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+        for (int v = 0; v < nodeCount; v++) {
+            x0 = Math.min(x0, x[v]);
+            y0 = Math.min(y0, y[v]);
+            x1 = Math.max(x1, x[v]);
+            y1 = Math.max(y1, y[v]);
+        }
+        minX = x0;
+        minY = y0;
+        // About two intersections per cell
+        double area = Math.max(1, (x1 - x0) * (y1 - y0));
+        cellSize = Math.max(1e-6, Math.sqrt(area * 2 / Math.max(1, nodeCount)));
+        columns = (int) ((x1 - x0) / cellSize) + 1;
+        rows = (int) ((y1 - y0) / cellSize) + 1;
+        cellStart = new int[columns * rows + 1];
+        for (int v = 0; v < nodeCount; v++) {
+            cellStart[cell(x[v], y[v]) + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellNodes = new int[nodeCount];
+        int[] cellFill = Arrays.copyOf(cellStart, columns * rows);
+        for (int v = 0; v < nodeCount; v++) {
+            cellNodes[cellFill[cell(x[v], y[v])]++] = v;
+        }
+    }
+
+    // Same intersections and roads as base, with new travel costs
+    private RoadGraph(RoadGraph base, double[] outCost, float[] outFactor, double[] inCost) {
+        this.nodeCount = base.nodeCount;
+        this.x = base.x;
+        this.y = base.y;
+        this.outStart = base.outStart;
+        this.outTo = base.outTo;
+        this.outCost = outCost;
+        this.outFactor = outFactor;
+        this.inStart = base.inStart;
+        this.inFrom = base.inFrom;
+        this.inCost = inCost;
+        this.maxSpeed = base.maxSpeed;
+        this.minX = base.minX;
+        this.minY = base.minY;
+        this.cellSize = base.cellSize;
+        this.columns = base.columns;
+        this.rows = base.rows;
+        this.cellStart = base.cellStart;
+        this.cellNodes = base.cellNodes;
+    }
+
+    /**
+     * A Manhattan street grid with two-way roads between neighbouring intersections at
+     * {@code (offset + i * spacing, offset + j * spacing)}.
+     */
+    public static RoadGraph grid(int columns, int rows, double spacing, double offset, double speed) {
+        Builder b = new Builder();
+        for (int j = 0; j < rows; j++) {
+            for (int i = 0; i < columns; i++) {
+                b.node(j * columns + i, offset + i * spacing, offset + j * spacing);
+            }
+        }
+        for (int j = 0; j < rows; j++) {
+            for (int i = 0; i < columns; i++) {
+                int v = j * columns + i;
+                if (i + 1 < columns) b.road(v, v + 1, speed, false);
+                if (j + 1 < rows) b.road(v, v + columns, speed, false);
+            }
+        }
+        return b.build();
+    }
+
+    /** The default city: the 12 x 8 block grid the passenger grid and patrol points use. */
+    public static RoadGraph defaultCity(double speed) {
+        return grid(12, 8, 100, 50, speed);
+    }
+
+    public static RoadGraph load(Path file) throws IOException {
+        Builder b = new Builder();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            for (String line; (line = in.readLine()) != null; ) {
+                lineNumber++;
+                int hash = line.indexOf('#');
+                String record = (hash >= 0 ? line.substring(0, hash) : line).trim();
+                if (record.isEmpty()) {
+                    continue;
+                }
+                String[] f = record.split("\\s+");
+                try {
+                    if (f[0].equals("node") && f.length == 4) {
+                        b.node(Integer.parseInt(f[1]), Double.parseDouble(f[2]), Double.parseDouble(f[3]));
+                    } else if (f[0].equals("edge") && (f.length == 4 || (f.length == 5 && f[4].equals("oneway")))) {
+                        b.road(b.index(f[1]), b.index(f[2]), Double.parseDouble(f[3]), f.length == 5);
+                    } else {
+                        throw new IllegalArgumentException("expected 'node id x y' or 'edge from to speed [oneway]'");
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        if (b.nodeCount == 0) {
+            throw new IOException(file + ": no nodes");
+        }
+        return b.build();
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return outTo.length;
+    }
+
+    public double getX(int node) {
+        return x[node];
+    }
+
+    public double getY(int node) {
+        return y[node];
+    }
+
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    /** The intersection closest to {@code (px, py)} in a straight line. */
+    public int nearestNode(double px, double py) {
+        int cx = Math.max(0, Math.min(columns - 1, (int) ((px - minX) / cellSize)));
+        int cy = Math.max(0, Math.min(rows - 1, (int) ((py - minY) / cellSize)));
+        int maxRing = Math.max(Math.max(cx, columns - 1 - cx), Math.max(cy, rows - 1 - cy));
+        int best = -1;
+        double bestSq = Double.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every cell in this ring is at least (ring - 1) cells away
+            double bound = Math.max(0, ring - 1) * cellSize;
+            if (best >= 0 && bound * bound >= bestSq) {
+                break;
+            }
+            for (int row = cy - ring; row <= cy + ring; row++) {
+                if (row < 0 || row >= rows) continue;
+                boolean edgeRow = row == cy - ring || row == cy + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int col = cx - ring; col <= cx + ring; col += Math.max(step, 1)) {
+                    if (col < 0 || col >= columns) continue;
+                    int c = row * columns + col;
+                    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                        int v = cellNodes[k];
+                        double dx = px - x[v];
+                        double dy = py - y[v];
+                        double distSq = dx * dx + dy * dy;
+                        if (distSq < bestSq) {
+                            bestSq = distSq;
+                            best = v;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A copy in which every road segment from {@code u} to {@code v} has the given speed.
+     * Costs stay in units of the current top speed, so the speed may not exceed it.
+     */
+    RoadGraph withSpeed(int u, int v, double speed) {
+        if (!(speed > 0 && speed <= maxSpeed)) {
+            throw new IllegalArgumentException("speed must be in (0, " + maxSpeed + "]");
+        }
+        double[] newOutCost = outCost.clone();
+        float[] newOutFactor = outFactor.clone();
+        double[] newInCost = inCost.clone();
+        double cost = Math.hypot(x[v] - x[u], y[v] - y[u]) * maxSpeed / speed;
+        boolean found = false;
+        for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+            if (outTo[e] == v) {
+                newOutCost[e] = cost;
+                newOutFactor[e] = (float) (speed / maxSpeed);
+                found = true;
+            }
+        }
+        for (int e = inStart[v]; e < inStart[v + 1]; e++) {
+            if (inFrom[e] == u) {
+                newInCost[e] = cost;
+            }
+        }
+        if (!found) {
+            throw new IllegalArgumentException("no road from " + u + " to " + v);
+        }
+        return new RoadGraph(this, newOutCost, newOutFactor, newInCost);
+    }
+
+    /** Cost of the cheapest road segment from u straight to v, or infinity if there is none. */
+    double edgeCost(int u, int v) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+            if (outTo[e] == v) {
+                best = Math.min(best, outCost[e]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Plain Dijkstra over the whole graph: the cost from {@code source} to every node, or
+     * with {@code reverse} from every node to {@code source}. Unreachable nodes get infinity.
+     */
+    double[] distances(int source, boolean reverse) {
+        int[] start = reverse ? inStart : outStart;
+        int[] adjacent = reverse ? inFrom : outTo;
+        double[] cost = reverse ? inCost : outCost;
+        double[] dist = new double[nodeCount];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        ContractionHierarchy.MinHeap heap = new ContractionHierarchy.MinHeap();
+        dist[source] = 0;
+        heap.push(source, 0);
+        while (heap.size > 0) {
+            double d = heap.minKey();
+            int u = heap.pop();
+            if (d > dist[u]) continue; // stale
+            for (int e = start[u]; e < start[u + 1]; e++) {
+                int v = adjacent[e];
+                double nd = d + cost[e];
+                if (nd < dist[v]) {
+                    dist[v] = nd;
+                    heap.push(v, nd);
+                }
+            }
+        }
+        return dist;
+    }
+
+    private int cell(double px, double py) {
+        int cx = Math.min(columns - 1, (int) ((px - minX) / cellSize));
+        int cy = Math.min(rows - 1, (int) ((py - minY) / cellSize));
+        return cy * columns + cx;
+    }
+
+    /** Collects nodes and roads; ids are mapped to dense indices in declaration order. */
+    public static final class Builder {
+        private final Map<Integer, Integer> indexOf = new HashMap<>();
+        private double[] nx = new double[64], ny = new double[64];
+        private int nodeCount;
+        private int[] from = new int[128], to = new int[128];
+        private double[] speed = new double[128];
+        private int edgeCount;
+
+        public Builder node(int id, double x, double y) {
+            if (indexOf.putIfAbsent(id, nodeCount) != null) {
+                throw new IllegalArgumentException("duplicate node " + id);
+            }
+            if (nodeCount == nx.length) {
+                nx = Arrays.copyOf(nx, nodeCount * 2);
+                ny = Arrays.copyOf(ny, nodeCount * 2);
+            }
+            nx[nodeCount] = x;
+            ny[nodeCount] = y;
+            nodeCount++;
+            return this;
+        }
+
+        /** Adds a road between two declared node ids. */
+        public Builder road(int fromId, int toId, double speedLimit, boolean oneway) {
+            return edge(indexOfId(fromId), indexOfId(toId), speedLimit, oneway);
+        }
+
+        private int index(String id) {
+            return indexOfId(Integer.parseInt(id));
+        }
+
+        private int indexOfId(int id) {
+            Integer index = indexOf.get(id);
+            if (index == null) {
+                throw new IllegalArgumentException("unknown node " + id);
+            }
+            return index;
+        }
+
+        private Builder edge(int u, int v, double speedLimit, boolean oneway) {
+            if (!(speedLimit > 0)) {
+                throw new IllegalArgumentException("speed must be positive");
+            }
+            add(u, v, speedLimit);
+            if (!oneway) {
+                add(v, u, speedLimit);
+            }
+            return this;
+        }
+
+        private void add(int u, int v, double speedLimit) {
+            if (edgeCount == from.length) {
+                from = Arrays.copyOf(from, edgeCount * 2);
+                to = Arrays.copyOf(to, edgeCount * 2);
+                speed = Arrays.copyOf(speed, edgeCount * 2);
+            }
+            from[edgeCount] = u;
+            to[edgeCount] = v;
+            speed[edgeCount] = speedLimit;
+            edgeCount++;
+        }
+
+        public RoadGraph build() {
+            return new RoadGraph(Arrays.copyOf(nx, nodeCount), Arrays.copyOf(ny, nodeCount),
+                    edgeCount, from, to, speed);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package routing;
+
+/**
+ * A drivable route: waypoints from the first intersection to the requested target, each
+ * with the speed factor (speed limit over the network's top speed) of the leg that ends
+ * there. Immutable; movement progress is tracked by whoever follows it.
+ */
+public final class Route {
+    private final double[] xs;
+    private final double[] ys;
+    private final float[] factors;
+    private final double cost;
+    private final double length;
+
+    Route(double[] xs, double[] ys, float[] factors, double cost, double length) {
+        this.xs = xs;
+        this.ys = ys;
+        this.factors = factors;
+        this.cost = cost;
+        this.length = length;
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    public double getY(int i) {
+        return ys[i];
+    }
+
+    /** Speed factor of the leg that ends at waypoint {@code i}, in (0, 1]. */
+    public float getFactor(int i) {
+        return factors[i];
+    }
+
+    /** Travel time in map units at the network's top speed; see {@link RoadGraph}. */
+    public double getCost() {
+        return cost;
+    }
+
+    /** Driven distance in map units. */
+    public double getLength() {
+        return length;
+    }
+}
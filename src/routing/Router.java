@@ -0,0 +1,265 @@
+package routing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import util.Metrics;
+
+/**
+ * SCD Concept: Memoized Shortest Paths
+ * Answers point-to-point route queries on a {@link RoadGraph}. Points are snapped to
+ * their nearest intersection, and the path between the two intersections comes from an
+ * LRU cache or a {@link ContractionHierarchy} query. The hierarchy is built in the
+ * constructor (about a second for 100k intersections) and again when a road's speed
+ * changes, which also clears the cache. Dispatch scoring can use the cheaper
+ * {@link #estimate}, backed by an {@link EtaMatrix} of cell-to-cell travel times.
+ *
+ * Thread-safe. A query borrows scratch arrays from a pool (as many as there were
+ * concurrent queries, not one per taxi thread); the cache is split into independently
+ * locked LRU segments, so taxi threads rarely wait on each other.
+ */
+public final class Router {
+    private static final Metrics.Counter CACHE_HITS = Metrics.counter("route_cache_hits_total",
+            "Route queries answered from the path cache");
+    private static final Metrics.Counter CACHE_MISSES = Metrics.counter("route_cache_misses_total",
+            "Route queries that searched the contraction hierarchy");
+    private static final Metrics.Histogram SEARCH_DURATION = Metrics.histogram("route_search_seconds",
+            "Wall time of one hierarchy search on a cache miss", 1_000_000);
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] cache = new Segment[SEGMENTS];
+    private final EtaMatrix etas; // null: estimates are exact route costs
+    private volatile Network network;
+
+    /** A graph with its hierarchy; replaced as a whole when a road changes. */
+    private static final class Network {
+        final RoadGraph graph;
+        final ContractionHierarchy hierarchy;
+        final ConcurrentLinkedQueue<ContractionHierarchy.Query> idleQueries = new ConcurrentLinkedQueue<>();
+
+        Network(RoadGraph graph) {
+            this.graph = graph;
+            this.hierarchy = new ContractionHierarchy(graph);
+        }
+
+        double search(int s, int t, ContractionHierarchy.IntList nodes) {
+            ContractionHierarchy.Query query = idleQueries.poll();
+            if (query == null) {
+                query = hierarchy.new Query();
+            }
+            double cost = query.shortestPath(s, t, nodes);
+            idleQueries.offer(query);
+            return cost;
+        }
+    }
+
+    /** Road nodes from one intersection to another and the cost; null nodes when unreachable. */
+    private static final class Path {
+        final int[] nodes;
+        final double cost;
+
+        Path(int[] nodes, double cost) {
+            this.nodes = nodes;
+            this.cost = cost;
+        }
+    }
+
+    /** One LRU slice of the route cache; callers hold its monitor. */
+    private static final class Segment {
+        private final LinkedHashMap<Long, Path> paths = new LinkedHashMap<>(16, 0.75f, true); // access order
+        private final int capacity;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        Path get(long key) {
+            return paths.get(key);
+        }
+
+        void put(long key, Path path) {
+            paths.put(key, path);
+            if (paths.size() > capacity) {
+                Iterator<Long> eldest = paths.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        void clear() {
+            paths.clear();
+        }
+    }
+
+    /**
+     * @param cacheSize how many intersection pairs to remember; 0 disables the cache
+     */
+    public Router(RoadGraph graph, int cacheSize) {
+        this(graph, cacheSize, 0);
+    }
+
+    /**
+     * @param etaCellSize cell size of the ETA matrix in map units; 0 makes estimates exact
+     */
+    public Router(RoadGraph graph, int cacheSize, double etaCellSize) {
+        this.network = new Network(graph);
+        for (int i = 0; i < SEGMENTS; i++) {
+            cache[i] = new Segment((cacheSize + SEGMENTS - 1) / SEGMENTS);
+        }
+        this.etas = etaCellSize > 0 ? new EtaMatrix(this, etaCellSize) : null;
+    }
+
+    public RoadGraph getGraph() {
+        return network.graph;
+    }
+
+    /** Shortcuts the hierarchy added on top of the road segments. */
+    public int getShortcutCount() {
+        return network.hierarchy.shortcutCount();
+    }
+
+    /** The ETA matrix behind {@link #estimate}, or null if estimates are exact. */
+    public EtaMatrix getEtaMatrix() {
+        return etas;
+    }
+
+    /**
+     * Changes the speed of the road segments from intersection {@code u} to {@code v}
+     * (one direction; call twice for a two-way road). Rebuilds the hierarchy, clears the
+     * route cache and invalidates the ETA matrix entries the change can affect. Taxis
+     * already driving keep the route they were given.
+     *
+     * @throws IllegalArgumentException if there is no such road, or the speed is not
+     *         positive or above the network's top speed
+     */
+    public synchronized void setRoadSpeed(int u, int v, double speed) {
+        RoadGraph old = network.graph;
+        double oldCost = old.edgeCost(u, v);
+        RoadGraph changed = old.withSpeed(u, v, speed);
+        network = new Network(changed);
+        for (Segment segment : cache) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        if (etas != null) {
+            etas.roadChanged(old, u, v, oldCost, changed.edgeCost(u, v));
+        }
+    }
+
+    /**
+     * The route from one point to another: straight to the nearest intersection, along
+     * the roads, then straight to the target. When no road connects them the route is
+     * the straight line.
+     */
+    public Route route(double fromX, double fromY, double toX, double toY) {
+        Network net = network;
+        RoadGraph graph = net.graph;
+        int s = graph.nearestNode(fromX, fromY);
+        int t = graph.nearestNode(toX, toY);
+        Path path = path(net, s, t);
+        if (path.nodes == null) {
+            double d = Math.hypot(toX - fromX, toY - fromY);
+            return new Route(new double[] {toX}, new double[] {toY}, new float[] {1f}, d, d);
+        }
+        int n = path.nodes.length;
+        boolean lastLeg = graph.x[t] != toX || graph.y[t] != toY;
+        int size = n + (lastLeg ? 1 : 0);
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        float[] factors = new float[size];
+        double first = Math.hypot(graph.x[s] - fromX, graph.y[s] - fromY);
+        double length = first;
+        factors[0] = 1f; // off-road legs are driven at full speed
+        for (int i = 0; i < n; i++) {
+            int v = path.nodes[i];
+            xs[i] = graph.x[v];
+            ys[i] = graph.y[v];
+            if (i > 0) {
+                length += Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]);
+                factors[i] = edgeFactor(graph, path.nodes[i - 1], v);
+            }
+        }
+        double last = 0;
+        if (lastLeg) {
+            xs[n] = toX;
+            ys[n] = toY;
+            factors[n] = 1f;
+            last = Math.hypot(toX - xs[n - 1], toY - ys[n - 1]);
+            length += last;
+        }
+        return new Route(xs, ys, factors, first + path.cost + last, length);
+    }
+
+    /** {@link Route#getCost()} of {@link #route}, without building the waypoints. */
+    public double cost(double fromX, double fromY, double toX, double toY) {
+        Network net = network;
+        RoadGraph graph = net.graph;
+        int s = graph.nearestNode(fromX, fromY);
+        int t = graph.nearestNode(toX, toY);
+        Path path = path(net, s, t);
+        if (path.nodes == null) {
+            return Math.hypot(toX - fromX, toY - fromY);
+        }
+        return Math.hypot(graph.x[s] - fromX, graph.y[s] - fromY) + path.cost
+                + Math.hypot(toX - graph.x[t], toY - graph.y[t]);
+    }
+
+    /**
+     * An approximate {@link #cost}, for ranking many candidates: cell-to-cell from the
+     * ETA matrix when there is one (see {@link EtaMatrix#estimate}), otherwise exact.
+     */
+    public double estimate(double fromX, double fromY, double toX, double toY) {
+        return etas != null ? etas.estimate(fromX, fromY, toX, toY) : cost(fromX, fromY, toX, toY);
+    }
+
+    /** Cost between two intersections, searched without touching the route cache. */
+    double searchCost(int s, int t) {
+        return network.search(s, t, null);
+    }
+
+    // Parallel roads: the hierarchy kept the cheapest, i.e. the fastest
+    private static float edgeFactor(RoadGraph graph, int u, int v) {
+        float best = 0f;
+        for (int e = graph.outStart[u]; e < graph.outStart[u + 1]; e++) {
+            if (graph.outTo[e] == v) {
+                best = Math.max(best, graph.outFactor[e]);
+            }
+        }
+        return best;
+    }
+
+    private Path path(Network net, int s, int t) {
+        long key = ((long) s << 32) | (t & 0xFFFFFFFFL);
+        Segment segment = cache[(int) (mix(key) & (SEGMENTS - 1))];
+        if (segment.capacity > 0) {
+            synchronized (segment) {
+                Path cached = segment.get(key);
+                if (cached != null) {
+                    CACHE_HITS.increment();
+                    return cached;
+                }
+            }
+        }
+        CACHE_MISSES.increment();
+        long start = System.nanoTime();
+        ContractionHierarchy.IntList nodes = new ContractionHierarchy.IntList();
+        double cost = net.search(s, t, nodes);
+        Path path = new Path(cost < Double.POSITIVE_INFINITY ? nodes.toArray() : null, cost);
+        SEARCH_DURATION.recordNanosSince(start);
+        if (segment.capacity > 0) {
+            synchronized (segment) {
+                if (network == net) { // not searched on a network setRoadSpeed just replaced
+                    segment.put(key, path);
+                }
+            }
+        }
+        return path;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
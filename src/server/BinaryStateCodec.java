@@ -0,0 +1,195 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import server.WebServer.PassengerInfo;
+import server.WebServer.PassengerState;
+import server.WebServer.SimulationState;
+import server.WebServer.TaxiState;
+
+/**
+ * SCD Concept: Compact Wire Format
+ * Fixed-width, little-endian encoding of the per-tick state for high-rate consumers.
+ * Only what changes every tick travels: positions as float32, statuses as ordinals and
+ * passengers as their numeric ids. Names, avatars and messages stay in the JSON format.
+ *
+ * Layout (v1):
+ * <pre>
+ * header   'T' 'X' u8 version u8 reserved
+ *          i32 queueSize, totalMalesServed, totalFemalesServed, totalPassengersServed
+ *          f32 averagePickupDistance, lastTickPickupDistance, lastTickSolveMillis
+ *          i32 taxiCount, passengerCount
+ *          u8 strategy name length, ASCII strategy name
+ * taxi     i32 id, f32 x, y, targetX, targetY, earnings, u8 status, u8 seated,
+ *          u16 reserved, i32[3] seated passenger numbers (0 = empty)        40 bytes
+ * passenger i32 number, f32 x, y, u8 status, u8 gender, u8 destination,
+ *          u8 reserved                                                     16 bytes
+ * </pre>
+ * Unknown enum values are sent as 255.
+ */
+public class BinaryStateCodec {
+    public static final String CONTENT_TYPE = "application/octet-stream";
+    public static final byte VERSION = 1;
+    public static final int HEADER_BYTES = 41; // plus the strategy name
+    public static final int TAXI_BYTES = 40;
+    public static final int PASSENGER_BYTES = 16;
+    public static final int SEATS = 3;
+
+    static final String[] TAXI_STATUSES = { "AVAILABLE", "PICKING_UP", "ON_RIDE" };
+    static final String[] PASSENGER_STATUSES = { "WAITING", "IN_RIDE" };
+    static final String[] GENDERS = { "MALE", "FEMALE" };
+    static final String[] DESTINATIONS = { "Downtown", "Airport", "Suburb A", "Shopping Mall" };
+
+    private static final int UNKNOWN = 255;
+
+    private BinaryStateCodec() {
+    }
+
+    public static int encodedSize(SimulationState state) {
+        return HEADER_BYTES + nameLength(state.dispatchStrategy)
+                + state.taxis.size() * TAXI_BYTES + state.passengers.size() * PASSENGER_BYTES;
+    }
+
+    /**
+     * Encodes into {@code reuse} if it is big enough, otherwise into a new buffer.
+     * @return the buffer, flipped and ready to be written out
+     */
+    public static ByteBuffer encode(SimulationState state, ByteBuffer reuse) {
+        int size = encodedSize(state);
+        ByteBuffer out = reuse != null && reuse.capacity() >= size
+                ? reuse
+                : ByteBuffer.allocate(Math.max(size, reuse == null ? 0 : reuse.capacity() * 2));
+        out.clear();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+
+        out.put((byte) 'T').put((byte) 'X').put(VERSION).put((byte) 0);
+        out.putInt(state.queueSize);
+        out.putInt(state.totalMalesServed);
+        out.putInt(state.totalFemalesServed);
+        out.putInt(state.totalPassengersServed);
+        out.putFloat((float) state.averagePickupDistance);
+        out.putFloat((float) state.lastTickPickupDistance);
+        out.putFloat((float) state.lastTickSolveMillis);
+        out.putInt(state.taxis.size());
+        out.putInt(state.passengers.size());
+        int nameLength = nameLength(state.dispatchStrategy);
+        out.put((byte) nameLength);
+        for (int i = 0; i < nameLength; i++) {
+            out.put((byte) state.dispatchStrategy.charAt(i));
+        }
+
+        for (int i = 0, n = state.taxis.size(); i < n; i++) {
+            TaxiState t = state.taxis.get(i);
+            out.putInt(t.id);
+            out.putFloat((float) t.x);
+            out.putFloat((float) t.y);
+            out.putFloat((float) t.targetX);
+            out.putFloat((float) t.targetY);
+            out.putFloat((float) t.earnings);
+            out.put((byte) ordinal(TAXI_STATUSES, t.status));
+            int seated = Math.min(SEATS, t.passengers.size());
+            out.put((byte) seated);
+            out.putShort((short) 0);
+            for (int s = 0; s < SEATS; s++) {
+                out.putInt(s < seated ? t.passengers.get(s).number : 0);
+            }
+        }
+
+        for (int i = 0, n = state.passengers.size(); i < n; i++) {
+            PassengerState p = state.passengers.get(i);
+            out.putInt(p.number);
+            out.putFloat((float) p.x);
+            out.putFloat((float) p.y);
+            out.put((byte) ordinal(PASSENGER_STATUSES, p.status));
+            out.put((byte) ordinal(GENDERS, p.gender));
+            out.put((byte) ordinal(DESTINATIONS, p.destination));
+            out.put((byte) 0);
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Reads a frame back into state objects. String ids, names and avatars are not part
+     * of the format and are left null; seated passengers only carry their number.
+     */
+    public static SimulationState decode(ByteBuffer in) {
+        in = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (in.get() != 'T' || in.get() != 'X') {
+            throw new IllegalArgumentException("Not a binary state frame");
+        }
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary state version " + version);
+        }
+        in.get();
+
+        SimulationState state = new SimulationState();
+        state.queueSize = in.getInt();
+        state.totalMalesServed = in.getInt();
+        state.totalFemalesServed = in.getInt();
+        state.totalPassengersServed = in.getInt();
+        state.averagePickupDistance = in.getFloat();
+        state.lastTickPickupDistance = in.getFloat();
+        state.lastTickSolveMillis = in.getFloat();
+        int taxiCount = in.getInt();
+        int passengerCount = in.getInt();
+        byte[] name = new byte[in.get() & 0xFF];
+        in.get(name);
+        state.dispatchStrategy = new String(name, StandardCharsets.US_ASCII);
+
+        for (int i = 0; i < taxiCount; i++) {
+            TaxiState t = new TaxiState();
+            t.id = in.getInt();
+            t.x = in.getFloat();
+            t.y = in.getFloat();
+            t.targetX = in.getFloat();
+            t.targetY = in.getFloat();
+            t.earnings = in.getFloat();
+            t.status = name(TAXI_STATUSES, in.get());
+            t.currentPassengers = in.get();
+            in.getShort();
+            for (int s = 0; s < SEATS; s++) {
+                int number = in.getInt();
+                if (s < t.currentPassengers) {
+                    PassengerInfo info = new PassengerInfo();
+                    info.number = number;
+                    t.passengers.add(info);
+                }
+            }
+            state.taxis.add(t);
+        }
+
+        for (int i = 0; i < passengerCount; i++) {
+            PassengerState p = new PassengerState();
+            p.number = in.getInt();
+            p.x = in.getFloat();
+            p.y = in.getFloat();
+            p.status = name(PASSENGER_STATUSES, in.get());
+            p.gender = name(GENDERS, in.get());
+            p.destination = name(DESTINATIONS, in.get());
+            in.get();
+            state.passengers.add(p);
+        }
+        return state;
+    }
+
+    private static int nameLength(String name) {
+        return name == null ? 0 : Math.min(255, name.length());
+    }
+
+    private static int ordinal(String[] names, String value) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(value)) {
+                return i;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static String name(String[] names, byte ordinal) {
+        int i = ordinal & 0xFF;
+        return i < names.length ? names[i] : null;
+    }
+}
@@ -0,0 +1,571 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * SCD Concept: Streaming Parsing
+ * A single-pass pull parser over a UTF-8 byte array. Callers walk the document token by
+ * token (beginObject, nextName, nextInt, ...), so a large request body can be consumed
+ * record by record without building a tree. Numbers are parsed in place and strings are
+ * only materialized when asked for. Not thread-safe.
+ */
+public final class JsonReader {
+    /** The kind of the next token, as returned by {@link #peek()}. */
+    public enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    // Scopes on the nesting stack
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private static final int MAX_DEPTH = 512;
+
+    private final byte[] buf;
+    private final int limit;
+    private int pos;
+    private Token peeked;
+
+    private int[] stack = new int[32];
+    private int depth = 1;
+    private boolean multipleDocuments;
+
+    public JsonReader(String json) {
+        this(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public JsonReader(byte[] json) {
+        this(json, 0, json.length);
+    }
+
+    public JsonReader(byte[] json, int offset, int length) {
+        this.buf = json;
+        this.pos = offset;
+        this.limit = offset + length;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Accepts a sequence of top-level values separated by whitespace, e.g. NDJSON.
+     * {@link #hasNext()} then stays true until the input is exhausted.
+     */
+    public JsonReader setMultipleDocuments(boolean multipleDocuments) {
+        this.multipleDocuments = multipleDocuments;
+        return this;
+    }
+
+    public Token peek() {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[depth - 1];
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                break;
+            case NONEMPTY_ARRAY: {
+                int c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                pos++;
+                break;
+            }
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT: {
+                int c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    pos++;
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                return peeked = Token.NAME;
+            }
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                pos++;
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                if (nextNonWhitespace() == -1) {
+                    return peeked = Token.END_DOCUMENT; // empty input
+                }
+                break;
+            case NONEMPTY_DOCUMENT:
+                if (nextNonWhitespace() == -1) {
+                    return peeked = Token.END_DOCUMENT;
+                }
+                if (!multipleDocuments) {
+                    throw syntaxError("Unexpected data after the document");
+                }
+                break;
+            default:
+                throw new IllegalStateException("Corrupt reader state");
+        }
+
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case '"':
+                return peeked = Token.STRING;
+            case 't':
+            case 'f':
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                return peeked = Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return peeked = Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public boolean hasNext() {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() {
+        expect(Token.BEGIN_OBJECT);
+        pos++;
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() {
+        expect(Token.END_OBJECT);
+        pos++;
+        depth--;
+    }
+
+    public void beginArray() {
+        expect(Token.BEGIN_ARRAY);
+        pos++;
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() {
+        expect(Token.END_ARRAY);
+        pos++;
+        depth--;
+    }
+
+    /** Fails unless the whole input has been consumed (apart from whitespace). */
+    public void endDocument() {
+        expect(Token.END_DOCUMENT);
+    }
+
+    public String nextName() {
+        expect(Token.NAME);
+        String name = readName();
+        stack[depth - 1] = DANGLING_NAME;
+        return name;
+    }
+
+    public String nextString() {
+        expect(Token.STRING);
+        return readString();
+    }
+
+    public boolean nextBoolean() {
+        expect(Token.BOOLEAN);
+        if (matchLiteral("true")) {
+            return true;
+        }
+        if (matchLiteral("false")) {
+            return false;
+        }
+        throw syntaxError("Expected true or false");
+    }
+
+    public void nextNull() {
+        expect(Token.NULL);
+        if (!matchLiteral("null")) {
+            throw syntaxError("Expected null");
+        }
+    }
+
+    public long nextLong() {
+        expect(Token.NUMBER);
+        int start = pos;
+        long value = scanNumber();
+        if (integral) {
+            return value;
+        }
+        double d = parseDouble(start);
+        if (d != (long) d) {
+            pos = start;
+            peeked = Token.NUMBER;
+            throw syntaxError("Expected an integer");
+        }
+        return (long) d;
+    }
+
+    public int nextInt() {
+        int start = pos;
+        long value = nextLong();
+        if (value != (int) value) {
+            pos = start;
+            peeked = Token.NUMBER;
+            throw syntaxError("Integer out of range");
+        }
+        return (int) value;
+    }
+
+    public double nextDouble() {
+        expect(Token.NUMBER);
+        int start = pos;
+        long value = scanNumber();
+        return integral ? value : parseDouble(start);
+    }
+
+    /** An Integer, Long or Double, whichever is the narrowest exact fit for the literal. */
+    public Number nextNumber() {
+        expect(Token.NUMBER);
+        int start = pos;
+        long value = scanNumber();
+        if (!integral) {
+            return parseDouble(start);
+        }
+        if (value == (int) value) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    /** Skips the next value, including everything nested inside it. */
+    public void skipValue() {
+        int nested = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    nested++;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    nested++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    nested--;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    nested--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case STRING:
+                    expect(Token.STRING);
+                    skipString();
+                    break;
+                case NUMBER:
+                    nextDouble();
+                    break;
+                case BOOLEAN:
+                    nextBoolean();
+                    break;
+                case NULL:
+                    nextNull();
+                    break;
+                default:
+                    throw syntaxError("Nothing to skip");
+            }
+        } while (nested > 0);
+    }
+
+    /** Byte offset of the next unread character, for error messages. */
+    public int position() {
+        return pos;
+    }
+
+    private void expect(Token token) {
+        Token actual = peek();
+        if (actual != token) {
+            throw syntaxError("Expected " + token + " but was " + actual);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) {
+            if (depth == MAX_DEPTH) {
+                throw syntaxError("Nested deeper than " + MAX_DEPTH);
+            }
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = scope;
+    }
+
+    private int nextNonWhitespace() {
+        while (pos < limit) {
+            byte c = buf[pos];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c & 0xFF;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private boolean matchLiteral(String literal) {
+        int n = literal.length();
+        if (pos + n > limit) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (buf[pos + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        if (pos + n < limit && isLiteralChar(buf[pos + n])) {
+            return false; // e.g. "nullx"
+        }
+        pos += n;
+        return true;
+    }
+
+    private static boolean isLiteralChar(byte c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    // Set by scanNumber: true if the literal had no fraction or exponent and fit in a long
+    private boolean integral;
+
+    /**
+     * Validates the number at {@code pos} against the JSON grammar and moves past it.
+     * Returns its value when it is an integer that fits in a long (see {@link #integral}).
+     */
+    private long scanNumber() {
+        int start = pos;
+        boolean negative = false;
+        if (buf[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+        if (pos >= limit || !isDigit(buf[pos])) {
+            throw syntaxError("Malformed number");
+        }
+        long value = 0; // accumulated negatively so Long.MIN_VALUE fits
+        boolean overflow = false;
+        if (buf[pos] == '0') {
+            pos++;
+        } else {
+            while (pos < limit && isDigit(buf[pos])) {
+                int digit = buf[pos] - '0';
+                if (value < (Long.MIN_VALUE + digit) / 10) {
+                    overflow = true;
+                }
+                value = value * 10 - digit;
+                pos++;
+            }
+        }
+        boolean fraction = false;
+        if (pos < limit && buf[pos] == '.') {
+            fraction = true;
+            pos++;
+            if (pos >= limit || !isDigit(buf[pos])) {
+                throw syntaxError("Malformed number");
+            }
+            while (pos < limit && isDigit(buf[pos])) {
+                pos++;
+            }
+        }
+        if (pos < limit && (buf[pos] == 'e' || buf[pos] == 'E')) {
+            fraction = true;
+            pos++;
+            if (pos < limit && (buf[pos] == '+' || buf[pos] == '-')) {
+                pos++;
+            }
+            if (pos >= limit || !isDigit(buf[pos])) {
+                throw syntaxError("Malformed number");
+            }
+            while (pos < limit && isDigit(buf[pos])) {
+                pos++;
+            }
+        }
+        if (pos < limit && isLiteralChar(buf[pos])) {
+            pos = start;
+            throw syntaxError("Malformed number");
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            overflow = true;
+        }
+        integral = !fraction && !overflow;
+        return negative ? value : -value;
+    }
+
+    private double parseDouble(int start) {
+        double value = Double.parseDouble(new String(buf, start, pos - start, StandardCharsets.US_ASCII));
+        if (Double.isInfinite(value)) { // JSON has no infinity, so the value could never be written back
+            pos = start;
+            peeked = Token.NUMBER;
+            throw syntaxError("Number out of range");
+        }
+        return value;
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Field names repeat on every record of a bulk body; decode each distinct one once
+    private static final int NAME_CACHE_SIZE = 64;
+    private final String[] nameCache = new String[NAME_CACHE_SIZE];
+    private final byte[][] nameCacheBytes = new byte[NAME_CACHE_SIZE][];
+
+    private String readName() {
+        int start = pos + 1;
+        int end = start;
+        int hash = 0;
+        while (end < limit) {
+            byte c = buf[end];
+            if (c == '"') {
+                break;
+            }
+            if (c == '\\' || (c >= 0 && c < 0x20)) {
+                return readString(); // rare: escaped names are not cached
+            }
+            hash = 31 * hash + c;
+            end++;
+        }
+        if (end >= limit) {
+            return readString(); // reports the unterminated string
+        }
+        int slot = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        byte[] cached = nameCacheBytes[slot];
+        if (cached != null && Arrays.equals(cached, 0, cached.length, buf, start, end)) {
+            pos = end + 1;
+            return nameCache[slot];
+        }
+        String name = new String(buf, start, end - start, StandardCharsets.UTF_8);
+        nameCacheBytes[slot] = Arrays.copyOfRange(buf, start, end);
+        nameCache[slot] = name;
+        pos = end + 1;
+        return name;
+    }
+
+    private String readString() {
+        pos++; // opening quote
+        int start = pos;
+        // Fast path: no escapes, decode the bytes in one go
+        while (pos < limit) {
+            byte c = buf[pos];
+            if (c == '"') {
+                String s = new String(buf, start, pos - start, StandardCharsets.UTF_8);
+                pos++;
+                return s;
+            }
+            if (c == '\\' || (c >= 0 && c < 0x20)) {
+                break;
+            }
+            pos++;
+        }
+        StringBuilder sb = new StringBuilder(pos - start + 16);
+        int segment = start;
+        while (pos < limit) {
+            byte c = buf[pos];
+            if (c == '"') {
+                sb.append(new String(buf, segment, pos - segment, StandardCharsets.UTF_8));
+                pos++;
+                return sb.toString();
+            }
+            if (c >= 0 && c < 0x20) {
+                throw syntaxError("Unescaped control character in string");
+            }
+            if (c == '\\') {
+                sb.append(new String(buf, segment, pos - segment, StandardCharsets.UTF_8));
+                pos++;
+                sb.append(readEscape());
+                segment = pos;
+            } else {
+                pos++;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private void skipString() {
+        pos++;
+        while (pos < limit) {
+            byte c = buf[pos++];
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                readEscape();
+            } else if (c >= 0 && c < 0x20) {
+                pos--;
+                throw syntaxError("Unescaped control character in string");
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private char readEscape() {
+        if (pos >= limit) {
+            throw syntaxError("Unterminated escape");
+        }
+        byte c = buf[pos++];
+        switch (c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u': {
+                if (pos + 4 > limit) {
+                    throw syntaxError("Unterminated escape");
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(buf[pos++], 16);
+                    if (digit < 0) {
+                        throw syntaxError("Malformed unicode escape");
+                    }
+                    value = value << 4 | digit;
+                }
+                return (char) value;
+            }
+            default:
+                throw syntaxError("Invalid escape '\\" + (char) c + "'");
+        }
+    }
+
+    private IllegalArgumentException syntaxError(String message) {
+        return new IllegalArgumentException(message + " at offset " + pos);
+    }
+}
@@ -1,85 +1,225 @@
 package server;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import server.WebServer.PassengerInfo;
+import server.WebServer.PassengerState;
+import server.WebServer.SimulationState;
+import server.WebServer.TaxiState;
 
+/**
+ * SCD Concept: Serialization
+ * The state classes served on every tick have hand-written codecs; anything else goes
+ * through a reflective fallback whose field list is looked up once per class.
+ */
 public class JsonUtil {
+    private static final ClassValue<Field[]> PUBLIC_FIELDS = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            return type.getFields();
+        }
+    };
+
     public static String toJson(Object obj) {
-        if (obj == null) return "null";
-        if (obj instanceof Number || obj instanceof Boolean) return obj.toString();
-        if (obj instanceof String) return "\"" + escape((String) obj) + "\"";
-        
-        if (obj instanceof Collection) {
-            StringBuilder sb = new StringBuilder("[");
-            boolean first = true;
+        JsonWriter out = new JsonWriter();
+        write(out, obj);
+        return out.toString();
+    }
+
+    /** Serializes {@code obj} as the next value of {@code out}. */
+    public static void write(JsonWriter out, Object obj) {
+        if (obj == null) {
+            out.nullValue();
+        } else if (obj instanceof String) {
+            out.value((String) obj);
+        } else if (obj instanceof TaxiState) {
+            writeTaxi(out, (TaxiState) obj);
+        } else if (obj instanceof PassengerState) {
+            writePassenger(out, (PassengerState) obj);
+        } else if (obj instanceof PassengerInfo) {
+            writePassengerInfo(out, (PassengerInfo) obj);
+        } else if (obj instanceof SimulationState) {
+            writeState(out, (SimulationState) obj);
+        } else if (obj instanceof Integer || obj instanceof Long || obj instanceof Short || obj instanceof Byte) {
+            out.value(((Number) obj).longValue());
+        } else if (obj instanceof Double || obj instanceof Float) {
+            out.value(((Number) obj).doubleValue());
+        } else if (obj instanceof Boolean) {
+            out.value((boolean) (Boolean) obj);
+        } else if (obj instanceof Number) {
+            out.rawValue(obj.toString());
+        } else if (obj instanceof List) {
+            writeList(out, (List<?>) obj);
+        } else if (obj instanceof Collection) {
+            out.beginArray();
             for (Object item : (Collection<?>) obj) {
-                if (!first) sb.append(",");
-                sb.append(toJson(item));
-                first = false;
+                write(out, item);
             }
-            sb.append("]");
-            return sb.toString();
-        }
-        
-        if (obj instanceof Map) {
-            StringBuilder sb = new StringBuilder("{");
-            boolean first = true;
+            out.endArray();
+        } else if (obj instanceof Map) {
+            out.beginObject();
             for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
-                if (!first) sb.append(",");
-                sb.append(toJson(entry.getKey().toString())).append(":").append(toJson(entry.getValue()));
-                first = false;
+                out.name(entry.getKey().toString());
+                write(out, entry.getValue());
             }
-            sb.append("}");
-            return sb.toString();
+            out.endObject();
+        } else {
+            writeFields(out, obj);
+        }
+    }
+
+    public static void writeState(JsonWriter out, SimulationState s) {
+        out.beginObject();
+        out.name("taxis");
+        writeList(out, s.taxis);
+        out.name("passengers");
+        writeList(out, s.passengers);
+        out.name("queueSize").value(s.queueSize);
+        out.name("totalMalesServed").value(s.totalMalesServed);
+        out.name("totalFemalesServed").value(s.totalFemalesServed);
+        out.name("totalPassengersServed").value(s.totalPassengersServed);
+        out.name("dispatchStrategy").value(s.dispatchStrategy);
+        out.name("averagePickupDistance").value(s.averagePickupDistance);
+        out.name("lastTickPickupDistance").value(s.lastTickPickupDistance);
+        out.name("lastTickSolveMillis").value(s.lastTickSolveMillis);
+        out.endObject();
+    }
+
+    public static void writeTaxi(JsonWriter out, TaxiState t) {
+        out.beginObject();
+        out.name("id").value(t.id);
+        out.name("x").value(t.x);
+        out.name("y").value(t.y);
+        out.name("targetX").value(t.targetX);
+        out.name("targetY").value(t.targetY);
+        out.name("status").value(t.status);
+        out.name("earnings").value(t.earnings);
+        out.name("currentPassengers").value(t.currentPassengers);
+        out.name("driverName").value(t.driverName);
+        out.name("driverAvatarUrl").value(t.driverAvatarUrl);
+        out.name("message").value(t.message);
+        out.name("passengers");
+        writeList(out, t.passengers);
+        out.endObject();
+    }
+
+    public static void writePassenger(JsonWriter out, PassengerState p) {
+        out.beginObject();
+        out.name("id").value(p.id);
+        out.name("number").value(p.number);
+        out.name("gender").value(p.gender);
+        out.name("name").value(p.name);
+        out.name("avatarUrl").value(p.avatarUrl);
+        out.name("x").value(p.x);
+        out.name("y").value(p.y);
+        out.name("destination").value(p.destination);
+        out.name("status").value(p.status);
+        out.endObject();
+    }
+
+    public static void writePassengerInfo(JsonWriter out, PassengerInfo p) {
+        out.beginObject();
+        out.name("id").value(p.id);
+        out.name("number").value(p.number);
+        out.name("gender").value(p.gender);
+        out.name("name").value(p.name);
+        out.name("avatarUrl").value(p.avatarUrl);
+        out.name("destination").value(p.destination);
+        out.endObject();
+    }
+
+    private static void writeList(JsonWriter out, List<?> list) {
+        if (list == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (int i = 0, n = list.size(); i < n; i++) { // no iterator allocation
+            write(out, list.get(i));
         }
-        
-        // POJO reflection
-        StringBuilder sb = new StringBuilder("{");
-        boolean first = true;
+        out.endArray();
+    }
+
+    // Fallback for classes without a codec
+    private static void writeFields(JsonWriter out, Object obj) {
+        out.beginObject();
         try {
-            for (Field field : obj.getClass().getFields()) {
-                if (!first) sb.append(",");
-                sb.append("\"").append(field.getName()).append("\":");
-                sb.append(toJson(field.get(obj)));
-                first = false;
+            for (Field field : PUBLIC_FIELDS.get(obj.getClass())) {
+                out.name(field.getName());
+                write(out, field.get(obj));
             }
-        } catch (Exception e) {
+        } catch (IllegalAccessException e) {
             e.printStackTrace();
         }
-        sb.append("}");
-        return sb.toString();
-    }
-    
-    private static String escape(String s) {
-        return s.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+        out.endObject();
     }
 
+    /**
+     * Parses a JSON object into maps, lists, strings, numbers (Integer, Long or Double),
+     * booleans and nulls. Blank input gives an empty map.
+     * @throws IllegalArgumentException if the input is not a well-formed JSON object
+     */
     public static Map<String, Object> fromJson(String json) {
-        Map<String, Object> map = new HashMap<>();
-        if (json == null) return map;
-        json = json.trim();
-        if (json.startsWith("{") && json.endsWith("}")) {
-            json = json.substring(1, json.length() - 1);
-            String[] pairs = json.split(",");
-            for (String pair : pairs) {
-                String[] parts = pair.split(":");
-                if (parts.length == 2) {
-                    String key = parts[0].trim().replace("\"", "");
-                    String value = parts[1].trim();
-                    if (value.matches("-?\\d+")) {
-                        map.put(key, Integer.parseInt(value));
-                    } else {
-                        map.put(key, value.replace("\"", ""));
-                    }
+        if (json == null || json.trim().isEmpty()) {
+            return new HashMap<>();
+        }
+        return fromJson(new JsonReader(json));
+    }
+
+    public static Map<String, Object> fromJson(byte[] json) {
+        return fromJson(new JsonReader(json));
+    }
+
+    private static Map<String, Object> fromJson(JsonReader in) {
+        if (in.peek() == JsonReader.Token.END_DOCUMENT) {
+            return new HashMap<>();
+        }
+        if (in.peek() != JsonReader.Token.BEGIN_OBJECT) {
+            throw new IllegalArgumentException("Expected a JSON object");
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) readValue(in);
+        in.endDocument();
+        return map;
+    }
+
+    /** Reads the next value of {@code in} as plain Java objects. */
+    public static Object readValue(JsonReader in) {
+        switch (in.peek()) {
+            case BEGIN_OBJECT: {
+                Map<String, Object> map = new HashMap<>();
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    map.put(name, readValue(in));
+                }
+                in.endObject();
+                return map;
+            }
+            case BEGIN_ARRAY: {
+                List<Object> list = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    list.add(readValue(in));
                 }
+                in.endArray();
+                return list;
             }
+            case STRING:
+                return in.nextString();
+            case NUMBER:
+                return in.nextNumber();
+            case BOOLEAN:
+                return in.nextBoolean();
+            case NULL:
+                in.nextNull();
+                return null;
+            default:
+                throw new IllegalArgumentException("Unexpected " + in.peek() + " at offset " + in.position());
         }
-        return map;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,298 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * SCD Concept: Streaming Serialization
+ * Writes JSON as UTF-8 straight into one growable byte buffer in a single pass. Commas
+ * are inserted automatically, so codecs just call name/value in field order. A writer is
+ * reused across requests via {@link #reset()} and is not thread-safe.
+ */
+public final class JsonWriter {
+    private static final int MAX_DEPTH = 64;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+    private byte[] buf;
+    private int len;
+    private int depth;
+    private final boolean[] first = new boolean[MAX_DEPTH];
+    private boolean afterName;
+
+    public JsonWriter() {
+        this(1024);
+    }
+
+    public JsonWriter(int initialCapacity) {
+        buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /** Clears the output, keeping the buffer for the next document. */
+    public JsonWriter reset() {
+        len = 0;
+        depth = 0;
+        afterName = false;
+        return this;
+    }
+
+    public JsonWriter beginObject() {
+        beforeValue();
+        push();
+        write('{');
+        return this;
+    }
+
+    public JsonWriter endObject() {
+        depth--;
+        write('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() {
+        beforeValue();
+        push();
+        write('[');
+        return this;
+    }
+
+    public JsonWriter endArray() {
+        depth--;
+        write(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) {
+        if (!first[depth]) {
+            write(',');
+        }
+        first[depth] = false;
+        writeString(name);
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String s) {
+        beforeValue();
+        if (s == null) {
+            writeBytes(NULL);
+        } else {
+            writeString(s);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long v) {
+        beforeValue();
+        writeLong(v);
+        return this;
+    }
+
+    /**
+     * Same text as {@link Double#toString(double)}. Whole and half values (every grid
+     * position and 1.5-unit movement step) are written without allocating.
+     */
+    public JsonWriter value(double v) {
+        beforeValue();
+        double twice = v * 2;
+        if (twice == (long) twice && v > -1e7 && v < 1e7 && (v != 0 || 1 / v > 0)) {
+            long halves = (long) twice;
+            if (halves < 0) {
+                write('-');
+                halves = -halves;
+            }
+            writeLong(halves >> 1);
+            write('.');
+            write((halves & 1) == 0 ? '0' : '5');
+        } else {
+            writeAscii(Double.toString(v));
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean v) {
+        beforeValue();
+        writeBytes(v ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter nullValue() {
+        beforeValue();
+        writeBytes(NULL);
+        return this;
+    }
+
+    /** Appends already-encoded JSON (e.g. a cached fragment) as the next value. */
+    public JsonWriter rawValue(byte[] json, int offset, int length) {
+        beforeValue();
+        ensure(length);
+        System.arraycopy(json, offset, buf, len, length);
+        len += length;
+        return this;
+    }
+
+    /** Appends an already-encoded ASCII token such as a BigDecimal's text. */
+    public JsonWriter rawValue(String json) {
+        beforeValue();
+        writeAscii(json);
+        return this;
+    }
+
+    public int length() {
+        return len;
+    }
+
+    /** The internal buffer; only the first {@link #length()} bytes are valid. */
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, len);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, len);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buf, 0, len, StandardCharsets.UTF_8);
+    }
+
+    private void push() {
+        if (++depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH);
+        }
+        first[depth] = true;
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (!first[depth]) {
+                write(',');
+            }
+            first[depth] = false;
+        }
+    }
+
+    private void writeString(String s) {
+        int n = s.length();
+        ensure(n + 2);
+        byte[] b = buf;
+        int pos = len;
+        b[pos++] = '"';
+        int i = 0;
+        // Fast path: plain ASCII needs no escaping and no UTF-8 encoding
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || c >= 0x80 || c == '"' || c == '\\') {
+                break;
+            }
+            b[pos++] = (byte) c;
+        }
+        len = pos;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                write(c);
+            } else if (c < 0x80) {
+                writeEscaped(c);
+            } else if (c < 0x800) {
+                ensure(2);
+                buf[len++] = (byte) (0xC0 | (c >> 6));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                ensure(4);
+                buf[len++] = (byte) (0xF0 | (cp >> 18));
+                buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[len++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                write('?'); // unpaired surrogate
+            } else {
+                ensure(3);
+                buf[len++] = (byte) (0xE0 | (c >> 12));
+                buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        write('"');
+    }
+
+    private void writeEscaped(char c) {
+        ensure(6);
+        buf[len++] = '\\';
+        switch (c) {
+            case '"': buf[len++] = '"'; break;
+            case '\\': buf[len++] = '\\'; break;
+            case '\n': buf[len++] = 'n'; break;
+            case '\r': buf[len++] = 'r'; break;
+            case '\t': buf[len++] = 't'; break;
+            default:
+                buf[len++] = 'u';
+                buf[len++] = '0';
+                buf[len++] = '0';
+                buf[len++] = HEX[c >> 4];
+                buf[len++] = HEX[c & 0xF];
+        }
+    }
+
+    private void writeLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            writeAscii(Long.toString(v));
+            return;
+        }
+        ensure(20);
+        if (v < 0) {
+            buf[len++] = '-';
+            v = -v;
+        }
+        int start = len;
+        do {
+            buf[len++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        // Digits were written least significant first
+        for (int i = start, j = len - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+    }
+
+    private void writeAscii(String s) {
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            buf[len++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, len, bytes.length);
+        len += bytes.length;
+    }
+
+    private void write(char c) {
+        ensure(1);
+        buf[len++] = (byte) c;
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package server;
+
+import components.BookingSystem;
+import components.DispatchStrategy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import models.Gender;
+import models.Passenger;
+import models.Taxi;
+import util.SimulationClock;
+import util.SimulationConstants;
+
+/**
+ * SCD Concept: Multi-Tenancy (Isolated World)
+ * One simulation world of its own: booking system, fleet, manual clock, snapshots and
+ * stream. Nothing runs on threads of its own; the registry's shared workers call
+ * {@link #step()} once per tick, and every taxi advances cooperatively through
+ * {@link Taxi#step(long)}. Every change to the world goes through this object's lock, so
+ * a step and an HTTP request never interleave; requests do their parsing and write their
+ * response outside it, so a slow client never holds up a shared worker.
+ */
+public class Session {
+    private final String id;
+    private final long seed;
+    private final String dispatch;
+    private final int ticksPerStep;
+    private final int maxTaxis;
+    private final int maxWaiting;
+    private final SnapshotPublisher snapshots = new SnapshotPublisher();
+    private final StateStream stream = new StateStream();
+    private final AtomicBoolean queued = new AtomicBoolean();
+
+    private BookingSystem bookingSystem;
+    private final List<Taxi> taxis = new ArrayList<>();
+    private SplittableRandom patrolRandom;
+    private long ticks = 0;
+    private long steps = 0;
+    private volatile boolean running = false;
+    private volatile boolean closed = false;
+    private volatile long lastAccessNanos = System.nanoTime();
+
+    /**
+     * @param ticksPerStep simulated ticks per wall-clock tick, i.e. the speed multiplier
+     */
+    Session(String id, long seed, String dispatch, int ticksPerStep, int maxTaxis, int maxWaiting) {
+        this.id = id;
+        this.seed = seed;
+        this.dispatch = dispatch;
+        this.ticksPerStep = ticksPerStep;
+        this.maxTaxis = maxTaxis;
+        this.maxWaiting = maxWaiting;
+        newWorld();
+    }
+
+    private void newWorld() {
+        bookingSystem = new BookingSystem(SimulationClock.manual(), seed);
+        bookingSystem.setExportsMetrics(false); // the process-wide series describe the default world
+        bookingSystem.setDispatchStrategy(DispatchStrategy.forName(dispatch));
+        bookingSystem.setRouter(WebServer.roads);
+        patrolRandom = bookingSystem.newRandom();
+        taxis.clear();
+        snapshots.publish(bookingSystem);
+    }
+
+    /** Advances the world by {@code ticksPerStep} ticks and publishes one snapshot. */
+    synchronized void step() {
+        if (!running || closed) {
+            return;
+        }
+        SimulationClock clock = bookingSystem.getClock();
+        for (int i = 0; i < ticksPerStep; i++) {
+            long now = clock.now() + SimulationConstants.TICK_MILLIS;
+            clock.advanceTo(now);
+            bookingSystem.getFleet().tick(SimulationConstants.SPEED, this::onTaxiStopped);
+            for (Taxi taxi : taxis) {
+                taxi.step(now);
+            }
+            if (++ticks % SimulationConstants.DISPATCH_EVERY_TICKS == 0) {
+                bookingSystem.dispatchTick(taxis);
+            }
+        }
+        snapshots.publish(bookingSystem);
+        if (steps++ % WebServer.STREAM_EVERY_TICKS == 0) {
+            stream.onFrame(snapshots);
+        }
+    }
+
+    private void onTaxiStopped(Taxi taxi, boolean arrivedThisTick) {
+        WebServer.patrol(taxi, patrolRandom);
+    }
+
+    synchronized void start() {
+        running = true;
+    }
+
+    /** Drops the world and starts over empty with the same seed; stream clients get a fresh keyframe. */
+    synchronized void reset() {
+        running = false;
+        newWorld();
+        stream.reset();
+    }
+
+    /** @return the new taxi's id, or -1 if the session already has its maximum */
+    synchronized int addTaxi() {
+        if (taxis.size() >= maxTaxis) {
+            return -1;
+        }
+        Taxi taxi = new Taxi(taxis.size() + 1, bookingSystem);
+        taxis.add(taxi);
+        return taxi.getId();
+    }
+
+    /**
+     * Passengers wait passively in the queue, as bulk passengers do in the default world.
+     * @return false if the waiting limit would be exceeded and nothing was added
+     */
+    synchronized boolean addPassengers(int maleCount, int femaleCount) {
+        maleCount = Math.max(0, maleCount);
+        femaleCount = Math.max(0, femaleCount);
+        if ((long) bookingSystem.getQueueSize() + maleCount + femaleCount > maxWaiting) {
+            return false;
+        }
+        List<Passenger> batch = new ArrayList<>(maleCount + femaleCount);
+        for (int i = 0; i < maleCount + femaleCount; i++) {
+            batch.add(new Passenger(i < maleCount ? Gender.MALE : Gender.FEMALE, bookingSystem));
+        }
+        return bookingSystem.addPassengersToQueue(batch, maxWaiting);
+    }
+
+    /**
+     * Queues a batch of passengers built for {@code world}. If the session was reset since,
+     * the batch goes away with the old world, as if it had been queued just before the reset.
+     * @return false if the waiting limit would be exceeded and nothing was added
+     */
+    synchronized boolean addPassengers(BookingSystem world, List<Passenger> batch) {
+        if (world != bookingSystem) {
+            return true;
+        }
+        return bookingSystem.addPassengersToQueue(batch, maxWaiting);
+    }
+
+    /** The current world; {@link #reset()} replaces it, so hold on to it only for one request. */
+    synchronized BookingSystem getBookingSystem() {
+        return bookingSystem;
+    }
+
+    /** Marks the session queued for a step; false if its previous step has not run yet. */
+    boolean tryQueue() {
+        return queued.compareAndSet(false, true);
+    }
+
+    void runQueuedStep() {
+        try {
+            step();
+        } finally {
+            queued.set(false);
+        }
+    }
+
+    void close() {
+        closed = true;
+        running = false;
+    }
+
+    void touch() {
+        lastAccessNanos = System.nanoTime();
+    }
+
+    long idleNanos(long now) {
+        return stream.hasClients() ? 0 : now - lastAccessNanos;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getTicksPerStep() {
+        return ticksPerStep;
+    }
+
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public SnapshotPublisher getSnapshots() {
+        return snapshots;
+    }
+
+    public StateStream getStream() {
+        return stream;
+    }
+
+    public synchronized int getTaxiCount() {
+        return taxis.size();
+    }
+
+    public synchronized long getSimulatedMillis() {
+        return bookingSystem.getClock().now();
+    }
+}
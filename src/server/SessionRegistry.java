@@ -0,0 +1,149 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import util.Logger;
+import util.Metrics;
+import util.SimulationConstants;
+
+/**
+ * SCD Concept: Fair Scheduling over a Bounded Pool
+ * Holds every {@link Session} in the process and runs them all on a fixed set of worker
+ * threads. Once per tick the ticker queues one step for each running session, unless its
+ * previous step is still queued; the workers take steps in FIFO order. Each session thus
+ * has at most one step in the queue, so under overload every world slows down by the same
+ * amount instead of a busy one starving the rest.
+ *
+ * Memory stays bounded by the session limit, the per-session taxi and waiting limits, and
+ * the eviction of sessions nobody has touched (and nobody is streaming) for a while.
+ *
+ * Settings: -Dsessions.max (500), -Dsessions.workers (CPU count), -Dsessions.idleSeconds
+ * (600), -Dsessions.maxTaxis (100), -Dsessions.maxWaiting (1000), -Dsessions.maxSpeed (50).
+ */
+public class SessionRegistry {
+    private static final Metrics.Histogram STEP_DURATION = Metrics.histogram("session_step_seconds",
+            "Wall time of one session step on a shared worker", 1_000_000);
+    private static final Metrics.Counter STEPS_SKIPPED = Metrics.counter("session_steps_skipped_total",
+            "Ticks a session missed because its previous step was still waiting for a worker");
+    private static final Metrics.Counter EVICTED = Metrics.counter("sessions_evicted_total",
+            "Sessions closed after staying idle past the idle timeout");
+
+    private final int maxSessions = Integer.getInteger("sessions.max", 500);
+    private final int maxTaxis = Integer.getInteger("sessions.maxTaxis", 100);
+    private final int maxWaiting = Integer.getInteger("sessions.maxWaiting", 1000);
+    private final int maxSpeed = Integer.getInteger("sessions.maxSpeed", 50);
+    private final long idleNanos = TimeUnit.SECONDS.toNanos(Long.getLong("sessions.idleSeconds", 600L));
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger();
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService ticker;
+
+    public SessionRegistry() {
+        int workerCount = Integer.getInteger("sessions.workers", Runtime.getRuntime().availableProcessors());
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("session-worker-"));
+        ticker = Executors.newSingleThreadScheduledExecutor(daemonThreads("session-ticker-"));
+        ticker.scheduleAtFixedRate(this::queueSteps, SimulationConstants.TICK_MILLIS, SimulationConstants.TICK_MILLIS,
+                TimeUnit.MILLISECONDS);
+        ticker.scheduleAtFixedRate(this::evictIdle, 10, 10, TimeUnit.SECONDS);
+
+        Metrics.gauge("sessions_active", "Sessions currently held", () -> count.get());
+        Metrics.gauge("session_steps_queued", "Session steps waiting for a worker", () -> workers.getQueue().size());
+    }
+
+    /**
+     * @param seed world seed, or null for a random one
+     * @param speed simulated ticks per tick, clamped to 1..sessions.maxSpeed
+     * @return the new session, or null if the session limit is reached
+     */
+    public Session create(Long seed, String dispatch, int speed) {
+        if (count.incrementAndGet() > maxSessions) {
+            count.decrementAndGet();
+            return null;
+        }
+        long worldSeed = seed != null ? seed : ThreadLocalRandom.current().nextLong();
+        int ticksPerStep = Math.max(1, Math.min(maxSpeed, speed));
+        while (true) {
+            String id = String.format("%016x", ThreadLocalRandom.current().nextLong());
+            Session session = new Session(id, worldSeed, dispatch == null ? "greedy" : dispatch, ticksPerStep,
+                    maxTaxis, maxWaiting);
+            if (sessions.putIfAbsent(id, session) == null) {
+                return session;
+            }
+        }
+    }
+
+    /** @return the session, marked as just used, or null if there is no such session */
+    public Session get(String id) {
+        Session session = sessions.get(id);
+        if (session != null) {
+            session.touch();
+        }
+        return session;
+    }
+
+    public boolean remove(String id) {
+        Session session = sessions.remove(id);
+        if (session == null) {
+            return false;
+        }
+        session.close();
+        count.decrementAndGet();
+        return true;
+    }
+
+    public List<Session> list() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    private void queueSteps() {
+        for (Session session : sessions.values()) {
+            if (!session.isRunning()) {
+                continue;
+            }
+            if (session.tryQueue()) {
+                workers.execute(() -> {
+                    long start = System.nanoTime();
+                    session.runQueuedStep();
+                    STEP_DURATION.recordNanosSince(start);
+                });
+            } else {
+                STEPS_SKIPPED.increment();
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Session session : sessions.values()) {
+            if (session.idleNanos(now) > idleNanos && remove(session.getId())) {
+                EVICTED.increment();
+                Logger.info("Session %s evicted after %d s idle.", session.getId(),
+                        TimeUnit.NANOSECONDS.toSeconds(idleNanos));
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger next = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + next.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,190 @@
+package server;
+
+import components.BookingSystem;
+import components.DispatchStats;
+import components.DispatchStrategy;
+import components.FleetMotion;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import models.*;
+import server.WebServer.PassengerInfo;
+import server.WebServer.PassengerState;
+import server.WebServer.SimulationState;
+import server.WebServer.TaxiState;
+
+/**
+ * SCD Concept: Double Buffering & Safe Publication
+ * Builds the world view once per tick into one of two reusable buffers, then swaps a
+ * volatile reference so readers always see a complete frame. State objects are pooled
+ * and overwritten in place, so a steady-state tick allocates nothing per entity.
+ *
+ * A reader may still be serializing a buffer when the writer comes back to reuse it
+ * two ticks later; each buffer's StampedLock detects that (optimistic read + validate)
+ * and the reader falls back to a short read lock.
+ */
+public class SnapshotPublisher {
+    private static final int SEATS = 3;
+
+    static final class Buffer {
+        final SimulationState state = new SimulationState();
+        final List<TaxiState> taxiPool = new ArrayList<>();
+        final List<PassengerState> passengerPool = new ArrayList<>();
+        final StampedLock lock = new StampedLock();
+        long version;
+    }
+
+    private final Buffer[] buffers = { new Buffer(), new Buffer() };
+    private volatile Buffer current = buffers[0];
+    private long version = 0;
+
+    // Reused per tick by the single writer thread.
+    private final Passenger[] seats = new Passenger[SEATS];
+    private Buffer writing;
+    private final Consumer<Passenger> addWaiting = this::addWaiting;
+
+    /**
+     * Captures the world into the back buffer and publishes it. Called by the update thread only.
+     */
+    public void publish(BookingSystem bookingSystem) {
+        Buffer next = current == buffers[0] ? buffers[1] : buffers[0];
+        long stamp = next.lock.writeLock();
+        try {
+            writing = next;
+            fill(next, bookingSystem);
+            next.version = ++version;
+        } finally {
+            writing = null;
+            next.lock.unlockWrite(stamp);
+        }
+        current = next;
+    }
+
+    /**
+     * Runs {@code reader} against the latest complete frame, e.g. to serialize it.
+     * The reader must not keep references to the state after it returns.
+     */
+    public <T> T read(Function<SimulationState, T> reader) {
+        Buffer buffer = current;
+        long stamp = buffer.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.apply(buffer.state);
+                if (buffer.lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Buffer was recycled underneath us; retry under the read lock.
+            }
+        }
+        stamp = buffer.lock.readLock();
+        try {
+            return reader.apply(buffer.state);
+        } finally {
+            buffer.lock.unlockRead(stamp);
+        }
+    }
+
+    public long getVersion() {
+        return current.version;
+    }
+
+    private void fill(Buffer buffer, BookingSystem bookingSystem) {
+        SimulationState state = buffer.state;
+        state.taxis.clear();
+        state.passengers.clear();
+
+        FleetMotion fleet = bookingSystem.getFleet();
+        int taxiCount = fleet.size();
+        for (int slot = 0; slot < taxiCount; slot++) {
+            Taxi taxi = fleet.getTaxi(slot);
+            TaxiState ts = pooled(buffer.taxiPool, state.taxis.size(), TaxiState::new);
+            state.taxis.add(ts);
+
+            ts.id = taxi.getId();
+            ts.driverName = taxi.getDriverName();
+            ts.driverAvatarUrl = taxi.getDriverAvatarUrl();
+            ts.status = taxi.getStatus();
+            ts.message = taxi.getLastMessage();
+            ts.earnings = taxi.getEarnings();
+            ts.x = fleet.getX(slot);
+            ts.y = fleet.getY(slot);
+            ts.targetX = fleet.getTargetX(slot);
+            ts.targetY = fleet.getTargetY(slot);
+
+            int seated = taxi.copyPassengersInto(seats);
+            ts.currentPassengers = seated;
+            List<PassengerInfo> infos = ts.passengers;
+            while (infos.size() > seated) {
+                infos.remove(infos.size() - 1);
+            }
+            for (int i = 0; i < seated; i++) {
+                Passenger p = seats[i];
+                PassengerInfo info;
+                if (i < infos.size()) {
+                    info = infos.get(i);
+                } else {
+                    info = new PassengerInfo(); // at most SEATS per taxi, then reused
+                    infos.add(info);
+                }
+                info.id = p.getId();
+                info.number = p.getNumber();
+                info.gender = p.getGender().name();
+                info.name = p.getName();
+                info.avatarUrl = p.getAvatarUrl();
+                info.destination = p.getDestination();
+
+                // In-ride passengers travel with their taxi
+                PassengerState ps = nextPassenger(buffer, p);
+                ps.x = ts.x;
+                ps.y = ts.y;
+                ps.status = "IN_RIDE";
+            }
+            Arrays.fill(seats, null);
+        }
+
+        bookingSystem.forEachWaitingPassenger(addWaiting);
+
+        state.queueSize = bookingSystem.getQueueSize();
+        state.totalMalesServed = bookingSystem.getTotalMalesServed();
+        state.totalFemalesServed = bookingSystem.getTotalFemalesServed();
+        state.totalPassengersServed = state.totalMalesServed + state.totalFemalesServed;
+        DispatchStrategy strategy = bookingSystem.getDispatchStrategy();
+        DispatchStats stats = strategy.getStats();
+        state.dispatchStrategy = strategy.getName();
+        state.averagePickupDistance = stats.getAveragePickupDistance();
+        state.lastTickPickupDistance = stats.getLastTickPickupDistance();
+        state.lastTickSolveMillis = stats.getLastTickSolveMillis();
+    }
+
+    private void addWaiting(Passenger p) {
+        PassengerState ps = nextPassenger(writing, p);
+        ps.x = p.getX();
+        ps.y = p.getY();
+        ps.status = "WAITING";
+    }
+
+    private static PassengerState nextPassenger(Buffer buffer, Passenger p) {
+        List<PassengerState> passengers = buffer.state.passengers;
+        PassengerState ps = pooled(buffer.passengerPool, passengers.size(), PassengerState::new);
+        passengers.add(ps);
+        ps.id = p.getId();
+        ps.number = p.getNumber();
+        ps.gender = p.getGender().name();
+        ps.name = p.getName();
+        ps.avatarUrl = p.getAvatarUrl();
+        ps.destination = p.getDestination();
+        return ps;
+    }
+
+    private static <T> T pooled(List<T> pool, int index, Supplier<T> factory) {
+        if (index == pool.size()) {
+            pool.add(factory.get());
+        }
+        return pool.get(index);
+    }
+}
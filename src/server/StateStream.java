@@ -0,0 +1,343 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import server.WebServer.PassengerInfo;
+import server.WebServer.PassengerState;
+import server.WebServer.SimulationState;
+import server.WebServer.TaxiState;
+
+/**
+ * SCD Concept: Producer-Consumer (Server-Sent Events)
+ * Turns published snapshots into a stream of one keyframe followed by small deltas:
+ * moved positions, status changes, and added/removed entities. Names and avatar URLs
+ * only travel in keyframes and "added" records. Each event is encoded to bytes once per
+ * frame on the update thread and written as-is to every connected client.
+ */
+public class StateStream {
+    private static final int HISTORY = 128;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition frameReady = lock.newCondition();
+    private final byte[][] deltas = new byte[HISTORY][];
+    private final long[] deltaSequences = new long[HISTORY];
+    private long sequence = 0;
+    private byte[] keyframe;
+    private long keyframeSequence = -1;
+    private int keyframeRequests = 0;
+
+    private final AtomicInteger clients = new AtomicInteger();
+
+    // Last frame sent, owned by the update thread.
+    private final Map<Integer, TaxiRecord> lastTaxis = new HashMap<>();
+    private final Map<String, PassengerRecord> lastPassengers = new HashMap<>();
+    private boolean hasBaseline = false;
+    private volatile boolean resetRequested = false;
+    private long frameCounter = 0;
+    private final JsonWriter writer = new JsonWriter(64 * 1024);
+
+    private static final class TaxiRecord {
+        double x, y, targetX, targetY, earnings;
+        String status, message;
+        String passengerIds;
+        long seen;
+    }
+
+    private static final class PassengerRecord {
+        double x, y;
+        String status;
+        long seen;
+    }
+
+    /** A frame handed to a client: its sequence number and the encoded SSE event. */
+    public static final class Frame {
+        public final long sequence;
+        public final byte[] data;
+
+        Frame(long sequence, byte[] data) {
+            this.sequence = sequence;
+            this.data = data;
+        }
+    }
+
+    public boolean hasClients() {
+        return clients.get() > 0;
+    }
+
+    public void clientConnected() {
+        clients.incrementAndGet();
+    }
+
+    public void clientDisconnected() {
+        clients.decrementAndGet();
+    }
+
+    /**
+     * Called by the update thread after each publish. Encodes a delta against the previous
+     * frame and, if any client is waiting for one, a keyframe.
+     */
+    public void onFrame(SnapshotPublisher snapshots) {
+        if (resetRequested) {
+            resetRequested = false;
+            hasBaseline = false;
+        }
+        if (!hasClients()) {
+            hasBaseline = false;
+            return;
+        }
+        boolean wantKeyframe;
+        lock.lock();
+        try {
+            wantKeyframe = keyframeRequests > 0;
+        } finally {
+            lock.unlock();
+        }
+        long frame = ++frameCounter;
+        byte[][] encoded = snapshots.read(state -> {
+            byte[][] out = {
+                    hasBaseline ? encodeDelta(state, frame) : null,
+                    wantKeyframe ? encodeKeyframe(state) : null };
+            remember(state, frame);
+            return out;
+        });
+
+        lock.lock();
+        try {
+            sequence++;
+            int index = (int) (sequence % HISTORY);
+            deltas[index] = encoded[0];
+            deltaSequences[index] = sequence;
+            if (encoded[1] != null) {
+                keyframe = encoded[1];
+                keyframeSequence = sequence;
+                keyframeRequests = 0;
+            }
+            frameReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        hasBaseline = true;
+    }
+
+    /**
+     * Forgets the baseline (e.g. after a reset reuses taxi ids), so every client is sent
+     * a fresh keyframe instead of a delta against a world that no longer exists.
+     */
+    public void reset() {
+        resetRequested = true;
+    }
+
+    /** Blocks until a keyframe newer than this call is available. */
+    public Frame awaitKeyframe(long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            long requestedAt = sequence;
+            keyframeRequests++;
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (keyframeSequence <= requestedAt) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = frameReady.awaitNanos(nanos);
+            }
+            return new Frame(keyframeSequence, keyframe);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the delta with sequence {@code next} exists.
+     * @return the delta, a frame with null data if the client fell too far behind
+     *         (it needs a new keyframe), or null on timeout
+     */
+    public Frame awaitDelta(long next, long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (sequence < next) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = frameReady.awaitNanos(nanos);
+            }
+            int index = (int) (next % HISTORY);
+            if (deltaSequences[index] != next || deltas[index] == null) {
+                return new Frame(next, null);
+            }
+            return new Frame(next, deltas[index]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private byte[] encodeDelta(SimulationState state, long frame) {
+        JsonWriter out = writer.reset();
+        out.beginObject();
+
+        out.name("taxis").beginArray();
+        for (TaxiState t : state.taxis) {
+            TaxiRecord last = lastTaxis.get(t.id);
+            if (last == null) {
+                continue;
+            }
+            last.seen = frame;
+            boolean moved = last.x != t.x || last.y != t.y;
+            boolean retargeted = last.targetX != t.targetX || last.targetY != t.targetY;
+            boolean status = !Objects.equals(last.status, t.status);
+            boolean message = !Objects.equals(last.message, t.message);
+            boolean earnings = last.earnings != t.earnings;
+            boolean seats = !last.passengerIds.equals(passengerIds(t.passengers));
+            if (!(moved || retargeted || status || message || earnings || seats)) {
+                continue;
+            }
+            out.beginObject().name("id").value(t.id);
+            if (moved) {
+                out.name("x").value(t.x).name("y").value(t.y);
+            }
+            if (retargeted) {
+                out.name("targetX").value(t.targetX).name("targetY").value(t.targetY);
+            }
+            if (status) {
+                out.name("status").value(t.status);
+            }
+            if (message) {
+                out.name("message").value(t.message);
+            }
+            if (earnings) {
+                out.name("earnings").value(t.earnings);
+            }
+            if (seats) {
+                out.name("currentPassengers").value(t.currentPassengers);
+                out.name("passengers");
+                JsonUtil.write(out, t.passengers);
+            }
+            out.endObject();
+        }
+        out.endArray();
+
+        out.name("taxisAdded").beginArray();
+        for (TaxiState t : state.taxis) {
+            if (!lastTaxis.containsKey(t.id)) {
+                JsonUtil.writeTaxi(out, t);
+            }
+        }
+        out.endArray();
+
+        out.name("taxisRemoved").beginArray();
+        for (Map.Entry<Integer, TaxiRecord> e : lastTaxis.entrySet()) {
+            if (e.getValue().seen != frame) {
+                out.value(e.getKey());
+            }
+        }
+        out.endArray();
+
+        out.name("passengers").beginArray();
+        for (PassengerState p : state.passengers) {
+            PassengerRecord last = lastPassengers.get(p.id);
+            if (last == null) {
+                continue;
+            }
+            last.seen = frame;
+            boolean moved = last.x != p.x || last.y != p.y;
+            boolean status = !Objects.equals(last.status, p.status);
+            if (!(moved || status)) {
+                continue;
+            }
+            out.beginObject().name("id").value(p.id);
+            if (moved) {
+                out.name("x").value(p.x).name("y").value(p.y);
+            }
+            if (status) {
+                out.name("status").value(p.status);
+            }
+            out.endObject();
+        }
+        out.endArray();
+
+        out.name("passengersAdded").beginArray();
+        for (PassengerState p : state.passengers) {
+            if (!lastPassengers.containsKey(p.id)) {
+                JsonUtil.writePassenger(out, p);
+            }
+        }
+        out.endArray();
+
+        out.name("passengersRemoved").beginArray();
+        for (Map.Entry<String, PassengerRecord> e : lastPassengers.entrySet()) {
+            if (e.getValue().seen != frame) {
+                out.value(e.getKey());
+            }
+        }
+        out.endArray();
+
+        out.name("queueSize").value(state.queueSize);
+        out.name("totalMalesServed").value(state.totalMalesServed);
+        out.name("totalFemalesServed").value(state.totalFemalesServed);
+        out.name("totalPassengersServed").value(state.totalPassengersServed);
+        out.name("dispatchStrategy").value(state.dispatchStrategy);
+        out.name("averagePickupDistance").value(state.averagePickupDistance);
+        out.name("lastTickPickupDistance").value(state.lastTickPickupDistance);
+        out.name("lastTickSolveMillis").value(state.lastTickSolveMillis);
+        out.endObject();
+        return event("delta", out);
+    }
+
+    private byte[] encodeKeyframe(SimulationState state) {
+        JsonWriter out = writer.reset();
+        JsonUtil.writeState(out, state);
+        return event("keyframe", out);
+    }
+
+    /** Frames a JSON document as one SSE event, ready to be written to any client. */
+    private static byte[] event(String type, JsonWriter json) {
+        byte[] head = ("event: " + type + "\ndata: ").getBytes(StandardCharsets.US_ASCII);
+        byte[] event = new byte[head.length + json.length() + 2];
+        System.arraycopy(head, 0, event, 0, head.length);
+        System.arraycopy(json.buffer(), 0, event, head.length, json.length());
+        event[event.length - 2] = '\n';
+        event[event.length - 1] = '\n';
+        return event;
+    }
+
+    /** Records the frame just encoded as the baseline for the next delta. */
+    private void remember(SimulationState state, long frame) {
+        for (TaxiState t : state.taxis) {
+            TaxiRecord r = lastTaxis.computeIfAbsent(t.id, k -> new TaxiRecord());
+            r.x = t.x;
+            r.y = t.y;
+            r.targetX = t.targetX;
+            r.targetY = t.targetY;
+            r.status = t.status;
+            r.message = t.message;
+            r.earnings = t.earnings;
+            r.passengerIds = passengerIds(t.passengers);
+            r.seen = frame;
+        }
+        for (PassengerState p : state.passengers) {
+            PassengerRecord r = lastPassengers.computeIfAbsent(p.id, k -> new PassengerRecord());
+            r.x = p.x;
+            r.y = p.y;
+            r.status = p.status;
+            r.seen = frame;
+        }
+        lastTaxis.values().removeIf(r -> r.seen != frame);
+        lastPassengers.values().removeIf(r -> r.seen != frame);
+    }
+
+    private static String passengerIds(List<PassengerInfo> passengers) {
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<PassengerInfo> it = passengers.iterator(); it.hasNext();) {
+            sb.append(it.next().id).append(';');
+        }
+        return sb.toString();
+    }
+}
@@ -3,30 +3,66 @@ package server;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import components.BookingJournal;
 import components.BookingSystem;
+import components.DispatchStats;
+import components.DispatchStrategy;
+import components.PassengerGrid;
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.SplittableRandom;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import journal.EventJournal;
+import journal.WorldImage;
 import models.*;
+import routing.EtaMatrix;
+import routing.RoadGraph;
+import routing.Router;
+import shard.ShardCluster;
+import sim.SimulationEngine;
+import sim.SimulationResult;
+import sim.TraceDemandSource;
+import util.ActorExecutors;
 import util.Logger;
+import util.Metrics;
+import util.SimulationClock;
+import util.SimulationConstants;
 
 public class WebServer {
     private static final int PORT = 8080;
+    static final int STREAM_EVERY_TICKS = 2; // 10 Hz, the rate the UI used to poll at
+    private static final long STREAM_HEARTBEAT_MILLIS = 15_000;
+    private static final int MAX_WAITING = Integer.getInteger("maxWaiting", 10_000); // backpressure bound
+    private static final int RETRY_AFTER_SECONDS = 2;
+    private static final int MAX_BULK_RECORD_BYTES = 1024; // body cap per record the waiting limit allows
+    private static final int CITY_WIDTH = PassengerGrid.COLUMNS * PassengerGrid.CELL_SIZE;
+    private static final int CITY_HEIGHT = PassengerGrid.ROWS * PassengerGrid.CELL_SIZE;
     private static BookingSystem bookingSystem;
     private static List<Taxi> taxis = new CopyOnWriteArrayList<>();
     private static ExecutorService taxiExecutor;
     private static ExecutorService passengerExecutor;
+    private static EventJournal journal; // null unless -Djournal.dir is set
+    private static SplittableRandom patrolRandom; // update thread only
+    private static SessionRegistry sessions;
+    private static ShardCluster cluster; // only with -Dshards=N
+    static Router roads; // shared by every world on this server; null for straight-line moves
 
-    // Simulation state for visualization
-    private static final Map<Integer, TaxiState> taxiStates = new ConcurrentHashMap<>();
-    private static final Map<String, PassengerState> passengerStates = new ConcurrentHashMap<>();
+    // Simulation state for visualization, rebuilt once per tick
+    private static final Metrics.Histogram TICK_DURATION = Metrics.histogram("simulation_tick_seconds",
+            "Wall time of one updateSimulationState call (fleet step plus snapshot)", 1_000_000);
+    private static final SnapshotPublisher snapshots = new SnapshotPublisher();
+    private static final StateStream stream = new StateStream();
 
     public static class TaxiState {
         public int id;
@@ -43,6 +79,7 @@ public class WebServer {
 
     public static class PassengerState {
         public String id;
+        public int number;
         public String gender;
         public String name;
         public String avatarUrl;
@@ -53,6 +90,7 @@ public class WebServer {
 
     public static class PassengerInfo {
         public String id;
+        public int number;
         public String gender;
         public String name;
         public String avatarUrl;
@@ -66,21 +104,52 @@ public class WebServer {
         public int totalMalesServed;
         public int totalFemalesServed;
         public int totalPassengersServed;
+        public String dispatchStrategy;
+        public double averagePickupDistance;
+        public double lastTickPickupDistance;
+        public double lastTickSolveMillis;
     }
 
     public static void main(String[] args) throws IOException {
-        bookingSystem = new BookingSystem();
+        roads = loadRoads(System.getProperty("roads", "grid"));
+        bookingSystem = newBookingSystem();
         Logger.setLogArea(null); // Disable Swing logging
+        registerMetrics();
+
+        if (Boolean.getBoolean("headless")) {
+            runHeadless();
+            return;
+        }
+        if (bookingSystem.getClock().isManual()) {
+            // The threaded world and the HTTP update loop sleep on the clock; only the engine can drive it
+            throw new IllegalArgumentException("-Dspeed=max needs -Dheadless=true; use a multiplier such as -Dspeed=100");
+        }
+        int shardCount = Integer.getInteger("shards", 0);
+        if (shardCount > 0) {
+            runSharded(shardCount);
+            return;
+        }
+
+        String journalDir = System.getProperty("journal.dir");
+        if (journalDir != null) {
+            openJournal(journalDir);
+        }
 
         HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
 
         // Static file serving
         server.createContext("/", new StaticFileHandler());
         server.createContext("/api/state", new StateHandler());
+        server.createContext("/api/stream", new StreamHandler());
         server.createContext("/api/addTaxi", new AddTaxiHandler());
         server.createContext("/api/addPassenger", new AddPassengerHandler());
+        server.createContext("/api/passengers/bulk", new BulkPassengerHandler());
         server.createContext("/api/start", new StartHandler());
         server.createContext("/api/reset", new ResetHandler());
+        server.createContext("/api/metrics", new MetricsHandler());
+        server.createContext("/api/roads/speed", new RoadSpeedHandler());
+        sessions = new SessionRegistry();
+        server.createContext("/api/sessions", new SessionsHandler());
 
         server.setExecutor(Executors.newCachedThreadPool());
         server.start();
@@ -91,129 +160,307 @@ public class WebServer {
         startUpdateThread();
     }
 
-    private static void startUpdateThread() {
-        Thread updateThread = new Thread(() -> {
-            while (true) {
-                try {
-                    updateSimulationState();
-                    Thread.sleep(50); // Update every 50ms for smoother animation
-                } catch (InterruptedException e) {
-                    break;
-                }
+    /**
+     * Restores the world from the journal in {@code dir} (the last snapshot plus the
+     * events after it), then records every booking event from here on. Restored taxis
+     * start moving on the next /api/start.
+     */
+    private static void openJournal(String dir) throws IOException {
+        long started = System.nanoTime();
+        journal = EventJournal.open(Paths.get(dir));
+        WorldImage image = journal.getRecovered();
+        image.restoreInto(bookingSystem, taxis);
+        bookingSystem.setJournal(journal);
+        journal.setCheckpointSource(() -> WorldImage.capture(bookingSystem, taxis));
+        Runtime.getRuntime().addShutdownHook(new Thread(journal::close));
+        System.out.println(String.format(
+                "Journal %s: restored %d taxis, %d waiting, %d served (%d events replayed) in %.0f ms",
+                dir, image.getTaxiCount(), image.getWaitingCount(), image.getServedCount(),
+                journal.getRecoveredEvents(), (System.nanoTime() - started) / 1e6));
+    }
+
+    /**
+     * Gauges read the current world at scrape time, so they follow a reset.
+     */
+    private static void registerMetrics() {
+        Metrics.gauge("passengers_waiting", "Passengers in the waiting queue", () -> bookingSystem.getQueueSize());
+        Metrics.gauge("taxis", "Taxis by status", "status", () -> {
+            Map<String, Integer> byStatus = new LinkedHashMap<>();
+            byStatus.put("AVAILABLE", 0);
+            byStatus.put("PICKING_UP", 0);
+            byStatus.put("ON_RIDE", 0);
+            for (Taxi taxi : taxis) {
+                byStatus.merge(taxi.getStatus(), 1, Integer::sum);
             }
+            return byStatus;
+        });
+        Metrics.gauge("taxi_seats_occupied", "Passengers currently in a taxi", () -> {
+            int seats = 0;
+            for (Taxi taxi : taxis) {
+                seats += taxi.getPassengerCount();
+            }
+            return seats;
+        });
+        Metrics.gauge("taxi_seat_occupancy_ratio", "Occupied seats over total seats", () -> {
+            int seats = 0;
+            int capacity = 0;
+            for (Taxi taxi : taxis) {
+                seats += taxi.getPassengerCount();
+                capacity += taxi.getCapacity();
+            }
+            return capacity == 0 ? 0 : (double) seats / capacity;
+        });
+        Metrics.gauge("taxi_revenue_pkr_per_hour", "Fleet earnings per simulated hour since the last reset", () -> {
+            double earnings = 0;
+            for (Taxi taxi : taxis) {
+                earnings += taxi.getEarnings();
+            }
+            double hours = bookingSystem.getClock().now() / 3_600_000.0;
+            return hours <= 0 ? 0 : earnings / hours;
         });
-        updateThread.setDaemon(true);
-        updateThread.start();
     }
 
-    private static void updateSimulationState() {
-        try {
-            // Update taxi positions and states
-            for (Taxi taxi : taxis) {
-                TaxiState state = taxiStates.computeIfAbsent(taxi.getId(), k -> new TaxiState());
-
-                // Sync State with Taxi Object
-                state.id = taxi.getId();
-                state.driverName = taxi.getDriverName();
-                state.driverAvatarUrl = taxi.getDriverAvatarUrl();
-                state.status = taxi.getStatus();
-                state.message = taxi.getLastMessage();
-                state.earnings = taxi.getEarnings();
-                state.currentPassengers = taxi.getCurrentPassengers().size();
-                state.x = taxi.getX();
-                state.y = taxi.getY();
-                state.targetX = taxi.getTargetX();
-                state.targetY = taxi.getTargetY();
-
-                // Update passenger list
-                state.passengers.clear();
-                try {
-                    for (Passenger p : taxi.getCurrentPassengers()) {
-                        PassengerInfo info = new PassengerInfo();
-                        info.id = p.getId();
-                        info.gender = p.getGender().toString();
-                        info.name = p.getName();
-                        info.avatarUrl = p.getAvatarUrl();
-                        info.destination = p.getDestination();
-                        state.passengers.add(info);
-                    }
-                } catch (Exception e) {
+    /**
+     * Road network from -Droads: {@code grid} (the default city's block grid),
+     * {@code none} (straight Manhattan moves and straight-line matching), or a graph
+     * file in the format described in {@link RoadGraph}. Routes are cached per
+     * intersection pair, up to -Droutes.cacheSize (100000). Matching scores pairs from
+     * an ETA matrix with -Deta.cellSize cells (100, one block; 0 scores exact routes),
+     * filled in the background.
+     */
+    private static Router loadRoads(String spec) throws IOException {
+        if (spec.equalsIgnoreCase("none")) {
+            return null;
+        }
+        long started = System.nanoTime();
+        RoadGraph graph = spec.equalsIgnoreCase("grid")
+                ? RoadGraph.defaultCity(SimulationConstants.SPEED)
+                : RoadGraph.load(Paths.get(spec));
+        Router router = new Router(graph, Integer.getInteger("routes.cacheSize", 100_000),
+                Double.parseDouble(System.getProperty("eta.cellSize", "100")));
+        boolean quiet = spec.equalsIgnoreCase("grid");
+        if (!quiet) {
+            System.out.println(String.format("Roads %s: %d intersections, %d road segments, %d shortcuts in %.0f ms",
+                    spec, graph.nodeCount(), graph.edgeCount(), router.getShortcutCount(),
+                    (System.nanoTime() - started) / 1e6));
+        }
+        EtaMatrix etas = router.getEtaMatrix();
+        if (etas != null) {
+            Thread precompute = new Thread(() -> {
+                long begun = System.nanoTime();
+                etas.precompute();
+                if (!quiet) {
+                    System.out.println(String.format("ETA matrix: %d cells of %.0f units%s in %.1f s",
+                            etas.getCellCount(), etas.getCellSize(), etas.isOffHeap() ? " (off-heap)" : "",
+                            (System.nanoTime() - begun) / 1e9));
                 }
+            }, "eta-precompute");
+            precompute.setDaemon(true);
+            precompute.setPriority(Thread.MIN_PRIORITY);
+            precompute.start();
+        }
+        return router;
+    }
 
-                // Centralized Movement Logic (Updates the Taxi Object directly)
-                double speed = 1.5; // Reduced speed for realistic observation
-                double currentX = taxi.getX();
-                double currentY = taxi.getY();
-                double targetX = taxi.getTargetX();
-                double targetY = taxi.getTargetY();
-
-                if (Math.abs(targetX - currentX) > speed || Math.abs(targetY - currentY) > speed) {
-                    // Manhattan Movement
-                    if (Math.abs(targetX - currentX) > speed) {
-                        currentX += Math.signum(targetX - currentX) * speed;
-                    } else {
-                        currentX = targetX;
-                        currentY += Math.signum(targetY - currentY) * speed;
-                    }
-                    taxi.setX(currentX);
-                    taxi.setY(currentY);
+    /**
+     * Dispatch mode comes from -Ddispatch=greedy|batch|pool (greedy by default),
+     * simulation speed from -Dspeed=1|100 (real time by default; max only with
+     * -Dheadless) and the world's random seed from -Dseed (a fresh one by default).
+     */
+    private static BookingSystem newBookingSystem() {
+        return newBookingSystem(Long.getLong("seed"));
+    }
+
+    private static BookingSystem newBookingSystem(Long seed) {
+        SimulationClock clock = SimulationClock.parse(System.getProperty("speed", "1"));
+        BookingSystem system = seed == null ? new BookingSystem(clock) : new BookingSystem(clock, seed);
+        system.setDispatchStrategy(DispatchStrategy.forName(System.getProperty("dispatch", "greedy")));
+        system.setRouter(roads);
+        patrolRandom = system.newRandom();
+        return system;
+    }
+
+    /**
+     * Execution mode comes from -Dexecutor=platform|virtual (platform by default).
+     * Virtual needs a JDK 21+ runtime; on older ones the platform pools are used.
+     */
+    private static boolean useVirtualThreads() {
+        if (!System.getProperty("executor", "platform").equalsIgnoreCase("virtual")) {
+            return false;
+        }
+        if (!ActorExecutors.virtualThreadsAvailable()) {
+            // Keep the bounded taxi pool rather than one unbounded platform pool per role
+            Logger.warn("-Dexecutor=virtual needs JDK 21+ (running %s), using the platform pools.",
+                    System.getProperty("java.version"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Capacity-planning mode: no HTTP server, just the world running on its clock for
+     * -Dheadless.hours of simulated time. With -Dspeed=max the discrete-event engine is
+     * used instead of threads, since there is nothing to sleep on.
+     */
+    private static void runHeadless() throws IOException {
+        int taxiCount = Integer.getInteger("headless.taxis", 50);
+        long passengerCount = Long.getLong("headless.passengers", 1000L);
+        double rate = Double.parseDouble(System.getProperty("headless.rate", "1"));
+        double hours = Double.parseDouble(System.getProperty("headless.hours", "24"));
+        long durationMillis = (long) (hours * 3_600_000);
+        Logger.setConsoleLogging(Boolean.getBoolean("headless.log"));
+
+        if (bookingSystem.getClock().isManual()) {
+            bookingSystem = newBookingSystem(Long.getLong("seed", 42L));
+            SimulationEngine engine = new SimulationEngine(bookingSystem);
+            for (int i = 0; i < taxiCount; i++) {
+                engine.addTaxi();
+            }
+            String trace = System.getProperty("headless.trace");
+            TraceDemandSource demand = trace == null ? null : new TraceDemandSource(Paths.get(trace));
+            try {
+                if (demand != null) {
+                    engine.addDemand(demand); // replay recorded requests instead of Poisson demand
                 } else {
-                    // Arrived
-                    taxi.setX(targetX);
-                    taxi.setY(targetY);
-
-                    // If IDLE, pick new random patrol point
-                    if (taxi.getStatus().equals("AVAILABLE")) {
-                        // Only move if at target
-                        int randomDestX = 50 + (int) (Math.random() * 12) * 100;
-                        int randomDestY = 50 + (int) (Math.random() * 7) * 100;
-                        taxi.setTargetX(randomDestX);
-                        taxi.setTargetY(randomDestY);
-                    }
+                    engine.generateDemand(passengerCount, rate);
+                }
+                SimulationResult result = engine.run(durationMillis);
+                System.out.println(result);
+                System.out.println(result.latencyReport());
+            } finally {
+                if (demand != null) {
+                    demand.close();
+                }
+            }
+            return;
+        }
+
+        SimulationClock clock = bookingSystem.getClock();
+        taxiExecutor = ActorExecutors.newVirtualThreadPerTaskExecutor();
+        passengerExecutor = ActorExecutors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < taxiCount; i++) {
+            Taxi taxi = new Taxi(taxis.size() + 1, bookingSystem);
+            taxis.add(taxi);
+            taxiExecutor.execute(taxi);
+        }
+        startUpdateThread();
+
+        long wallStart = System.currentTimeMillis();
+        long requested = 0;
+        SplittableRandom demand = bookingSystem.newRandom();
+        try {
+            while (clock.now() < durationMillis) {
+                if (requested < passengerCount) {
+                    Gender gender = demand.nextBoolean() ? Gender.MALE : Gender.FEMALE;
+                    passengerExecutor.execute(new Passenger(gender, bookingSystem));
+                    requested++;
                 }
+                clock.sleep((long) (1000 / rate));
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        taxiExecutor.shutdownNow();
+        passengerExecutor.shutdownNow();
+
+        long wallMillis = System.currentTimeMillis() - wallStart;
+        System.out.println(String.format(
+                "speed=%.0fx taxis=%d requested=%d served=%d waiting=%d simTime=%.1fh wall=%dms arrivalWakeups=%.1f/s",
+                clock.getSpeed(), taxiCount, requested,
+                bookingSystem.getTotalMalesServed() + bookingSystem.getTotalFemalesServed(),
+                bookingSystem.getQueueSize(), clock.now() / 3_600_000.0, wallMillis,
+                Taxi.getArrivalWakeups() * 1000.0 / Math.max(1, wallMillis)));
+    }
 
-            // Rebuild passenger states completely to avoid stale data
-            // 1. Add Waiting Passengers
-            List<Passenger> waiting = bookingSystem.getWaitingPassengers();
-            // Create a set of active IDs to cleanup stale ones
-            java.util.Set<String> activeIds = new java.util.HashSet<>();
+    /**
+     * SCD Concept: Spatial Partitioning (Sharded Server)
+     * Serves the UI from a {@link ShardCluster}: the city is split into {@code shardCount}
+     * strips, each simulated in its own JVM, and {@code /api/state} merges their states.
+     * Only the default world's core endpoints are served; the UI falls back to polling.
+     */
+    private static void runSharded(int shardCount) throws IOException {
+        cluster = ShardCluster.launch(shardCount, Long.getLong("seed", 42L), System.getProperty("dispatch", "greedy"));
+        Runtime.getRuntime().addShutdownHook(new Thread(cluster::close));
 
-            for (Passenger p : waiting) {
-                activeIds.add(p.getId());
-                PassengerState state = passengerStates.computeIfAbsent(p.getId(), k -> new PassengerState());
-                state.id = p.getId();
-                state.gender = p.getGender().toString();
-                state.name = p.getName();
-                state.avatarUrl = p.getAvatarUrl();
-                state.x = p.getX();
-                state.y = p.getY();
-                state.destination = p.getDestination();
-                state.status = "WAITING";
+        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        server.createContext("/", new StaticFileHandler());
+        ShardedHandler handler = new ShardedHandler();
+        for (String endpoint : new String[] {"/api/state", "/api/addTaxi", "/api/addPassenger", "/api/start"}) {
+            server.createContext(endpoint, handler);
+        }
+        server.createContext("/api/metrics", new MetricsHandler());
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        System.out.println("Open http://localhost:" + PORT + " in your browser (" + shardCount + " shards)");
+
+        Thread driver = new Thread(() -> {
+            try {
+                while (true) {
+                    if (ShardedHandler.started) {
+                        cluster.run(1); // one tick per round, so handoffs arrive on the next tick
+                    }
+                    Thread.sleep(SimulationConstants.TICK_MILLIS);
+                }
+            } catch (IOException e) {
+                Logger.log("Shard cluster failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                // shutting down
             }
+        }, "shard-driver");
+        driver.setDaemon(true);
+        driver.start();
+    }
 
-            // 2. Add In-Ride Passengers
-            for (Taxi taxi : taxis) {
+    private static void startUpdateThread() {
+        Thread updateThread = new Thread(() -> {
+            int tick = 0;
+            while (true) {
                 try {
-                    for (Passenger p : taxi.getCurrentPassengers()) {
-                        activeIds.add(p.getId());
-                        PassengerState state = passengerStates.computeIfAbsent(p.getId(), k -> new PassengerState());
-                        state.id = p.getId(); // Ensure basic fields are set if wasn't in waiting map
-                        state.gender = p.getGender().toString();
-                        state.name = p.getName();
-                        state.avatarUrl = p.getAvatarUrl();
-                        state.destination = p.getDestination();
-                        state.status = "IN_RIDE";
+                    updateSimulationState();
+                    if (tick % STREAM_EVERY_TICKS == 0) {
+                        stream.onFrame(snapshots);
                     }
-                } catch (Exception e) {}
+                    if (++tick % SimulationConstants.DISPATCH_EVERY_TICKS == 0) {
+                        bookingSystem.dispatchTick(taxis);
+                    }
+                    bookingSystem.getClock().sleep(SimulationConstants.TICK_MILLIS); // Update every 50ms of sim time for smoother animation
+                } catch (InterruptedException e) {
+                    break;
+                }
             }
+        });
+        updateThread.setDaemon(true);
+        updateThread.start();
+    }
 
-            // 3. Remove passengers who are no longer waiting OR in a taxi (i.e., Dropped
-            // off)
-            passengerStates.keySet().removeIf(id -> !activeIds.contains(id));
+    private static void updateSimulationState() {
+        long start = System.nanoTime();
+        try {
+            // Centralized Movement Logic: one structure-of-arrays step for the whole fleet
+            bookingSystem.getFleet().tick(SimulationConstants.SPEED, WebServer::onTaxiStopped);
 
+            // Publish one immutable view of the world for every reader of this tick
+            snapshots.publish(bookingSystem);
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            TICK_DURATION.recordNanosSince(start);
+        }
+    }
+
+    private static void onTaxiStopped(Taxi taxi, boolean arrivedThisTick) {
+        if (arrivedThisTick) {
+            taxi.signalArrival(); // Wakes the taxi thread if it is waiting for this
+        }
+        patrol(taxi, patrolRandom);
+    }
+
+    /** Sends a taxi that stopped while idle to a new random patrol point. */
+    static void patrol(Taxi taxi, SplittableRandom random) {
+        if (taxi.getStatus().equals("AVAILABLE")) {
+            int randomDestX = 50 + random.nextInt(12) * 100;
+            int randomDestY = 50 + random.nextInt(7) * 100;
+            taxi.patrolTo(randomDestX, randomDestY);
         }
     }
 
@@ -256,23 +503,133 @@ public class WebServer {
     }
 
     static class StateHandler implements HttpHandler {
+        // One buffer per server thread, reused across requests
+        private static final ThreadLocal<JsonWriter> BUFFER = ThreadLocal.withInitial(() -> new JsonWriter(64 * 1024));
+        private static final ThreadLocal<ByteBuffer> BINARY_BUFFER = new ThreadLocal<>();
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!exchange.getRequestMethod().equals("GET")) {
                 sendResponse(exchange, 405, "text/plain", "Method not allowed");
                 return;
             }
+            send(exchange, snapshots);
+        }
+
+        /** Writes the latest frame of {@code snapshots} as JSON or binary. */
+        static void send(HttpExchange exchange, SnapshotPublisher snapshots) throws IOException {
+            if (wantsBinary(exchange)) {
+                ByteBuffer frame = snapshots.read(state -> BinaryStateCodec.encode(state, BINARY_BUFFER.get()));
+                BINARY_BUFFER.set(frame);
+                sendResponseBytes(exchange, 200, BinaryStateCodec.CONTENT_TYPE, frame.array(), frame.limit());
+                return;
+            }
 
-            SimulationState state = new SimulationState();
-            state.taxis = new ArrayList<>(taxiStates.values());
-            state.passengers = new ArrayList<>(passengerStates.values());
-            state.queueSize = bookingSystem.getQueueSize();
-            state.totalMalesServed = bookingSystem.getTotalMalesServed();
-            state.totalFemalesServed = bookingSystem.getTotalFemalesServed();
-            state.totalPassengersServed = state.totalMalesServed + state.totalFemalesServed;
+            JsonWriter json = BUFFER.get();
+            snapshots.read(state -> {
+                json.reset(); // a retried read starts over
+                JsonUtil.writeState(json, state);
+                return null;
+            });
+            sendResponseBytes(exchange, 200, "application/json", json.buffer(), json.length());
+        }
 
-            String json = JsonUtil.toJson(state);
-            sendResponse(exchange, 200, "application/json", json);
+        /** Binary is chosen with {@code ?format=bin} or an Accept header naming the binary type. */
+        private static boolean wantsBinary(HttpExchange exchange) {
+            String query = exchange.getRequestURI().getQuery();
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    if (param.equals("format=bin") || param.equals("format=binary")) {
+                        return true;
+                    }
+                }
+            }
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            return accept != null && accept.contains(BinaryStateCodec.CONTENT_TYPE);
+        }
+    }
+
+    /**
+     * Prometheus scrape endpoint.
+     */
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendResponse(exchange, 405, "text/plain", "Method not allowed");
+                return;
+            }
+            sendResponse(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", Metrics.scrape());
+        }
+    }
+
+    /**
+     * SCD Concept: Server Push
+     * Sends one keyframe, then a small delta per frame, until the client goes away.
+     * A client that falls more than the stream's history behind gets a fresh keyframe.
+     */
+    static class StreamHandler implements HttpHandler {
+        private static final Metrics.Histogram STREAM_CLIENT_BYTES = Metrics.histogram("stream_client_bytes",
+                "Bytes sent to one stream client over its whole connection", 1);
+        private static final byte[] KEEP_ALIVE = ": keep-alive\n\n".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendResponse(exchange, 405, "text/plain", "Method not allowed");
+                return;
+            }
+            send(exchange, stream, () -> true);
+        }
+
+        /** Streams {@code stream} to the client until it goes away or {@code open} turns false. */
+        static void send(HttpExchange exchange, StateStream stream, BooleanSupplier open) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.sendResponseHeaders(200, 0); // chunked
+
+            long started = System.nanoTime();
+            long bytes = 0;
+            stream.clientConnected();
+            try (OutputStream os = exchange.getResponseBody()) {
+                long next = -1;
+                while (open.getAsBoolean()) {
+                    byte[] data;
+                    if (next < 0) {
+                        StateStream.Frame keyframe = stream.awaitKeyframe(STREAM_HEARTBEAT_MILLIS);
+                        if (keyframe == null) {
+                            data = KEEP_ALIVE; // simulation not started yet
+                        } else {
+                            data = keyframe.data;
+                            next = keyframe.sequence + 1;
+                        }
+                    } else {
+                        StateStream.Frame delta = stream.awaitDelta(next, STREAM_HEARTBEAT_MILLIS);
+                        if (delta == null) {
+                            data = KEEP_ALIVE;
+                        } else if (delta.data == null) {
+                            next = -1; // fell behind
+                            continue;
+                        } else {
+                            data = delta.data;
+                            next++;
+                        }
+                    }
+                    os.write(data);
+                    os.flush();
+                    bytes += data.length;
+                }
+            } catch (IOException e) {
+                // Client disconnected
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                stream.clientDisconnected();
+                double seconds = Math.max(1e-3, (System.nanoTime() - started) / 1e9);
+                STREAM_CLIENT_BYTES.record(bytes);
+                Logger.info("Stream client closed after %.1fs: %d bytes (%.0f B/s)", seconds, bytes, bytes / seconds);
+            }
         }
     }
 
@@ -292,6 +649,7 @@ public class WebServer {
             int newTaxiId = taxis.size() + 1;
             Taxi newTaxi = new Taxi(newTaxiId, bookingSystem);
             taxis.add(newTaxi);
+            bookingSystem.getJournal().taxiAdded(newTaxi);
             taxiExecutor.execute(newTaxi);
 
             sendResponse(exchange, 200, "application/json", "{\"success\":true,\"taxiId\":" + newTaxiId + "}");
@@ -311,27 +669,193 @@ public class WebServer {
                 return;
             }
 
-            String body = readRequestBody(exchange);
-            Map<String, Object> request = JsonUtil.fromJson(body);
+            Map<String, Object> request = readJsonObject(exchange);
+            if (request == null) {
+                return;
+            }
+            int maleCount = Math.max(0, intValue(request, "maleCount", 0));
+            int femaleCount = Math.max(0, intValue(request, "femaleCount", 0));
 
-            Object maleObj = request.getOrDefault("maleCount", 0);
-            Object femaleObj = request.getOrDefault("femaleCount", 0);
-            int maleCount = maleObj instanceof Number ? ((Number) maleObj).intValue() : 0;
-            int femaleCount = femaleObj instanceof Number ? ((Number) femaleObj).intValue() : 0;
+            if ((long) bookingSystem.getQueueSize() + maleCount + femaleCount > MAX_WAITING) {
+                sendTooManyWaiting(exchange, bookingSystem, MAX_WAITING);
+                return;
+            }
 
-            for (int i = 0; i < maleCount; i++) {
-                Passenger p = new Passenger(Gender.MALE, bookingSystem);
-                passengerExecutor.execute(p);
+            // Queued as one batch, so concurrent requests cannot overshoot the bound between
+            // the check and each passenger thread queueing itself; the threads only wait
+            BookingSystem system = bookingSystem;
+            List<Passenger> batch = new ArrayList<>(maleCount + femaleCount);
+            for (int i = 0; i < maleCount + femaleCount; i++) {
+                batch.add(new Passenger(i < maleCount ? Gender.MALE : Gender.FEMALE, system));
             }
-            for (int i = 0; i < femaleCount; i++) {
-                Passenger p = new Passenger(Gender.FEMALE, bookingSystem);
-                passengerExecutor.execute(p);
+            if (!system.addPassengersToQueue(batch, MAX_WAITING)) {
+                sendTooManyWaiting(exchange, system, MAX_WAITING);
+                return;
+            }
+            for (Passenger p : batch) {
+                Logger.info("%s (%s) sent a booking request.", p.getId(), p.getGender());
+                passengerExecutor.execute(p::awaitPickup);
             }
 
             sendResponse(exchange, 200, "application/json", "{\"success\":true}");
         }
     }
 
+    /**
+     * SCD Concept: Backpressure
+     * Takes a JSON array or NDJSON stream of {gender, x, y, destination} records and enqueues
+     * the whole batch in one step. Bulk passengers wait passively in the booking system
+     * rather than each getting a thread. A body too large for MAX_WAITING records, or one
+     * holding more records than that, is refused with 413 before it is read or parsed in
+     * full; a batch that would push the waiting set past MAX_WAITING is refused as a whole
+     * with 429 and a Retry-After hint. Passengers are built only once the batch passes.
+     */
+    static class BulkPassengerHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendResponse(exchange, 405, "text/plain", "Method not allowed");
+                return;
+            }
+
+            if (passengerExecutor == null || passengerExecutor.isShutdown()) {
+                sendResponse(exchange, 400, "application/json", "{\"error\":\"Simulation not started\"}");
+                return;
+            }
+
+            BookingSystem system = bookingSystem;
+            enqueue(exchange, system, MAX_WAITING, batch -> system.addPassengersToQueue(batch, MAX_WAITING));
+        }
+
+        /**
+         * Reads and parses the request body into passengers of {@code system} and hands them
+         * to {@code queue}, which queues them all or none. Only {@code queue} may need the
+         * world's lock; the response is written after it returns.
+         */
+        static void enqueue(HttpExchange exchange, BookingSystem system, int maxWaiting,
+                Predicate<List<Passenger>> queue) throws IOException {
+            byte[] body = readRequestBodyBytes(exchange, (int) Math.min(Integer.MAX_VALUE - 8,
+                    (long) maxWaiting * MAX_BULK_RECORD_BYTES + 2));
+            List<Request> requests;
+            try {
+                requests = body == null ? null : parseBatch(body, maxWaiting);
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, 400, "application/json",
+                        "{\"error\":" + JsonUtil.toJson(e.getMessage()) + "}");
+                return;
+            }
+            if (requests == null) {
+                sendResponse(exchange, 413, "application/json",
+                        "{\"error\":\"Batch is larger than the waiting limit\",\"limit\":" + maxWaiting + "}");
+                return;
+            }
+            // Refuse a batch that cannot fit before it draws passenger numbers; queue still decides
+            if (system.getQueueSize() + requests.size() > maxWaiting) {
+                sendTooManyWaiting(exchange, system, maxWaiting);
+                return;
+            }
+            List<Passenger> batch = new ArrayList<>(requests.size());
+            for (Request r : requests) {
+                batch.add(new Passenger(r.gender, system, r.x, r.y, r.destination));
+            }
+            if (!queue.test(batch)) {
+                sendTooManyWaiting(exchange, system, maxWaiting);
+                return;
+            }
+
+            Logger.info("Bulk request: %d passengers sent booking requests.", batch.size());
+            sendResponse(exchange, 200, "application/json", "{\"success\":true,\"accepted\":" + batch.size()
+                    + ",\"waiting\":" + system.getQueueSize() + "}");
+        }
+
+        /** @return the validated records, or null as soon as there are more than {@code maxWaiting} */
+        private static List<Request> parseBatch(byte[] body, int maxWaiting) {
+            JsonReader in = new JsonReader(body);
+            List<Request> batch = new ArrayList<>();
+            boolean array = in.peek() == JsonReader.Token.BEGIN_ARRAY;
+            if (array) {
+                in.beginArray();
+            } else {
+                in.setMultipleDocuments(true); // NDJSON: one object per line
+            }
+            while (in.hasNext()) {
+                if (batch.size() == maxWaiting) {
+                    return null;
+                }
+                batch.add(readPassenger(in, batch.size()));
+            }
+            if (array) {
+                in.endArray();
+                in.endDocument();
+            }
+            return batch;
+        }
+
+        private static Request readPassenger(JsonReader in, int index) {
+            Gender gender = null;
+            int x = -1, y = -1;
+            String destination = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "gender":
+                        String value = in.nextString();
+                        try {
+                            gender = Gender.valueOf(value.toUpperCase());
+                        } catch (IllegalArgumentException e) {
+                            throw new IllegalArgumentException("Passenger " + index + ": unknown gender " + value);
+                        }
+                        break;
+                    case "x":
+                        x = in.nextInt();
+                        break;
+                    case "y":
+                        y = in.nextInt();
+                        break;
+                    case "destination":
+                        if (in.peek() == JsonReader.Token.NULL) {
+                            in.nextNull();
+                        } else {
+                            destination = in.nextString();
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (gender == null) {
+                throw new IllegalArgumentException("Passenger " + index + ": gender is required");
+            }
+            if (x < 0 || x > CITY_WIDTH || y < 0 || y > CITY_HEIGHT) {
+                throw new IllegalArgumentException("Passenger " + index + ": x/y must lie within "
+                        + CITY_WIDTH + "x" + CITY_HEIGHT);
+            }
+            return new Request(gender, x, y, destination);
+        }
+
+        /** One parsed record; it becomes a Passenger only once the whole batch is accepted. */
+        private static final class Request {
+            final Gender gender;
+            final int x, y;
+            final String destination;
+
+            Request(Gender gender, int x, int y, String destination) {
+                this.gender = gender;
+                this.x = x;
+                this.y = y;
+                this.destination = destination;
+            }
+        }
+    }
+
+    private static void sendTooManyWaiting(HttpExchange exchange, BookingSystem system, int maxWaiting)
+            throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+        sendResponse(exchange, 429, "application/json", "{\"error\":\"Too many waiting passengers\",\"waiting\":"
+                + system.getQueueSize() + ",\"limit\":" + maxWaiting + "}");
+    }
+
     static class StartHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -345,8 +869,14 @@ public class WebServer {
                 return;
             }
 
-            taxiExecutor = Executors.newFixedThreadPool(10);
-            passengerExecutor = Executors.newCachedThreadPool();
+            if (useVirtualThreads()) {
+                // No cap on concurrent taxis, and parked passengers are cheap.
+                taxiExecutor = ActorExecutors.newVirtualThreadPerTaskExecutor();
+                passengerExecutor = ActorExecutors.newVirtualThreadPerTaskExecutor();
+            } else {
+                taxiExecutor = Executors.newFixedThreadPool(10);
+                passengerExecutor = Executors.newCachedThreadPool();
+            }
 
             // Start existing taxis
             for (Taxi taxi : taxis) {
@@ -372,23 +902,330 @@ public class WebServer {
                 passengerExecutor.shutdownNow();
             }
 
+            bookingSystem.setJournal(BookingJournal.NONE); // stragglers of the old world are not recorded
             taxis.clear();
-            bookingSystem = new BookingSystem();
-            taxiStates.clear();
-            passengerStates.clear();
+            bookingSystem = newBookingSystem();
+            stream.reset();
+            if (journal != null) {
+                bookingSystem.setJournal(journal);
+                journal.checkpoint(); // an empty snapshot supersedes everything logged so far
+            }
+
+            sendResponse(exchange, 200, "application/json", "{\"success\":true}");
+        }
+    }
+
+    /**
+     * The default world's endpoints, answered by the shard cluster. Passengers are routed
+     * to the shard owning their position; new taxis are spread evenly across shards.
+     */
+    static class ShardedHandler implements HttpHandler {
+        static volatile boolean started = false;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (!method.equals(path.equals("/api/state") ? "GET" : "POST")) {
+                sendResponse(exchange, 405, "text/plain", "Method not allowed");
+                return;
+            }
+            switch (path) {
+                case "/api/state":
+                    byte[] state = cluster.stateJson();
+                    sendResponseBytes(exchange, 200, "application/json", state, state.length);
+                    break;
+                case "/api/start":
+                    if (started) {
+                        sendResponse(exchange, 400, "application/json", "{\"error\":\"Simulation already running\"}");
+                        return;
+                    }
+                    started = true;
+                    sendResponse(exchange, 200, "application/json", "{\"success\":true}");
+                    break;
+                case "/api/addTaxi":
+                    if (!started) {
+                        sendResponse(exchange, 400, "application/json", "{\"error\":\"Simulation not started\"}");
+                        return;
+                    }
+                    int taxiId = cluster.addTaxi();
+                    sendResponse(exchange, 200, "application/json", "{\"success\":true,\"taxiId\":" + taxiId + "}");
+                    break;
+                case "/api/addPassenger":
+                    addPassengers(exchange);
+                    break;
+                default:
+                    sendResponse(exchange, 404, "text/plain", "Not found");
+            }
+        }
+
+        private static void addPassengers(HttpExchange exchange) throws IOException {
+            if (!started) {
+                sendResponse(exchange, 400, "application/json", "{\"error\":\"Simulation not started\"}");
+                return;
+            }
+            Map<String, Object> request = readJsonObject(exchange);
+            if (request == null) {
+                return;
+            }
+            int maleCount = Math.max(0, intValue(request, "maleCount", 0));
+            int femaleCount = Math.max(0, intValue(request, "femaleCount", 0));
+            int waiting = cluster.getWaiting();
+            if ((long) waiting + maleCount + femaleCount > MAX_WAITING) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+                sendResponse(exchange, 429, "application/json", "{\"error\":\"Too many waiting passengers\",\"waiting\":"
+                        + waiting + ",\"limit\":" + MAX_WAITING + "}");
+                return;
+            }
+            for (int i = 0; i < maleCount; i++) {
+                cluster.addPassenger(Gender.MALE);
+            }
+            for (int i = 0; i < femaleCount; i++) {
+                cluster.addPassenger(Gender.FEMALE);
+            }
+            sendResponse(exchange, 200, "application/json", "{\"success\":true}");
+        }
+    }
+
+    /**
+     * Changes the speed of the road from the intersection nearest (fromX, fromY) to the
+     * one nearest (toX, toY), in that direction only. Routes and ETAs planned after the
+     * call see the new speed; taxis already on their way keep their route.
+     */
+    static class RoadSpeedHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendResponse(exchange, 405, "text/plain", "Method not allowed");
+                return;
+            }
+            if (roads == null) {
+                sendResponse(exchange, 400, "application/json", "{\"error\":\"No road network (-Droads=none)\"}");
+                return;
+            }
+            Map<String, Object> request = readJsonObject(exchange);
+            if (request == null) {
+                return;
+            }
+            double fromX = doubleValue(request, "fromX");
+            double fromY = doubleValue(request, "fromY");
+            double toX = doubleValue(request, "toX");
+            double toY = doubleValue(request, "toY");
+            if (Double.isNaN(fromX + fromY + toX + toY)) {
+                sendResponse(exchange, 400, "application/json", "{\"error\":\"fromX, fromY, toX and toY are required\"}");
+                return;
+            }
+            RoadGraph graph = roads.getGraph();
+            int from = graph.nearestNode(fromX, fromY);
+            int to = graph.nearestNode(toX, toY);
+            try {
+                roads.setRoadSpeed(from, to, doubleValue(request, "speed"));
+            } catch (IllegalArgumentException e) {
+                sendResponse(exchange, 400, "application/json", "{\"error\":" + JsonUtil.toJson(e.getMessage()) + "}");
+                return;
+            }
+            sendResponse(exchange, 200, "application/json", "{\"success\":true,\"from\":" + from + ",\"to\":" + to + "}");
+        }
+    }
+
+    /**
+     * SCD Concept: Multi-Tenancy (Routing)
+     * {@code /api/sessions} creates (POST) and lists (GET) isolated worlds;
+     * {@code /api/sessions/{id}} describes (GET) or closes (DELETE) one; and
+     * {@code /api/sessions/{id}/state|stream|addTaxi|addPassenger|passengers/bulk|start|reset}
+     * are the default world's endpoints, scoped to that session.
+     */
+    static class SessionsHandler implements HttpHandler {
+        private static final String PREFIX = "/api/sessions";
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath().substring(PREFIX.length());
+            if (path.isEmpty() || path.equals("/")) {
+                if (method.equals("POST")) {
+                    create(exchange);
+                } else if (method.equals("GET")) {
+                    list(exchange);
+                } else {
+                    sendResponse(exchange, 405, "text/plain", "Method not allowed");
+                }
+                return;
+            }
+
+            int slash = path.indexOf('/', 1);
+            String id = slash < 0 ? path.substring(1) : path.substring(1, slash);
+            String action = slash < 0 ? "" : path.substring(slash + 1);
+            Session session = sessions.get(id);
+            if (session == null) {
+                sendResponse(exchange, 404, "application/json", "{\"error\":\"No such session\"}");
+                return;
+            }
+
+            if (action.isEmpty()) {
+                if (method.equals("GET")) {
+                    sendResponse(exchange, 200, "application/json", describe(session));
+                } else if (method.equals("DELETE")) {
+                    sessions.remove(id);
+                    sendResponse(exchange, 200, "application/json", "{\"success\":true}");
+                } else {
+                    sendResponse(exchange, 405, "text/plain", "Method not allowed");
+                }
+                return;
+            }
 
+            boolean read = action.equals("state") || action.equals("stream");
+            if (!method.equals(read ? "GET" : "POST")) {
+                sendResponse(exchange, 405, "text/plain", "Method not allowed");
+                return;
+            }
+            switch (action) {
+                case "state":
+                    StateHandler.send(exchange, session.getSnapshots());
+                    break;
+                case "stream":
+                    StreamHandler.send(exchange, session.getStream(), () -> !session.isClosed());
+                    break;
+                case "start":
+                    session.start();
+                    sendResponse(exchange, 200, "application/json", "{\"success\":true}");
+                    break;
+                case "reset":
+                    session.reset();
+                    sendResponse(exchange, 200, "application/json", "{\"success\":true}");
+                    break;
+                case "addTaxi":
+                    int taxiId = session.addTaxi();
+                    if (taxiId < 0) {
+                        sendResponse(exchange, 409, "application/json",
+                                "{\"error\":\"Session has its maximum of taxis\"}");
+                    } else {
+                        sendResponse(exchange, 200, "application/json",
+                                "{\"success\":true,\"taxiId\":" + taxiId + "}");
+                    }
+                    break;
+                case "addPassenger":
+                    addPassengers(exchange, session);
+                    break;
+                case "passengers/bulk":
+                    BookingSystem world = session.getBookingSystem();
+                    BulkPassengerHandler.enqueue(exchange, world, session.getMaxWaiting(),
+                            batch -> session.addPassengers(world, batch));
+                    break;
+                default:
+                    sendResponse(exchange, 404, "text/plain", "Unknown session endpoint");
+            }
+        }
+
+        /** Optional JSON body: seed, dispatch (greedy|batch|pool), speed (ticks per tick), taxis, start. */
+        private static void create(HttpExchange exchange) throws IOException {
+            Map<String, Object> request = readJsonObject(exchange);
+            if (request == null) {
+                return;
+            }
+            Object seed = request.get("seed");
+            Object dispatch = request.get("dispatch");
+            Session session = sessions.create(seed instanceof Number ? ((Number) seed).longValue() : null,
+                    dispatch instanceof String ? (String) dispatch : System.getProperty("dispatch", "greedy"),
+                    intValue(request, "speed", 1));
+            if (session == null) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+                sendResponse(exchange, 503, "application/json", "{\"error\":\"Too many sessions\",\"limit\":"
+                        + sessions.getMaxSessions() + "}");
+                return;
+            }
+            int taxiCount = intValue(request, "taxis", 0);
+            for (int i = 0; i < taxiCount; i++) {
+                if (session.addTaxi() < 0) {
+                    break;
+                }
+            }
+            if (Boolean.TRUE.equals(request.get("start"))) {
+                session.start();
+            }
+            sendResponse(exchange, 201, "application/json", describe(session));
+        }
+
+        private static void list(HttpExchange exchange) throws IOException {
+            StringBuilder json = new StringBuilder("[");
+            for (Session session : sessions.list()) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append(describe(session));
+            }
+            sendResponse(exchange, 200, "application/json", json.append(']').toString());
+        }
+
+        private static void addPassengers(HttpExchange exchange, Session session) throws IOException {
+            Map<String, Object> request = readJsonObject(exchange);
+            if (request == null) {
+                return;
+            }
+            int maleCount = Math.max(0, intValue(request, "maleCount", 0));
+            int femaleCount = Math.max(0, intValue(request, "femaleCount", 0));
+            if (!session.addPassengers(maleCount, femaleCount)) {
+                sendTooManyWaiting(exchange, session.getBookingSystem(), session.getMaxWaiting());
+                return;
+            }
             sendResponse(exchange, 200, "application/json", "{\"success\":true}");
         }
+
+        private static String describe(Session session) {
+            BookingSystem system = session.getBookingSystem();
+            return "{\"id\":\"" + session.getId() + "\",\"seed\":" + session.getSeed()
+                    + ",\"speed\":" + session.getTicksPerStep() + ",\"running\":" + session.isRunning()
+                    + ",\"taxis\":" + session.getTaxiCount() + ",\"waiting\":" + system.getQueueSize()
+                    + ",\"served\":" + (system.getTotalMalesServed() + system.getTotalFemalesServed())
+                    + ",\"simulatedSeconds\":" + session.getSimulatedMillis() / 1000 + "}";
+        }
+    }
+
+    /**
+     * Reads the request body as a JSON object (an empty body is an empty object).
+     * @return the object, or null after answering 400 for malformed JSON
+     */
+    private static Map<String, Object> readJsonObject(HttpExchange exchange) throws IOException {
+        try {
+            return JsonUtil.fromJson(readRequestBodyBytes(exchange));
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, "application/json",
+                    "{\"error\":" + JsonUtil.toJson("Malformed JSON: " + e.getMessage()) + "}");
+            return null;
+        }
+    }
+
+    private static int intValue(Map<String, Object> request, String key, int defaultValue) {
+        Object value = request.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    private static double doubleValue(Map<String, Object> request, String key) {
+        Object value = request.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    private static byte[] readRequestBodyBytes(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return in.readAllBytes();
+        }
     }
 
-    private static String readRequestBody(HttpExchange exchange) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody()))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
+    /** @return the body, or null if it is longer than {@code limit} bytes, read no further than that */
+    private static byte[] readRequestBodyBytes(HttpExchange exchange, int limit) throws IOException {
+        String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (declared != null) {
+            try {
+                if (Long.parseLong(declared.trim()) > limit) {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                // let the stream decide
             }
-            return sb.toString();
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(limit + 1);
+            return body.length > limit ? null : body;
         }
     }
 
@@ -400,11 +1237,16 @@ public class WebServer {
 
     private static void sendResponseBytes(HttpExchange exchange, int statusCode, String contentType, byte[] response)
             throws IOException {
+        sendResponseBytes(exchange, statusCode, contentType, response, response.length);
+    }
+
+    private static void sendResponseBytes(HttpExchange exchange, int statusCode, String contentType, byte[] response,
+            int length) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", contentType);
         exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-        exchange.sendResponseHeaders(statusCode, response.length);
+        exchange.sendResponseHeaders(statusCode, length);
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response);
+            os.write(response, 0, length);
         }
     }
 }
@@ -0,0 +1,97 @@
+package shard;
+
+import components.PassengerGrid;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import models.Gender;
+
+/**
+ * SCD Concept: Scale-Out Measurement
+ * Runs the same seeded workload on 1, 2, 4, ... shard processes and reports how the
+ * wall time scales. Each round simulates one second (20 ticks) with a Poisson number of
+ * new ride requests placed uniformly over the whole city. (Default passengers only appear
+ * downtown, which would leave the outer strips with nothing to do.)
+ *
+ * Two speedups are printed: the measured one, and the one projected from the critical
+ * path (the slowest shard of every round), which is what the run would take with a core
+ * per shard. On a machine with at least as many cores as shards the two agree, minus the
+ * coordinator's round trips; on fewer cores only the projection shows the scaling.
+ *
+ * The first {@code -Dwarmup} simulated seconds (30) are run but not timed, since every
+ * shard is a fresh JVM that starts out interpreted.
+ *
+ * Usage: java -cp bin shard.ShardBench [maxShards] [taxis] [requestsPerSecond] [simSeconds]
+ */
+public class ShardBench {
+    private static final int TICKS_PER_ROUND = 20;
+    private static final int CITY_WIDTH = ShardProtocol.CITY_WIDTH;
+    private static final int CITY_HEIGHT = PassengerGrid.ROWS * PassengerGrid.CELL_SIZE;
+
+    public static void main(String[] args) throws IOException {
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int taxis = args.length > 1 ? Integer.parseInt(args[1]) : 8000;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 600;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 120;
+        long seed = Long.getLong("seed", 42L);
+        int warmup = Integer.getInteger("warmup", 30);
+
+        System.out.println(String.format("%d taxis, %.0f requests/s, %d simulated seconds, %d cores",
+                taxis, rate, seconds, Runtime.getRuntime().availableProcessors()));
+        System.out.println(String.format("%-7s %9s %9s %9s %12s %10s %10s %10s",
+                "shards", "wallMs", "busyMs", "pathMs", "served", "taxiHand", "paxHand", "speedup"));
+        double baseWall = 0;
+        double basePath = 0;
+        for (int n = 1; n <= maxShards; n *= 2) {
+            SplittableRandom random = new SplittableRandom(seed);
+            try (ShardCluster cluster = ShardCluster.launch(n, seed, "greedy")) {
+                cluster.addTaxis(taxis);
+                long start = 0, busyBefore = 0, pathBefore = 0;
+                for (int s = 0; s < warmup + seconds; s++) {
+                    if (s == warmup) {
+                        start = System.nanoTime();
+                        busyBefore = cluster.getTotalBusyNanos();
+                        pathBefore = cluster.getCriticalPathNanos();
+                    }
+                    int arrivals = poisson(random, rate);
+                    for (int i = 0; i < arrivals; i++) {
+                        cluster.addPassenger(random.nextBoolean() ? Gender.MALE : Gender.FEMALE,
+                                random.nextInt(CITY_WIDTH), random.nextInt(CITY_HEIGHT), null);
+                    }
+                    cluster.run(TICKS_PER_ROUND);
+                }
+                double wall = (System.nanoTime() - start) / 1e6;
+                double busy = (cluster.getTotalBusyNanos() - busyBefore) / 1e6;
+                double path = (cluster.getCriticalPathNanos() - pathBefore) / 1e6;
+                if (n == 1) {
+                    baseWall = wall;
+                    basePath = path;
+                }
+                System.out.println(String.format("%-7d %9.0f %9.0f %9.0f %12d %10d %10d %5.2fx/%.2fx",
+                        n, wall, busy, path, cluster.getServed(),
+                        cluster.getTaxiHandoffs(), cluster.getPassengerHandoffs(),
+                        baseWall / wall, basePath / path));
+            }
+        }
+        System.out.println("speedup = measured/projected from the critical path");
+    }
+
+    // Knuth's method; fine for the per-second rates used here
+    private static int poisson(SplittableRandom random, double mean) {
+        if (mean > 500) {
+            return (int) Math.max(0, Math.round(mean + Math.sqrt(mean) * gaussian(random)));
+        }
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int count = 0;
+        while (product > limit) {
+            product *= random.nextDouble();
+            count++;
+        }
+        return count;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+}
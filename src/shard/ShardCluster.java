@@ -0,0 +1,351 @@
+package shard;
+
+import components.BookingSystem;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import models.Gender;
+import models.Passenger;
+import server.JsonWriter;
+import util.Logger;
+import util.SimulationClock;
+
+/**
+ * SCD Concept: Scatter-Gather (Shard Coordinator)
+ * Starts one {@link ShardNode} JVM per strip of the city and drives them in lockstep.
+ * A round sends each shard the handoffs addressed to it, tells every shard to run the
+ * same number of ticks (they run in parallel, one process each), then collects their
+ * replies and the taxis and passengers they handed off, to deliver in the next round.
+ * Shard clocks therefore never drift apart by more than one round.
+ *
+ * The coordinator numbers every passenger and taxi, so ids stay unique across shards,
+ * and routes new requests to the shard that owns their position. All methods are
+ * synchronized: HTTP threads and the round driver take turns.
+ *
+ * Shard JVMs get {@code -Dshard.jvmArgs} (space separated) in front of their main class.
+ */
+public class ShardCluster implements Closeable {
+    private static final class Shard {
+        final int index;
+        final Process process;
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        // Handoffs waiting for the next round, already framed as TAXI_IN / PASSENGER_IN
+        final ByteArrayOutputStream inbox = new ByteArrayOutputStream();
+        final DataOutputStream inboxOut = new DataOutputStream(inbox);
+        long busyNanos;
+        int idleTaxis, taxis, waiting, served;
+
+        Shard(int index, Process process, Socket socket) throws IOException {
+            this.index = index;
+            this.process = process;
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        }
+    }
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final BookingSystem requests; // only numbers and names new passengers
+    private int nextTaxiId = 1;
+    private long rounds = 0;
+    private long taxiHandoffs = 0;
+    private long passengerHandoffs = 0;
+    private long criticalPathNanos = 0; // sum over rounds of the slowest shard's busy time
+    private long totalBusyNanos = 0;
+
+    private ShardCluster(long seed) {
+        requests = new BookingSystem(SimulationClock.manual(), seed);
+    }
+
+    /** Starts {@code shardCount} shard processes and connects to each of them. */
+    public static ShardCluster launch(int shardCount, long seed, String dispatch) throws IOException {
+        ShardCluster cluster = new ShardCluster(seed);
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                cluster.shards.add(startShard(i));
+            }
+            for (Shard shard : cluster.shards) {
+                shard.out.writeByte(ShardProtocol.CONFIGURE);
+                shard.out.writeInt(shard.index);
+                shard.out.writeInt(shardCount);
+                shard.out.writeLong(seed);
+                shard.out.writeUTF(dispatch);
+                shard.out.flush();
+            }
+        } catch (IOException e) {
+            cluster.close();
+            throw e;
+        }
+        return cluster;
+    }
+
+    private static Shard startShard(int index) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        String jvmArgs = System.getProperty("shard.jvmArgs", "").trim();
+        if (!jvmArgs.isEmpty()) {
+            command.addAll(List.of(jvmArgs.split("\\s+")));
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardNode.class.getName());
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line = output.readLine();
+        if (line == null || !line.startsWith("SHARD_PORT ")) {
+            process.destroyForcibly();
+            throw new IOException("Shard " + index + " did not start: " + line);
+        }
+        int port = Integer.parseInt(line.substring("SHARD_PORT ".length()).trim());
+        Thread drain = new Thread(() -> {
+            try {
+                for (String l; (l = output.readLine()) != null; ) {
+                    Logger.info("[shard %d] %s", index, l);
+                }
+            } catch (IOException e) {
+                // process ended
+            }
+        }, "shard-" + index + "-output");
+        drain.setDaemon(true);
+        drain.start();
+        return new Shard(index, process, new Socket(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /** Spreads {@code count} new taxis evenly over the shards. */
+    public synchronized void addTaxis(int count) throws IOException {
+        int n = shards.size();
+        for (Shard shard : shards) {
+            int share = count / n + (shard.index < count % n ? 1 : 0);
+            if (share > 0) {
+                shard.out.writeByte(ShardProtocol.ADD_TAXIS);
+                shard.out.writeInt(nextTaxiId);
+                shard.out.writeInt(share);
+                nextTaxiId += share;
+                shard.taxis += share;
+            }
+        }
+    }
+
+    /** @return the new taxi's id */
+    public synchronized int addTaxi() throws IOException {
+        // The shard with the fewest taxis gets it
+        Shard emptiest = shards.get(0);
+        for (Shard shard : shards) {
+            if (shard.taxis < emptiest.taxis) {
+                emptiest = shard;
+            }
+        }
+        int id = nextTaxiId++;
+        emptiest.out.writeByte(ShardProtocol.ADD_TAXIS);
+        emptiest.out.writeInt(id);
+        emptiest.out.writeInt(1);
+        emptiest.taxis++;
+        return id;
+    }
+
+    /** A ride request at a random spot in the city. */
+    public synchronized void addPassenger(Gender gender) throws IOException {
+        route(new Passenger(gender, requests));
+    }
+
+    public synchronized void addPassenger(Gender gender, int x, int y, String destination) throws IOException {
+        route(new Passenger(gender, requests, x, y, destination));
+    }
+
+    private void route(Passenger passenger) throws IOException {
+        Shard shard = shards.get(ShardProtocol.shardOf(passenger.getX(), shards.size()));
+        shard.out.writeByte(ShardProtocol.ADD_PASSENGER);
+        ShardProtocol.writePassenger(shard.out, passenger);
+        shard.waiting++;
+    }
+
+    /** Runs every shard {@code ticks} ticks in parallel and collects their handoffs. */
+    public synchronized void run(int ticks) throws IOException {
+        int n = shards.size();
+        for (Shard shard : shards) {
+            shard.inboxOut.flush();
+            shard.inbox.writeTo(shard.out);
+            shard.inbox.reset();
+            shard.out.writeByte(ShardProtocol.RUN);
+            shard.out.writeInt(ticks);
+            shard.out.writeInt(shard.index > 0 ? shards.get(shard.index - 1).idleTaxis : 0);
+            shard.out.writeInt(shard.index < n - 1 ? shards.get(shard.index + 1).idleTaxis : 0);
+            shard.out.flush();
+        }
+        long slowest = 0;
+        for (Shard shard : shards) {
+            DataInputStream in = shard.in;
+            expect(in, ShardProtocol.RAN, shard);
+            shard.busyNanos = in.readLong();
+            shard.idleTaxis = in.readInt();
+            shard.taxis = in.readInt();
+            shard.waiting = in.readInt();
+            shard.served = in.readInt();
+            slowest = Math.max(slowest, shard.busyNanos);
+            totalBusyNanos += shard.busyNanos;
+
+            int taxisOut = in.readInt();
+            for (int i = 0; i < taxisOut; i++) {
+                // Re-framed for the owner of the taxi's position, read from the record itself
+                ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+                double x = ShardProtocol.copyTaxi(in, new DataOutputStream(record));
+                Shard to = shards.get(ShardProtocol.shardOf(x, n));
+                to.inboxOut.writeByte(ShardProtocol.TAXI_IN);
+                record.writeTo(to.inboxOut);
+            }
+            int passengersOut = in.readInt();
+            for (int i = 0; i < passengersOut; i++) {
+                Shard to = shards.get(in.readInt());
+                to.inboxOut.writeByte(ShardProtocol.PASSENGER_IN);
+                ShardProtocol.copyPassenger(in, to.inboxOut);
+            }
+            taxiHandoffs += taxisOut;
+            passengerHandoffs += passengersOut;
+        }
+        criticalPathNanos += slowest;
+        rounds++;
+    }
+
+    /**
+     * One {@code /api/state} document for the whole city: every shard's taxis and
+     * passengers concatenated, counters summed, pickup distances averaged.
+     */
+    public synchronized byte[] stateJson() throws IOException {
+        for (Shard shard : shards) {
+            shard.out.writeByte(ShardProtocol.STATE);
+            shard.out.flush();
+        }
+        List<byte[]> taxiArrays = new ArrayList<>();
+        List<byte[]> passengerArrays = new ArrayList<>();
+        int queueSize = 0, males = 0, females = 0;
+        String strategy = null;
+        double averagePickupDistance = 0, lastTickPickupDistance = 0, lastTickSolveMillis = 0;
+        for (Shard shard : shards) {
+            expect(shard.in, ShardProtocol.STATE_REPLY, shard);
+            taxiArrays.add(ShardProtocol.readBytes(shard.in));
+            passengerArrays.add(ShardProtocol.readBytes(shard.in));
+            queueSize += shard.in.readInt();
+            males += shard.in.readInt();
+            females += shard.in.readInt();
+            strategy = shard.in.readUTF();
+            averagePickupDistance += shard.in.readDouble() / shards.size();
+            lastTickPickupDistance += shard.in.readDouble() / shards.size();
+            lastTickSolveMillis = Math.max(lastTickSolveMillis, shard.in.readDouble());
+        }
+        JsonWriter out = new JsonWriter(64 * 1024);
+        out.beginObject();
+        out.name("taxis");
+        writeConcatenated(out, taxiArrays);
+        out.name("passengers");
+        writeConcatenated(out, passengerArrays);
+        out.name("queueSize").value(queueSize);
+        out.name("totalMalesServed").value(males);
+        out.name("totalFemalesServed").value(females);
+        out.name("totalPassengersServed").value(males + females);
+        out.name("dispatchStrategy").value(strategy);
+        out.name("averagePickupDistance").value(averagePickupDistance);
+        out.name("lastTickPickupDistance").value(lastTickPickupDistance);
+        out.name("lastTickSolveMillis").value(lastTickSolveMillis);
+        out.name("shards").value(shards.size());
+        out.endObject();
+        return out.toByteArray();
+    }
+
+    // Each part is a JSON array; its elements are spliced into one array without re-parsing
+    private static void writeConcatenated(JsonWriter out, List<byte[]> arrays) {
+        out.beginArray();
+        for (byte[] array : arrays) {
+            if (array.length > 2) {
+                out.rawValue(array, 1, array.length - 2);
+            }
+        }
+        out.endArray();
+    }
+
+    private static void expect(DataInputStream in, byte type, Shard shard) throws IOException {
+        byte actual = in.readByte();
+        if (actual != type) {
+            throw new IOException("Shard " + shard.index + " sent frame " + actual + ", expected " + type);
+        }
+    }
+
+    // Figures as of the last round
+    public synchronized int getTaxiCount() {
+        return shards.stream().mapToInt(s -> s.taxis).sum();
+    }
+
+    public synchronized int getWaiting() {
+        return shards.stream().mapToInt(s -> s.waiting).sum();
+    }
+
+    public synchronized int getServed() {
+        return shards.stream().mapToInt(s -> s.served).sum();
+    }
+
+    public synchronized long getRounds() {
+        return rounds;
+    }
+
+    public synchronized long getTaxiHandoffs() {
+        return taxiHandoffs;
+    }
+
+    public synchronized long getPassengerHandoffs() {
+        return passengerHandoffs;
+    }
+
+    /** Wall time the rounds would take with one core per shard: the slowest shard of each round. */
+    public synchronized long getCriticalPathNanos() {
+        return criticalPathNanos;
+    }
+
+    public synchronized long getTotalBusyNanos() {
+        return totalBusyNanos;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Shard shard : shards) {
+            try {
+                shard.out.writeByte(ShardProtocol.SHUTDOWN);
+                shard.out.flush();
+                shard.socket.close();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+        for (Shard shard : shards) {
+            try {
+                if (!shard.process.waitFor(5, TimeUnit.SECONDS)) {
+                    shard.process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                shard.process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        shards.clear();
+    }
+}
@@ -0,0 +1,160 @@
+package shard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import models.Taxi;
+import server.JsonUtil;
+import server.JsonWriter;
+import server.WebServer.SimulationState;
+import util.Logger;
+
+/**
+ * SCD Concept: Distributed Actor (Shard Process)
+ * One shard in its own JVM. Listens on a loopback port, prints {@code SHARD_PORT <port>}
+ * on stdout for the coordinator, then serves that one connection: commands are applied
+ * in order on this thread, so the shard's world never needs a lock. Exits when the
+ * coordinator disconnects or sends SHUTDOWN.
+ *
+ * Usage: java -cp bin shard.ShardNode [port]
+ */
+public class ShardNode {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final JsonWriter json = new JsonWriter(64 * 1024);
+    private ShardWorld world;
+
+    ShardNode(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+    }
+
+    public static void main(String[] args) throws IOException {
+        Logger.setConsoleLogging(Boolean.getBoolean("shard.log"));
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        try (ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            System.out.println("SHARD_PORT " + server.getLocalPort());
+            System.out.flush();
+            try (Socket socket = server.accept()) {
+                new ShardNode(socket).serve();
+            }
+        }
+    }
+
+    void serve() throws IOException {
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                return; // coordinator went away
+            }
+            switch (type) {
+                case ShardProtocol.CONFIGURE:
+                    world = new ShardWorld(in.readInt(), in.readInt(), in.readLong(), in.readUTF());
+                    break;
+                case ShardProtocol.ADD_TAXIS:
+                    world.addTaxis(in.readInt(), in.readInt());
+                    break;
+                case ShardProtocol.ADD_PASSENGER:
+                    world.addPassenger(ShardProtocol.readPassenger(in, world.getBookingSystem()));
+                    break;
+                case ShardProtocol.TAXI_IN:
+                    world.taxiIn(ShardProtocol.readTaxi(in, world.getBookingSystem()));
+                    break;
+                case ShardProtocol.PASSENGER_IN:
+                    world.passengerIn(ShardProtocol.readPassenger(in, world.getBookingSystem()));
+                    break;
+                case ShardProtocol.RUN:
+                    run(in.readInt(), in.readInt(), in.readInt());
+                    break;
+                case ShardProtocol.STATE:
+                    sendState();
+                    break;
+                case ShardProtocol.SHUTDOWN:
+                    return;
+                default:
+                    throw new IOException("Unknown shard command " + type);
+            }
+        }
+    }
+
+    private void run(int ticks, int leftIdle, int rightIdle) throws IOException {
+        // CPU time, not wall time: shards sharing a core would otherwise count each other's work
+        long start = THREADS.getCurrentThreadCpuTime();
+        world.run(ticks, leftIdle, rightIdle);
+        long busy = THREADS.getCurrentThreadCpuTime() - start;
+
+        out.writeByte(ShardProtocol.RAN);
+        out.writeLong(busy);
+        out.writeInt(world.idleTaxis());
+        out.writeInt(world.taxiCount());
+        out.writeInt(world.getBookingSystem().getQueueSize());
+        out.writeInt(world.served());
+        out.writeInt(world.taxisOut.size());
+        for (Taxi taxi : world.taxisOut) {
+            ShardProtocol.writeTaxi(out, taxi);
+        }
+        out.writeInt(world.passengersOut.size());
+        for (int i = 0; i < world.passengersOut.size(); i++) {
+            out.writeInt(world.passengersOutTo.get(i));
+            ShardProtocol.writePassenger(out, world.passengersOut.get(i));
+        }
+        out.flush();
+        world.taxisOut.clear();
+        world.passengersOut.clear();
+        world.passengersOutTo.clear();
+    }
+
+    private void sendState() throws IOException {
+        // Encoded inside the read so a retried read simply starts over
+        byte[] reply = world.publish().read(this::encodeState);
+        out.write(reply);
+        out.flush();
+    }
+
+    private byte[] encodeState(SimulationState state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+        DataOutputStream reply = new DataOutputStream(bytes);
+        try {
+            reply.writeByte(ShardProtocol.STATE_REPLY);
+            json.reset();
+            json.beginArray();
+            for (int i = 0; i < state.taxis.size(); i++) {
+                JsonUtil.writeTaxi(json, state.taxis.get(i));
+            }
+            json.endArray();
+            ShardProtocol.writeBytes(reply, json.buffer(), json.length());
+            json.reset();
+            json.beginArray();
+            for (int i = 0; i < state.passengers.size(); i++) {
+                JsonUtil.writePassenger(json, state.passengers.get(i));
+            }
+            json.endArray();
+            ShardProtocol.writeBytes(reply, json.buffer(), json.length());
+            reply.writeInt(state.queueSize);
+            reply.writeInt(state.totalMalesServed);
+            reply.writeInt(state.totalFemalesServed);
+            reply.writeUTF(state.dispatchStrategy);
+            reply.writeDouble(state.averagePickupDistance);
+            reply.writeDouble(state.lastTickPickupDistance);
+            reply.writeDouble(state.lastTickSolveMillis);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // not thrown by an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,194 @@
+package shard;
+
+import components.BookingSystem;
+import components.PassengerGrid;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import models.Gender;
+import models.Passenger;
+import models.Taxi;
+
+/**
+ * SCD Concept: Message Passing (Shard Wire Protocol)
+ * Frames exchanged between the coordinator and a shard over one local socket. Every frame
+ * is a u8 type followed by its fields in {@link DataOutputStream} order (big-endian,
+ * strings as modified UTF-8). The coordinator sends commands and only RUN and STATE are
+ * answered, so a round is: queued handoffs, RUN to every shard, then one RAN from each.
+ *
+ * <pre>
+ * CONFIGURE     i32 index, i32 shardCount, i64 seed, utf dispatch
+ * ADD_TAXIS     i32 firstId, i32 count           (spawned at random spots in the shard's strip)
+ * ADD_PASSENGER passenger                        (a new ride request)
+ * TAXI_IN       taxi                             (handoff from a neighbour)
+ * PASSENGER_IN  passenger                        (handoff from a neighbour)
+ * RUN           i32 ticks, i32 idle taxis left neighbour, i32 idle taxis right neighbour
+ * STATE         -
+ * SHUTDOWN      -
+ *
+ * RAN           i64 busyNanos, i32 idleTaxis, i32 taxis, i32 waiting, i32 served,
+ *               i32 n, n x taxi, i32 m, m x (i32 toShard, passenger)
+ * STATE_REPLY   i32 len, taxi JSON array, i32 len, passenger JSON array, i32 queueSize,
+ *               i32 malesServed, i32 femalesServed, utf strategy, f64 averagePickupDistance,
+ *               f64 lastTickPickupDistance, f64 lastTickSolveMillis
+ *
+ * passenger     i32 number, u8 gender, i32 x, i32 y, i64 enqueuedAt, utf id, utf name,
+ *               utf avatarUrl, bool hasDestination, [utf destination]
+ * taxi          i32 id, utf driverName, utf avatarUrl, f64 x, f64 y, f64 targetX, f64 targetY,
+ *               f64 earnings, u8 n, n x passenger      (on board; only taxis with no pickups pending move)
+ * </pre>
+ * A handed-off taxi never has a pickup pending; see {@link ShardWorld}.
+ */
+final class ShardProtocol {
+    static final byte CONFIGURE = 1;
+    static final byte ADD_TAXIS = 2;
+    static final byte ADD_PASSENGER = 3;
+    static final byte TAXI_IN = 4;
+    static final byte PASSENGER_IN = 5;
+    static final byte RUN = 6;
+    static final byte STATE = 7;
+    static final byte SHUTDOWN = 8;
+    static final byte RAN = 16;
+    static final byte STATE_REPLY = 17;
+
+    static final int CITY_WIDTH = PassengerGrid.COLUMNS * PassengerGrid.CELL_SIZE;
+
+    private ShardProtocol() {
+    }
+
+    /** The shard whose strip contains {@code x}; strips are equal slices of the city's width. */
+    static int shardOf(double x, int shardCount) {
+        int shard = (int) (x * shardCount / CITY_WIDTH);
+        return Math.max(0, Math.min(shardCount - 1, shard));
+    }
+
+    static double stripStart(int index, int shardCount) {
+        return (double) CITY_WIDTH * index / shardCount;
+    }
+
+    static void writePassenger(DataOutputStream out, Passenger p) throws IOException {
+        out.writeInt(p.getNumber());
+        out.writeByte(p.getGender().ordinal());
+        out.writeInt(p.getX());
+        out.writeInt(p.getY());
+        out.writeLong(p.getEnqueuedAt());
+        out.writeUTF(p.getId());
+        out.writeUTF(p.getName());
+        out.writeUTF(p.getAvatarUrl());
+        out.writeBoolean(p.getDestination() != null);
+        if (p.getDestination() != null) {
+            out.writeUTF(p.getDestination());
+        }
+    }
+
+    /** Reads a passenger into {@code system}; they are not queued yet. */
+    static Passenger readPassenger(DataInputStream in, BookingSystem system) throws IOException {
+        int number = in.readInt();
+        Gender gender = Gender.values()[in.readUnsignedByte()];
+        int x = in.readInt();
+        int y = in.readInt();
+        long enqueuedAt = in.readLong();
+        String id = in.readUTF();
+        String name = in.readUTF();
+        String avatarUrl = in.readUTF();
+        String destination = in.readBoolean() ? in.readUTF() : null;
+        Passenger p = new Passenger(number, id, name, avatarUrl, gender, system, x, y, destination);
+        if (enqueuedAt >= 0) {
+            p.markEnqueued(enqueuedAt); // shard clocks advance in lockstep, so wait times carry over
+        }
+        return p;
+    }
+
+    /** Call under the taxi's lock or from the only thread stepping its world. */
+    static void writeTaxi(DataOutputStream out, Taxi taxi) throws IOException {
+        out.writeInt(taxi.getId());
+        out.writeUTF(taxi.getDriverName());
+        out.writeUTF(taxi.getDriverAvatarUrl());
+        out.writeDouble(taxi.getX());
+        out.writeDouble(taxi.getY());
+        out.writeDouble(taxi.getTargetX());
+        out.writeDouble(taxi.getTargetY());
+        out.writeDouble(taxi.getEarnings());
+        List<Passenger> onBoard = taxi.getCurrentPassengers();
+        out.writeByte(onBoard.size());
+        for (Passenger p : onBoard) {
+            writePassenger(out, p);
+        }
+    }
+
+    /** Recreates a handed-off taxi in {@code system}, carrying on where it left off. */
+    static Taxi readTaxi(DataInputStream in, BookingSystem system) throws IOException {
+        int id = in.readInt();
+        String driverName = in.readUTF();
+        String avatarUrl = in.readUTF();
+        double x = in.readDouble();
+        double y = in.readDouble();
+        double targetX = in.readDouble();
+        double targetY = in.readDouble();
+        double earnings = in.readDouble();
+        int count = in.readUnsignedByte();
+        List<Passenger> onBoard = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Passenger p = readPassenger(in, system);
+            p.tryClaim();
+            onBoard.add(p);
+        }
+        Taxi taxi = new Taxi(id, system, driverName, avatarUrl, x, y);
+        taxi.restore(earnings, onBoard, List.of()); // plans their dropoffs
+        if (onBoard.isEmpty()) {
+            taxi.setTarget(targetX, targetY);
+        }
+        return taxi;
+    }
+
+    /** Copies one passenger record unchanged, for the coordinator, which only routes it. */
+    static void copyPassenger(DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeInt(in.readInt());
+        out.writeByte(in.readUnsignedByte());
+        out.writeInt(in.readInt());
+        out.writeInt(in.readInt());
+        out.writeLong(in.readLong());
+        out.writeUTF(in.readUTF());
+        out.writeUTF(in.readUTF());
+        out.writeUTF(in.readUTF());
+        boolean hasDestination = in.readBoolean();
+        out.writeBoolean(hasDestination);
+        if (hasDestination) {
+            out.writeUTF(in.readUTF());
+        }
+    }
+
+    /**
+     * Copies one taxi record unchanged.
+     * @return the taxi's x, which decides the shard it goes to
+     */
+    static double copyTaxi(DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeInt(in.readInt());
+        out.writeUTF(in.readUTF());
+        out.writeUTF(in.readUTF());
+        double x = in.readDouble();
+        out.writeDouble(x);
+        for (int i = 0; i < 4; i++) {
+            out.writeDouble(in.readDouble()); // y, targetX, targetY, earnings
+        }
+        int count = in.readUnsignedByte();
+        out.writeByte(count);
+        for (int i = 0; i < count; i++) {
+            copyPassenger(in, out);
+        }
+        return x;
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] data, int length) throws IOException {
+        out.writeInt(length);
+        out.write(data, 0, length);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return data;
+    }
+}
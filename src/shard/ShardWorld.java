@@ -0,0 +1,184 @@
+package shard;
+
+import components.BookingSystem;
+import components.DispatchStrategy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import models.Passenger;
+import models.Taxi;
+import server.SnapshotPublisher;
+import util.SimulationClock;
+import util.SimulationConstants;
+
+/**
+ * SCD Concept: Spatial Partitioning (Shard)
+ * The part of the city one shard owns: a vertical strip of the map with its own booking
+ * queue, taxis and movement tick, stepped by one thread like a session world.
+ *
+ * Handoff rules, checked every tick:
+ * <ul>
+ * <li>A taxi whose position left the strip goes to the shard that owns its new position,
+ *     with its passengers on board, unless it is on the way to a pickup. Movement is x
+ *     first, and a strip is convex in x, so a pickup inside the strip never leaves it.
+ *     Idle taxis patrol inside their own strip, so only rides cross borders.</li>
+ * <li>Once per dispatch tick, a passenger who has waited longer than the handoff wait,
+ *     stands within the border distance of a neighbour's strip, and finds no idle taxi
+ *     here while that neighbour has one, goes to that neighbour. A passenger moves at
+ *     most once, so nobody bounces between shards.</li>
+ * </ul>
+ */
+final class ShardWorld {
+    private static final long HANDOFF_WAIT_MILLIS = Long.getLong("shard.handoffWaitMillis", 15_000L);
+    private static final double BORDER = Double.parseDouble(System.getProperty("shard.border", "150"));
+
+    private final int index;
+    private final int shardCount;
+    private final double minX;
+    private final double maxX;
+    private final BookingSystem bookingSystem;
+    private final SplittableRandom random;
+    private final List<Taxi> taxis = new ArrayList<>();
+    private final Set<Integer> arrivedByHandoff = new HashSet<>();
+    private final SnapshotPublisher snapshots = new SnapshotPublisher();
+    private long ticks = 0;
+
+    // Filled by a run, drained by the node when it replies
+    final List<Taxi> taxisOut = new ArrayList<>();
+    final List<Passenger> passengersOut = new ArrayList<>();
+    final List<Integer> passengersOutTo = new ArrayList<>();
+
+    ShardWorld(int index, int shardCount, long seed, String dispatch) {
+        this.index = index;
+        this.shardCount = shardCount;
+        this.minX = ShardProtocol.stripStart(index, shardCount);
+        this.maxX = ShardProtocol.stripStart(index + 1, shardCount);
+        // Each shard gets its own stream of the cluster seed
+        this.bookingSystem = new BookingSystem(SimulationClock.manual(), seed + index * 0x9E3779B97F4A7C15L);
+        bookingSystem.setDispatchStrategy(DispatchStrategy.forName(dispatch));
+        this.random = bookingSystem.newRandom();
+    }
+
+    BookingSystem getBookingSystem() {
+        return bookingSystem;
+    }
+
+    SnapshotPublisher publish() {
+        snapshots.publish(bookingSystem);
+        return snapshots;
+    }
+
+    void addTaxis(int firstId, int count) {
+        for (int i = 0; i < count; i++) {
+            Taxi taxi = new Taxi(firstId + i, bookingSystem);
+            double x = minX + random.nextDouble() * (maxX - minX);
+            taxi.setX(x);
+            taxi.setTarget(x, taxi.getY());
+            taxis.add(taxi);
+        }
+    }
+
+    void addPassenger(Passenger passenger) {
+        bookingSystem.addPassengerToQueue(passenger);
+    }
+
+    void taxiIn(Taxi taxi) {
+        taxis.add(taxi);
+    }
+
+    void passengerIn(Passenger passenger) {
+        arrivedByHandoff.add(passenger.getNumber());
+        bookingSystem.restoreWaitingPassenger(passenger);
+    }
+
+    /**
+     * Steps the strip {@code count} ticks. Taxis and passengers handed off meanwhile are
+     * left in the out lists.
+     */
+    void run(int count, int leftIdle, int rightIdle) {
+        SimulationClock clock = bookingSystem.getClock();
+        for (int i = 0; i < count; i++) {
+            long now = clock.now() + SimulationConstants.TICK_MILLIS;
+            clock.advanceTo(now);
+            bookingSystem.getFleet().tick(SimulationConstants.SPEED, this::onTaxiStopped);
+            handOffTaxis();
+            for (Taxi taxi : taxis) {
+                taxi.step(now);
+            }
+            if (++ticks % SimulationConstants.DISPATCH_EVERY_TICKS == 0) {
+                bookingSystem.dispatchTick(taxis);
+                handOffPassengers(now, leftIdle, rightIdle);
+            }
+        }
+    }
+
+    int idleTaxis() {
+        int idle = 0;
+        for (Taxi taxi : taxis) {
+            if (taxi.getStatus().equals("AVAILABLE") && taxi.getPassengerCount() == 0) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    int taxiCount() {
+        return taxis.size();
+    }
+
+    int served() {
+        return bookingSystem.getTotalMalesServed() + bookingSystem.getTotalFemalesServed();
+    }
+
+    private void onTaxiStopped(Taxi taxi, boolean arrivedThisTick) {
+        if (taxi.getStatus().equals("AVAILABLE")) {
+            taxi.patrolTo(minX + random.nextDouble() * (maxX - minX), 50 + random.nextInt(7) * 100);
+        }
+    }
+
+    private void handOffTaxis() {
+        for (int i = taxis.size() - 1; i >= 0; i--) {
+            Taxi taxi = taxis.get(i);
+            double x = taxi.getX();
+            if ((x < minX || x >= maxX) && !taxi.hasPendingPickups()
+                    && ShardProtocol.shardOf(x, shardCount) != index) {
+                taxis.set(i, taxis.get(taxis.size() - 1));
+                taxis.remove(taxis.size() - 1);
+                bookingSystem.getFleet().remove(taxi);
+                taxisOut.add(taxi);
+            }
+        }
+    }
+
+    private void handOffPassengers(long now, int leftIdle, int rightIdle) {
+        if (!arrivedByHandoff.isEmpty()) {
+            // Forget passengers who were handed here and have been picked up since
+            Set<Integer> stillWaiting = new HashSet<>();
+            bookingSystem.forEachWaitingPassenger(p -> stillWaiting.add(p.getNumber()));
+            arrivedByHandoff.retainAll(stillWaiting);
+        }
+        if ((leftIdle == 0 && rightIdle == 0) || idleTaxis() > 0) {
+            return;
+        }
+        List<Passenger> candidates = new ArrayList<>();
+        bookingSystem.forEachWaitingPassenger(p -> {
+            if (now - p.getEnqueuedAt() >= HANDOFF_WAIT_MILLIS && !arrivedByHandoff.contains(p.getNumber())) {
+                candidates.add(p);
+            }
+        });
+        for (Passenger p : candidates) {
+            int to = -1;
+            if (index > 0 && leftIdle > 0 && p.getX() - minX <= BORDER) {
+                to = index - 1;
+            } else if (index < shardCount - 1 && rightIdle > 0 && maxX - p.getX() <= BORDER) {
+                to = index + 1;
+            }
+            if (to >= 0 && bookingSystem.withdraw(p)) {
+                passengersOut.add(p);
+                passengersOutTo.add(to);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * SCD Concept: Abstraction (Demand Stream)
+ * Supplies ride requests in non-decreasing time order. The engine pulls one request
+ * at a time, so a source can be far larger than memory.
+ */
+public interface DemandSource extends Closeable {
+    /**
+     * @param now current simulation time, for sources that generate relative to it
+     * @return the next request, or null when the source is exhausted
+     */
+    RideRequest next(long now) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
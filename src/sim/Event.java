@@ -0,0 +1,32 @@
+package sim;
+
+import models.Passenger;
+import models.Taxi;
+
+/**
+ * A timestamped simulation event. Ties on time are broken by scheduling order,
+ * which keeps runs with the same seed identical.
+ */
+class Event implements Comparable<Event> {
+    final long time;
+    final long sequence;
+    final EventType type;
+    final Taxi taxi;
+    final Passenger passenger;
+    final DemandSource source; // REQUEST events: where the next request comes from
+
+    Event(long time, long sequence, EventType type, Taxi taxi, Passenger passenger, DemandSource source) {
+        this.time = time;
+        this.sequence = sequence;
+        this.type = type;
+        this.taxi = taxi;
+        this.passenger = passenger;
+        this.source = source;
+    }
+
+    @Override
+    public int compareTo(Event other) {
+        int byTime = Long.compare(time, other.time);
+        return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+    }
+}
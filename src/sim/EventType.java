@@ -0,0 +1,10 @@
+package sim;
+
+public enum EventType {
+    REQUEST,
+    ASSIGN,
+    DISPATCH,
+    ARRIVE,
+    BOARD,
+    DROP_OFF
+}
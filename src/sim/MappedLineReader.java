@@ -0,0 +1,121 @@
+package sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * SCD Concept: Memory-Mapped I/O
+ * Reads a file line by line through a sliding read-only mapping of {@code windowBytes},
+ * so multi-GB files are streamed by the OS page cache without ever sitting on the heap.
+ * Each line is copied into one reused byte array; only the current window is mapped.
+ */
+public class MappedLineReader implements Closeable {
+    public static final int DEFAULT_WINDOW_BYTES = 64 << 20;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowBytes;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowPos;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private long lineNumber;
+
+    public MappedLineReader(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_BYTES);
+    }
+
+    public MappedLineReader(Path path, int windowBytes) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowBytes = windowBytes;
+        map(0);
+    }
+
+    /**
+     * Advances to the next line (without its "\n" or "\r\n").
+     * @return false at end of file
+     */
+    public boolean nextLine() throws IOException {
+        lineLength = 0;
+        if (windowStart + windowPos >= fileSize) {
+            return false;
+        }
+        while (true) {
+            int limit = window.limit();
+            int start = windowPos;
+            int i = start;
+            while (i < limit && window.get(i) != '\n') {
+                i++;
+            }
+            append(start, i);
+            if (i < limit) {
+                windowPos = i + 1; // skip the newline
+                break;
+            }
+            windowPos = limit;
+            if (windowStart + limit >= fileSize) {
+                break; // last line has no newline
+            }
+            map(windowStart + limit);
+        }
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        lineNumber++;
+        return true;
+    }
+
+    /** The current line's bytes; only the first {@link #length()} are valid. */
+    public byte[] bytes() {
+        return line;
+    }
+
+    public int length() {
+        return lineLength;
+    }
+
+    /** 1-based number of the current line. */
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    /** Bytes consumed so far, for progress reporting. */
+    public long position() {
+        return windowStart + windowPos;
+    }
+
+    public long size() {
+        return fileSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void append(int from, int to) {
+        int n = to - from;
+        if (lineLength + n > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + n));
+        }
+        window.position(from);
+        window.get(line, lineLength, n);
+        lineLength += n;
+    }
+
+    private void map(long start) throws IOException {
+        long size = Math.min(windowBytes, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        windowPos = 0;
+    }
+}
@@ -0,0 +1,33 @@
+package sim;
+
+import java.util.SplittableRandom;
+import models.Gender;
+
+/**
+ * Synthetic demand: {@code count} requests as a Poisson process, picked up inside the
+ * same central blocks the taxis patrol.
+ */
+public class PoissonDemand implements DemandSource {
+    private final SplittableRandom random;
+    private final double meanInterarrivalMillis;
+    private long remaining;
+
+    public PoissonDemand(SplittableRandom random, long count, double requestsPerSecond) {
+        this.random = random;
+        this.remaining = count;
+        this.meanInterarrivalMillis = 1000.0 / requestsPerSecond;
+    }
+
+    @Override
+    public RideRequest next(long now) {
+        if (remaining <= 0) {
+            return null;
+        }
+        remaining--;
+        Gender gender = random.nextBoolean() ? Gender.MALE : Gender.FEMALE;
+        int x = 250 + random.nextInt(6) * 100;
+        int y = 150 + random.nextInt(4) * 100;
+        long gap = (long) (-Math.log(1.0 - random.nextDouble()) * meanInterarrivalMillis);
+        return new RideRequest(now + gap, gender, x, y, null);
+    }
+}
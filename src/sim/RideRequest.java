@@ -0,0 +1,21 @@
+package sim;
+
+import models.Gender;
+
+/**
+ * One ride request from a demand source: when it is made, by whom and from where.
+ */
+public class RideRequest {
+    public final long timeMillis;
+    public final Gender gender;
+    public final int x, y;
+    public final String destination; // null = pick one at random
+
+    public RideRequest(long timeMillis, Gender gender, int x, int y, String destination) {
+        this.timeMillis = timeMillis;
+        this.gender = gender;
+        this.x = x;
+        this.y = y;
+        this.destination = destination;
+    }
+}
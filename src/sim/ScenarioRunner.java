@@ -0,0 +1,96 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import util.Logger;
+
+/**
+ * SCD Concept: Reproducible Benchmarking
+ * Runs a list of seeded scenarios several times each. Every repeat of a scenario must
+ * produce the same event fingerprint, so two builds (or two dispatch strategies) can be
+ * compared on exactly the same workload; wall time is reported as the best and median
+ * of the repeats.
+ *
+ * Usage: java -cp bin sim.ScenarioRunner [scenarios.txt] [repeats]
+ * Each line of the file is {@code name passengers taxis seed requestsPerSecond greedy|batch|pool};
+ * blank lines and lines starting with '#' are ignored.
+ */
+public class ScenarioRunner {
+    private static final String[] DEFAULT_SCENARIOS = {
+        "steady-greedy  20000  300 42  10 greedy",
+        "steady-batch   20000  300 42  10 batch",
+        "rush-greedy   100000 1000  7  40 greedy",
+        "rush-batch    100000 1000  7  40 batch",
+        "rush-pool     100000 1000  7  40 pool",
+    };
+
+    static final class Scenario {
+        final String name;
+        final long passengers;
+        final int taxis;
+        final long seed;
+        final double rate;
+        final String dispatch;
+
+        Scenario(String line) {
+            String[] f = line.trim().split("\\s+");
+            if (f.length != 6) {
+                throw new IllegalArgumentException(
+                        "expected: name passengers taxis seed requestsPerSecond greedy|batch|pool, got: " + line);
+            }
+            name = f[0];
+            passengers = Long.parseLong(f[1]);
+            taxis = Integer.parseInt(f[2]);
+            seed = Long.parseLong(f[3]);
+            rate = Double.parseDouble(f[4]);
+            dispatch = f[5];
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Logger.setConsoleLogging(false);
+        List<Scenario> scenarios = new ArrayList<>();
+        List<String> lines = args.length > 0 ? Files.readAllLines(Path.of(args[0])) : Arrays.asList(DEFAULT_SCENARIOS);
+        for (String line : lines) {
+            if (!line.isBlank() && !line.trim().startsWith("#")) {
+                scenarios.add(new Scenario(line));
+            }
+        }
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        System.out.println(String.format("%-16s %8s %8s %9s %9s %10s %10s %9s %7s %9s %9s  %-16s %s",
+                "scenario", "served", "events", "avgWait", "matchP99", "pickupP50", "pickupP99", "occupancy",
+                "detour", "bestMs", "medianMs", "fingerprint", "repeatable"));
+        boolean allRepeatable = true;
+        for (Scenario s : scenarios) {
+            long[] wall = new long[repeats];
+            SimulationResult first = null;
+            boolean repeatable = true;
+            for (int i = 0; i < repeats; i++) {
+                SimulationEngine engine = SimulationRunner.newEngine(s.taxis, s.seed, s.dispatch);
+                engine.generateDemand(s.passengers, s.rate);
+                SimulationResult result = engine.run(Long.MAX_VALUE);
+                wall[i] = result.wallMillis;
+                if (first == null) {
+                    first = result;
+                } else if (result.fingerprint != first.fingerprint) {
+                    repeatable = false;
+                }
+            }
+            Arrays.sort(wall);
+            allRepeatable &= repeatable;
+            System.out.println(String.format("%-16s %8d %8d %8.1fs %8dms %9dms %9dms %9.2f %6.1f%% %9d %9d  %016x %s",
+                    s.name, first.passengersServed, first.eventsProcessed, first.averageWaitSeconds,
+                    first.matchLatencyMillis.getPercentile(99), first.pickupWaitMillis.getPercentile(50),
+                    first.pickupWaitMillis.getPercentile(99), first.averageOccupancy, first.averageDetour * 100,
+                    wall[0], wall[repeats / 2], first.fingerprint, repeatable ? "yes" : "NO"));
+        }
+        if (!allRepeatable) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package sim;
+
+import components.BookingSystem;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import models.*;
+import util.LatencyHistogram;
+import util.SimulationClock;
+import util.SimulationConstants;
+
+/**
+ * SCD Concept: Discrete-Event Simulation
+ * Drives taxis and passengers as plain state machines from a single priority queue
+ * of timestamped events, with no threads and no sleeping. Time only advances when
+ * the next event is popped, so hours of city traffic run in seconds.
+ */
+public class SimulationEngine {
+    // Same pace as the live view
+    public static final double UNITS_PER_SECOND = SimulationConstants.UNITS_PER_SECOND;
+    private static final long POLL_MILLIS = Taxi.POLL_MILLIS;
+    private static final long DISPATCH_MILLIS = 1000;
+
+    private final BookingSystem bookingSystem;
+    private final SimulationClock clock;
+    private final SplittableRandom random;
+    private final long seed;
+    private final List<Taxi> taxis = new ArrayList<>();
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final Map<Passenger, Long> requestTimes = new HashMap<>();
+    private final LatencyHistogram matchLatency = new LatencyHistogram();
+    private final LatencyHistogram pickupWait = new LatencyHistogram();
+    private final List<DemandSource> sources = new ArrayList<>();
+
+    private long now = 0;
+    private long sequence = 0;
+    private long eventsProcessed = 0;
+    private long fingerprint = 0; // hash of every handled event, equal for identical runs
+
+    private long passengersRequested = 0;
+    private int pendingRequests = 0; // REQUEST events in the queue, at most one per source
+    private long passengersServed = 0;
+    private double totalWaitMillis = 0;
+
+    /**
+     * Runs are reproducible from the booking system's seed: the engine draws from its own
+     * stream of that world, as every taxi and passenger does.
+     */
+    public SimulationEngine(BookingSystem bookingSystem) {
+        if (!bookingSystem.getClock().isManual()) {
+            throw new IllegalArgumentException("The event engine needs a BookingSystem with a manual clock");
+        }
+        this.bookingSystem = bookingSystem;
+        this.clock = bookingSystem.getClock();
+        this.seed = bookingSystem.getSeed();
+        this.random = bookingSystem.newRandom();
+    }
+
+    public Taxi addTaxi() {
+        Taxi taxi = new Taxi(taxis.size() + 1, bookingSystem);
+        // Spawn inside the restricted area, same layout as Taxi itself uses.
+        double x = 50 + (2 + random.nextInt(7)) * 100;
+        double y = 50 + (1 + random.nextInt(4)) * 100;
+        taxi.setX(x);
+        taxi.setY(y);
+        taxi.setTargetX(x);
+        taxi.setTargetY(y);
+        taxis.add(taxi);
+        schedule(now, EventType.ASSIGN, taxi, null);
+        return taxi;
+    }
+
+    /**
+     * Generates {@code count} ride requests as a Poisson process with the given rate.
+     */
+    public void generateDemand(long count, double requestsPerSecond) {
+        addDemand(new PoissonDemand(random, count, requestsPerSecond));
+    }
+
+    /**
+     * Adds a stream of ride requests. Only the next request of each source is held
+     * in the event queue, so sources may be arbitrarily large.
+     */
+    public void addDemand(DemandSource source) {
+        sources.add(source);
+        scheduleNextRequest(source);
+    }
+
+    public SimulationResult run(long maxSimMillis) {
+        long wallStart = System.currentTimeMillis();
+        schedule(now, EventType.DISPATCH, null, null);
+
+        while (!events.isEmpty() && !(pendingRequests == 0 && passengersServed >= passengersRequested)) {
+            Event event = events.poll();
+            if (event.time > maxSimMillis) {
+                break;
+            }
+            now = event.time;
+            clock.advanceTo(now);
+            eventsProcessed++;
+            fingerprint = mix(fingerprint, event);
+            handle(event);
+        }
+
+        SimulationResult result = new SimulationResult();
+        result.seed = seed;
+        result.taxis = taxis.size();
+        result.passengersRequested = passengersRequested;
+        result.passengersServed = passengersServed;
+        result.eventsProcessed = eventsProcessed;
+        result.fingerprint = fingerprint;
+        result.simulatedMillis = now;
+        result.wallMillis = System.currentTimeMillis() - wallStart;
+        result.averageWaitSeconds = passengersServed == 0 ? 0 : totalWaitMillis / passengersServed / 1000.0;
+        result.matchLatencyMillis = matchLatency;
+        result.pickupWaitMillis = pickupWait;
+        result.averageOccupancy = bookingSystem.getPoolingStats().getAverageOccupancy();
+        result.averageDetour = bookingSystem.getPoolingStats().getAverageDetour();
+        for (Taxi taxi : taxis) {
+            result.totalEarnings += taxi.getEarnings();
+        }
+        return result;
+    }
+
+    public long now() {
+        return now;
+    }
+
+    private void handle(Event event) {
+        Taxi taxi = event.taxi;
+        switch (event.type) {
+            case REQUEST:
+                pendingRequests--;
+                requestTimes.put(event.passenger, now);
+                bookingSystem.addPassengerToQueue(event.passenger);
+                scheduleNextRequest(event.source);
+                break;
+            case DISPATCH:
+                bookingSystem.dispatchTick(taxis);
+                schedule(now + DISPATCH_MILLIS, EventType.DISPATCH, null, null);
+                break;
+            case ASSIGN:
+                // A taxi looks for more passengers while its plan has room, and drives to
+                // its next stop if it has one
+                if (taxi.canTakeMore()) {
+                    bookingSystem.requestDispatch(taxi);
+                }
+                if (taxi.hasStops()) {
+                    schedule(now + travelMillis(taxi), EventType.ARRIVE, taxi, null);
+                } else {
+                    schedule(now + POLL_MILLIS, EventType.ASSIGN, taxi, null);
+                }
+                break;
+            case ARRIVE:
+                taxi.setX(taxi.getTargetX());
+                taxi.setY(taxi.getTargetY());
+                Stop stop = taxi.getNextStop();
+                if (stop.isPickup()) {
+                    schedule(now, EventType.BOARD, taxi, stop.getPassenger());
+                } else {
+                    taxi.arriveAtDestination();
+                    schedule(now + Taxi.DROP_OFF_MILLIS, EventType.DROP_OFF, taxi, stop.getPassenger());
+                }
+                break;
+            case BOARD:
+                Long requestedAt = requestTimes.remove(event.passenger);
+                if (requestedAt != null) {
+                    totalWaitMillis += now - requestedAt;
+                    pickupWait.record(now - requestedAt);
+                    matchLatency.record(event.passenger.getClaimedAt() - requestedAt);
+                }
+                taxi.completePickup();
+                schedule(now + POLL_MILLIS, EventType.ASSIGN, taxi, null);
+                break;
+            case DROP_OFF:
+                passengersServed += taxi.completeDropOff().size();
+                schedule(now + POLL_MILLIS, EventType.ASSIGN, taxi, null);
+                break;
+        }
+    }
+
+    private void scheduleNextRequest(DemandSource source) {
+        RideRequest request;
+        try {
+            request = source.next(now);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading demand failed", e);
+        }
+        if (request == null) {
+            return;
+        }
+        passengersRequested++;
+        Passenger passenger = new Passenger(request.gender, bookingSystem, request.x, request.y, request.destination);
+        events.add(new Event(Math.max(now, request.timeMillis), sequence++, EventType.REQUEST, null, passenger,
+                source));
+        pendingRequests++;
+    }
+
+    private static long mix(long hash, Event event) {
+        long h = hash * 0x9E3779B97F4A7C15L + event.time;
+        h = h * 31 + event.type.ordinal();
+        h = h * 31 + (event.taxi == null ? 0 : event.taxi.getId());
+        h = h * 31 + (event.passenger == null ? 0 : event.passenger.getNumber());
+        return h ^ (h >>> 29);
+    }
+
+    // Manhattan distance, or the road route's cost when the world has a router
+    private long travelMillis(Taxi taxi) {
+        double distance = bookingSystem.getRouter() == null
+                ? Math.abs(taxi.getTargetX() - taxi.getX()) + Math.abs(taxi.getTargetY() - taxi.getY())
+                : bookingSystem.travelCost(taxi.getX(), taxi.getY(), taxi.getTargetX(), taxi.getTargetY());
+        return (long) (distance / UNITS_PER_SECOND * 1000);
+    }
+
+    private void schedule(long time, EventType type, Taxi taxi, Passenger passenger) {
+        events.add(new Event(time, sequence++, type, taxi, passenger, null));
+    }
+}
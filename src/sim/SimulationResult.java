@@ -0,0 +1,38 @@
+package sim;
+
+import util.LatencyHistogram;
+
+/**
+ * Summary of a finished discrete-event run.
+ */
+public class SimulationResult {
+    public long seed;
+    public int taxis;
+    public long passengersRequested;
+    public long passengersServed;
+    public long eventsProcessed;
+    public long fingerprint; // identical for runs that made exactly the same decisions
+    public long simulatedMillis;
+    public long wallMillis;
+    public double averageWaitSeconds;
+    public double totalEarnings;
+    public double averageOccupancy; // average passengers on board while driving between stops
+    public double averageDetour;    // extra ride length over the direct ride, 0.25 = 25%
+    public LatencyHistogram matchLatencyMillis; // request -> taxi assigned
+    public LatencyHistogram pickupWaitMillis;   // request -> boarded
+
+    @Override
+    public String toString() {
+        return String.format(
+                "seed=%d taxis=%d requested=%d served=%d events=%d simTime=%.1fh wall=%dms avgWait=%.1fs earnings=PKR %.2f occupancy=%.2f detour=%.1f%% fingerprint=%016x",
+                seed, taxis, passengersRequested, passengersServed, eventsProcessed,
+                simulatedMillis / 3_600_000.0, wallMillis, averageWaitSeconds, totalEarnings, averageOccupancy,
+                averageDetour * 100, fingerprint);
+    }
+
+    /** Percentile report of match latency and pickup wait, in milliseconds. */
+    public String latencyReport() {
+        return "matchLatencyMs " + (matchLatencyMillis == null ? "n/a" : matchLatencyMillis.summary())
+                + "\npickupWaitMs   " + (pickupWaitMillis == null ? "n/a" : pickupWaitMillis.summary());
+    }
+}
@@ -0,0 +1,71 @@
+package sim;
+
+import components.BookingSystem;
+import components.DispatchStrategy;
+import java.io.IOException;
+import java.nio.file.Path;
+import util.Logger;
+import util.SimulationClock;
+
+/**
+ * Command-line entry point for the discrete-event engine.
+ * Usage: java -cp bin sim.SimulationRunner [passengers] [taxis] [seed] [requestsPerSecond] [greedy|batch|pool]
+ *    or: java -cp bin sim.SimulationRunner replay trace.csv|trace.ndjson [taxis] [seed] [greedy|batch|pool]
+ */
+public class SimulationRunner {
+    public static void main(String[] args) throws IOException {
+        Logger.setConsoleLogging(false);
+
+        if (args.length > 0 && args[0].equals("replay")) {
+            replay(args);
+            return;
+        }
+
+        long passengers = args.length > 0 ? Long.parseLong(args[0]) : 100_000;
+        int taxis = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        double rate = args.length > 3 ? Double.parseDouble(args[3]) : 40.0;
+        String dispatch = args.length > 4 ? args[4] : "greedy";
+
+        SimulationEngine engine = newEngine(taxis, seed, dispatch);
+        engine.generateDemand(passengers, rate);
+
+        SimulationResult result = engine.run(Long.MAX_VALUE);
+        System.out.println(result);
+        System.out.println(result.latencyReport());
+    }
+
+    private static void replay(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: sim.SimulationRunner replay <trace.csv|trace.ndjson> [taxis] [seed] [greedy|batch|pool]");
+            System.exit(2);
+        }
+        Path trace = Path.of(args[1]);
+        int taxis = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        String dispatch = args.length > 4 ? args[4] : "greedy";
+
+        SimulationEngine engine = newEngine(taxis, seed, dispatch);
+        try (TraceDemandSource demand = new TraceDemandSource(trace)) {
+            engine.addDemand(demand);
+            SimulationResult result = engine.run(Long.MAX_VALUE);
+            System.out.println(result);
+            System.out.println(result.latencyReport());
+            System.out.println(String.format("trace=%s requests=%d skippedLines=%d reordered=%d",
+                    trace, demand.getRequests(), demand.getSkippedLines(), demand.getReordered()));
+            if (demand.getFirstError() != null) {
+                System.out.println("first skipped " + demand.getFirstError());
+            }
+        }
+    }
+
+    static SimulationEngine newEngine(int taxis, long seed, String dispatch) {
+        BookingSystem bookingSystem = new BookingSystem(SimulationClock.manual(), seed);
+        bookingSystem.setDispatchStrategy(DispatchStrategy.forName(dispatch));
+        SimulationEngine engine = new SimulationEngine(bookingSystem);
+        for (int i = 0; i < taxis; i++) {
+            engine.addTaxi();
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,252 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import models.Gender;
+import server.JsonReader;
+
+/**
+ * SCD Concept: Streaming I/O (Trace Replay)
+ * Replays recorded demand from a CSV or NDJSON file, one line at a time through a
+ * memory-mapped window, so the trace never has to fit in memory.
+ *
+ * CSV: {@code time,gender,x,y[,destination]} with an optional header line.
+ * NDJSON: {@code {"time":..,"gender":..,"x":..,"y":..,"destination":..}} per line.
+ * Times are milliseconds and are replayed relative to the first request, so epoch
+ * timestamps work as-is. Malformed lines are skipped and counted; a request earlier
+ * than its predecessor is replayed at the predecessor's time.
+ */
+public class TraceDemandSource implements DemandSource {
+    private static final int MAX_INTERNED = 1024;
+
+    private final MappedLineReader lines;
+    private final boolean json;
+    private final Map<String, String> destinations = new HashMap<>();
+    private final int[] bounds = new int[10]; // start/end of up to 5 CSV fields
+
+    private long firstTime = Long.MIN_VALUE;
+    private long lastTime = 0;
+    private long requests;
+    private long skippedLines;
+    private long reordered;
+    private String firstError;
+
+    public TraceDemandSource(Path path) throws IOException {
+        this(path, MappedLineReader.DEFAULT_WINDOW_BYTES);
+    }
+
+    /** Reads through a mapping of {@code windowBytes}; small windows exercise lines that span two. */
+    TraceDemandSource(Path path, int windowBytes) throws IOException {
+        this.lines = new MappedLineReader(path, windowBytes);
+        String name = path.getFileName().toString().toLowerCase();
+        this.json = name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json");
+    }
+
+    @Override
+    public RideRequest next(long now) throws IOException {
+        while (lines.nextLine()) {
+            byte[] b = lines.bytes();
+            int length = lines.length();
+            if (isBlank(b, length)) {
+                continue;
+            }
+            if (!json && lines.lineNumber() == 1 && !isNumberStart(b[firstNonSpace(b, length)])) {
+                continue; // header
+            }
+            RideRequest request;
+            try {
+                request = json ? parseJson(b, length) : parseCsv(b, length);
+            } catch (IllegalArgumentException e) {
+                skippedLines++;
+                if (firstError == null) {
+                    firstError = "line " + lines.lineNumber() + ": " + e.getMessage();
+                }
+                continue;
+            }
+            return rebase(request);
+        }
+        return null;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    public long getReordered() {
+        return reordered;
+    }
+
+    /** The first parse error, or null if every line was readable. */
+    public String getFirstError() {
+        return firstError;
+    }
+
+    /** Fraction of the file consumed, 0..1. */
+    public double getProgress() {
+        return lines.size() == 0 ? 1 : (double) lines.position() / lines.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lines.close();
+    }
+
+    private RideRequest rebase(RideRequest r) {
+        if (firstTime == Long.MIN_VALUE) {
+            firstTime = r.timeMillis;
+        }
+        long time = r.timeMillis - firstTime;
+        if (time < lastTime) {
+            reordered++;
+            time = lastTime;
+        }
+        lastTime = time;
+        requests++;
+        return new RideRequest(time, r.gender, r.x, r.y, r.destination);
+    }
+
+    private RideRequest parseCsv(byte[] b, int length) {
+        int fields = 0;
+        int start = 0;
+        for (int i = 0; i <= length && fields < 5; i++) {
+            if (i == length || b[i] == ',') {
+                bounds[fields * 2] = start;
+                bounds[fields * 2 + 1] = i;
+                fields++;
+                start = i + 1;
+            }
+        }
+        if (fields < 4) {
+            throw new IllegalArgumentException("expected time,gender,x,y[,destination]");
+        }
+        long time = parseNumber(b, bounds[0], bounds[1]);
+        Gender gender = parseGender(text(b, bounds[2], bounds[3]));
+        int x = (int) parseNumber(b, bounds[4], bounds[5]);
+        int y = (int) parseNumber(b, bounds[6], bounds[7]);
+        String destination = null;
+        if (fields == 5) {
+            // The destination runs to the end of the line, so it may contain commas
+            String text = text(b, bounds[8], length);
+            destination = text.isEmpty() ? null : intern(text);
+        }
+        return new RideRequest(time, gender, x, y, destination);
+    }
+
+    private RideRequest parseJson(byte[] b, int length) {
+        JsonReader in = new JsonReader(b, 0, length);
+        long time = Long.MIN_VALUE;
+        Gender gender = null;
+        int x = Integer.MIN_VALUE, y = Integer.MIN_VALUE;
+        String destination = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "time":
+                    time = (long) in.nextDouble();
+                    break;
+                case "gender":
+                    gender = parseGender(in.nextString());
+                    break;
+                case "x":
+                    x = (int) in.nextDouble();
+                    break;
+                case "y":
+                    y = (int) in.nextDouble();
+                    break;
+                case "destination":
+                    if (in.peek() == JsonReader.Token.NULL) {
+                        in.nextNull();
+                    } else {
+                        destination = intern(in.nextString());
+                    }
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        in.endDocument();
+        if (time == Long.MIN_VALUE || gender == null || x == Integer.MIN_VALUE || y == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("time, gender, x and y are required");
+        }
+        return new RideRequest(time, gender, x, y, destination);
+    }
+
+    private static Gender parseGender(String value) {
+        switch (value.trim().toUpperCase()) {
+            case "M":
+            case "MALE":
+                return Gender.MALE;
+            case "F":
+            case "FEMALE":
+                return Gender.FEMALE;
+            default:
+                throw new IllegalArgumentException("unknown gender " + value);
+        }
+    }
+
+    /** Parses an integer, or a decimal truncated to one, without allocating for integers. */
+    private static long parseNumber(byte[] b, int from, int to) {
+        while (from < to && b[from] == ' ') from++;
+        while (to > from && b[to - 1] == ' ') to--;
+        if (from == to) {
+            throw new IllegalArgumentException("missing number");
+        }
+        boolean negative = b[from] == '-';
+        int i = negative ? from + 1 : from;
+        long value = 0;
+        for (; i < to; i++) {
+            byte c = b[i];
+            if (c < '0' || c > '9') {
+                try {
+                    return (long) Double.parseDouble(text(b, from, to));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("bad number " + text(b, from, to));
+                }
+            }
+            value = value * 10 + (c - '0');
+        }
+        if (i == (negative ? from + 1 : from)) {
+            throw new IllegalArgumentException("bad number " + text(b, from, to));
+        }
+        return negative ? -value : value;
+    }
+
+    private String intern(String destination) {
+        String known = destinations.get(destination);
+        if (known != null) {
+            return known;
+        }
+        if (destinations.size() < MAX_INTERNED) {
+            destinations.put(destination, destination);
+        }
+        return destination;
+    }
+
+    private static String text(byte[] b, int from, int to) {
+        return new String(b, from, to - from, StandardCharsets.UTF_8).trim();
+    }
+
+    private static boolean isBlank(byte[] b, int length) {
+        return firstNonSpace(b, length) == length;
+    }
+
+    private static int firstNonSpace(byte[] b, int length) {
+        int i = 0;
+        while (i < length && (b[i] == ' ' || b[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNumberStart(byte c) {
+        return c == '-' || (c >= '0' && c <= '9');
+    }
+}
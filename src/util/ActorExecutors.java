@@ -0,0 +1,50 @@
+package util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SCD Concept: Thread Pools
+ * Picks the executor that runs Taxi and Passenger runnables.
+ * Virtual threads are looked up reflectively so the code still compiles and runs on
+ * JDKs without them. The build targets release 17, so on a JDK 17-20 runtime
+ * {@link #newVirtualThreadPerTaskExecutor} falls back to a cached platform pool: one OS
+ * thread per task, so every parked passenger holds a full stack again. Check
+ * {@link #virtualThreadsAvailable} before relying on it for large waiting sets.
+ */
+public class ActorExecutors {
+    private static final Method VIRTUAL_FACTORY = findVirtualFactory();
+
+    /** True on a JDK 21+ runtime, whatever release the code was compiled for. */
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_FACTORY != null;
+    }
+
+    /**
+     * One virtual thread per task (JDK 21+). A parked passenger then costs a few
+     * kilobytes of heap instead of a platform thread stack. Older runtimes get an
+     * unbounded cached platform pool instead, with a warning.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (VIRTUAL_FACTORY != null) {
+            try {
+                return (ExecutorService) VIRTUAL_FACTORY.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                Logger.warn("Virtual threads unavailable (%s), using platform threads.", e);
+            }
+        } else {
+            Logger.warn("Virtual threads need JDK 21+ (running %s), using platform threads.",
+                    System.getProperty("java.version"));
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    private static Method findVirtualFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
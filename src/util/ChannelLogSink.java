@@ -0,0 +1,116 @@
+package util;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * SCD Concept: NIO Channels (Batched Output)
+ * Encodes each batch into one reused direct buffer and writes it to a channel: stdout,
+ * or a log file that rolls over to {@code name.1 .. name.N} once it reaches a size limit.
+ */
+public class ChannelLogSink implements LogSink {
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final Path file;
+    private final long maxBytes;
+    private final int keep;
+    private WritableByteChannel channel;
+    private long written;
+
+    private ChannelLogSink(WritableByteChannel channel, Path file, long maxBytes, int keep) {
+        this.channel = channel;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.keep = keep;
+    }
+
+    public static ChannelLogSink stdout() {
+        return new ChannelLogSink(new FileOutputStream(FileDescriptor.out).getChannel(), null, Long.MAX_VALUE, 0);
+    }
+
+    /**
+     * @param maxBytes size at which the file is rolled over
+     * @param keep how many rolled-over files to keep
+     */
+    public static ChannelLogSink rollingFile(Path file, long maxBytes, int keep) throws IOException {
+        FileChannel channel = open(file);
+        ChannelLogSink sink = new ChannelLogSink(channel, file, maxBytes, keep);
+        sink.written = channel.size();
+        return sink;
+    }
+
+    @Override
+    public void write(CharSequence lines) throws IOException {
+        if (file != null && written >= maxBytes) {
+            roll();
+        }
+        CharBuffer chars = CharBuffer.wrap(lines);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+                continue;
+            }
+            if (result.isError()) {
+                chars.position(chars.position() + result.length()); // unpaired surrogate: skip it
+                continue;
+            }
+            break;
+        }
+        encoder.flush(buffer);
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            channel.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void roll() throws IOException {
+        channel.close();
+        if (keep > 0) {
+            for (int i = keep - 1; i >= 1; i--) {
+                Path from = rolled(i);
+                if (Files.exists(from)) {
+                    Files.move(from, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        channel = open(file);
+        written = 0;
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
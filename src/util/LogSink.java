@@ -0,0 +1,22 @@
+package util;
+
+import java.io.IOException;
+
+/**
+ * SCD Concept: Abstraction (Log Destination)
+ * Where the logger's background writer sends formatted lines. Sinks are only ever
+ * called from that one thread, so they need no locking of their own.
+ */
+public interface LogSink {
+    /**
+     * @param lines one or more complete lines, each ending in '\n'
+     */
+    void write(CharSequence lines) throws IOException;
+
+    /** Called when the writer has drained the queue for now. */
+    default void flush() throws IOException {
+    }
+
+    default void close() throws IOException {
+    }
+}
@@ -1,69 +1,294 @@
 package util;
 import javax.swing.JTextArea;
-import javax.swing.SwingUtilities;
-import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * SCD Concept: Refactoring (Separate Concerns)
- * Thread-safe utility for logging events to the console.
+ * SCD Concept: Producer-Consumer (Asynchronous Logging)
+ * Callers drop a record into a bounded lock-free ring and return; one background
+ * writer formats records in batches and hands them to the sinks (stdout, a rolling
+ * file from -Dlog.file, the Swing log area). Formatting is deferred to the writer and
+ * skipped entirely below -Dlog.level, so pass the pattern and arguments rather than a
+ * pre-formatted string. Arguments are formatted later, so they must not change after
+ * the call. When the ring is full the record is dropped and counted, never blocking.
  */
 public class Logger {
-    private static JTextArea logArea;
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
     private static final DateTimeFormatter FORMATTER =
             DateTimeFormatter.ofPattern("HH:mm:ss");
-    private static final int MAX_LINES = 500;
-    private static boolean autoScroll = true;
-    private static boolean consoleLogging = true;
-    
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, Integer.getInteger("log.buffer", 8192)));
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_BATCH_CHARS = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final Metrics.Counter DROPPED = Metrics.counter("log_records_dropped_total",
+            "Log records dropped because the ring buffer was full");
+    private static final Metrics.Counter WRITTEN = Metrics.counter("log_records_written_total",
+            "Log records handed to the sinks");
+    private static final Metrics.Counter SINK_ERRORS = Metrics.counter("log_sink_errors_total",
+            "Failed writes to a log sink");
+
+    // Vyukov-style bounded queue: a slot is free for ticket t when its sequence is t,
+    // and holds a published record when its sequence is t + 1.
+    private static final Record[] ring = new Record[CAPACITY];
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong();
+    private static long head; // writer thread only
+    private static final AtomicLong flushed = new AtomicLong();
+
+    private static volatile Level level = parseLevel(System.getProperty("log.level", "INFO"));
+    private static volatile boolean consoleLogging = true;
+    private static volatile boolean writerParked;
+    private static final LogSink console = ChannelLogSink.stdout();
+    private static final List<LogSink> sinks = new CopyOnWriteArrayList<>();
+    private static volatile SwingLogSink swingSink;
+    private static final Thread writer;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Record();
+            sequences.set(i, i);
+        }
+        String file = System.getProperty("log.file");
+        if (file != null) {
+            try {
+                sinks.add(ChannelLogSink.rollingFile(Paths.get(file),
+                        Long.getLong("log.file.maxBytes", 10L << 20), Integer.getInteger("log.file.keep", 5)));
+            } catch (IOException e) {
+                System.err.println("Cannot open log file " + file + ": " + e);
+            }
+        }
+        writer = new Thread(Logger::drainLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(1000)));
+    }
+
+    /** Mutable ring slot, reused for the life of the process. */
+    private static final class Record {
+        long timeMillis;
+        Level level;
+        String pattern;
+        Object[] args;
+    }
+
     public static void setLogArea(JTextArea area) {
-        logArea = area;
+        SwingLogSink previous = swingSink;
+        if (previous != null) {
+            sinks.remove(previous);
+        }
+        swingSink = area == null ? null : new SwingLogSink(area);
+        if (swingSink != null) {
+            sinks.add(swingSink);
+        }
     }
-    
+
     public static void setAutoScroll(boolean enabled) {
-        autoScroll = enabled;
+        SwingLogSink sink = swingSink;
+        if (sink != null) {
+            sink.setAutoScroll(enabled);
+        }
     }
-    
+
     public static void setConsoleLogging(boolean enabled) {
         consoleLogging = enabled;
     }
-    
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static void addSink(LogSink sink) {
+        sinks.add(sink);
+    }
+
+    public static void removeSink(LogSink sink) {
+        sinks.remove(sink);
+    }
+
+    /** False when nothing would see a record of this level, so callers can skip building arguments. */
+    public static boolean isEnabled(Level recordLevel) {
+        return recordLevel.compareTo(level) >= 0 && (consoleLogging || !sinks.isEmpty());
+    }
+
     public static void log(String message) {
-        String time = LocalTime.now().format(FORMATTER);
-        String line = String.format("[%s] %s", time, message);
+        log(Level.INFO, message, NO_ARGS);
+    }
 
-        // Console logging
-        if (consoleLogging) {
-            System.out.println(line);
-        }
-        
-        // GUI logging (if available)
-        if (logArea != null) {
-            SwingUtilities.invokeLater(() -> {
-                logArea.append(line + "\n");
-                trimExcessLines();
-
-                if (autoScroll) {
-                    logArea.setCaretPosition(
-                            logArea.getDocument().getLength()
-                    );
+    public static void debug(String pattern, Object... args) {
+        log(Level.DEBUG, pattern, args);
+    }
+
+    public static void info(String pattern, Object... args) {
+        log(Level.INFO, pattern, args);
+    }
+
+    public static void warn(String pattern, Object... args) {
+        log(Level.WARN, pattern, args);
+    }
+
+    public static void error(String pattern, Object... args) {
+        log(Level.ERROR, pattern, args);
+    }
+
+    /**
+     * @param pattern a {@link String#format} pattern, or the message itself when there are no args
+     */
+    public static void log(Level recordLevel, String pattern, Object... args) {
+        if (!isEnabled(recordLevel)) {
+            return; // Headless runs: nothing would see the line, skip it entirely
+        }
+        long ticket;
+        while (true) {
+            ticket = tail.get();
+            long available = sequences.get((int) ticket & MASK) - ticket;
+            if (available < 0) {
+                DROPPED.increment(); // ring full: the writer is behind
+                return;
+            }
+            if (available == 0 && tail.compareAndSet(ticket, ticket + 1)) {
+                break;
+            }
+        }
+        int index = (int) ticket & MASK;
+        Record record = ring[index];
+        record.timeMillis = System.currentTimeMillis();
+        record.level = recordLevel;
+        record.pattern = pattern;
+        record.args = args;
+        sequences.set(index, ticket + 1); // full fence, paired with the writerParked check
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Waits until every record logged before this call has reached the sinks.
+     * @return false if that did not happen within the timeout
+     */
+    public static boolean flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (flushed.get() < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    public static long getDropped() {
+        return DROPPED.get();
+    }
+
+    public static long getWritten() {
+        return WRITTEN.get();
+    }
+
+    private static void drainLoop() {
+        StringBuilder batch = new StringBuilder(MAX_BATCH_CHARS + 1024);
+        long lastSecond = Long.MIN_VALUE;
+        String stamp = "";
+        while (true) {
+            int count = 0;
+            while (batch.length() < MAX_BATCH_CHARS) {
+                int index = (int) head & MASK;
+                if (sequences.get(index) != head + 1) {
+                    break;
+                }
+                Record record = ring[index];
+                long second = Math.floorDiv(record.timeMillis, 1000);
+                if (second != lastSecond) {
+                    lastSecond = second;
+                    stamp = LocalTime.ofInstant(Instant.ofEpochMilli(record.timeMillis), ZONE).format(FORMATTER);
                 }
-            });
+                append(batch, stamp, record);
+                record.pattern = null;
+                record.args = null;
+                sequences.lazySet(index, head + CAPACITY);
+                head++;
+                count++;
+            }
+            if (count > 0) {
+                writeBatch(batch);
+                batch.setLength(0);
+                WRITTEN.add(count);
+                flushed.set(head);
+                continue;
+            }
+            flushSinks();
+            writerParked = true;
+            if (sequences.get((int) head & MASK) != head + 1) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            writerParked = false;
+        }
+    }
+
+    private static void append(StringBuilder batch, String stamp, Record record) {
+        batch.append('[').append(stamp).append("] ");
+        if (record.level != Level.INFO) {
+            batch.append(record.level).append(' ');
+        }
+        if (record.args.length == 0) {
+            batch.append(record.pattern);
+        } else {
+            try {
+                batch.append(String.format(record.pattern, record.args));
+            } catch (RuntimeException e) {
+                batch.append(record.pattern).append(" [format error: ").append(e).append(']');
+            }
+        }
+        batch.append('\n');
+    }
+
+    private static void writeBatch(StringBuilder batch) {
+        if (consoleLogging) {
+            write(console, batch);
+        }
+        for (LogSink sink : sinks) {
+            write(sink, batch);
+        }
+    }
+
+    private static void write(LogSink sink, CharSequence batch) {
+        try {
+            sink.write(batch);
+        } catch (IOException | RuntimeException e) {
+            SINK_ERRORS.increment();
+        }
+    }
+
+    private static void flushSinks() {
+        for (LogSink sink : sinks) {
+            try {
+                sink.flush();
+            } catch (IOException | RuntimeException e) {
+                SINK_ERRORS.increment();
+            }
         }
     }
-    
-    private static void trimExcessLines() {
-        if (logArea == null) return;
-        int lineCount = logArea.getLineCount();
-        if (lineCount <= MAX_LINES) return;
 
+    private static Level parseLevel(String name) {
         try {
-            int end = logArea.getLineStartOffset(
-                    lineCount - MAX_LINES
-            );
-            logArea.getDocument().remove(0, end);
-        } catch (BadLocationException ignored) {
+            return Level.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
         }
     }
 }
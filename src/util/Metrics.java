@@ -0,0 +1,271 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * SCD Concept: Contention-Free Instrumentation
+ * Process-wide registry of counters, gauges and latency histograms, rendered in the
+ * Prometheus text format. Counters are {@link LongAdder}s and histograms are striped
+ * by thread, so recording on a hot path never makes two threads fight over one field.
+ * Registering the same name twice returns the existing metric.
+ */
+public final class Metrics {
+    private static final Map<String, Metric> REGISTRY = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static synchronized Counter counter(String name, String help) {
+        return register(new Counter(name, help));
+    }
+
+    public static synchronized DoubleCounter doubleCounter(String name, String help) {
+        return register(new DoubleCounter(name, help));
+    }
+
+    /**
+     * @param divisor recorded units per exported unit, e.g. 1000 to export milliseconds as seconds
+     */
+    public static synchronized Histogram histogram(String name, String help, double divisor) {
+        return register(new Histogram(name, help, divisor));
+    }
+
+    /** A value read at scrape time. Re-registering replaces the supplier. */
+    public static synchronized void gauge(String name, String help, DoubleSupplier value) {
+        REGISTRY.put(name, new Gauge(name, help, value));
+    }
+
+    /**
+     * A gauge with one series per label value, e.g. taxis per status.
+     * The supplier returns label value to sample and is called at scrape time.
+     */
+    public static synchronized void gauge(String name, String help, String label,
+            Supplier<Map<String, ? extends Number>> values) {
+        REGISTRY.put(name, new LabeledGauge(name, help, label, values));
+    }
+
+    /** Renders every registered metric in the Prometheus text exposition format (0.0.4). */
+    public static String scrape() {
+        List<Metric> metrics;
+        synchronized (Metrics.class) {
+            metrics = new ArrayList<>(REGISTRY.values());
+        }
+        StringBuilder out = new StringBuilder(4096);
+        for (Metric metric : metrics) {
+            out.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+            out.append("# TYPE ").append(metric.name).append(' ').append(metric.type()).append('\n');
+            metric.writeSamples(out);
+        }
+        return out.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Metric> T register(T metric) {
+        Metric existing = REGISTRY.get(metric.name);
+        if (existing == null) {
+            REGISTRY.put(metric.name, metric);
+            return metric;
+        }
+        if (existing.getClass() != metric.getClass()) {
+            throw new IllegalArgumentException(metric.name + " is already registered as a " + existing.type());
+        }
+        return (T) existing;
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    public abstract static class Metric {
+        final String name;
+        final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract String type();
+
+        abstract void writeSamples(StringBuilder out);
+    }
+
+    public static final class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void writeSamples(StringBuilder out) {
+            sample(out, name, null, value.sum());
+        }
+    }
+
+    public static final class DoubleCounter extends Metric {
+        private final DoubleAdder value = new DoubleAdder();
+
+        DoubleCounter(String name, String help) {
+            super(name, help);
+        }
+
+        public void add(double delta) {
+            value.add(delta);
+        }
+
+        public double get() {
+            return value.sum();
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void writeSamples(StringBuilder out) {
+            sample(out, name, null, value.sum());
+        }
+    }
+
+    /**
+     * Latency distribution exported as a Prometheus summary (p50/p90/p99, sum, count).
+     * Each stripe is a {@link LatencyHistogram} behind its own monitor; a thread always
+     * records into the same stripe, so the monitor is almost never contended. A scrape
+     * merges the stripes.
+     */
+    public static final class Histogram extends Metric {
+        private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+        private final double divisor;
+        private final LatencyHistogram[] stripes;
+        private final int mask;
+
+        Histogram(String name, String help, double divisor) {
+            super(name, help);
+            this.divisor = divisor;
+            int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+            this.stripes = new LatencyHistogram[n];
+            this.mask = n - 1;
+            for (int i = 0; i < n; i++) {
+                stripes[i] = new LatencyHistogram();
+            }
+        }
+
+        public void record(long value) {
+            long id = Thread.currentThread().getId();
+            LatencyHistogram stripe = stripes[(int) (id ^ (id >>> 16)) & mask];
+            synchronized (stripe) {
+                stripe.record(value);
+            }
+        }
+
+        /** Records the time since {@code startNanos} in microseconds. */
+        public void recordNanosSince(long startNanos) {
+            record((System.nanoTime() - startNanos) / 1_000);
+        }
+
+        /** Merged copy of every stripe, in recorded units. */
+        public LatencyHistogram snapshot() {
+            LatencyHistogram merged = new LatencyHistogram();
+            for (LatencyHistogram stripe : stripes) {
+                synchronized (stripe) {
+                    merged.add(stripe);
+                }
+            }
+            return merged;
+        }
+
+        @Override
+        String type() {
+            return "summary";
+        }
+
+        @Override
+        void writeSamples(StringBuilder out) {
+            LatencyHistogram merged = snapshot();
+            for (double q : QUANTILES) {
+                sample(out, name, "quantile=\"" + q + "\"", merged.getPercentile(q * 100) / divisor);
+            }
+            sample(out, name + "_sum", null, merged.getSum() / divisor);
+            sample(out, name + "_count", null, merged.getCount());
+        }
+    }
+
+    private static final class Gauge extends Metric {
+        private final DoubleSupplier value;
+
+        Gauge(String name, String help, DoubleSupplier value) {
+            super(name, help);
+            this.value = value;
+        }
+
+        @Override
+        String type() {
+            return "gauge";
+        }
+
+        @Override
+        void writeSamples(StringBuilder out) {
+            sample(out, name, null, value.getAsDouble());
+        }
+    }
+
+    private static final class LabeledGauge extends Metric {
+        private final String label;
+        private final Supplier<Map<String, ? extends Number>> values;
+
+        LabeledGauge(String name, String help, String label, Supplier<Map<String, ? extends Number>> values) {
+            super(name, help);
+            this.label = label;
+            this.values = values;
+        }
+
+        @Override
+        String type() {
+            return "gauge";
+        }
+
+        @Override
+        void writeSamples(StringBuilder out) {
+            for (Map.Entry<String, ? extends Number> e : values.get().entrySet()) {
+                sample(out, name, label + "=\"" + e.getKey() + "\"", e.getValue().doubleValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SCD Concept: Abstraction (Time Source)
+ * Every delay in the simulation goes through a clock instead of calling Thread.sleep
+ * directly. A scaled clock runs the threaded world faster than real time; a manual
+ * clock is advanced by the discrete-event engine and never sleeps.
+ */
+public class SimulationClock {
+    /** Speed value meaning "don't sleep at all" (only meaningful for the manual clock). */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private final double speed;
+    private final boolean manual;
+    private final long startNanos = System.nanoTime();
+    private volatile long manualNow = 0;
+
+    private SimulationClock(double speed, boolean manual) {
+        this.speed = speed;
+        this.manual = manual;
+    }
+
+    public static SimulationClock realTime() {
+        return new SimulationClock(1.0, false);
+    }
+
+    /**
+     * @param speed simulated seconds per wall-clock second, e.g. 100 for 100x
+     */
+    public static SimulationClock scaled(double speed) {
+        if (!(speed > 0) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Speed must be a positive finite multiplier: " + speed);
+        }
+        return new SimulationClock(speed, false);
+    }
+
+    /**
+     * A clock whose time only moves when {@link #advanceTo(long)} is called.
+     */
+    public static SimulationClock manual() {
+        return new SimulationClock(AS_FAST_AS_POSSIBLE, true);
+    }
+
+    /** Simulated milliseconds since the clock was created. */
+    public long now() {
+        if (manual) {
+            return manualNow;
+        }
+        return (long) ((System.nanoTime() - startNanos) / 1_000_000.0 * speed);
+    }
+
+    /** Blocks for the given amount of simulated time. */
+    public void sleep(long simMillis) throws InterruptedException {
+        if (manual) {
+            throw new IllegalStateException("A manual clock is advanced by its engine, not slept on");
+        }
+        long realNanos = (long) (simMillis * 1_000_000.0 / speed);
+        if (realNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(realNanos);
+        }
+    }
+
+    public void advanceTo(long simMillis) {
+        if (!manual) {
+            throw new IllegalStateException("Only a manual clock can be advanced");
+        }
+        if (simMillis > manualNow) {
+            manualNow = simMillis;
+        }
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public boolean isManual() {
+        return manual;
+    }
+
+    /**
+     * Parses "1", "100", "100x" or "max".
+     */
+    public static SimulationClock parse(String speed) {
+        String value = speed.trim().toLowerCase();
+        if (value.equals("max")) {
+            return manual();
+        }
+        if (value.endsWith("x")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        return scaled(Double.parseDouble(value));
+    }
+}
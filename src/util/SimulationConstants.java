@@ -0,0 +1,21 @@
+package util;
+
+/**
+ * The pace every world runs at: how long a movement tick is, how far a taxi drives in
+ * one, and how often batch dispatch runs. The live server, session worlds, shard JVMs
+ * and the discrete-event engine all read these, so a taxi covers the same ground in the
+ * same simulated time wherever it runs.
+ */
+public final class SimulationConstants {
+    /** Simulated time per movement tick. */
+    public static final long TICK_MILLIS = 50;
+    /** Map units a taxi drives per tick on the fastest roads; reduced for realistic observation. */
+    public static final double SPEED = 1.5;
+    /** Batch dispatch runs once per this many ticks, i.e. once per second. */
+    public static final int DISPATCH_EVERY_TICKS = 20;
+    /** {@link #SPEED} per second of simulated time. */
+    public static final double UNITS_PER_SECOND = SPEED * 1000 / TICK_MILLIS;
+
+    private SimulationConstants() {
+    }
+}
@@ -0,0 +1,57 @@
+package util;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+
+/**
+ * SCD Concept: Thread Confinement (Swing EDT)
+ * Appends each batch to a text area on the event dispatch thread, keeping only the
+ * last {@value #MAX_LINES} lines.
+ */
+public class SwingLogSink implements LogSink {
+    private static final int MAX_LINES = 500;
+
+    private final JTextArea logArea;
+    private volatile boolean autoScroll = true;
+
+    public SwingLogSink(JTextArea logArea) {
+        this.logArea = logArea;
+    }
+
+    public JTextArea getLogArea() {
+        return logArea;
+    }
+
+    public void setAutoScroll(boolean enabled) {
+        autoScroll = enabled;
+    }
+
+    @Override
+    public void write(CharSequence lines) {
+        String text = lines.toString();
+        SwingUtilities.invokeLater(() -> {
+            logArea.append(text);
+            trimExcessLines();
+
+            if (autoScroll) {
+                logArea.setCaretPosition(
+                        logArea.getDocument().getLength()
+                );
+            }
+        });
+    }
+
+    private void trimExcessLines() {
+        int lineCount = logArea.getLineCount();
+        if (lineCount <= MAX_LINES) return;
+
+        try {
+            int end = logArea.getLineStartOffset(
+                    lineCount - MAX_LINES
+            );
+            logArea.getDocument().remove(0, end);
+        } catch (BadLocationException ignored) {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import models.Gender;
+import models.Passenger;
+import models.Taxi;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import util.Logger;
+import util.SimulationClock;
+
+/**
+ * Many taxi threads race over one booking system. Every claim goes through the
+ * passenger's CAS, so however the threads interleave each passenger must end up with
+ * exactly one taxi, and none may be lost or served twice.
+ */
+class BookingSystemConcurrencyTest {
+    private static final int TAXIS = 32;
+    private static final int PASSENGERS = 5_000;
+
+    @BeforeAll
+    static void quiet() {
+        Logger.setConsoleLogging(false);
+    }
+
+    @RepeatedTest(5)
+    void everyPassengerIsClaimedExactlyOnce() throws InterruptedException {
+        BookingSystem system = new BookingSystem(SimulationClock.manual(), 42);
+        SplittableRandom random = new SplittableRandom(7);
+        List<Passenger> passengers = new ArrayList<>(PASSENGERS);
+        for (int i = 0; i < PASSENGERS; i++) {
+            // Few distinct spots, so many taxis see the same nearest passenger
+            passengers.add(new Passenger(random.nextBoolean() ? Gender.MALE : Gender.FEMALE, system,
+                    50 + random.nextInt(4) * 100, 50 + random.nextInt(3) * 100));
+        }
+        assertTrue(system.addPassengersToQueue(passengers, PASSENGERS));
+        List<Taxi> taxis = new ArrayList<>(TAXIS);
+        for (int i = 0; i < TAXIS; i++) {
+            taxis.add(new Taxi(i + 1, system));
+        }
+
+        ConcurrentHashMap<Passenger, Taxi> claims = new ConcurrentHashMap<>();
+        AtomicReference<String> doubleClaim = new AtomicReference<>();
+        AtomicInteger boarded = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(TAXIS);
+        for (Taxi taxi : taxis) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (system.getQueueSize() > 0 && doubleClaim.get() == null) {
+                    Passenger p = system.findAndPickPassengers(taxi);
+                    if (p == null) {
+                        continue;
+                    }
+                    Taxi other = claims.putIfAbsent(p, taxi);
+                    if (other != null) {
+                        doubleClaim.compareAndSet(null, p.getId() + " claimed by T" + other.getId()
+                                + " and T" + taxi.getId());
+                    }
+                    // Serve the plan at once so the taxi keeps competing for passengers
+                    while (taxi.hasStops()) {
+                        if (taxi.completePickup() != null) {
+                            boarded.incrementAndGet();
+                        } else {
+                            taxi.completeDropOff();
+                        }
+                    }
+                }
+            }, "taxi-" + taxi.getId());
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+            assertTrue(!thread.isAlive(), thread.getName() + " did not finish");
+        }
+
+        assertNull(doubleClaim.get());
+        assertEquals(PASSENGERS, claims.size());
+        assertEquals(PASSENGERS, boarded.get());
+        assertEquals(0, system.getQueueSize());
+        assertEquals(PASSENGERS, system.getTotalMalesServed() + system.getTotalFemalesServed());
+        for (Passenger p : passengers) {
+            assertTrue(p.isClaimed(), p.getId() + " was never claimed");
+        }
+    }
+
+    @Test
+    void concurrentBatchesNeverOvershootTheWaitingLimit() throws InterruptedException {
+        BookingSystem system = new BookingSystem(SimulationClock.manual(), 1);
+        int limit = 1_000;
+        int threadCount = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int round = 0; round < 10; round++) {
+                    List<Passenger> batch = new ArrayList<>();
+                    for (int i = 0; i < 30; i++) {
+                        batch.add(new Passenger(Gender.FEMALE, system, 150, 150));
+                    }
+                    if (system.addPassengersToQueue(batch, limit)) {
+                        accepted.addAndGet(batch.size());
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(accepted.get(), system.getQueueSize());
+        assertTrue(system.getQueueSize() <= limit, "waiting " + system.getQueueSize() + " > " + limit);
+        assertEquals(limit - limit % 30, system.getQueueSize()); // full up to the last batch that fit
+    }
+}
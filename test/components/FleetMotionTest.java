@@ -0,0 +1,117 @@
+package components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import models.Gender;
+import models.Passenger;
+import models.Taxi;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import util.Logger;
+import util.SimulationClock;
+import util.SimulationConstants;
+
+class FleetMotionTest {
+    private static final double SPEED = SimulationConstants.SPEED;
+
+    @BeforeAll
+    static void quiet() {
+        Logger.setConsoleLogging(false);
+    }
+
+    @Test
+    void movingTaxiArrivesOnceThenParks() {
+        BookingSystem system = new BookingSystem(SimulationClock.manual(), 1);
+        Taxi taxi = new Taxi(1, system, "Test", "", 100, 100);
+        FleetMotion fleet = system.getFleet();
+        taxi.setTarget(103, 100);
+
+        fleet.tick(SPEED);
+        assertEquals(FleetMotion.MOVING, fleet.getState(taxi.getSlot()));
+        fleet.tick(SPEED);
+        assertEquals(FleetMotion.ARRIVED, fleet.getState(taxi.getSlot()));
+        assertEquals(103, taxi.getX());
+        fleet.tick(SPEED);
+        assertEquals(FleetMotion.PARKED, fleet.getState(taxi.getSlot()));
+    }
+
+    @Test
+    void parkedTaxiGivenANearbyTargetArrives() {
+        BookingSystem system = new BookingSystem(SimulationClock.manual(), 1);
+        Taxi taxi = new Taxi(1, system, "Test", "", 100, 100);
+        FleetMotion fleet = system.getFleet();
+        fleet.tick(SPEED);
+        assertEquals(FleetMotion.PARKED, fleet.getState(taxi.getSlot()));
+
+        // Within one step, but more than the 1-unit arrival tolerance away
+        taxi.setTarget(101.3, 100);
+        List<Boolean> stops = new ArrayList<>();
+        fleet.tick(SPEED, (t, arrivedThisTick) -> stops.add(arrivedThisTick));
+        assertEquals(List.of(true), stops);
+        assertEquals(101.3, taxi.getX());
+    }
+
+    /**
+     * The taxi thread parks in waitForArrival until the integrator signals it. A pickup
+     * just over a unit away is reached in one step, and must still wake the thread.
+     */
+    @Test
+    void taxiThreadWakesForAPickupWithinOneStep() throws InterruptedException {
+        BookingSystem system = new BookingSystem(SimulationClock.scaled(1000), 1);
+        Taxi taxi = new Taxi(1, system, "Test", "", 248.7, 150);
+        Passenger passenger = new Passenger(Gender.MALE, system, 250, 150);
+        system.addPassengerToQueue(passenger);
+
+        Thread thread = new Thread(taxi, "taxi");
+        thread.start();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (taxi.getPassengerCount() == 0 && System.nanoTime() < deadline) {
+                system.getFleet().tick(SPEED, (t, arrivedThisTick) -> {
+                    if (arrivedThisTick) {
+                        t.signalArrival();
+                    }
+                });
+                Thread.sleep(1);
+            }
+            assertTrue(taxi.getPassengerCount() == 1, "the taxi never boarded its passenger");
+        } finally {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    @Test
+    void taxiThreadSleepsThroughALongDrive() throws InterruptedException {
+        SimulationClock clock = SimulationClock.scaled(100);
+        BookingSystem system = new BookingSystem(clock, 1);
+        Taxi taxi = new Taxi(1, system, "Test", "", 100, 150);
+        system.addPassengerToQueue(new Passenger(Gender.MALE, system, 400, 150));
+        long wakeupsBefore = Taxi.getArrivalWakeups();
+
+        Thread thread = new Thread(taxi, "taxi");
+        thread.start();
+        try {
+            // 300 units is 200 ticks, ten simulated seconds: a 100 ms poll would wake 100 times
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (taxi.getPassengerCount() == 0 && System.nanoTime() < deadline) {
+                system.getFleet().tick(SPEED, (t, arrivedThisTick) -> {
+                    if (arrivedThisTick) {
+                        t.signalArrival();
+                    }
+                });
+                clock.sleep(SimulationConstants.TICK_MILLIS);
+            }
+            assertTrue(taxi.getPassengerCount() == 1, "the taxi never boarded its passenger");
+            assertTrue(Taxi.getArrivalWakeups() - wakeupsBefore <= 1,
+                    "woke " + (Taxi.getArrivalWakeups() - wakeupsBefore) + " times on the way");
+        } finally {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+}
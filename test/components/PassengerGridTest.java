@@ -0,0 +1,151 @@
+package components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import models.Gender;
+import models.Passenger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import util.Logger;
+import util.SimulationClock;
+
+/**
+ * The ring search must find exactly what a scan of every waiting passenger would: the
+ * closest unclaimed passenger of an allowed gender, wherever the taxi is and however
+ * sparse or crowded the cells are.
+ */
+class PassengerGridTest {
+    private static final int WIDTH = PassengerGrid.COLUMNS * PassengerGrid.CELL_SIZE;
+    private static final int HEIGHT = PassengerGrid.ROWS * PassengerGrid.CELL_SIZE;
+    private static final boolean[][] MASKS = { {true, true}, {true, false}, {false, true} };
+
+    private final BookingSystem system = new BookingSystem(SimulationClock.manual(), 3);
+
+    @BeforeAll
+    static void quiet() {
+        Logger.setConsoleLogging(false);
+    }
+
+    @Test
+    void findNearestMatchesALinearScan() {
+        SplittableRandom random = new SplittableRandom(29);
+        for (int round = 0; round < 200; round++) {
+            PassengerGrid grid = new PassengerGrid();
+            // From a handful of passengers (long searches) to crowded cells
+            List<Passenger> all = fill(grid, random, 1 + random.nextInt(round < 100 ? 20 : 2000));
+            for (int q = 0; q < 50; q++) {
+                double x = random.nextDouble() * WIDTH;
+                double y = random.nextDouble() * HEIGHT;
+                boolean[] allowed = MASKS[random.nextInt(MASKS.length)];
+                Passenger expected = bruteForce(all, x, y, allowed, 1).stream().findFirst().orElse(null);
+                Passenger found = grid.findNearest(x, y, allowed);
+                if (expected == null) {
+                    assertNull(found);
+                } else {
+                    assertEquals(distanceSq(expected, x, y), distanceSq(found, x, y),
+                            "nearest to " + x + "," + y + " among " + all.size());
+                    assertTrue(allowed[found.getGender().ordinal()] && !found.isClaimed());
+                }
+            }
+        }
+    }
+
+    @Test
+    void findNearbyReturnsTheClosestInOrder() {
+        SplittableRandom random = new SplittableRandom(31);
+        List<Passenger> out = new ArrayList<>();
+        for (int round = 0; round < 100; round++) {
+            PassengerGrid grid = new PassengerGrid();
+            List<Passenger> all = fill(grid, random, 1 + random.nextInt(500));
+            for (int q = 0; q < 20; q++) {
+                double x = random.nextDouble() * WIDTH;
+                double y = random.nextDouble() * HEIGHT;
+                boolean[] allowed = MASKS[random.nextInt(MASKS.length)];
+                int limit = 1 + random.nextInt(8);
+                List<Passenger> expected = bruteForce(all, x, y, allowed, limit);
+                grid.findNearby(x, y, allowed, limit, out);
+                assertEquals(expected.size(), out.size());
+                for (int i = 0; i < out.size(); i++) {
+                    assertEquals(distanceSq(expected.get(i), x, y), distanceSq(out.get(i), x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    void removeAndBatchAddKeepTheSizeExact() {
+        PassengerGrid grid = new PassengerGrid();
+        Passenger a = new Passenger(Gender.MALE, system, 150, 150);
+        Passenger b = new Passenger(Gender.FEMALE, system, 150, 150);
+        grid.add(a);
+        grid.add(a); // already waiting
+        assertEquals(1, grid.size());
+
+        assertFalse(grid.addAll(List.of(b, new Passenger(Gender.MALE, system, 10, 10)), 2));
+        assertEquals(1, grid.size(), "a rejected batch adds nothing");
+        assertTrue(grid.addAll(List.of(a, b), 3));
+        assertEquals(2, grid.size(), "a passenger already waiting is not counted twice");
+
+        assertTrue(grid.remove(a));
+        assertFalse(grid.remove(a));
+        assertEquals(1, grid.size());
+        assertEquals(b, grid.findNearest(0, 0, MASKS[0]));
+        assertNull(grid.findNearest(0, 0, MASKS[1]), "only a woman is left");
+    }
+
+    @Test
+    void claimedPassengersAreNeitherFoundNorVisited() {
+        PassengerGrid grid = new PassengerGrid();
+        Passenger near = new Passenger(Gender.MALE, system, 100, 100);
+        Passenger far = new Passenger(Gender.MALE, system, 1100, 700);
+        grid.add(near);
+        grid.add(far);
+        assertTrue(near.tryClaim());
+
+        assertEquals(far, grid.findNearest(100, 100, MASKS[0]));
+        List<Passenger> visited = new ArrayList<>();
+        grid.forEachWaiting(visited::add);
+        assertEquals(List.of(far), visited);
+    }
+
+    private List<Passenger> fill(PassengerGrid grid, SplittableRandom random, int count) {
+        List<Passenger> all = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Passenger p = new Passenger(random.nextBoolean() ? Gender.MALE : Gender.FEMALE, system,
+                    random.nextInt(WIDTH), random.nextInt(HEIGHT));
+            grid.add(p);
+            all.add(p);
+            if (random.nextInt(10) == 0) {
+                p.tryClaim(); // claimed but not yet removed, as between a claim and its remove
+            }
+        }
+        return all;
+    }
+
+    private static List<Passenger> bruteForce(List<Passenger> all, double x, double y, boolean[] allowed, int limit) {
+        List<Passenger> eligible = new ArrayList<>();
+        Set<Passenger> seen = new HashSet<>();
+        for (Passenger p : all) {
+            if (!p.isClaimed() && allowed[p.getGender().ordinal()] && seen.add(p)) {
+                eligible.add(p);
+            }
+        }
+        eligible.sort(Comparator.comparingDouble(p -> distanceSq(p, x, y)));
+        return eligible.subList(0, Math.min(limit, eligible.size()));
+    }
+
+    private static double distanceSq(Passenger p, double x, double y) {
+        double dx = x - p.getX();
+        double dy = y - p.getY();
+        return dx * dx + dy * dy;
+    }
+}
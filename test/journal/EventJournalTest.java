@@ -0,0 +1,334 @@
+package journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import components.BookingJournal;
+import components.BookingSystem;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import models.Gender;
+import models.Passenger;
+import models.Taxi;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import util.Logger;
+import util.SimulationClock;
+
+/**
+ * Drives a real booking world with the journal attached, then reopens the directory and
+ * checks that the recovered world matches the live one: from a snapshot plus its tail,
+ * across segment rolls, with events the snapshot already holds, and after a damaged
+ * record, where replay must stop and the log continue from the last intact record.
+ */
+class EventJournalTest {
+    private static final int SEGMENT_BYTES = 4096;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void quiet() {
+        Logger.setConsoleLogging(false);
+    }
+
+    @Test
+    void recoversFromSnapshotPlusTail() throws IOException {
+        World world = new World(1);
+        CountingJournal events;
+        try (EventJournal journal = open()) {
+            events = world.record(journal);
+            world.addTaxis(6);
+            world.addPassengers(300);
+            world.run(400);
+            journal.setCheckpointSource(world::capture);
+            journal.checkpoint();
+            events.count = 0;
+            world.addPassengers(50);
+            world.run(150);
+        }
+        assertFalse(Files.exists(dir.resolve(String.format("%016x.log", 0))),
+                "segments before the snapshot should be gone");
+
+        try (EventJournal journal = open()) {
+            assertTrue(events.count > 0);
+            assertEquals(events.count, journal.getRecoveredEvents(), "only the tail is replayed");
+            assertEquals(world.describe(), restore(journal.getRecovered()));
+        }
+    }
+
+    @Test
+    void readsAcrossSegmentRolls() throws IOException {
+        World world = new World(2);
+        try (EventJournal journal = open()) {
+            world.record(journal);
+            world.addTaxis(4);
+            world.addPassengers(200);
+            world.run(300);
+        }
+        assertTrue(segments().size() > 3, "expected several segments, got " + segments().size());
+        CountingJournal events;
+        try (EventJournal journal = open()) {
+            assertEquals(world.describe(), restore(journal.getRecovered()));
+            // Keep appending after recovery, so the reopened log rolls again
+            events = world.record(journal);
+            world.addPassengers(100);
+            world.run(200);
+        }
+        try (EventJournal journal = open()) {
+            assertTrue(journal.getRecoveredEvents() > events.count);
+            assertEquals(world.describe(), restore(journal.getRecovered()));
+        }
+    }
+
+    @Test
+    void replaysEventsTheSnapshotAlreadyContains() throws IOException {
+        World world = new World(3);
+        try (EventJournal journal = open()) {
+            CountingJournal events = world.record(journal);
+            world.addTaxis(5);
+            world.addPassengers(250);
+            world.run(200);
+            // The world keeps changing between reading the journal position and capturing it
+            journal.setCheckpointSource(() -> {
+                events.count = 0;
+                world.addPassengers(40);
+                world.run(120);
+                return world.capture();
+            });
+            journal.checkpoint();
+            assertTrue(events.count > 0);
+            journal.setCheckpointSource(null);
+            world.run(100);
+        }
+        try (EventJournal journal = open()) {
+            assertEquals(world.describe(), restore(journal.getRecovered()));
+        }
+    }
+
+    @Test
+    void corruptRecordEndsReplayAndDropsEverythingAfterIt() throws IOException {
+        World world = new World(4);
+        try (EventJournal journal = open()) {
+            world.record(journal);
+            world.addTaxis(3);
+            world.addPassengers(150);
+            world.run(150);
+        }
+        List<Path> before = segments();
+        assertTrue(before.size() > 2);
+        Path first = before.get(0);
+        List<Integer> records = recordOffsets(first);
+        int bad = records.size() / 2;
+        flipByte(first, records.get(bad) + 6); // inside the payload, so the CRC no longer matches
+
+        try (EventJournal journal = open()) {
+            assertEquals(bad, journal.getRecoveredEvents());
+            assertEquals(List.of(first), segments(), "segments after the damage should be deleted");
+            journal.taxiAdded(new Taxi(99, new BookingSystem(SimulationClock.manual(), 9)));
+        }
+        try (EventJournal journal = open()) {
+            // The new record directly follows the intact ones, with nothing stale after it
+            assertEquals(bad + 1, journal.getRecoveredEvents());
+        }
+    }
+
+    @Test
+    void tornTailRecordIsDiscarded() throws IOException {
+        World world = new World(5);
+        try (EventJournal journal = open()) {
+            world.record(journal);
+            world.addTaxis(2);
+            world.addPassengers(5);
+        }
+        Path segment = segments().get(0);
+        List<Integer> records = recordOffsets(segment);
+        int last = records.get(records.size() - 1);
+        ByteBuffer data = read(segment);
+        int end = last + 4 + data.getInt(last) + 4;
+        for (int i = end - 6; i < end; i++) { // the length made it to disk, the tail did not
+            data.put(i, (byte) 0);
+        }
+        Files.write(segment, data.array());
+
+        try (EventJournal journal = open()) {
+            assertEquals(records.size() - 1, journal.getRecoveredEvents());
+            assertEquals(2, journal.getRecovered().getTaxiCount());
+            assertEquals(4, journal.getRecovered().getWaitingCount());
+        }
+        assertEquals(records.subList(0, records.size() - 1), recordOffsets(segment));
+    }
+
+    private EventJournal open() throws IOException {
+        return new EventJournal(dir, SEGMENT_BYTES, 1000, Long.MAX_VALUE);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().matches("[0-9a-f]{16}\\.log"))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    /** Start of every record up to the end of the log or segment. */
+    private static List<Integer> recordOffsets(Path segment) throws IOException {
+        ByteBuffer data = read(segment);
+        List<Integer> offsets = new ArrayList<>();
+        int at = 0;
+        while (at + 4 <= data.limit()) {
+            int length = data.getInt(at);
+            if (length <= 0) {
+                break;
+            }
+            offsets.add(at);
+            at += 4 + length + 4;
+        }
+        return offsets;
+    }
+
+    private static ByteBuffer read(Path file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void flipByte(Path file, int at) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[at] ^= 0x5A;
+        Files.write(file, bytes);
+    }
+
+    private static String restore(WorldImage image) {
+        BookingSystem system = new BookingSystem(SimulationClock.manual(), 0);
+        List<Taxi> fleet = new ArrayList<>();
+        image.restoreInto(system, fleet);
+        return describe(system, fleet);
+    }
+
+    /** What recovery must preserve, in an order that does not depend on how it was rebuilt. */
+    private static String describe(BookingSystem system, List<Taxi> fleet) {
+        StringBuilder out = new StringBuilder();
+        out.append("served ").append(system.getTotalMalesServed()).append('/')
+                .append(system.getTotalFemalesServed()).append('\n');
+        fleet.stream().sorted((a, b) -> Integer.compare(a.getId(), b.getId())).forEach(taxi -> out
+                .append(String.format("T%d %s (%.1f,%.1f) earned %.2f riding %s pending %s%n", taxi.getId(),
+                        taxi.getDriverName(), taxi.getX(), taxi.getY(), taxi.getEarnings(),
+                        numbers(taxi.getCurrentPassengers()), numbers(taxi.getPendingPickups()))));
+        List<Passenger> waiting = new ArrayList<>();
+        system.forEachWaitingPassenger(waiting::add);
+        out.append("waiting ").append(numbers(waiting));
+        return out.toString();
+    }
+
+    private static TreeSet<String> numbers(List<Passenger> passengers) {
+        TreeSet<String> ids = new TreeSet<>();
+        for (Passenger p : passengers) {
+            ids.add(p.getNumber() + ":" + p.getId() + ":" + p.getGender() + "@" + p.getX() + "," + p.getY());
+        }
+        return ids;
+    }
+
+    /** A booking world stepped by hand: taxis claim, board and drop off in turn. */
+    private static final class World {
+        final BookingSystem system;
+        final List<Taxi> fleet = new ArrayList<>();
+        final SplittableRandom random;
+        int next;
+
+        World(long seed) {
+            system = new BookingSystem(SimulationClock.manual(), seed);
+            random = new SplittableRandom(seed);
+        }
+
+        CountingJournal record(BookingJournal journal) {
+            CountingJournal counting = new CountingJournal(journal);
+            system.setJournal(counting);
+            return counting;
+        }
+
+        void addTaxis(int count) {
+            for (int i = 0; i < count; i++) {
+                Taxi taxi = new Taxi(fleet.size() + 1, system);
+                fleet.add(taxi);
+                system.getJournal().taxiAdded(taxi);
+            }
+        }
+
+        void addPassengers(int count) {
+            for (int i = 0; i < count; i++) {
+                system.addPassengerToQueue(new Passenger(random.nextBoolean() ? Gender.MALE : Gender.FEMALE,
+                        system, 50 + random.nextInt(10) * 100, 50 + random.nextInt(6) * 100));
+            }
+        }
+
+        /** One stop or one dispatch per step, round robin, so plans are left half served. */
+        void run(int steps) {
+            for (int i = 0; i < steps; i++) {
+                Taxi taxi = fleet.get(next++ % fleet.size());
+                if (!taxi.hasStops()) {
+                    system.findAndPickPassengers(taxi);
+                } else if (taxi.completePickup() == null) {
+                    taxi.completeDropOff();
+                }
+            }
+        }
+
+        WorldImage capture() {
+            return WorldImage.capture(system, fleet);
+        }
+
+        String describe() {
+            return EventJournalTest.describe(system, fleet);
+        }
+    }
+
+    /** Counts the events passed on, so a test knows how long the tail is. */
+    private static final class CountingJournal implements BookingJournal {
+        final BookingJournal target;
+        int count;
+
+        CountingJournal(BookingJournal target) {
+            this.target = target;
+        }
+
+        @Override
+        public void taxiAdded(Taxi taxi) {
+            count++;
+            target.taxiAdded(taxi);
+        }
+
+        @Override
+        public void passengerRequested(Passenger passenger) {
+            count++;
+            target.passengerRequested(passenger);
+        }
+
+        @Override
+        public void passengerClaimed(Passenger passenger, Taxi taxi) {
+            count++;
+            target.passengerClaimed(passenger, taxi);
+        }
+
+        @Override
+        public void passengerBoarded(Passenger passenger, Taxi taxi) {
+            count++;
+            target.passengerBoarded(passenger, taxi);
+        }
+
+        @Override
+        public void passengersDropped(Taxi taxi, List<Passenger> passengers, double earnings,
+                int malesServed, int femalesServed) {
+            count++;
+            target.passengersDropped(taxi, passengers, earnings, malesServed, femalesServed);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import components.BookingSystem;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import util.ActorExecutors;
+import util.Logger;
+import util.SimulationClock;
+
+/**
+ * 100k passengers waiting at once. The queue and claims must cope on their own; with
+ * virtual threads every one of them can also park as a passenger actor, and each must
+ * wake exactly when a taxi boards them. The actor test needs a JDK 21+ runtime: on the
+ * platform fallback it would start 100k OS threads, so it is skipped there.
+ */
+class PassengerScaleTest {
+    private static final int PASSENGERS = 100_000;
+    private static final int TAXIS = 16;
+    private static final int SERVED = 10_000; // the map is 1000 x 600, so cells are crowded at this size
+
+    @BeforeAll
+    static void quiet() {
+        Logger.setConsoleLogging(false);
+    }
+
+    @Test
+    void bookingSystemServesAHundredThousandWaiting() throws InterruptedException {
+        BookingSystem system = new BookingSystem(SimulationClock.manual(), 5);
+        List<Passenger> passengers = newPassengers(system);
+        assertTrue(system.addPassengersToQueue(passengers, PASSENGERS));
+        assertEquals(PASSENGERS, system.getQueueSize());
+
+        serve(system, SERVED);
+        int served = system.getTotalMalesServed() + system.getTotalFemalesServed();
+        assertTrue(served >= SERVED, "served " + served);
+        assertEquals(PASSENGERS, served + system.getQueueSize(), "every claimed passenger was served once");
+    }
+
+    @Test
+    void aHundredThousandParkedPassengerActorsAllWake() throws InterruptedException {
+        assumeTrue(ActorExecutors.virtualThreadsAvailable(),
+                "needs virtual threads (JDK 21+); platform threads would need one OS thread per passenger");
+        BookingSystem system = new BookingSystem(SimulationClock.manual(), 6);
+        List<Passenger> passengers = newPassengers(system);
+        assertTrue(system.addPassengersToQueue(passengers, PASSENGERS));
+
+        CountDownLatch parked = new CountDownLatch(PASSENGERS);
+        CountDownLatch pickedUp = new CountDownLatch(PASSENGERS);
+        ExecutorService executor = ActorExecutors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (Passenger p : passengers) {
+                executor.execute(() -> {
+                    parked.countDown();
+                    p.awaitPickup();
+                    if (!Thread.currentThread().isInterrupted()) { // woken by the pickup, not shutdown
+                        pickedUp.countDown();
+                    }
+                });
+            }
+            // Every actor is running and waiting before any taxi moves
+            assertTrue(parked.await(60, TimeUnit.SECONDS), parked.getCount() + " actors never started");
+            assertEquals(PASSENGERS, pickedUp.getCount());
+
+            serve(system, PASSENGERS);
+            assertTrue(pickedUp.await(60, TimeUnit.SECONDS), pickedUp.getCount() + " passengers never woke");
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(PASSENGERS, system.getTotalMalesServed() + system.getTotalFemalesServed());
+    }
+
+    private static List<Passenger> newPassengers(BookingSystem system) {
+        SplittableRandom random = new SplittableRandom(11);
+        List<Passenger> passengers = new ArrayList<>(PASSENGERS);
+        for (int i = 0; i < PASSENGERS; i++) {
+            passengers.add(new Passenger(random.nextBoolean() ? Gender.MALE : Gender.FEMALE, system,
+                    random.nextInt(1000), random.nextInt(600)));
+        }
+        return passengers;
+    }
+
+    /** Taxi threads claim, board and drop off until {@code target} passengers are served. */
+    private static void serve(BookingSystem system, int target) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(TAXIS);
+        for (int i = 0; i < TAXIS; i++) {
+            Taxi taxi = new Taxi(i + 1, system);
+            Thread thread = new Thread(() -> {
+                while (system.getTotalMalesServed() + system.getTotalFemalesServed() < target
+                        && system.getQueueSize() > 0 || taxi.hasStops()) {
+                    if (!taxi.hasStops()) {
+                        system.findAndPickPassengers(taxi);
+                    } else if (taxi.completePickup() == null) {
+                        taxi.completeDropOff();
+                    }
+                }
+            }, "taxi-" + taxi.getId());
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.MINUTES.toMillis(2));
+            assertTrue(!thread.isAlive(), thread.getName() + " did not finish");
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package models;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import components.BookingSystem;
+import components.PassengerGrid;
+import components.RidePlanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import util.Logger;
+import util.SimulationClock;
+
+/**
+ * The insertion heuristic must pick what trying every pickup/dropoff pair on a copy of the
+ * plan and walking it stop by stop would: the cheapest pair that meets every deadline and
+ * the seat rule on every leg, or none. Plans built through {@link Taxi#tryPickPassenger}
+ * must hold the new stops where the quote put them and stay feasible as they grow.
+ */
+class RidePlanTest {
+    private static final int WIDTH = PassengerGrid.COLUMNS * PassengerGrid.CELL_SIZE;
+    private static final int HEIGHT = PassengerGrid.ROWS * PassengerGrid.CELL_SIZE;
+    private static final double DETOUR_ALLOWANCE = 100; // RidePlanner's slack on top of MAX_DETOUR
+    private static final double EPSILON = 1e-6;
+
+    private final BookingSystem system = new BookingSystem(SimulationClock.manual(), 67);
+
+    @BeforeAll
+    static void quiet() {
+        Logger.setConsoleLogging(false);
+    }
+
+    @Test
+    void bestInsertionMatchesEveryPairWalkedNaively() {
+        SplittableRandom random = new SplittableRandom(71);
+        int found = 0, none = 0, pooled = 0;
+        for (int round = 0; round < 20_000; round++) {
+            // Pickups near the taxi, so pooled pickups are often within MAX_WAIT
+            double originX = random.nextInt(WIDTH), originY = random.nextInt(HEIGHT);
+            List<Passenger> onBoard = new ArrayList<>();
+            List<Stop> stops = randomPlan(random, onBoard, originX, originY);
+            int gents = (int) onBoard.stream().filter(p -> p.getGender() == Gender.MALE).count();
+            int ladies = onBoard.size() - gents;
+            double odometer = random.nextInt(1000);
+            double now = stops.isEmpty() ? odometer
+                    : odometer + random.nextDouble() * Math.hypot(stops.get(0).getX() - originX, stops.get(0).getY() - originY);
+            Passenger p = randomPassenger(random, originX, originY);
+
+            RidePlanner.Insertion best = RidePlanner.bestInsertion(stops, gents, ladies, originX, originY,
+                    odometer, now, p, system);
+
+            // Every pair, each walked on its own copy of the plan
+            double planCost = driving(stops, originX, originY);
+            double cheapest = Double.POSITIVE_INFINITY;
+            int n = stops.size();
+            for (int i = n == 0 ? 0 : 1; i <= n && n + 2 <= RidePlanner.MAX_STOPS; i++) {
+                for (int j = i; j <= n; j++) {
+                    double[] walked = walk(insert(stops, p, i, j), p, gents, ladies, originX, originY, odometer, now,
+                            planCost);
+                    if (walked != null) {
+                        cheapest = Math.min(cheapest, walked[0]);
+                    }
+                }
+            }
+            if (cheapest == Double.POSITIVE_INFINITY) {
+                assertNull(best, "no pair is feasible in round " + round);
+                none++;
+                continue;
+            }
+            assertNotNull(best, "a feasible pair was missed in round " + round);
+            found++;
+            pooled += n > 0 ? 1 : 0;
+            assertEquals(cheapest, best.objective, EPSILON, "round " + round);
+
+            double[] chosen = walk(insert(stops, p, best.pickupBefore, best.dropoffBefore), p, gents, ladies,
+                    originX, originY, odometer, now, planCost);
+            assertNotNull(chosen, "the chosen pair must itself be feasible");
+            assertEquals(best.objective, chosen[0], EPSILON);
+            double pickupAt = chosen[1];
+            assertEquals(Math.hypot(p.getDestinationX() - p.getX(), p.getDestinationY() - p.getY()), best.direct);
+            assertEquals(Math.max(pickupAt, now + RidePlanner.MAX_WAIT), best.pickupLatest, EPSILON);
+            assertEquals(pickupAt + best.direct * (1 + RidePlanner.MAX_DETOUR) + DETOUR_ALLOWANCE,
+                    best.dropoffLatest, EPSILON);
+        }
+        assertTrue(found > 1000 && none > 1000 && pooled > 1000,
+                "found " + found + ", none " + none + ", pooled " + pooled);
+    }
+
+    @Test
+    void tryPickPassengerInsertsWhereQuotedAndKeepsThePlanFeasible() {
+        SplittableRandom random = new SplittableRandom(73);
+        int assigned = 0, refused = 0;
+        for (int round = 0; round < 2_000; round++) {
+            Taxi taxi = new Taxi(round + 1, system);
+            double startX = taxi.getX(), startY = taxi.getY(); // the taxi stays put, so every leg starts here
+            for (int attempt = 0; attempt < 6; attempt++) {
+                Passenger p = randomPassenger(random, startX, startY);
+                List<Stop> before = taxi.getStops();
+                RidePlanner.Insertion quote = taxi.quote(p);
+                boolean taken = taxi.tryPickPassenger(p);
+                assertEquals(quote != null, taken);
+                List<Stop> after = taxi.getStops();
+                if (!taken) {
+                    assertEquals(before, after, "a refused passenger leaves the plan alone");
+                    refused++;
+                    continue;
+                }
+                assigned++;
+                assertEquals(before.size() + 2, after.size());
+                List<Stop> expected = insert(before, p, quote.pickupBefore, quote.dropoffBefore);
+                for (int k = 0; k < after.size(); k++) {
+                    assertSame(expected.get(k).getPassenger(), after.get(k).getPassenger(), "stop " + k);
+                    assertEquals(expected.get(k).isPickup(), after.get(k).isPickup(), "stop " + k);
+                }
+                Stop pickup = after.get(quote.pickupBefore);
+                Stop dropoff = after.get(quote.dropoffBefore + 1);
+                assertTrue(pickup.isPickup() && !dropoff.isPickup());
+                assertEquals(quote.pickupLatest, pickup.getLatest());
+                assertEquals(quote.dropoffLatest, dropoff.getLatest());
+                assertEquals(quote.direct, dropoff.getDirect());
+                assertNotNull(walk(after, null, 0, 0, startX, startY, 0, 0, Double.NaN),
+                        "every stop in time and the seat rule on every leg, round " + round);
+            }
+        }
+        assertTrue(assigned > 2_000 && refused > 1_000, "assigned " + assigned + ", refused " + refused);
+    }
+
+    /** The plan with {@code p}'s pickup before stop i and dropoff before stop j, as Taxi applies it. */
+    private static List<Stop> insert(List<Stop> stops, Passenger p, int i, int j) {
+        double direct = Math.hypot(p.getDestinationX() - p.getX(), p.getDestinationY() - p.getY());
+        List<Stop> plan = new ArrayList<>(stops);
+        plan.add(j, new Stop(p, false, Double.POSITIVE_INFINITY, direct));
+        plan.add(i, new Stop(p, true, Double.POSITIVE_INFINITY, 0));
+        return plan;
+    }
+
+    private static double driving(List<Stop> plan, double x, double y) {
+        double cost = 0;
+        for (Stop s : plan) {
+            cost += Math.hypot(s.getX() - x, s.getY() - y);
+            x = s.getX();
+            y = s.getY();
+        }
+        return cost;
+    }
+
+    /**
+     * Drives {@code plan} from the origin. The stops of {@code added} are held to the
+     * planner's limits instead of their own deadlines: a pooled pickup within MAX_WAIT of
+     * now, the dropoff within the detour allowance of a direct ride from the pickup.
+     *
+     * @return {objective, odometer at the new pickup}; with no {@code added}, {driving, NaN};
+     *         null if a deadline is missed or a leg breaks the seat rule
+     */
+    private static double[] walk(List<Stop> plan, Passenger added, int gents, int ladies, double originX,
+            double originY, double odometer, double now, double planCost) {
+        boolean pooling = plan.size() > 2;
+        double t = odometer, x = originX, y = originY;
+        double pickupAt = Double.NaN, direct = 0;
+        for (Stop s : plan) {
+            t += Math.hypot(s.getX() - x, s.getY() - y);
+            x = s.getX();
+            y = s.getY();
+            if (s.getPassenger() != added) {
+                if (t > s.getLatest()) {
+                    return null;
+                }
+            } else if (s.isPickup()) {
+                pickupAt = t;
+                if (pooling && t - now > RidePlanner.MAX_WAIT) {
+                    return null;
+                }
+            } else {
+                direct = s.getDirect();
+                if (t > pickupAt + direct * (1 + RidePlanner.MAX_DETOUR) + DETOUR_ALLOWANCE) {
+                    return null;
+                }
+            }
+            boolean male = s.getPassenger().getGender() == Gender.MALE;
+            int change = s.isPickup() ? 1 : -1;
+            gents += male ? change : 0;
+            ladies += male ? 0 : change;
+            if (!Taxi.fits(gents, ladies)) {
+                return null;
+            }
+        }
+        if (added == null) {
+            return new double[] { t - odometer, Double.NaN };
+        }
+        return new double[] { (t - odometer) - planCost - direct + RidePlanner.WAIT_WEIGHT * (pickupAt - now), pickupAt };
+    }
+
+    /**
+     * Up to four stops: passengers on board have only their dropoff, assigned ones a
+     * pickup and a later dropoff. Deadlines range from long past to none at all.
+     */
+    private List<Stop> randomPlan(SplittableRandom random, List<Passenger> onBoard, double x, double y) {
+        List<Stop> plan = new ArrayList<>();
+        int riding = random.nextInt(3);
+        int waiting = random.nextInt((4 - riding) / 2 + 1);
+        for (int k = 0; k < riding; k++) {
+            Passenger p = randomPassenger(random, x, y);
+            onBoard.add(p);
+            plan.add(random.nextInt(plan.size() + 1), new Stop(p, false, randomLatest(random), 0));
+        }
+        for (int k = 0; k < waiting; k++) {
+            Passenger p = randomPassenger(random, x, y);
+            int pickup = random.nextInt(plan.size() + 1);
+            plan.add(pickup, new Stop(p, true, randomLatest(random), 0));
+            plan.add(pickup + 1 + random.nextInt(plan.size() - pickup), new Stop(p, false, randomLatest(random), 0));
+        }
+        return plan;
+    }
+
+    private static double randomLatest(SplittableRandom random) {
+        return random.nextBoolean() ? Double.POSITIVE_INFINITY : random.nextInt(6000);
+    }
+
+    /** Waiting within 300 units of (x, y), for a destination on any of the city's blocks. */
+    private Passenger randomPassenger(SplittableRandom random, double x, double y) {
+        int px = (int) Math.max(0, Math.min(WIDTH, x + random.nextInt(-300, 301)));
+        int py = (int) Math.max(0, Math.min(HEIGHT, y + random.nextInt(-300, 301)));
+        return new Passenger(random.nextBoolean() ? Gender.MALE : Gender.FEMALE, system, px, py,
+                "Stop " + random.nextInt(1000));
+    }
+}
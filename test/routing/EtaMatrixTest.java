@@ -0,0 +1,122 @@
+package routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+/**
+ * After any sequence of road speed changes, every ETA matrix entry still present must
+ * equal a fresh Dijkstra over the current graph: the selective invalidation may keep only
+ * entries the change cannot affect, and a fill whose search began before a change must
+ * not be stored.
+ */
+class EtaMatrixTest {
+
+    @Test
+    void keptEntriesMatchFreshDijkstraOnTheCityGrid() {
+        Router router = new Router(RoadGraph.defaultCity(1.5), 0, 100);
+        changeSpeedsAndCheck(router, new SplittableRandom(97), 40);
+    }
+
+    @Test
+    void keptEntriesMatchFreshDijkstraOnRandomGraphs() {
+        SplittableRandom random = new SplittableRandom(101);
+        for (int round = 0; round < 8; round++) {
+            Router router = new Router(RouterTest.randomGraph(random, 150), 0, 120);
+            changeSpeedsAndCheck(router, random, 15);
+        }
+    }
+
+    @Test
+    void searchesThatBeganBeforeASpeedChangeAreNotStored() {
+        Router router = new Router(RoadGraph.defaultCity(1.5), 0, 100);
+        EtaMatrix etas = router.getEtaMatrix();
+        SplittableRandom random = new SplittableRandom(103);
+        int cells = etas.getCellCount();
+        for (int change = 0; change < 20; change++) {
+            // Searched on the graph as it was, then a road changes before the result is stored
+            int a = random.nextInt(cells), b = random.nextInt(cells);
+            int stamp = etas.epoch();
+            RoadGraph before = router.getGraph();
+            double[] row = before.distances(etas.representative(a), false);
+            float entry = (float) row[etas.representative(b)];
+            changeRandomRoad(router, random);
+            float[] kept = new float[cells];
+            for (int k = 0; k < cells; k++) {
+                kept[k] = etas.entry(a, k);
+            }
+            assertFalse(etas.storeRow(a, row, stamp), "a row searched before the change");
+            assertFalse(etas.store(a, b, entry, stamp), "an entry searched before the change");
+            for (int k = 0; k < cells; k++) {
+                assertEquals(kept[k], etas.entry(a, k), 0f, "a refused store writes nothing");
+            }
+            assertMatchesDijkstra(router);
+
+            // A search after the change is stored
+            stamp = etas.epoch();
+            assertTrue(etas.storeRow(a, router.getGraph().distances(etas.representative(a), false), stamp));
+            assertMatchesDijkstra(router);
+        }
+    }
+
+    private static void changeSpeedsAndCheck(Router router, SplittableRandom random, int changes) {
+        EtaMatrix etas = router.getEtaMatrix();
+        etas.precompute();
+        int cells = etas.getCellCount();
+        long kept = 0, dropped = 0;
+        for (int change = 0; change < changes; change++) {
+            changeRandomRoad(router, random);
+            int present = assertMatchesDijkstra(router);
+            kept += present;
+            dropped += (long) cells * cells - present;
+            // Refill some on demand and the rest in bulk, so later changes see both kinds
+            if (random.nextBoolean()) {
+                etas.precompute();
+            } else {
+                for (int q = 0; q < 200; q++) {
+                    etas.estimate(random.nextDouble() * 1200, random.nextDouble() * 800,
+                            random.nextDouble() * 1200, random.nextDouble() * 800);
+                }
+            }
+            assertMatchesDijkstra(router);
+        }
+        assertTrue(kept > dropped / 10, "invalidation should be selective: kept " + kept + ", dropped " + dropped);
+        assertTrue(dropped > 0, "some change should have dropped something");
+    }
+
+    /** Slows a random road, or speeds one back up to anywhere up to the top speed. */
+    private static void changeRandomRoad(Router router, SplittableRandom random) {
+        RoadGraph graph = router.getGraph();
+        int u;
+        do {
+            u = random.nextInt(graph.nodeCount());
+        } while (graph.outStart[u] == graph.outStart[u + 1]);
+        int v = graph.outTo[graph.outStart[u] + random.nextInt(graph.outStart[u + 1] - graph.outStart[u])];
+        router.setRoadSpeed(u, v, graph.getMaxSpeed() * (random.nextInt(3) == 0 ? 1 : 0.05 + random.nextDouble() * 0.9));
+    }
+
+    /** @return how many entries are present; each must equal Dijkstra on the current graph */
+    private static int assertMatchesDijkstra(Router router) {
+        EtaMatrix etas = router.getEtaMatrix();
+        RoadGraph graph = router.getGraph();
+        int cells = etas.getCellCount();
+        int present = 0;
+        for (int a = 0; a < cells; a++) {
+            double[] dist = graph.distances(etas.representative(a), false);
+            for (int b = 0; b < cells; b++) {
+                float eta = etas.entry(a, b);
+                if (eta != eta) {
+                    continue;
+                }
+                present++;
+                float expected = (float) dist[etas.representative(b)];
+                assertEquals(expected, eta, expected == Float.POSITIVE_INFINITY ? 0 : 1e-5f * Math.max(1, expected),
+                        "cell " + a + " -> " + b);
+            }
+        }
+        return present;
+    }
+}
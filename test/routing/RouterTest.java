@@ -0,0 +1,170 @@
+package routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Contraction-hierarchy answers must match plain Dijkstra over the same graph: for every
+ * sampled pair, reachable or not, including a node to itself, and after road speeds
+ * change. Routes must follow real road segments whose costs add up to the answer, and
+ * end exactly at the requested target.
+ */
+class RouterTest {
+    private static final double SIZE = 1000;
+
+    @Test
+    void costsMatchDijkstraOnRandomGraphs() {
+        SplittableRandom random = new SplittableRandom(79);
+        int unreachable = 0, reachable = 0;
+        for (int round = 0; round < 60; round++) {
+            RoadGraph graph = randomGraph(random, 20 + random.nextInt(round < 30 ? 40 : 400));
+            Router router = new Router(graph, random.nextBoolean() ? 0 : 256);
+            int n = graph.nodeCount();
+            for (int q = 0; q < 40; q++) {
+                int s = random.nextInt(n);
+                int t = q % 10 == 0 ? s : random.nextInt(n);
+                double expected = graph.distances(s, false)[t];
+                double[] backwards = graph.distances(t, true);
+                assertEquals(expected, backwards[s], tolerance(expected), "reverse search " + s + "->" + t);
+                assertEquals(expected, router.searchCost(s, t), tolerance(expected), "search " + s + "->" + t);
+                checkRoute(router, graph, s, t, expected);
+                if (expected == Double.POSITIVE_INFINITY) {
+                    unreachable++;
+                } else {
+                    reachable++;
+                }
+            }
+        }
+        assertTrue(unreachable > 100 && reachable > 1000, "unreachable " + unreachable + ", reachable " + reachable);
+    }
+
+    @Test
+    void pointsOffTheRoadsSnapToTheNearestIntersections() {
+        SplittableRandom random = new SplittableRandom(83);
+        for (int round = 0; round < 20; round++) {
+            RoadGraph graph = randomGraph(random, 200);
+            Router router = new Router(graph, 64);
+            for (int q = 0; q < 50; q++) {
+                double fromX = random.nextDouble() * SIZE, fromY = random.nextDouble() * SIZE;
+                double toX = random.nextDouble() * SIZE, toY = random.nextDouble() * SIZE;
+                int s = graph.nearestNode(fromX, fromY);
+                int t = graph.nearestNode(toX, toY);
+                double roads = graph.distances(s, false)[t];
+                double expected = roads == Double.POSITIVE_INFINITY ? Math.hypot(toX - fromX, toY - fromY)
+                        : Math.hypot(graph.getX(s) - fromX, graph.getY(s) - fromY) + roads
+                                + Math.hypot(toX - graph.getX(t), toY - graph.getY(t));
+                assertEquals(expected, router.cost(fromX, fromY, toX, toY), tolerance(expected));
+                Route route = router.route(fromX, fromY, toX, toY);
+                assertEquals(expected, route.getCost(), tolerance(expected));
+                assertEquals(toX, route.getX(route.size() - 1));
+                assertEquals(toY, route.getY(route.size() - 1));
+            }
+        }
+    }
+
+    @Test
+    void costsMatchDijkstraAfterRoadSpeedsChange() {
+        SplittableRandom random = new SplittableRandom(89);
+        RoadGraph graph = randomGraph(random, 150);
+        Router router = new Router(graph, 128);
+        for (int change = 0; change < 10; change++) {
+            RoadGraph current = router.getGraph();
+            int u, v;
+            do {
+                u = random.nextInt(current.nodeCount());
+            } while (current.outStart[u] == current.outStart[u + 1]);
+            v = current.outTo[current.outStart[u] + random.nextInt(current.outStart[u + 1] - current.outStart[u])];
+            router.setRoadSpeed(u, v, current.getMaxSpeed() * (0.05 + random.nextDouble() * 0.95));
+            RoadGraph changed = router.getGraph();
+            for (int q = 0; q < 100; q++) {
+                int s = random.nextInt(changed.nodeCount());
+                int t = random.nextInt(changed.nodeCount());
+                checkRoute(router, changed, s, t, changed.distances(s, false)[t]);
+            }
+        }
+    }
+
+    /** Queries the router between the two intersections themselves and checks the answer. */
+    private static void checkRoute(Router router, RoadGraph graph, int s, int t, double expected) {
+        double sx = graph.getX(s), sy = graph.getY(s), tx = graph.getX(t), ty = graph.getY(t);
+        double straight = Math.hypot(tx - sx, ty - sy);
+        double cost = router.cost(sx, sy, tx, ty);
+        Route route = router.route(sx, sy, tx, ty);
+        assertEquals(tx, route.getX(route.size() - 1), "route ends at the target");
+        assertEquals(ty, route.getY(route.size() - 1), "route ends at the target");
+        if (expected == Double.POSITIVE_INFINITY) {
+            assertEquals(straight, cost, "no road: the straight line");
+            assertEquals(1, route.size());
+            assertEquals(straight, route.getCost());
+            return;
+        }
+        assertEquals(expected, cost, tolerance(expected), s + "->" + t);
+        assertEquals(cost, route.getCost(), tolerance(expected));
+        assertEquals(sx, route.getX(0));
+        assertEquals(sy, route.getY(0));
+        double driven = 0, length = 0;
+        for (int i = 1; i < route.size(); i++) {
+            int from = graph.nearestNode(route.getX(i - 1), route.getY(i - 1));
+            int to = graph.nearestNode(route.getX(i), route.getY(i));
+            double leg = graph.edgeCost(from, to);
+            assertTrue(leg < Double.POSITIVE_INFINITY, "no road from " + from + " to " + to);
+            driven += leg;
+            length += Math.hypot(route.getX(i) - route.getX(i - 1), route.getY(i) - route.getY(i - 1));
+            float fastest = 0f; // parallel roads: the cheapest one is driven
+            for (int e = graph.outStart[from]; e < graph.outStart[from + 1]; e++) {
+                if (graph.outTo[e] == to) {
+                    fastest = Math.max(fastest, graph.outFactor[e]);
+                }
+            }
+            assertEquals(fastest, route.getFactor(i));
+        }
+        assertEquals(expected, driven, tolerance(expected), "the legs add up to the cost");
+        assertEquals(length, route.getLength(), tolerance(length));
+    }
+
+    private static double tolerance(double expected) {
+        return Double.isInfinite(expected) ? 0 : 1e-9 * Math.max(1, expected);
+    }
+
+    /**
+     * Intersections at distinct points; roads mostly to nearby intersections, some one-way,
+     * some parallel, at mixed speeds. Sparse enough that some pairs have no route.
+     */
+    static RoadGraph randomGraph(SplittableRandom random, int nodes) {
+        RoadGraph.Builder builder = new RoadGraph.Builder();
+        double[] xs = new double[nodes], ys = new double[nodes];
+        Set<Long> taken = new HashSet<>();
+        for (int i = 0; i < nodes; i++) {
+            long x, y;
+            do {
+                x = random.nextInt((int) SIZE);
+                y = random.nextInt((int) SIZE);
+            } while (!taken.add(x * 10_000 + y));
+            xs[i] = x;
+            ys[i] = y;
+            builder.node(i, x, y);
+        }
+        int roads = nodes + random.nextInt(nodes);
+        for (int r = 0; r < roads; r++) {
+            int u = random.nextInt(nodes);
+            int v = u;
+            for (int tries = 0; tries < 8; tries++) { // prefer a near neighbour
+                int w = random.nextInt(nodes);
+                if (w != u && (v == u || Math.hypot(xs[w] - xs[u], ys[w] - ys[u]) < Math.hypot(xs[v] - xs[u], ys[v] - ys[u]))) {
+                    v = w;
+                }
+            }
+            double speed = random.nextInt(4) == 0 ? 1.0 : 0.2 + random.nextDouble() * 0.8;
+            builder.road(u, v, speed, random.nextInt(3) == 0);
+            if (random.nextInt(20) == 0) {
+                builder.road(u, v, speed / 2, true); // a slower parallel road
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,156 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import components.BookingSystem;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import models.Gender;
+import models.Passenger;
+import models.Taxi;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import server.WebServer.PassengerState;
+import server.WebServer.SimulationState;
+import server.WebServer.TaxiState;
+import util.Logger;
+import util.SimulationClock;
+
+/**
+ * A frame encoded from a live snapshot must decode to the same positions (at float
+ * precision), statuses, genders, destinations and seated passenger numbers, and a decoded
+ * frame must encode back to the same bytes.
+ */
+class BinaryStateCodecTest {
+
+    @BeforeAll
+    static void quiet() {
+        Logger.setConsoleLogging(false);
+    }
+
+    @Test
+    void liveSnapshotDecodesToTheSameState() {
+        SimulationState state = liveState();
+        assertTrue(state.taxis.stream().anyMatch(t -> !t.passengers.isEmpty()), "some taxi should be carrying");
+
+        ByteBuffer frame = BinaryStateCodec.encode(state, null);
+        assertEquals(BinaryStateCodec.encodedSize(state), frame.remaining());
+        SimulationState decoded = BinaryStateCodec.decode(frame);
+
+        assertEquals(state.queueSize, decoded.queueSize);
+        assertEquals(state.totalPassengersServed, decoded.totalPassengersServed);
+        assertEquals(state.dispatchStrategy, decoded.dispatchStrategy);
+        assertEquals((float) state.averagePickupDistance, (float) decoded.averagePickupDistance);
+        assertEquals(state.taxis.size(), decoded.taxis.size());
+        for (int i = 0; i < state.taxis.size(); i++) {
+            TaxiState t = state.taxis.get(i);
+            TaxiState d = decoded.taxis.get(i);
+            assertEquals(t.id, d.id);
+            assertEquals((float) t.x, (float) d.x);
+            assertEquals((float) t.y, (float) d.y);
+            assertEquals((float) t.targetX, (float) d.targetX);
+            assertEquals((float) t.targetY, (float) d.targetY);
+            assertEquals((float) t.earnings, (float) d.earnings);
+            assertEquals(t.status, d.status);
+            assertEquals(t.passengers.size(), d.passengers.size());
+            for (int s = 0; s < t.passengers.size(); s++) {
+                assertEquals(t.passengers.get(s).number, d.passengers.get(s).number);
+            }
+        }
+        assertEquals(state.passengers.size(), decoded.passengers.size());
+        for (int i = 0; i < state.passengers.size(); i++) {
+            PassengerState p = state.passengers.get(i);
+            PassengerState d = decoded.passengers.get(i);
+            assertEquals(p.number, d.number);
+            assertEquals((float) p.x, (float) d.x);
+            assertEquals((float) p.y, (float) d.y);
+            assertEquals(p.status, d.status);
+            assertEquals(p.gender, d.gender);
+            assertEquals(p.destination, d.destination);
+        }
+    }
+
+    @Test
+    void decodedFrameEncodesToTheSameBytes() {
+        ByteBuffer frame = BinaryStateCodec.encode(liveState(), null);
+        byte[] first = bytes(frame);
+        byte[] again = bytes(BinaryStateCodec.encode(BinaryStateCodec.decode(frame), null));
+        assertArrayEquals(first, again);
+    }
+
+    @Test
+    void encodeReusesABufferThatFitsAndGrowsOneThatDoesNot() {
+        SimulationState state = liveState();
+        int size = BinaryStateCodec.encodedSize(state);
+        ByteBuffer big = ByteBuffer.allocate(size + 100);
+        assertSame(big, BinaryStateCodec.encode(state, big));
+
+        ByteBuffer small = ByteBuffer.allocate(16);
+        ByteBuffer grown = BinaryStateCodec.encode(state, small);
+        assertTrue(grown != small && grown.capacity() >= size);
+        assertArrayEquals(bytes(BinaryStateCodec.encode(state, null)), bytes(grown));
+    }
+
+    @Test
+    void valuesOutsideTheTablesDecodeAsNull() {
+        SimulationState state = new SimulationState();
+        PassengerState p = new PassengerState();
+        p.number = 7;
+        p.status = "TELEPORTED";
+        p.gender = "MALE";
+        p.destination = "Somewhere custom";
+        state.passengers.add(p);
+        SimulationState decoded = BinaryStateCodec.decode(BinaryStateCodec.encode(state, null));
+        PassengerState d = decoded.passengers.get(0);
+        assertNull(d.status);
+        assertNull(d.destination);
+        assertEquals("MALE", d.gender);
+        assertEquals("", decoded.dispatchStrategy, "a missing strategy name travels as empty");
+    }
+
+    @Test
+    void rejectsFramesThatAreNotVersionOne() {
+        byte[] frame = bytes(BinaryStateCodec.encode(new SimulationState(), null));
+        frame[0] = '{';
+        assertThrows(IllegalArgumentException.class, () -> BinaryStateCodec.decode(ByteBuffer.wrap(frame)));
+        frame[0] = 'T';
+        frame[2] = 2;
+        assertThrows(IllegalArgumentException.class, () -> BinaryStateCodec.decode(ByteBuffer.wrap(frame)));
+    }
+
+    /** A small world with waiting, claimed and riding passengers, as /api/state would see it. */
+    private static SimulationState liveState() {
+        BookingSystem system = new BookingSystem(SimulationClock.manual(), 53);
+        SplittableRandom random = new SplittableRandom(53);
+        List<Taxi> taxis = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            taxis.add(new Taxi(i + 1, system));
+        }
+        for (int i = 0; i < 60; i++) {
+            system.addPassengerToQueue(new Passenger(random.nextBoolean() ? Gender.MALE : Gender.FEMALE, system));
+        }
+        for (Taxi taxi : taxis) {
+            system.findAndPickPassengers(taxi);
+            if (taxi.getId() % 2 == 0) {
+                taxi.completePickup();
+            }
+        }
+        system.getFleet().tick(1.5);
+        SnapshotPublisher snapshots = new SnapshotPublisher();
+        snapshots.publish(system);
+        return snapshots.read(state -> state);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] out = new byte[buffer.remaining()];
+        buffer.duplicate().get(out);
+        return out;
+    }
+}
@@ -0,0 +1,290 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Property and fuzz tests for the pull parser. Random documents written by an independent
+ * writer, with random whitespace and escapes, must read back as the same values; mutated
+ * and random bytes must either parse or fail with {@link IllegalArgumentException}, never
+ * with another exception, and whatever parses must survive a second round trip.
+ */
+class JsonReaderTest {
+    private static final int[] NAME_CHARS = "abcxyz_-09 ,:{}[]\"\\/\t\né中🚕".codePoints().toArray();
+    private static final byte[] FUZZ_BYTES = "{}[],:\"\\ \n0123456789-+.eEtrufalsnÿ".getBytes(StandardCharsets.ISO_8859_1);
+
+    @Test
+    void randomDocumentsRoundTrip() {
+        SplittableRandom random = new SplittableRandom(13);
+        for (int i = 0; i < 3_000; i++) {
+            Object value = randomValue(random, 0);
+            String json = write(value, random);
+            assertEquals(value, JsonUtil.readValue(new JsonReader(json)), json);
+        }
+    }
+
+    @Test
+    void multipleDocumentsReadOneAfterAnother() {
+        SplittableRandom random = new SplittableRandom(17);
+        List<Object> values = new ArrayList<>();
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            Object value = randomValue(random, 0);
+            values.add(value);
+            ndjson.append(write(value, random)).append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        JsonReader in = new JsonReader(ndjson.toString()).setMultipleDocuments(true);
+        List<Object> read = new ArrayList<>();
+        while (in.hasNext()) {
+            read.add(JsonUtil.readValue(in));
+        }
+        assertEquals(values, read);
+    }
+
+    @Test
+    void mutatedDocumentsParseOrFailCleanly() {
+        SplittableRandom random = new SplittableRandom(19);
+        for (int i = 0; i < 20_000; i++) {
+            byte[] json = write(randomObject(random, 0), random).getBytes(StandardCharsets.UTF_8);
+            checkParsesOrRejects(mutate(json, random));
+        }
+    }
+
+    @Test
+    void randomBytesParseOrFailCleanly() {
+        SplittableRandom random = new SplittableRandom(23);
+        for (int i = 0; i < 20_000; i++) {
+            byte[] bytes = new byte[random.nextInt(1, 40)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = FUZZ_BYTES[random.nextInt(FUZZ_BYTES.length)];
+            }
+            bytes[0] = '{';
+            checkParsesOrRejects(bytes);
+        }
+    }
+
+    @Test
+    void deepNestingIsRejectedWithoutOverflowingTheStack() {
+        char[] open = new char[100_000];
+        Arrays.fill(open, '[');
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new JsonReader(new String(open)).skipValue());
+        assertEquals(true, e.getMessage().startsWith("Nested deeper than"), e.getMessage());
+    }
+
+    @Test
+    void stringsKeepCommasColonsAndEscapes() {
+        Map<String, Object> map = JsonUtil.fromJson(
+                "{\"destination\":\"Block 5, Street 2: \\\"Gate\\\" \\u00e9\\ud83d\\ude95\",\"n\":[1,-2.5e3,null,true]}");
+        assertEquals("Block 5, Street 2: \"Gate\" é🚕", map.get("destination"));
+        assertEquals(Arrays.asList(1, -2500.0, null, true), map.get("n"));
+    }
+
+    @Test
+    void numbersUseTheNarrowestExactType() {
+        assertEquals(Arrays.asList(0, -7, 2147483648L, -9223372036854775808L, 0.5, 1.0e300, 12.0),
+                JsonUtil.readValue(new JsonReader(
+                        "[0,-7,2147483648,-9223372036854775808,0.5,1e300,1.2E1]")));
+    }
+
+    @Test
+    void numbersBeyondDoubleRangeAreRejected() {
+        for (String json : new String[] {"[1e400]", "{\"x\":-2795e36870976118076}", "[1" + "0".repeat(400) + "]"}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> JsonUtil.readValue(new JsonReader(json)), json);
+            assertEquals(true, e.getMessage().startsWith("Number out of range"), e.getMessage());
+        }
+    }
+
+    /** Anything but a clean accept or an IllegalArgumentException is a parser bug. */
+    private static void checkParsesOrRejects(byte[] json) {
+        Map<String, Object> parsed;
+        try {
+            parsed = JsonUtil.fromJson(json);
+        } catch (IllegalArgumentException expected) {
+            return;
+        } catch (RuntimeException | StackOverflowError e) {
+            throw new AssertionError("Unexpected " + e + " for " + new String(json, StandardCharsets.UTF_8), e);
+        }
+        String again = write(parsed, new SplittableRandom(json.length));
+        try {
+            assertEquals(parsed, JsonUtil.fromJson(again), again);
+        } catch (IllegalArgumentException e) {
+            fail("Accepted " + new String(json, StandardCharsets.UTF_8) + " but not its rewrite " + again, e);
+        }
+    }
+
+    private static byte[] mutate(byte[] json, SplittableRandom random) {
+        byte[] out = json.clone();
+        int edits = random.nextInt(1, 4);
+        for (int e = 0; e < edits && out.length > 1; e++) {
+            int at = random.nextInt(out.length);
+            switch (random.nextInt(4)) {
+                case 0: // replace a byte
+                    out[at] = FUZZ_BYTES[random.nextInt(FUZZ_BYTES.length)];
+                    break;
+                case 1: { // delete a byte
+                    byte[] shorter = new byte[out.length - 1];
+                    System.arraycopy(out, 0, shorter, 0, at);
+                    System.arraycopy(out, at + 1, shorter, at, out.length - at - 1);
+                    out = shorter;
+                    break;
+                }
+                case 2: { // insert a byte
+                    byte[] longer = new byte[out.length + 1];
+                    System.arraycopy(out, 0, longer, 0, at);
+                    longer[at] = FUZZ_BYTES[random.nextInt(FUZZ_BYTES.length)];
+                    System.arraycopy(out, at, longer, at + 1, out.length - at);
+                    out = longer;
+                    break;
+                }
+                default: // truncate
+                    out = Arrays.copyOf(out, at);
+            }
+        }
+        return out;
+    }
+
+    private static Object randomValue(SplittableRandom random, int depth) {
+        int kind = random.nextInt(depth > 4 ? 6 : 8);
+        switch (kind) {
+            case 0:
+                return random.nextInt();
+            case 1: {
+                long l = random.nextBoolean() ? random.nextLong() : (long) Integer.MAX_VALUE + 1 + random.nextInt(1000);
+                return l == (int) l ? l + (1L << 40) : l; // an int-sized literal reads back as Integer
+            }
+            case 2: {
+                double d = random.nextBoolean() ? random.nextDouble() * 1000 - 500 : Double.longBitsToDouble(random.nextLong());
+                return Double.isFinite(d) ? d : 0.25;
+            }
+            case 3:
+                return randomString(random);
+            case 4:
+                return random.nextBoolean();
+            case 5:
+                return null;
+            case 6:
+                return randomObject(random, depth + 1);
+            default: {
+                List<Object> list = new ArrayList<>();
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    list.add(randomValue(random, depth + 1));
+                }
+                return list;
+            }
+        }
+    }
+
+    private static Map<String, Object> randomObject(SplittableRandom random, int depth) {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = random.nextInt(5); i > 0; i--) {
+            map.put(randomString(random), randomValue(random, depth));
+        }
+        return map;
+    }
+
+    private static String randomString(SplittableRandom random) {
+        StringBuilder s = new StringBuilder();
+        for (int i = random.nextInt(12); i > 0; i--) {
+            int c = random.nextInt(NAME_CHARS.length + 2);
+            if (c < NAME_CHARS.length) {
+                s.appendCodePoint(NAME_CHARS[c]);
+            } else {
+                s.append((char) random.nextInt(0x20)); // control characters must be escaped
+            }
+        }
+        return s.toString();
+    }
+
+    /** An independent writer: random whitespace, and random choice of \\u or short escapes. */
+    private static String write(Object value, SplittableRandom random) {
+        StringBuilder out = new StringBuilder();
+        write(value, random, out);
+        return out.toString();
+    }
+
+    private static void write(Object value, SplittableRandom random, StringBuilder out) {
+        space(random, out);
+        if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                space(random, out);
+                writeString((String) e.getKey(), random, out);
+                space(random, out);
+                out.append(':');
+                write(e.getValue(), random, out);
+            }
+            space(random, out);
+            out.append('}');
+        } else if (value instanceof List) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : (List<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                write(item, random, out);
+            }
+            space(random, out);
+            out.append(']');
+        } else if (value instanceof String) {
+            writeString((String) value, random, out);
+        } else {
+            out.append(value); // numbers, booleans and null print as JSON
+        }
+        space(random, out);
+    }
+
+    private static void writeString(String s, SplittableRandom random, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c == '\n' && random.nextBoolean()) {
+                out.append("\\n");
+            } else if (c == '/' && random.nextBoolean()) {
+                out.append("\\/");
+            } else if (Character.isSurrogate(c)) {
+                // A pair is escaped whole or not at all; a lone half only survives as an escape
+                boolean pair = Character.isHighSurrogate(c) && i + 1 < s.length()
+                        && Character.isLowSurrogate(s.charAt(i + 1));
+                if (!pair) {
+                    out.append(String.format("\\u%04x", (int) c));
+                } else if (random.nextInt(8) == 0) {
+                    out.append(String.format("\\u%04x\\u%04x", (int) c, (int) s.charAt(++i)));
+                } else {
+                    out.append(c).append(s.charAt(++i));
+                }
+            } else if (c < 0x20 || random.nextInt(8) == 0) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static void space(SplittableRandom random, StringBuilder out) {
+        for (int i = random.nextInt(4) == 0 ? random.nextInt(3) : 0; i > 0; i--) {
+            out.append(" \t\n\r".charAt(random.nextInt(4)));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import server.WebServer.PassengerInfo;
+import server.WebServer.PassengerState;
+import server.WebServer.SimulationState;
+import server.WebServer.TaxiState;
+
+/**
+ * The hand-written state codecs must write every public field the reflective fallback
+ * would, with the same values, and {@link JsonWriter} must produce text the reader parses
+ * back to the original: strings with any characters, and doubles exactly as
+ * {@link Double#toString(double)} prints them.
+ */
+class JsonUtilTest {
+    private static final String CHARS = "aZ09 ,:{}[]\"\\/\t\n\r\u0001\u001fé中";
+
+    @Test
+    void stateCodecsWriteEveryPublicField() {
+        SplittableRandom random = new SplittableRandom(37);
+        for (int i = 0; i < 200; i++) {
+            SimulationState state = randomState(random);
+            assertEquals(reflect(state), JsonUtil.readValue(new JsonReader(JsonUtil.toJson(state))));
+        }
+    }
+
+    @Test
+    void reflectiveFallbackWritesPublicFields() {
+        Sample sample = new Sample();
+        sample.label = "a \"b\"";
+        sample.counts = List.of(1, 2, 3);
+        sample.nested = new Sample();
+        assertEquals(reflect(sample), JsonUtil.readValue(new JsonReader(JsonUtil.toJson(sample))));
+    }
+
+    @Test
+    void doublesMatchDoubleToString() {
+        SplittableRandom random = new SplittableRandom(41);
+        double[] edges = { 0.0, -0.0, 0.5, -0.5, 1.5, 1e7, -1e7, 9_999_999.5, 1e-7, Double.MIN_VALUE, Double.MAX_VALUE };
+        for (double d : edges) {
+            assertEquals(Double.toString(d), JsonUtil.toJson(d));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            double d;
+            switch (i % 3) {
+                case 0:
+                    d = (random.nextInt(4_000_000) - 2_000_000) / 2.0; // grid positions and half steps
+                    break;
+                case 1:
+                    d = random.nextDouble() * 2000 - 1000;
+                    break;
+                default:
+                    d = Double.longBitsToDouble(random.nextLong());
+                    if (!Double.isFinite(d)) {
+                        continue;
+                    }
+            }
+            assertEquals(Double.toString(d), JsonUtil.toJson(d));
+        }
+    }
+
+    @Test
+    void stringsRoundTripThroughTheReader() {
+        SplittableRandom random = new SplittableRandom(43);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder s = new StringBuilder();
+            for (int n = random.nextInt(20); n > 0; n--) {
+                int c = random.nextInt(CHARS.length() + 1);
+                if (c < CHARS.length()) {
+                    s.append(CHARS.charAt(c));
+                } else {
+                    s.appendCodePoint(0x1F000 + random.nextInt(0x1000)); // a surrogate pair
+                }
+            }
+            String json = JsonUtil.toJson(s.toString());
+            assertEquals(s.toString(), new JsonReader(json).nextString(), json);
+        }
+        assertEquals("\"a?b\"", JsonUtil.toJson("a\ud800b"), "an unpaired surrogate cannot be encoded");
+    }
+
+    @Test
+    void resetWriterProducesTheSameBytes() {
+        SimulationState state = randomState(new SplittableRandom(47));
+        JsonWriter out = new JsonWriter(16); // grows while writing
+        JsonUtil.write(out, state);
+        byte[] first = out.toByteArray();
+        out.reset();
+        JsonUtil.write(out, state);
+        assertArrayEquals(first, out.toByteArray());
+        assertEquals(JsonUtil.toJson(state), out.toString());
+    }
+
+    /** What the old reflective serializer would have written, as the reader returns it. */
+    private static Object reflect(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Number) {
+            return value; // int fields read back as Integer, double fields as Double
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(reflect(item));
+            }
+            return list;
+        }
+        Map<String, Object> map = new HashMap<>();
+        try {
+            for (Field field : value.getClass().getFields()) {
+                map.put(field.getName(), reflect(field.get(value)));
+            }
+        } catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+        return map;
+    }
+
+    private static SimulationState randomState(SplittableRandom random) {
+        SimulationState s = new SimulationState();
+        for (int i = random.nextInt(6); i > 0; i--) {
+            TaxiState t = new TaxiState();
+            t.id = random.nextInt(1000);
+            t.x = random.nextInt(2400) / 2.0;
+            t.y = random.nextDouble() * 800;
+            t.targetX = random.nextInt(1200);
+            t.targetY = -random.nextDouble();
+            t.status = pick(random, "AVAILABLE", "PICKING_UP", "ON_RIDE");
+            t.earnings = random.nextInt(100_000) / 4.0;
+            t.currentPassengers = random.nextInt(4);
+            t.driverName = randomString(random);
+            t.driverAvatarUrl = random.nextBoolean() ? null : "https://example.test/" + random.nextInt(99) + ".jpg";
+            t.message = randomString(random);
+            for (int j = random.nextInt(4); j > 0; j--) {
+                PassengerInfo p = new PassengerInfo();
+                p.id = "P-" + Integer.toHexString(random.nextInt(4096));
+                p.number = random.nextInt(Integer.MAX_VALUE);
+                p.gender = pick(random, "MALE", "FEMALE");
+                p.name = randomString(random);
+                p.avatarUrl = null;
+                p.destination = randomString(random);
+                t.passengers.add(p);
+            }
+            s.taxis.add(t);
+        }
+        for (int i = random.nextInt(10); i > 0; i--) {
+            PassengerState p = new PassengerState();
+            p.id = "P-" + Integer.toHexString(random.nextInt(4096));
+            p.number = random.nextInt(Integer.MAX_VALUE);
+            p.gender = pick(random, "MALE", "FEMALE");
+            p.name = randomString(random);
+            p.avatarUrl = "https://example.test/a.jpg";
+            p.x = random.nextInt(1200);
+            p.y = random.nextDouble() * 800;
+            p.destination = random.nextBoolean() ? null : randomString(random);
+            p.status = pick(random, "WAITING", "PICKED_UP", "IN_RIDE");
+            s.passengers.add(p);
+        }
+        s.queueSize = random.nextInt(10_000);
+        s.totalMalesServed = random.nextInt(10_000);
+        s.totalFemalesServed = random.nextInt(10_000);
+        s.totalPassengersServed = s.totalMalesServed + s.totalFemalesServed;
+        s.dispatchStrategy = pick(random, "greedy", "batch", "pool");
+        s.averagePickupDistance = random.nextDouble() * 300;
+        s.lastTickPickupDistance = random.nextInt(600) / 2.0;
+        s.lastTickSolveMillis = random.nextDouble();
+        return s;
+    }
+
+    private static String randomString(SplittableRandom random) {
+        StringBuilder s = new StringBuilder();
+        for (int n = random.nextInt(10); n > 0; n--) {
+            s.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return s.toString();
+    }
+
+    private static String pick(SplittableRandom random, String... options) {
+        return options[random.nextInt(options.length)];
+    }
+
+    public static class Sample {
+        public String label;
+        public int count = 7;
+        public double ratio = 0.25;
+        public boolean flag = true;
+        public List<Integer> counts;
+        public Sample nested;
+    }
+}
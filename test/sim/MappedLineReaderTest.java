@@ -0,0 +1,112 @@
+package sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Whatever the window size, the reader must return exactly the lines a plain split would:
+ * lines that straddle one or many window boundaries, lines longer than the window, empty
+ * lines, "\r\n" endings cut between the two bytes, and a last line without a newline.
+ */
+class MappedLineReaderTest {
+    // Every window is its own mapping, released only when collected, so the random files
+    // stay above a few bytes per window; the hand-written file below covers 1-byte windows
+    private static final int[] WINDOWS = { 5, 7, 64, 4096, MappedLineReader.DEFAULT_WINDOW_BYTES };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void linesSpanningWindowBoundariesReadWhole() throws IOException {
+        SplittableRandom random = new SplittableRandom(59);
+        for (int round = 0; round < 50; round++) {
+            List<String> expected = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(40); i > 0; i--) {
+                String line = randomLine(random);
+                expected.add(line);
+                text.append(line).append(random.nextBoolean() ? "\n" : "\r\n");
+            }
+            if (random.nextBoolean()) {
+                String last = randomLine(random) + "x"; // no newline after it
+                expected.add(last);
+                text.append(last);
+            }
+            Path file = write(text.toString());
+            for (int window : WINDOWS) {
+                assertEquals(expected, readAll(file, window), "window " + window);
+            }
+        }
+    }
+
+    @Test
+    void countsLinesAndReportsPosition() throws IOException {
+        Path file = write("one\r\n\ntwo\nthree");
+        for (int window = 1; window <= 16; window++) { // the \r\n falls on every side of a boundary
+            try (MappedLineReader in = new MappedLineReader(file, window)) {
+                assertEquals(15, in.size());
+                assertTrue(in.nextLine());
+                assertEquals("one", new String(in.bytes(), 0, in.length(), StandardCharsets.UTF_8));
+                assertEquals(1, in.lineNumber());
+                assertEquals(5, in.position(), "past the \\r\\n");
+                assertTrue(in.nextLine());
+                assertEquals(0, in.length());
+                assertTrue(in.nextLine());
+                assertTrue(in.nextLine());
+                assertEquals("three", new String(in.bytes(), 0, in.length(), StandardCharsets.UTF_8));
+                assertEquals(4, in.lineNumber());
+                assertEquals(15, in.position());
+                assertFalse(in.nextLine());
+                assertFalse(in.nextLine(), "end of file stays the end");
+            }
+        }
+    }
+
+    @Test
+    void emptyFileHasNoLines() throws IOException {
+        try (MappedLineReader in = new MappedLineReader(write(""), 8)) {
+            assertFalse(in.nextLine());
+            assertEquals(0, in.lineNumber());
+        }
+    }
+
+    private Path write(String text) throws IOException {
+        Path file = Files.createTempFile(dir, "lines", ".txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<String> readAll(Path file, int window) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (MappedLineReader in = new MappedLineReader(file, window)) {
+            while (in.nextLine()) {
+                lines.add(new String(in.bytes(), 0, in.length(), StandardCharsets.UTF_8));
+                assertEquals(lines.size(), in.lineNumber());
+            }
+            assertEquals(in.size(), in.position());
+        }
+        return lines;
+    }
+
+    private static String randomLine(SplittableRandom random) {
+        // Mostly short lines, some far longer than the small windows and the initial line buffer
+        int length = random.nextInt(8) == 0 ? random.nextInt(600) : random.nextInt(12);
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            s.append("ab,\t é\r".charAt(random.nextInt(7)));
+        }
+        // A trailing \r would be read as part of a \r\n ending
+        return s.length() > 0 && s.charAt(s.length() - 1) == '\r' ? s.append('z').toString() : s.toString();
+    }
+}
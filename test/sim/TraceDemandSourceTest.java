@@ -0,0 +1,152 @@
+package sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import models.Gender;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * CSV and NDJSON traces of the same requests must replay identically, rebased to the first
+ * request's time, whatever the mapping window; malformed lines are skipped and counted
+ * without stopping the replay, and a request earlier than its predecessor waits for it.
+ */
+class TraceDemandSourceTest {
+    private static final long EPOCH = 1_700_000_000_000L;
+    private static final String[] DESTINATIONS = { null, "Mall", "Block 5, Street 2", "Airport \"T1\"" };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void csvAndNdjsonReplayTheSameRequests() throws IOException {
+        SplittableRandom random = new SplittableRandom(61);
+        StringBuilder csv = new StringBuilder("time,gender,x,y,destination\r\n");
+        StringBuilder ndjson = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        long time = EPOCH; // the first request's time, which replays as 0
+        for (int i = 0; i < 500; i++) {
+            if (i > 0) {
+                time += random.nextInt(2000);
+            }
+            Gender gender = random.nextBoolean() ? Gender.MALE : Gender.FEMALE;
+            int x = random.nextInt(1200);
+            int y = random.nextInt(700);
+            String destination = DESTINATIONS[random.nextInt(DESTINATIONS.length)];
+            expected.add(describe(time - EPOCH, gender, x, y, destination));
+
+            String g = random.nextBoolean() ? gender.name().toLowerCase() : gender.name().substring(0, 1);
+            csv.append(time).append(',').append(g).append(", ").append(x).append(',').append(y);
+            if (destination != null) {
+                csv.append(',').append(destination);
+            } else if (random.nextBoolean()) {
+                csv.append(','); // an empty destination means none
+            }
+            csv.append(random.nextBoolean() ? "\n" : "\r\n");
+            ndjson.append(String.format("{\"x\":%d, \"gender\":\"%s\",\"time\":%d,\"y\":%d.0,\"extra\":[1,{}],\"destination\":%s}\n",
+                    x, g, time, y, destination == null ? "null" : "\"" + destination.replace("\"", "\\\"") + "\""));
+        }
+        Path csvFile = write("trace.csv", csv.toString());
+        Path jsonFile = write("trace.ndjson", ndjson.toString());
+        for (int window : new int[] { 7, 64, MappedLineReader.DEFAULT_WINDOW_BYTES }) {
+            assertEquals(expected, replay(new TraceDemandSource(csvFile, window)), "csv, window " + window);
+            assertEquals(expected, replay(new TraceDemandSource(jsonFile, window)), "ndjson, window " + window);
+        }
+    }
+
+    @Test
+    void malformedLinesAreSkippedAndCounted() throws IOException {
+        Path file = write("trace.csv", String.join("\n",
+                "5000,M,10,20",
+                "6000,X,10,20",          // unknown gender
+                "7000,F,10",             // too few fields
+                "",                      // blank lines are not errors
+                "8000,F,abc,20",         // bad number
+                "  ",
+                "9000.9,female,30.7,40,Mall",
+                "-,M,1,1"));             // a sign without digits
+        try (TraceDemandSource source = new TraceDemandSource(file)) {
+            List<String> replayed = drain(source);
+            assertEquals(List.of(describe(0, Gender.MALE, 10, 20, null), describe(4000, Gender.FEMALE, 30, 40, "Mall")),
+                    replayed);
+            assertEquals(2, source.getRequests());
+            assertEquals(4, source.getSkippedLines());
+            assertTrue(source.getFirstError().startsWith("line 2: unknown gender"), source.getFirstError());
+            assertEquals(1.0, source.getProgress());
+        }
+    }
+
+    @Test
+    void ndjsonLinesMissingARequiredFieldAreSkipped() throws IOException {
+        Path file = write("trace.jsonl", String.join("\n",
+                "{\"time\":100,\"gender\":\"M\",\"x\":1,\"y\":2}",
+                "{\"time\":200,\"gender\":\"F\",\"x\":1}",
+                "{\"time\":300,\"gender\":\"F\",\"x\":1,\"y\":2",
+                "{\"time\":400,\"gender\":\"F\",\"x\":1,\"y\":2} {}",
+                "{\"time\":500,\"gender\":\"F\",\"x\":3,\"y\":4}"));
+        try (TraceDemandSource source = new TraceDemandSource(file)) {
+            assertEquals(List.of(describe(0, Gender.MALE, 1, 2, null), describe(400, Gender.FEMALE, 3, 4, null)),
+                    drain(source));
+            assertEquals(3, source.getSkippedLines());
+            assertTrue(source.getFirstError().startsWith("line 2: time, gender, x and y are required"),
+                    source.getFirstError());
+        }
+    }
+
+    @Test
+    void earlierRequestsWaitForTheirPredecessor() throws IOException {
+        Path file = write("trace.csv", "1000,M,1,1\n3000,M,1,1\n2000,F,1,1\n500,F,1,1\n4000,M,1,1\n");
+        try (TraceDemandSource source = new TraceDemandSource(file)) {
+            List<Long> times = new ArrayList<>();
+            for (RideRequest r = source.next(0); r != null; r = source.next(0)) {
+                times.add(r.timeMillis);
+            }
+            assertEquals(List.of(0L, 2000L, 2000L, 2000L, 3000L), times);
+            assertEquals(2, source.getReordered());
+        }
+    }
+
+    @Test
+    void repeatedDestinationsShareOneString() throws IOException {
+        Path file = write("trace.csv", "0,M,1,1,Airport\n1,F,2,2,Airport\n");
+        try (TraceDemandSource source = new TraceDemandSource(file)) {
+            assertSame(source.next(0).destination, source.next(0).destination);
+            assertNull(source.next(0));
+        }
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.writeString(dir.resolve(name), text, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> replay(TraceDemandSource source) throws IOException {
+        try (source) {
+            List<String> replayed = drain(source);
+            assertEquals(0, source.getSkippedLines(), source.getFirstError());
+            assertEquals(replayed.size(), source.getRequests());
+            return replayed;
+        }
+    }
+
+    private static List<String> drain(DemandSource source) throws IOException {
+        List<String> out = new ArrayList<>();
+        for (RideRequest r = source.next(0); r != null; r = source.next(0)) {
+            out.add(describe(r.timeMillis, r.gender, r.x, r.y, r.destination));
+        }
+        return out;
+    }
+
+    private static String describe(long time, Gender gender, int x, int y, String destination) {
+        return time + " " + gender + " " + x + "," + y + " " + destination;
+    }
+}
@@ -68,6 +68,148 @@ function mapToLatLon(x, y) {
 }
 
 // --- API CALLS ---
+// Live updates: one keyframe, then per-frame deltas over Server-Sent Events.
+// Falls back to polling /api/state if the browser or a proxy can't keep the stream open.
+let pollTimer = null;
+
+function connectStream() {
+    if (!window.EventSource) {
+        startPolling();
+        return;
+    }
+    const source = new EventSource('/api/stream');
+    source.addEventListener('keyframe', e => {
+        simulationState = JSON.parse(e.data);
+        stopPolling();
+        render();
+    });
+    source.addEventListener('delta', e => {
+        if (!simulationState) return;
+        applyDelta(simulationState, JSON.parse(e.data));
+        render();
+    });
+    source.onerror = () => {
+        // EventSource reconnects by itself and is sent a fresh keyframe; poll meanwhile.
+        if (source.readyState === EventSource.CLOSED) {
+            startPolling();
+            setTimeout(connectStream, 5000);
+        } else {
+            startPolling();
+        }
+    };
+}
+
+function applyDelta(state, delta) {
+    mergeById(state.taxis, delta.taxis, delta.taxisAdded, delta.taxisRemoved);
+    mergeById(state.passengers, delta.passengers, delta.passengersAdded, delta.passengersRemoved);
+    state.queueSize = delta.queueSize;
+    state.totalMalesServed = delta.totalMalesServed;
+    state.totalFemalesServed = delta.totalFemalesServed;
+    state.totalPassengersServed = delta.totalPassengersServed;
+    state.dispatchStrategy = delta.dispatchStrategy;
+    state.averagePickupDistance = delta.averagePickupDistance;
+    state.lastTickPickupDistance = delta.lastTickPickupDistance;
+    state.lastTickSolveMillis = delta.lastTickSolveMillis;
+}
+
+function mergeById(list, changed, added, removed) {
+    const byId = new Map(list.map(item => [item.id, item]));
+    changed.forEach(c => {
+        const item = byId.get(c.id);
+        if (item) Object.assign(item, c);
+    });
+    if (removed.length > 0) {
+        const gone = new Set(removed);
+        for (let i = list.length - 1; i >= 0; i--) {
+            if (gone.has(list[i].id)) list.splice(i, 1);
+        }
+    }
+    added.forEach(a => list.push(a));
+}
+
+function startPolling() {
+    if (!pollTimer) {
+        pollTimer = setInterval(fetchState, 100);
+    }
+}
+
+function stopPolling() {
+    if (pollTimer) {
+        clearInterval(pollTimer);
+        pollTimer = null;
+    }
+}
+
+function render() {
+    updateUI();
+    updateMapMarkers();
+}
+
+// Compact binary state (GET /api/state?format=bin), see BinaryStateCodec.java for the layout.
+// Positions and statuses only; names and avatars come from the JSON state.
+const TAXI_STATUSES = ['AVAILABLE', 'PICKING_UP', 'ON_RIDE'];
+const PASSENGER_STATUSES = ['WAITING', 'IN_RIDE'];
+const GENDERS = ['MALE', 'FEMALE'];
+const DESTINATIONS = ['Downtown', 'Airport', 'Suburb A', 'Shopping Mall'];
+
+function decodeBinaryState(buffer) {
+    const view = new DataView(buffer);
+    if (view.getUint8(0) !== 0x54 || view.getUint8(1) !== 0x58 || view.getUint8(2) !== 1) {
+        throw new Error('Unsupported binary state frame');
+    }
+    let pos = 4;
+    const i32 = () => { const v = view.getInt32(pos, true); pos += 4; return v; };
+    const f32 = () => { const v = view.getFloat32(pos, true); pos += 4; return v; };
+    const u8 = () => view.getUint8(pos++);
+
+    const state = {
+        queueSize: i32(),
+        totalMalesServed: i32(),
+        totalFemalesServed: i32(),
+        totalPassengersServed: i32(),
+        averagePickupDistance: f32(),
+        lastTickPickupDistance: f32(),
+        lastTickSolveMillis: f32(),
+        taxis: [],
+        passengers: []
+    };
+    const taxiCount = i32();
+    const passengerCount = i32();
+    const nameLength = u8();
+    state.dispatchStrategy = String.fromCharCode(...new Uint8Array(buffer, pos, nameLength));
+    pos += nameLength;
+
+    for (let i = 0; i < taxiCount; i++) {
+        const taxi = {
+            id: i32(), x: f32(), y: f32(), targetX: f32(), targetY: f32(), earnings: f32(),
+            status: TAXI_STATUSES[u8()] || null
+        };
+        taxi.currentPassengers = u8();
+        pos += 2;
+        taxi.passengers = [];
+        for (let s = 0; s < 3; s++) {
+            const number = i32();
+            if (s < taxi.currentPassengers) taxi.passengers.push({ number });
+        }
+        state.taxis.push(taxi);
+    }
+    for (let i = 0; i < passengerCount; i++) {
+        state.passengers.push({
+            number: i32(), x: f32(), y: f32(),
+            status: PASSENGER_STATUSES[u8()] || null,
+            gender: GENDERS[u8()] || null,
+            destination: DESTINATIONS[u8()] || null
+        });
+        pos += 1;
+    }
+    return state;
+}
+
+async function fetchBinaryState() {
+    const res = await fetch('/api/state?format=bin');
+    return decodeBinaryState(await res.arrayBuffer());
+}
+
 async function fetchState() {
     try {
         const res = await fetch('/api/state');
@@ -350,5 +492,6 @@ function updateMapMarkers() {
 // Boot
 window.onload = () => {
     initMap();
-    setInterval(fetchState, 100);
+    fetchState();
+    connectStream();
 };